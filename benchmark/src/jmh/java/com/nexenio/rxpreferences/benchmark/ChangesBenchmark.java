@@ -0,0 +1,75 @@
+package com.nexenio.rxpreferences.benchmark;
+
+import com.nexenio.rxpreferences.provider.InMemoryPreferencesProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.disposables.Disposable;
+
+/**
+ * Measures how persisting a value scales with the number of {@code restoreOrDefaultAndGetChanges}
+ * subscribers, and how expensive it is to subscribe.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ChangesBenchmark {
+
+    private static final String KEY = "key";
+
+    @Param({"1", "10", "100"})
+    public int subscriberCount;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    private InMemoryPreferencesProvider preferencesProvider;
+    private ExampleValue defaultValue;
+    private ExampleValue[] values;
+    private CompositeDisposable subscriptions;
+    private int valueIndex;
+    private long receivedValueCount;
+
+    @Setup
+    public void setUp() {
+        preferencesProvider = new InMemoryPreferencesProvider();
+        defaultValue = ExampleValue.create(0, valueSize);
+        // alternate between different values, so that they pass distinctUntilChanged
+        values = new ExampleValue[]{ExampleValue.create(1, valueSize), ExampleValue.create(2, valueSize)};
+        subscriptions = new CompositeDisposable();
+        for (int index = 0; index < subscriberCount; index++) {
+            subscriptions.add(preferencesProvider.restoreOrDefaultAndGetChanges(KEY, defaultValue)
+                    .subscribe(value -> receivedValueCount++));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscriptions.dispose();
+    }
+
+    @Benchmark
+    public void persist() {
+        valueIndex ^= 1;
+        preferencesProvider.persist(KEY, values[valueIndex]).blockingAwait();
+    }
+
+    @Benchmark
+    public void subscribeAndDispose() {
+        Disposable disposable = preferencesProvider.restoreOrDefaultAndGetChanges(KEY, defaultValue)
+                .subscribe();
+        disposable.dispose();
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.nexenio.rxpreferences.benchmark;
+
+import com.nexenio.rxpreferences.provider.InMemoryPreferencesProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reads and writes of a shared provider from multiple threads, with three readers for
+ * every writer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Group)
+public class ConcurrentPreferencesProviderBenchmark {
+
+    @Param({"10", "1000"})
+    public int keyCount;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    private InMemoryPreferencesProvider preferencesProvider;
+    private String[] keys;
+    private ExampleValue[] values;
+
+    @Setup
+    public void setUp() {
+        preferencesProvider = new InMemoryPreferencesProvider();
+        keys = new String[keyCount];
+        values = new ExampleValue[keyCount];
+        for (int index = 0; index < keyCount; index++) {
+            keys[index] = "key" + index;
+            values[index] = ExampleValue.create(index, valueSize);
+            preferencesProvider.persist(keys[index], values[index]).blockingAwait();
+        }
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public ExampleValue restore(InMemoryPreferencesProviderBenchmark.KeyIndex keyIndex) {
+        return preferencesProvider.restore(keys[keyIndex.next(keyCount)], ExampleValue.class).blockingGet();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void persist(InMemoryPreferencesProviderBenchmark.KeyIndex keyIndex) {
+        int index = keyIndex.next(keyCount);
+        preferencesProvider.persist(keys[index], values[index]).blockingAwait();
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.nexenio.rxpreferences.benchmark;
+
+import com.nexenio.rxpreferences.provider.BlockingPreferencesProvider;
+import com.nexenio.rxpreferences.provider.EncryptingPreferencesProvider;
+import com.nexenio.rxpreferences.provider.InMemoryPreferencesProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Measures reads and writes of an {@link EncryptingPreferencesProvider} wrapping an {@link
+ * InMemoryPreferencesProvider}, so that the results are dominated by the crypto overhead. Run with
+ * multiple threads to check that throughput scales across cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class EncryptingPreferencesProviderBenchmark {
+
+    private static final int KEY_COUNT = 100;
+
+    @Param({"true", "false"})
+    public boolean encryptKeys;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    private BlockingPreferencesProvider blockingPreferencesProvider;
+    private String[] keys;
+    private ExampleValue[] values;
+
+    /**
+     * Index of the next key, separate for each thread so that threads don't contend on it.
+     */
+    @State(Scope.Thread)
+    public static class KeyIndex {
+
+        private int index;
+
+        int next() {
+            index = (index + 1) % KEY_COUNT;
+            return index;
+        }
+
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        EncryptingPreferencesProvider preferencesProvider = new EncryptingPreferencesProvider(
+                new InMemoryPreferencesProvider(),
+                new SecretKeySpec(new byte[16], "AES"),
+                encryptKeys ? new SecretKeySpec(new byte[32], "HmacSHA256") : null
+        );
+        blockingPreferencesProvider = preferencesProvider.blocking();
+        keys = new String[KEY_COUNT];
+        values = new ExampleValue[KEY_COUNT];
+        for (int index = 0; index < KEY_COUNT; index++) {
+            keys[index] = "key" + index;
+            values[index] = ExampleValue.create(index, valueSize);
+            blockingPreferencesProvider.persist(keys[index], values[index]);
+        }
+    }
+
+    @Benchmark
+    public ExampleValue restore(KeyIndex keyIndex) throws Exception {
+        return blockingPreferencesProvider.restore(keys[keyIndex.next()], ExampleValue.class);
+    }
+
+    @Benchmark
+    public void persist(KeyIndex keyIndex) throws Exception {
+        int index = keyIndex.next();
+        blockingPreferencesProvider.persist(keys[index], values[index]);
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.nexenio.rxpreferences.benchmark;
+
+import com.nexenio.rxpreferences.serializer.BinaryCodec;
+import com.nexenio.rxpreferences.serializer.BinaryInput;
+import com.nexenio.rxpreferences.serializer.BinaryOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Value that gets persisted by the benchmarks, with a text of configurable size.
+ */
+public class ExampleValue {
+
+    public static final BinaryCodec<ExampleValue> CODEC = new BinaryCodec<ExampleValue>() {
+
+        @Override
+        public void write(@NonNull BinaryOutput output, @NonNull ExampleValue value) {
+            output.writeString(value.id);
+            output.writeInt(value.number);
+            output.writeLong(value.timestamp);
+            output.writeBoolean(value.enabled);
+            output.writeString(value.text);
+        }
+
+        @NonNull
+        @Override
+        public ExampleValue read(@NonNull BinaryInput input) throws IOException {
+            ExampleValue value = new ExampleValue(input.readString(), input.readInt(), "");
+            value.timestamp = input.readLong();
+            value.enabled = input.readBoolean();
+            value.text = input.readString();
+            return value;
+        }
+
+    };
+
+    protected String id;
+    protected int number;
+    protected long timestamp;
+    protected boolean enabled;
+    protected String text;
+
+    public ExampleValue(@NonNull String id, int number, @NonNull String text) {
+        this.id = id;
+        this.number = number;
+        this.timestamp = 1600000000000L + number;
+        this.enabled = number % 2 == 0;
+        this.text = text;
+    }
+
+    /**
+     * Creates a value that has a text with the specified length.
+     */
+    @NonNull
+    public static ExampleValue create(int number, int textLength) {
+        char[] text = new char[textLength];
+        Arrays.fill(text, (char) ('a' + number % 26));
+        return new ExampleValue("value" + number, number, new String(text));
+    }
+
+    @NonNull
+    public static List<ExampleValue> createList(int size, int textLength) {
+        List<ExampleValue> values = new ArrayList<>(size);
+        for (int number = 0; number < size; number++) {
+            values.add(create(number, textLength));
+        }
+        return values;
+    }
+
+}
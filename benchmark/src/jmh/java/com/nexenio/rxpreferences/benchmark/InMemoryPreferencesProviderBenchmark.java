@@ -0,0 +1,125 @@
+package com.nexenio.rxpreferences.benchmark;
+
+import com.nexenio.rxpreferences.provider.BlockingPreferencesProvider;
+import com.nexenio.rxpreferences.provider.InMemoryPreferencesProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures single key reads and writes, using both the reactive and the blocking API, as well as
+ * operations that involve all keys.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class InMemoryPreferencesProviderBenchmark {
+
+    @Param({"10", "1000"})
+    public int keyCount;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    private InMemoryPreferencesProvider preferencesProvider;
+    private BlockingPreferencesProvider blockingPreferencesProvider;
+    private String[] keys;
+    private ExampleValue[] values;
+    private Map<String, ExampleValue> allValues;
+
+    /**
+     * Index of the next key, separate for each thread so that threads don't contend on it.
+     */
+    @State(Scope.Thread)
+    public static class KeyIndex {
+
+        private int index;
+
+        int next(int keyCount) {
+            index = (index + 1) % keyCount;
+            return index;
+        }
+
+    }
+
+    @Setup
+    public void setUp() {
+        preferencesProvider = new InMemoryPreferencesProvider();
+        blockingPreferencesProvider = preferencesProvider.blocking();
+        keys = new String[keyCount];
+        values = new ExampleValue[keyCount];
+        allValues = new LinkedHashMap<>();
+        for (int index = 0; index < keyCount; index++) {
+            keys[index] = "key" + index;
+            values[index] = ExampleValue.create(index, valueSize);
+            allValues.put(keys[index], values[index]);
+        }
+        preferencesProvider.persistAll(allValues).blockingAwait();
+    }
+
+    @Benchmark
+    public ExampleValue restore(KeyIndex keyIndex) {
+        return preferencesProvider.restore(keys[keyIndex.next(keyCount)], ExampleValue.class).blockingGet();
+    }
+
+    @Benchmark
+    public ExampleValue restoreBlocking(KeyIndex keyIndex) throws Exception {
+        return blockingPreferencesProvider.restore(keys[keyIndex.next(keyCount)], ExampleValue.class);
+    }
+
+    @Benchmark
+    public ExampleValue restoreOrDefaultMissingKey() {
+        return preferencesProvider.restoreOrDefault("missing", values[0]).blockingGet();
+    }
+
+    @Benchmark
+    public void persist(KeyIndex keyIndex) {
+        int index = keyIndex.next(keyCount);
+        preferencesProvider.persist(keys[index], values[index]).blockingAwait();
+    }
+
+    @Benchmark
+    public void persistBlocking(KeyIndex keyIndex) throws Exception {
+        int index = keyIndex.next(keyCount);
+        blockingPreferencesProvider.persist(keys[index], values[index]);
+    }
+
+    @Benchmark
+    public List<String> getKeys() {
+        return preferencesProvider.getKeys().toList().blockingGet();
+    }
+
+    @Benchmark
+    public Map<String, ExampleValue> restoreAll() {
+        return preferencesProvider.restoreAll(Arrays.asList(keys), ExampleValue.class).blockingGet();
+    }
+
+    @Benchmark
+    public void persistAll() {
+        preferencesProvider.persistAll(allValues).blockingAwait();
+    }
+
+    /**
+     * Deletes all keys and persists them again, so that there's something to delete in the next
+     * invocation. Subtract {@link #persistAll()} to get the cost of deleting.
+     */
+    @Benchmark
+    public void deleteAllAndPersistAll() {
+        preferencesProvider.deleteAll()
+                .andThen(preferencesProvider.persistAll(allValues))
+                .blockingAwait();
+    }
+
+}
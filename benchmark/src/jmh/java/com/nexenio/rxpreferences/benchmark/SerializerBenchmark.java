@@ -0,0 +1,97 @@
+package com.nexenio.rxpreferences.benchmark;
+
+import com.google.gson.reflect.TypeToken;
+import com.nexenio.rxpreferences.serializer.BinarySerializer;
+import com.nexenio.rxpreferences.serializer.GsonSerializer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the synchronous and reactive methods of {@link GsonSerializer} and the {@link
+ * BinarySerializer} for values of different sizes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+
+    private static final java.lang.reflect.Type LIST_TYPE = new TypeToken<List<ExampleValue>>() {}.getType();
+
+    @Param({"16", "256", "4096"})
+    public int valueSize;
+
+    private GsonSerializer serializer;
+    private BinarySerializer binarySerializer;
+    private ExampleValue value;
+    private String serializedValue;
+    private String serializedList;
+    private String binarySerializedValue;
+    private byte[] binaryValue;
+
+    @Setup
+    public void setUp() throws Exception {
+        serializer = new GsonSerializer();
+        value = ExampleValue.create(1, valueSize);
+        serializedValue = serializer.serialize(value);
+        serializedList = serializer.serialize(ExampleValue.createList(10, valueSize));
+        binarySerializer = new BinarySerializer(serializer).registerCodec(ExampleValue.class, ExampleValue.CODEC);
+        binarySerializedValue = binarySerializer.serialize(value);
+        binaryValue = binarySerializer.serializeToBytes(value);
+    }
+
+    @Benchmark
+    public String serialize() throws Exception {
+        return serializer.serialize(value);
+    }
+
+    @Benchmark
+    public String serializeToString() {
+        return serializer.serializeToString(value).blockingGet();
+    }
+
+    @Benchmark
+    public ExampleValue deserialize() throws Exception {
+        return serializer.deserialize(serializedValue, ExampleValue.class);
+    }
+
+    @Benchmark
+    public ExampleValue deserializeFromString() {
+        return serializer.deserializeFromString(serializedValue, ExampleValue.class).blockingGet();
+    }
+
+    @Benchmark
+    public List<ExampleValue> deserializeGenericList() throws Exception {
+        return serializer.deserialize(serializedList, LIST_TYPE);
+    }
+
+    @Benchmark
+    public String serializeBinary() throws Exception {
+        return binarySerializer.serialize(value);
+    }
+
+    @Benchmark
+    public ExampleValue deserializeBinary() throws Exception {
+        return binarySerializer.deserialize(binarySerializedValue, ExampleValue.class);
+    }
+
+    @Benchmark
+    public byte[] serializeToBytes() throws Exception {
+        return binarySerializer.serializeToBytes(value);
+    }
+
+    @Benchmark
+    public ExampleValue deserializeFromBytes() throws Exception {
+        return binarySerializer.deserializeFromBytes(binaryValue, ExampleValue.class);
+    }
+
+}
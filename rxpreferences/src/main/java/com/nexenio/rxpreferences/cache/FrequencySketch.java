@@ -0,0 +1,84 @@
+package com.nexenio.rxpreferences.cache;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Count-min sketch that estimates how often a key has been accessed recently. Counters are stored
+ * in one byte each and saturate at 15. All counters are halved periodically, so that the
+ * popularity of keys ages over time.
+ *
+ * Not thread-safe, callers need to synchronize access.
+ */
+final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAXIMUM_WIDTH = 1 << 14;
+    private static final int MAXIMUM_FREQUENCY = 15;
+    private static final int SAMPLE_SIZE_MULTIPLIER = 10;
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private final byte[] counters;
+    private final int widthMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(long expectedSize) {
+        int width = Integer.highestOneBit((int) Math.max(16, Math.min(expectedSize, MAXIMUM_WIDTH)) - 1) << 1;
+        this.counters = new byte[DEPTH * width];
+        this.widthMask = width - 1;
+        this.sampleSize = width * SAMPLE_SIZE_MULTIPLIER;
+    }
+
+    /**
+     * Increments the estimated frequency of the specified key.
+     */
+    void increment(@NonNull Object key) {
+        int hash = spread(key.hashCode());
+        boolean incremented = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = indexOf(hash, row);
+            if (counters[index] < MAXIMUM_FREQUENCY) {
+                counters[index]++;
+                incremented = true;
+            }
+        }
+        if (incremented && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Returns the estimated frequency of the specified key, in range [0, 15].
+     */
+    int frequency(@NonNull Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAXIMUM_FREQUENCY;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters[indexOf(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = (byte) (counters[i] >>> 1);
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int row) {
+        long value = (hash + SEEDS[row]) * SEEDS[row];
+        value += value >>> 32;
+        return row * (widthMask + 1) + ((int) value & widthMask);
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+}
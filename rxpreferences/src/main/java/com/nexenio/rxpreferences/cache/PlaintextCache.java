@@ -0,0 +1,259 @@
+package com.nexenio.rxpreferences.cache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Bounded cache for decrypted stored values (serialized strings or native values), keyed by
+ * preference key. Used by providers that need to decrypt values on every read, so that repeatedly
+ * restoring the same value doesn't require decrypting it again.
+ *
+ * Entries are evicted in least-recently-used order and, if a time to live is set, once they
+ * expire. Strings are kept as character arrays, which are overwritten with zeros when their entry
+ * is evicted, expired or invalidated. Note that every hit still creates a new string that can't be
+ * wiped.
+ */
+public class PlaintextCache {
+
+    public static final long NO_TIME_TO_LIVE = 0;
+
+    private final int maximumSize;
+
+    private final long timeToLive;
+
+    @NonNull
+    private final Scheduler clockScheduler;
+
+    @NonNull
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * Incremented on every invalidation, used to detect if a value has been invalidated while it
+     * was read from storage.
+     */
+    @NonNull
+    private final AtomicLong invalidationStamp;
+
+    @Nullable
+    private Set<String> keys;
+
+    private long keysCreationTime;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+
+    public PlaintextCache(int maximumSize) {
+        this(maximumSize, NO_TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+    }
+
+    public PlaintextCache(int maximumSize, long timeToLive, @NonNull TimeUnit timeUnit) {
+        this(maximumSize, timeToLive, timeUnit, Schedulers.computation());
+    }
+
+    /**
+     * @param timeToLive     the time after which entries expire, or {@link #NO_TIME_TO_LIVE}
+     * @param clockScheduler the scheduler whose clock is used to expire entries
+     */
+    public PlaintextCache(int maximumSize, long timeToLive, @NonNull TimeUnit timeUnit, @NonNull Scheduler clockScheduler) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("Time to live must not be negative");
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLive = timeUnit.toMillis(timeToLive);
+        this.clockScheduler = clockScheduler;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.invalidationStamp = new AtomicLong();
+    }
+
+    /**
+     * Returns the cached value for the specified key, or {@code null} if not available or
+     * expired.
+     */
+    @Nullable
+    public synchronized Object get(@NonNull String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (isExpired(entry.creationTime)) {
+            entries.remove(key);
+            entry.wipe();
+            expirationCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.getValue();
+    }
+
+    /**
+     * Returns the cached keys, or {@code null} if not available or expired.
+     */
+    @Nullable
+    public synchronized Set<String> getKeys() {
+        if (keys != null && isExpired(keysCreationTime)) {
+            keys = null;
+        }
+        return keys;
+    }
+
+    /**
+     * Returns a stamp that needs to be passed to {@link #put(String, Object, long)} or {@link
+     * #putKeys(Collection, long)}. Should be obtained before reading from storage, so that values that
+     * got invalidated in the meantime will not be cached.
+     */
+    public long getInvalidationStamp() {
+        return invalidationStamp.get();
+    }
+
+    /**
+     * Adds the specified stored value to the cache, evicting the least recently used entry if
+     * the cache is full.
+     *
+     * @return {@code true} if the value has been cached
+     */
+    public synchronized boolean put(@NonNull String key, @NonNull Object storedValue, long invalidationStamp) {
+        if (invalidationStamp != getInvalidationStamp()) {
+            return false;
+        }
+        Entry previousEntry = entries.remove(key);
+        if (previousEntry != null) {
+            previousEntry.wipe();
+        }
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() >= maximumSize && iterator.hasNext()) {
+            Entry victim = iterator.next();
+            iterator.remove();
+            victim.wipe();
+            evictionCount++;
+        }
+        entries.put(key, new Entry(storedValue, clockScheduler.now(TimeUnit.MILLISECONDS)));
+        return true;
+    }
+
+    /**
+     * Caches the keys of all stored values.
+     *
+     * @return {@code true} if the keys have been cached
+     */
+    public synchronized boolean putKeys(@NonNull Collection<String> keys, long invalidationStamp) {
+        if (invalidationStamp != getInvalidationStamp()) {
+            return false;
+        }
+        this.keys = Collections.unmodifiableSet(new HashSet<>(keys));
+        this.keysCreationTime = clockScheduler.now(TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Removes and wipes the value for the specified key. Also removes the cached keys, as the key
+     * may have been added or removed.
+     */
+    public void invalidate(@NonNull String key) {
+        invalidationStamp.incrementAndGet();
+        synchronized (this) {
+            keys = null;
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                entry.wipe();
+            }
+        }
+    }
+
+    /**
+     * Removes and wipes all cached values.
+     */
+    public void invalidateAll() {
+        invalidationStamp.incrementAndGet();
+        synchronized (this) {
+            keys = null;
+            for (Entry entry : entries.values()) {
+                entry.wipe();
+            }
+            entries.clear();
+        }
+    }
+
+    private boolean isExpired(long creationTime) {
+        return timeToLive != NO_TIME_TO_LIVE
+                && clockScheduler.now(TimeUnit.MILLISECONDS) - creationTime >= timeToLive;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of entries that have been removed to make room for other entries.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of entries that have been removed because their time to live passed.
+     */
+    public synchronized long getExpirationCount() {
+        return expirationCount;
+    }
+
+    private static final class Entry {
+
+        /**
+         * The characters of a string value, or any other stored value.
+         */
+        @NonNull
+        private final Object value;
+
+        private final long creationTime;
+
+        private Entry(@NonNull Object storedValue, long creationTime) {
+            this.value = storedValue instanceof String ? ((String) storedValue).toCharArray() : storedValue;
+            this.creationTime = creationTime;
+        }
+
+        @NonNull
+        private Object getValue() {
+            return value instanceof char[] ? new String((char[]) value) : value;
+        }
+
+        private void wipe() {
+            if (value instanceof char[]) {
+                Arrays.fill((char[]) value, '\0');
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,316 @@
+package com.nexenio.rxpreferences.cache;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Bounded cache for deserialized preference values, keyed by preference key and value type.
+ *
+ * Entries are evicted in least-recently-used order, but only if the entry that should be added is
+ * accessed more frequently than the entry that would be evicted (TinyLFU admission). This keeps
+ * hot values cached even if many other keys are read once.
+ *
+ * Cached values are shared between callers, they should be treated as immutable.
+ */
+public class ValueCache {
+
+    /**
+     * Calculates the weight of a cache entry, used to bound the cache size.
+     */
+    public interface Weigher {
+
+        /**
+         * @param serializedSize the length of the serialized string, or the number of bytes for
+         *                       binary values
+         */
+        int weigh(@NonNull String key, int serializedSize);
+
+    }
+
+    /**
+     * Every entry has a weight of 1, the maximum weight is the maximum number of entries.
+     */
+    public static final Weigher SINGLETON_WEIGHER = (key, serializedSize) -> 1;
+
+    /**
+     * Entries are weighted by the size of their serialized value.
+     */
+    public static final Weigher SERIALIZED_LENGTH_WEIGHER = (key, serializedSize) -> serializedSize;
+
+    private static final int INVALIDATION_STRIPES = 64;
+
+    private final long maximumWeight;
+
+    @NonNull
+    private final Weigher weigher;
+
+    @NonNull
+    private final FrequencySketch frequencySketch;
+
+    @NonNull
+    private final LinkedHashMap<CacheKey, Entry> entries;
+
+    @NonNull
+    private final Map<String, List<CacheKey>> cacheKeys;
+
+    /**
+     * Counts invalidations per stripe of preference keys, used to detect if a value has been
+     * invalidated while it was restored.
+     */
+    @NonNull
+    private final AtomicLongArray invalidationStamps;
+
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long rejectionCount;
+
+    public ValueCache(int maximumSize) {
+        this(maximumSize, SINGLETON_WEIGHER);
+    }
+
+    public ValueCache(long maximumWeight, @NonNull Weigher weigher) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive");
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.frequencySketch = new FrequencySketch(maximumWeight);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.cacheKeys = new HashMap<>();
+        this.invalidationStamps = new AtomicLongArray(INVALIDATION_STRIPES);
+    }
+
+    /**
+     * Returns the cached value for the specified key and type, or {@code null} if not available.
+     */
+    @Nullable
+    public synchronized Object get(@NonNull String key, @NonNull Type type) {
+        frequencySketch.increment(key);
+        Entry entry = entries.get(new CacheKey(key, type));
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * Returns a stamp that needs to be passed to {@link #put(String, Type, Object, int, long)}.
+     * Should be obtained before the value is restored from storage, so that values that got
+     * invalidated in the meantime will not be cached.
+     */
+    public long getInvalidationStamp(@NonNull String key) {
+        return invalidationStamps.get(stripeOf(key));
+    }
+
+    /**
+     * Adds the specified value to the cache, if it hasn't been invalidated since the specified
+     * stamp has been obtained and if it's accessed more frequently than the entries that would need
+     * to be evicted. Nothing is evicted or replaced unless the value gets cached.
+     *
+     * @return {@code true} if the value has been cached
+     */
+    public synchronized boolean put(@NonNull String key, @NonNull Type type, @NonNull Object value, int serializedSize, long invalidationStamp) {
+        if (invalidationStamp != getInvalidationStamp(key)) {
+            return false;
+        }
+
+        CacheKey cacheKey = new CacheKey(key, type);
+        int entryWeight = weigher.weigh(key, serializedSize);
+        if (entryWeight > maximumWeight) {
+            rejectionCount++;
+            return false;
+        }
+
+        Entry existingEntry = entries.get(cacheKey);
+        long remainingWeight = weight - (existingEntry != null ? existingEntry.weight : 0);
+        List<CacheKey> victims = new ArrayList<>();
+        int candidateFrequency = frequencySketch.frequency(key);
+        Iterator<Map.Entry<CacheKey, Entry>> iterator = entries.entrySet().iterator();
+        while (remainingWeight + entryWeight > maximumWeight && iterator.hasNext()) {
+            Map.Entry<CacheKey, Entry> victim = iterator.next();
+            if (victim.getKey().equals(cacheKey)) {
+                continue;
+            }
+            if (candidateFrequency <= frequencySketch.frequency(victim.getKey().key)) {
+                rejectionCount++;
+                return false;
+            }
+            victims.add(victim.getKey());
+            remainingWeight -= victim.getValue().weight;
+        }
+
+        removeEntry(cacheKey);
+        for (CacheKey victim : victims) {
+            removeEntry(victim);
+            evictionCount++;
+        }
+        entries.put(cacheKey, new Entry(value, entryWeight));
+        List<CacheKey> keys = cacheKeys.get(key);
+        if (keys == null) {
+            keys = new ArrayList<>(1);
+            cacheKeys.put(key, keys);
+        }
+        keys.add(cacheKey);
+        weight += entryWeight;
+        return true;
+    }
+
+    /**
+     * Removes the values of all types for the specified key.
+     */
+    public void invalidate(@NonNull String key) {
+        invalidationStamps.incrementAndGet(stripeOf(key));
+        synchronized (this) {
+            List<CacheKey> keys = cacheKeys.remove(key);
+            if (keys == null) {
+                return;
+            }
+            for (CacheKey cacheKey : keys) {
+                Entry entry = entries.remove(cacheKey);
+                if (entry != null) {
+                    weight -= entry.weight;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cached values.
+     */
+    public void invalidateAll() {
+        for (int stripe = 0; stripe < INVALIDATION_STRIPES; stripe++) {
+            invalidationStamps.incrementAndGet(stripe);
+        }
+        synchronized (this) {
+            entries.clear();
+            cacheKeys.clear();
+            weight = 0;
+        }
+    }
+
+    private void removeEntry(@NonNull CacheKey cacheKey) {
+        Entry entry = entries.remove(cacheKey);
+        if (entry != null) {
+            removeCacheKey(cacheKey);
+            weight -= entry.weight;
+        }
+    }
+
+    private void removeCacheKey(@NonNull CacheKey cacheKey) {
+        List<CacheKey> keys = cacheKeys.get(cacheKey.key);
+        if (keys != null) {
+            keys.remove(cacheKey);
+            if (keys.isEmpty()) {
+                cacheKeys.remove(cacheKey.key);
+            }
+        }
+    }
+
+    private static int stripeOf(@NonNull String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (INVALIDATION_STRIPES - 1);
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of entries that have been removed to make room for other entries.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of values that have not been cached because they were accessed less
+     * frequently than the entries that would have been evicted, or because they were too heavy.
+     */
+    public synchronized long getRejectionCount() {
+        return rejectionCount;
+    }
+
+    /**
+     * Returns the ratio of hits to requests, or {@code 0} if no request has been made yet.
+     */
+    public synchronized double getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+    }
+
+    private static final class CacheKey {
+
+        @NonNull
+        private final String key;
+
+        @NonNull
+        private final Type type;
+
+        private CacheKey(@NonNull String key, @NonNull Type type) {
+            this.key = key;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return key.equals(cacheKey.key) && type.equals(cacheKey.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + type.hashCode();
+        }
+
+    }
+
+    private static final class Entry {
+
+        @NonNull
+        private final Object value;
+
+        private final int weight;
+
+        private Entry(@NonNull Object value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+
+    }
+
+}
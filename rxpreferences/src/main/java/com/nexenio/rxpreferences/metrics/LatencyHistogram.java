@@ -0,0 +1,84 @@
+package com.nexenio.rxpreferences.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Histogram of latencies with buckets of exponentially growing size: bucket {@code i} counts
+ * latencies below {@code 2^i} microseconds. Recording doesn't require any locks, so it can be
+ * used on every operation.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The last bucket counts all latencies of more than about 17 minutes.
+     */
+    public static final int BUCKET_COUNT = 31;
+
+    @NonNull
+    private final AtomicLongArray bucketCounts;
+
+    @NonNull
+    private final AtomicLong count;
+
+    @NonNull
+    private final AtomicLong totalNanos;
+
+    @NonNull
+    private final AtomicLong maximumNanos;
+
+    public LatencyHistogram() {
+        this.bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.totalNanos = new AtomicLong();
+        this.maximumNanos = new AtomicLong();
+    }
+
+    public void record(long nanos) {
+        bucketCounts.incrementAndGet(getBucketIndex(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long maximum = maximumNanos.get();
+        while (nanos > maximum && !maximumNanos.compareAndSet(maximum, nanos)) {
+            maximum = maximumNanos.get();
+        }
+    }
+
+    static int getBucketIndex(long nanos) {
+        long micros = Math.max(nanos / 1000, 0);
+        int index = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the exclusive upper bound of the latencies counted by the specified bucket, in
+     * nanoseconds.
+     */
+    public static long getBucketUpperBoundNanos(int index) {
+        return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << index) * 1000;
+    }
+
+    @NonNull
+    public long[] getBucketCounts() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            counts[index] = bucketCounts.get(index);
+        }
+        return counts;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaximumNanos() {
+        return maximumNanos.get();
+    }
+
+}
@@ -0,0 +1,268 @@
+package com.nexenio.rxpreferences.metrics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Immutable snapshot of the metrics recorded by a provider. All counts are cumulative since the
+ * provider has been created, compare subsequent snapshots to get rates.
+ */
+public final class MetricsSnapshot {
+
+    private final long timestamp;
+
+    @NonNull
+    private final Map<Operation, OperationMetrics> operationMetrics;
+
+    private final long persistedValueCount;
+
+    private final long persistedByteCount;
+
+    private final long maximumPersistedValueSize;
+
+    @NonNull
+    private final Map<String, Integer> changeSubscriberCounts;
+
+    @NonNull
+    private final List<KeyMetrics> topKeyMetrics;
+
+    public MetricsSnapshot(long timestamp, @NonNull Map<Operation, OperationMetrics> operationMetrics, long persistedValueCount, long persistedByteCount, long maximumPersistedValueSize, @NonNull Map<String, Integer> changeSubscriberCounts, @NonNull List<KeyMetrics> topKeyMetrics) {
+        this.timestamp = timestamp;
+        this.operationMetrics = Collections.unmodifiableMap(operationMetrics);
+        this.persistedValueCount = persistedValueCount;
+        this.persistedByteCount = persistedByteCount;
+        this.maximumPersistedValueSize = maximumPersistedValueSize;
+        this.changeSubscriberCounts = Collections.unmodifiableMap(changeSubscriberCounts);
+        this.topKeyMetrics = Collections.unmodifiableList(topKeyMetrics);
+    }
+
+    /**
+     * Returns the time the snapshot has been taken at, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @NonNull
+    public Map<Operation, OperationMetrics> getOperationMetrics() {
+        return operationMetrics;
+    }
+
+    @Nullable
+    public OperationMetrics getOperationMetrics(@NonNull Operation operation) {
+        return operationMetrics.get(operation);
+    }
+
+    /**
+     * Returns the number of values whose serialized size has been recorded.
+     */
+    public long getPersistedValueCount() {
+        return persistedValueCount;
+    }
+
+    /**
+     * Returns the total serialized size of all persisted values, in bytes.
+     */
+    public long getPersistedByteCount() {
+        return persistedByteCount;
+    }
+
+    public long getMaximumPersistedValueSize() {
+        return maximumPersistedValueSize;
+    }
+
+    /**
+     * Returns the number of change subscribers per key, for keys that have any subscribers.
+     */
+    @NonNull
+    public Map<String, Integer> getChangeSubscriberCounts() {
+        return changeSubscriberCounts;
+    }
+
+    public int getChangeSubscriberCount() {
+        int count = 0;
+        for (Integer subscriberCount : changeSubscriberCounts.values()) {
+            count += subscriberCount;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the metrics of the keys with the most operations, in descending order.
+     */
+    @NonNull
+    public List<KeyMetrics> getTopKeyMetrics() {
+        return topKeyMetrics;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "timestamp=" + timestamp +
+                ", operationMetrics=" + operationMetrics +
+                ", persistedValueCount=" + persistedValueCount +
+                ", persistedByteCount=" + persistedByteCount +
+                ", maximumPersistedValueSize=" + maximumPersistedValueSize +
+                ", changeSubscriberCounts=" + changeSubscriberCounts +
+                ", topKeyMetrics=" + topKeyMetrics +
+                '}';
+    }
+
+    public static final class OperationMetrics {
+
+        private final long count;
+
+        private final long errorCount;
+
+        private final long totalNanos;
+
+        private final long maximumNanos;
+
+        @NonNull
+        private final long[] bucketCounts;
+
+        public OperationMetrics(@NonNull LatencyHistogram latencyHistogram, long errorCount) {
+            this.bucketCounts = latencyHistogram.getBucketCounts();
+            this.count = latencyHistogram.getCount();
+            this.totalNanos = latencyHistogram.getTotalNanos();
+            this.maximumNanos = latencyHistogram.getMaximumNanos();
+            this.errorCount = errorCount;
+        }
+
+        /**
+         * Returns the number of completed operations, including failed ones.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getAverageNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        public long getMaximumNanos() {
+            return maximumNanos;
+        }
+
+        /**
+         * Returns an upper bound for the specified percentile (between 0 and 1) of all latencies,
+         * in nanoseconds. As latencies are counted in buckets of exponentially growing size, the
+         * actual percentile may be up to half as large.
+         */
+        public long getPercentileNanos(double percentile) {
+            long bucketCount = 0;
+            for (long count : bucketCounts) {
+                bucketCount += count;
+            }
+            if (bucketCount == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile * bucketCount);
+            long cumulativeCount = 0;
+            for (int index = 0; index < bucketCounts.length; index++) {
+                cumulativeCount += bucketCounts[index];
+                if (cumulativeCount >= rank && bucketCounts[index] > 0) {
+                    return Math.min(LatencyHistogram.getBucketUpperBoundNanos(index), maximumNanos);
+                }
+            }
+            return maximumNanos;
+        }
+
+        @NonNull
+        public long[] getBucketCounts() {
+            return bucketCounts.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "OperationMetrics{" +
+                    "count=" + count +
+                    ", errorCount=" + errorCount +
+                    ", averageNanos=" + getAverageNanos() +
+                    ", p99Nanos=" + getPercentileNanos(0.99) +
+                    ", maximumNanos=" + maximumNanos +
+                    '}';
+        }
+
+    }
+
+    public static final class KeyMetrics {
+
+        @NonNull
+        private final String key;
+
+        private final long operationCount;
+
+        private final long errorCount;
+
+        private final long totalNanos;
+
+        private final long maximumNanos;
+
+        private final long lastValueSize;
+
+        public KeyMetrics(@NonNull String key, long operationCount, long errorCount, long totalNanos, long maximumNanos, long lastValueSize) {
+            this.key = key;
+            this.operationCount = operationCount;
+            this.errorCount = errorCount;
+            this.totalNanos = totalNanos;
+            this.maximumNanos = maximumNanos;
+            this.lastValueSize = lastValueSize;
+        }
+
+        @NonNull
+        public String getKey() {
+            return key;
+        }
+
+        public long getOperationCount() {
+            return operationCount;
+        }
+
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaximumNanos() {
+            return maximumNanos;
+        }
+
+        /**
+         * Returns the serialized size of the last persisted value in bytes, or {@code -1} if not
+         * known.
+         */
+        public long getLastValueSize() {
+            return lastValueSize;
+        }
+
+        @Override
+        public String toString() {
+            return "KeyMetrics{" +
+                    "key='" + key + '\'' +
+                    ", operationCount=" + operationCount +
+                    ", errorCount=" + errorCount +
+                    ", totalNanos=" + totalNanos +
+                    ", maximumNanos=" + maximumNanos +
+                    ", lastValueSize=" + lastValueSize +
+                    '}';
+        }
+
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.nexenio.rxpreferences.metrics;
+
+/**
+ * Operations of a preferences provider that metrics are recorded for.
+ */
+public enum Operation {
+
+    GET_KEYS,
+    CONTAINS_KEY,
+
+    /**
+     * Restoring a single value, including {@code restoreOrDefault} and {@code restoreIfAvailable}.
+     */
+    RESTORE,
+
+    RESTORE_ALL,
+
+    /**
+     * Persisting a single value, including {@code persistIfNotYetAvailable}.
+     */
+    PERSIST,
+
+    DELETE,
+
+    /**
+     * Deleting all or multiple values.
+     */
+    DELETE_ALL,
+
+    /**
+     * Committing multiple changes at once, including {@code persistAll}.
+     */
+    COMMIT
+
+}
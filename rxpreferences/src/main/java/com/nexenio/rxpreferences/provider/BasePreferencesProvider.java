@@ -1,27 +1,107 @@
 package com.nexenio.rxpreferences.provider;
 
+import com.nexenio.rxpreferences.cache.ValueCache;
+import com.nexenio.rxpreferences.metrics.Operation;
+import com.nexenio.rxpreferences.serializer.Base64Url;
 import com.nexenio.rxpreferences.serializer.GsonSerializer;
 import com.nexenio.rxpreferences.serializer.Serializer;
 
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.core.BackpressureStrategy;
 import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.exceptions.Exceptions;
+import io.reactivex.rxjava3.functions.BiConsumer;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subjects.Subject;
 
 public abstract class BasePreferencesProvider implements PreferencesProvider {
 
+    /**
+     * Marks stored strings that contain URL-safe Base64 encoded bytes, used by providers that
+     * don't {@link #supportsBinaryValues()}. Serialized JSON values never start with it, serialized
+     * values of other serializers that do are stored with the prefix doubled, which is not part of
+     * the Base64 alphabet.
+     */
+    public static final char ENCODED_BYTES_PREFIX = '#';
+
     @NonNull
     protected Serializer serializer;
 
+    /**
+     * Optional cache for deserialized values, disabled by default.
+     */
+    @Nullable
+    protected ValueCache valueCache;
+
+    /**
+     * Whether values of native types should be persisted without serialization, if supported by
+     * the provider. See {@link #isNativeValueType(java.lang.reflect.Type)}.
+     */
+    protected boolean nativeValuesEnabled;
+
+    /**
+     * Scheduler that reactive methods access the storage on.
+     */
     @NonNull
-    @SuppressWarnings("rawtypes")
-    protected final Map<String, PublishSubject> changePublishers;
+    protected Scheduler ioScheduler = Schedulers.io();
+
+    /**
+     * Scheduler that reactive methods serialize and deserialize values on.
+     */
+    @NonNull
+    protected Scheduler computationScheduler = Schedulers.computation();
+
+    /**
+     * Set on threads that block on the reactive methods of a subclass in the default synchronous
+     * storage access methods. These threads may be threads of the I/O scheduler already, so
+     * switching to it again could deadlock if it has a single thread.
+     */
+    @NonNull
+    private final ThreadLocal<Boolean> unscheduledStorageAccess = new ThreadLocal<>();
+
+    /**
+     * Optional policy for storage access on latency-sensitive threads, falls back to {@link
+     * BlockingCallPolicy#getDefault()}.
+     */
+    @Nullable
+    protected volatile BlockingCallPolicy blockingCallPolicy;
+
+    /**
+     * Change publishers for keys that currently have at least one subscriber. Publishers are
+     * created on the first subscription and removed when the last subscriber disposes.
+     */
+    @NonNull
+    protected final ConcurrentMap<String, ChangePublisher> changePublishers;
+
+    @NonNull
+    private final BlockingPreferencesProvider blockingPreferencesProvider;
 
     public BasePreferencesProvider() {
         this(new GsonSerializer());
@@ -29,119 +109,964 @@ public abstract class BasePreferencesProvider implements PreferencesProvider {
 
     public BasePreferencesProvider(@NonNull Serializer serializer) {
         this.serializer = serializer;
-        this.changePublishers = new HashMap<>();
+        this.changePublishers = new ConcurrentHashMap<>();
+        this.blockingPreferencesProvider = new SynchronousPreferencesProvider();
     }
 
     @Override
     public <Type> Single<Type> restore(@NonNull String key, @NonNull Class<Type> typeClass) {
-        return restoreIfAvailable(key, typeClass)
-                .switchIfEmpty(Single.error(new PreferenceProviderException("No preference available with key: " + key)));
+        return restore(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Single<Type> restore(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        if (usesCallerThread()) {
+            return Single.fromCallable(() -> restoreValue(key, valueType));
+        }
+        return this.<Type>restoreIfAvailable(key, valueType)
+                .switchIfEmpty(Single.error(() -> new PreferenceProviderException("No preference available with key: " + key)));
     }
 
     @Override
     public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue) {
-        return restoreIfAvailable(key, (Class<Type>) defaultValue.getClass())
+        return restoreOrDefault(key, defaultValue, defaultValue.getClass());
+    }
+
+    @Override
+    public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        if (usesCallerThread()) {
+            return Single.fromCallable(() -> restoreValueOrDefault(key, defaultValue, valueType));
+        }
+        return this.<Type>restoreIfAvailable(key, valueType)
                 .defaultIfEmpty(defaultValue);
     }
 
     @Override
     public <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue) {
-        return restoreOrDefault(key, defaultValue)
+        return restoreOrDefaultAndGetChanges(key, defaultValue, defaultValue.getClass());
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        return restoreOrDefault(key, defaultValue, valueType)
                 .toObservable()
-                .mergeWith(getChanges(key, (Class<Type>) defaultValue.getClass()))
+                .mergeWith(this.<Type>getChanges(key, valueType))
+                .distinctUntilChanged();
+    }
+
+    @Override
+    public <Type> Flowable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull ChangeCoalescing coalescing) {
+        return restoreOrDefaultAndGetChanges(key, defaultValue, defaultValue.getClass(), coalescing);
+    }
+
+    /**
+     * Only the changes are coalesced, the restored value is emitted right away.
+     */
+    @Override
+    public <Type> Flowable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType, @NonNull ChangeCoalescing coalescing) {
+        return Observable.<Object>merge(
+                restoreOrDefault(key, defaultValue, valueType).toObservable(),
+                coalescing.coalesce(getPublishedChanges(key, valueType))
+        ).toFlowable(BackpressureStrategy.LATEST)
+                .filter(change -> isRestorableChange(change, valueType))
+                .map(change -> (Type) restoreChange(change, valueType))
                 .distinctUntilChanged();
     }
 
     @Override
     public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull Class<Type> typeClass) {
-        return restoreIfAvailable(key)
-                .flatMapSingle(serializedValue -> serializer.deserializeFromString(serializedValue, typeClass))
-                .onErrorResumeNext(throwable -> Maybe.error(new PreferenceProviderException("Unable to restore preference for key: " + key, throwable)));
+        return restoreIfAvailable(key, (java.lang.reflect.Type) typeClass);
     }
 
-    protected abstract Maybe<String> restoreIfAvailable(@NonNull String key);
+    @Override
+    public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        if (usesCallerThread()) {
+            return Maybe.fromCallable(() -> restoreValueIfAvailable(key, valueType));
+        }
+        return readSnapshotOnSchedulers(Collections.singletonMap(key, valueType))
+                .flatMapMaybe(snapshot -> Maybe.fromCallable(() -> (Type) snapshot.restoreValues().get(key)))
+                .onErrorResumeNext(throwable -> Maybe.error(PreferenceProviderException.from(throwable, "Unable to restore preference for key: " + key)));
+    }
 
     @Override
     public <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
-        return restoreIfAvailable(key, typeClass)
+        return restoreIfAvailableAndGetChanges(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return this.<Type>restoreIfAvailable(key, valueType)
                 .toObservable()
-                .mergeWith(getChanges(key, typeClass))
+                .mergeWith(this.<Type>getChanges(key, valueType))
                 .distinctUntilChanged();
     }
 
+    @Override
+    public <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull Class<Type> typeClass) {
+        return restoreAll(keys, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull java.lang.reflect.Type valueType) {
+        Map<String, java.lang.reflect.Type> valueTypes = new LinkedHashMap<>();
+        for (String key : keys) {
+            valueTypes.put(key, valueType);
+        }
+        return restoreAllValues(valueTypes)
+                .map(values -> (Map<String, Type>) values);
+    }
+
+    @Override
+    public Single<Map<String, Object>> restoreAll(@NonNull Map<String, Class<?>> typeClasses) {
+        return restoreAll(typeClasses, null);
+    }
+
+    /**
+     * Same as {@link #restoreAll(Map)}, but deserializes the restored values in parallel on the
+     * specified scheduler, e.g. {@link io.reactivex.rxjava3.schedulers.Schedulers#computation()}.
+     * Values are deserialized sequentially if no scheduler is specified.
+     */
+    public Single<Map<String, Object>> restoreAll(@NonNull Map<String, Class<?>> typeClasses, @Nullable Scheduler deserializationScheduler) {
+        Map<String, java.lang.reflect.Type> valueTypes = new LinkedHashMap<>(typeClasses);
+        if (deserializationScheduler == null) {
+            return restoreAllValues(valueTypes);
+        }
+        return subscribeOnIoScheduler(Single.fromCallable(() -> readSnapshot(valueTypes)))
+                .flatMap(snapshot -> Observable.fromIterable(snapshot.storedValues.entrySet())
+                        .flatMapSingle(entry -> Single.fromCallable(() -> snapshot.restore(entry.getKey(), entry.getValue()))
+                                .subscribeOn(deserializationScheduler)
+                                .map(value -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), value)))
+                        .collect(() -> snapshot.values, (values, entry) -> values.put(entry.getKey(), entry.getValue())))
+                .onErrorResumeNext(throwable -> Single.error(PreferenceProviderException.from(throwable, "Unable to restore preferences")));
+    }
+
+    /**
+     * Reads a snapshot on the I/O scheduler and restores its values on the computation scheduler.
+     */
+    @NonNull
+    private Single<Map<String, Object>> restoreAllValues(@NonNull Map<String, java.lang.reflect.Type> valueTypes) {
+        if (usesCallerThread()) {
+            return Single.fromCallable(() -> restoreValues(valueTypes));
+        }
+        return readSnapshotOnSchedulers(valueTypes)
+                .map(Snapshot::restoreValues)
+                .onErrorResumeNext(throwable -> Single.error(PreferenceProviderException.from(throwable, "Unable to restore preferences")));
+    }
+
+    @NonNull
+    private Single<Snapshot> readSnapshotOnSchedulers(@NonNull Map<String, java.lang.reflect.Type> valueTypes) {
+        return Single.fromCallable(() -> readSnapshot(valueTypes))
+                .subscribeOn(ioScheduler)
+                .observeOn(computationScheduler);
+    }
+
     @Override
     public <Type> Completable persist(@NonNull String key, @NonNull Type value) {
-        return Single.defer(() -> serializer.serializeToString(value))
-                .flatMapCompletable(serializedValue -> persist(key, serializedValue))
-                .onErrorResumeNext(throwable -> Completable.error(new PreferenceProviderException("Unable to persist preference for key: " + key, throwable)))
-                .andThen(processPreferenceChange(key, value));
+        if (usesCallerThread()) {
+            return Completable.fromAction(() -> persistValue(key, value));
+        }
+        return Single.fromCallable(() -> toStoredValue(value))
+                .subscribeOn(computationScheduler)
+                .observeOn(ioScheduler)
+                .onErrorResumeNext(throwable -> Single.error(new PreferenceProviderException("Unable to persist preference for key: " + key, throwable)))
+                .flatMapCompletable(storedValue -> Completable.fromAction(() -> persistStoredValue(key, storedValue, value)));
     }
 
     public abstract Completable persist(@NonNull String key, String value);
 
     @Override
     public <Type> Completable persistIfNotYetAvailable(@NonNull String key, @NonNull Type value) {
+        if (usesCallerThread()) {
+            return Completable.fromAction(() -> persistValueIfNotYetAvailable(key, value));
+        }
         return containsKey(key)
-                .flatMapCompletable(containsKey -> {
-                    if (containsKey) {
-                        return Completable.complete();
-                    } else {
-                        return persist(key, value);
-                    }
-                });
+                .flatMapCompletable(containsKey -> containsKey ? Completable.complete() : persist(key, value));
     }
 
     @Override
-    public <Type> Observable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
-        return getOrCreateChangePublishSubject(key)
-                .map(publishSubject -> (Observable<Type>) publishSubject)
-                .flatMapObservable(publishSubject -> publishSubject);
+    public Completable persistAll(@NonNull Map<String, ?> values) {
+        return commit(values, Collections.emptyList());
     }
 
-    protected <Type> Completable processPreferenceChange(@NonNull String key, @Nullable Type value) {
-        return Completable.defer(() -> {
-            if (value == null) {
-                // preference has been deleted
-                return Completable.complete();
+    @Override
+    public Completable commit(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) {
+        Map<String, ?> values = new LinkedHashMap<>(valuesToPersist);
+        Collection<String> keys = new ArrayList<>(keysToDelete);
+        return commitValuesOnSchedulers(values, keys, this::writeStoredValues);
+    }
+
+    /**
+     * Same as {@link #commitValues(Map, Collection, BiConsumer)}, but converts the values on the
+     * computation scheduler and passes them to the writer on the I/O scheduler.
+     */
+    protected Completable commitValuesOnSchedulers(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete, @NonNull BiConsumer<Map<String, Object>, Collection<String>> writer) {
+        if (usesCallerThread()) {
+            return Completable.fromAction(() -> commitValues(valuesToPersist, keysToDelete, writer));
+        }
+        return Single.fromCallable(() -> toStoredValues(valuesToPersist))
+                .subscribeOn(computationScheduler)
+                .observeOn(ioScheduler)
+                .flatMapCompletable(storedValues -> Completable.fromAction(() -> commitStoredValues(valuesToPersist, storedValues, keysToDelete, writer)));
+    }
+
+    @Override
+    public PreferencesEditor edit() {
+        return new PreferencesEditor(this);
+    }
+
+    @Override
+    public BlockingPreferencesProvider blocking() {
+        return blockingPreferencesProvider;
+    }
+
+    /*
+        Synchronous implementation, used by both the reactive and the blocking API
+     */
+
+    @Nullable
+    protected <Type> Type restoreValueIfAvailable(@NonNull String key, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException {
+        try {
+            ValueCache valueCache = this.valueCache;
+            if (valueCache == null) {
+                Object storedValue = readStoredValueWithPolicy(key, valueType);
+                return storedValue != null ? fromStoredValue(key, storedValue, valueType, null, 0) : null;
+            }
+
+            Type cachedValue = (Type) valueCache.get(key, valueType);
+            if (cachedValue != null) {
+                return cachedValue;
+            }
+
+            long invalidationStamp = valueCache.getInvalidationStamp(key);
+            Object storedValue = readStoredValueWithPolicy(key, valueType);
+            return storedValue != null ? fromStoredValue(key, storedValue, valueType, valueCache, invalidationStamp) : null;
+        } catch (BlockingCallViolationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new PreferenceProviderException("Unable to restore preference for key: " + key, e);
+        }
+    }
+
+    @NonNull
+    protected <Type> Type restoreValue(@NonNull String key, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException {
+        Type value = restoreValueIfAvailable(key, valueType);
+        if (value == null) {
+            throw new PreferenceProviderException("No preference available with key: " + key);
+        }
+        return value;
+    }
+
+    @NonNull
+    protected <Type> Type restoreValueOrDefault(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException {
+        Type value = restoreValueIfAvailable(key, valueType);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Restores the values for the specified keys from a single snapshot, see {@link
+     * #restoreAll(Map)}.
+     *
+     * @param valueTypes the expected type for each key, may be generic
+     */
+    @NonNull
+    protected Map<String, Object> restoreValues(@NonNull Map<String, java.lang.reflect.Type> valueTypes) throws PreferenceProviderException {
+        try {
+            return readSnapshot(valueTypes).restoreValues();
+        } catch (BlockingCallViolationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new PreferenceProviderException("Unable to restore preferences", e);
+        }
+    }
+
+    /**
+     * Gets cached values and reads the stored values of all other keys.
+     */
+    @NonNull
+    private Snapshot readSnapshot(@NonNull Map<String, java.lang.reflect.Type> valueTypes) throws Exception {
+        Snapshot snapshot = new Snapshot(valueTypes, valueCache);
+        if (snapshot.valueCache == null) {
+            snapshot.storedValues.putAll(readStoredValuesWithPolicy(valueTypes));
+            return snapshot;
+        }
+
+        Map<String, java.lang.reflect.Type> valueTypesToRestore = new LinkedHashMap<>();
+        for (Map.Entry<String, java.lang.reflect.Type> entry : valueTypes.entrySet()) {
+            String key = entry.getKey();
+            Object cachedValue = snapshot.valueCache.get(key, entry.getValue());
+            if (cachedValue != null) {
+                snapshot.values.put(key, cachedValue);
             } else {
-                // preference has been persisted
-                return notifyChangePublishSubjectIfAvailable(key, value);
+                valueTypesToRestore.put(key, entry.getValue());
+                snapshot.invalidationStamps.put(key, snapshot.valueCache.getInvalidationStamp(key));
             }
-        }).onErrorResumeNext(throwable -> Completable.error(new PreferenceProviderException("Unable to process preference change for key: " + key, throwable)));
+        }
+        if (!valueTypesToRestore.isEmpty()) {
+            snapshot.storedValues.putAll(readStoredValuesWithPolicy(valueTypesToRestore));
+        }
+        return snapshot;
     }
 
-    protected <Type> Completable notifyChangePublishSubjectIfAvailable(@NonNull String key, @NonNull Type value) {
-        return Completable.fromAction(() -> {
-            PublishSubject<Type> publishSubject;
-            synchronized (changePublishers) {
-                publishSubject = changePublishers.get(key);
+    @Nullable
+    private Object readStoredValueWithPolicy(@NonNull String key, @NonNull java.lang.reflect.Type valueType) throws Exception {
+        long startTime = onStorageAccessStarted(Operation.RESTORE, key);
+        try {
+            return readStoredValue(key, valueType);
+        } finally {
+            onStorageAccessFinished(Operation.RESTORE, key, startTime);
+        }
+    }
+
+    @NonNull
+    private Map<String, Object> readStoredValuesWithPolicy(@NonNull Map<String, java.lang.reflect.Type> valueTypes) throws Exception {
+        Operation operation = valueTypes.size() == 1 ? Operation.RESTORE : Operation.RESTORE_ALL;
+        String key = valueTypes.size() == 1 ? valueTypes.keySet().iterator().next() : null;
+        long startTime = onStorageAccessStarted(operation, key);
+        try {
+            return readStoredValues(valueTypes);
+        } finally {
+            onStorageAccessFinished(operation, key, startTime);
+        }
+    }
+
+    protected <Type> void persistValue(@NonNull String key, @NonNull Type value) throws PreferenceProviderException {
+        Object storedValue;
+        try {
+            storedValue = toStoredValue(value);
+        } catch (Exception e) {
+            throw new PreferenceProviderException("Unable to persist preference for key: " + key, e);
+        }
+        persistStoredValue(key, storedValue, value);
+    }
+
+    /**
+     * Writes the specified stored value and publishes the specified value after the write
+     * succeeded. See {@link #lockChangePublishers(Collection)} for the order of concurrent changes.
+     */
+    protected <Type> void persistStoredValue(@NonNull String key, @NonNull Object storedValue, @NonNull Type value) throws PreferenceProviderException {
+        List<ChangePublisher> lockedChangePublishers = lockChangePublishers(Collections.singletonList(key));
+        try {
+            long startTime = onStorageAccessStarted(Operation.PERSIST, key);
+            try {
+                writeStoredValue(key, storedValue);
+            } catch (Exception e) {
+                throw new PreferenceProviderException("Unable to persist preference for key: " + key, e);
+            } finally {
+                onStorageAccessFinished(Operation.PERSIST, key, startTime);
             }
-            if (publishSubject != null) {
-                publishSubject.onNext(value);
+            queuePreferenceChange(key, value);
+        } finally {
+            unlockChangePublishers(lockedChangePublishers);
+        }
+        emitQueuedChanges(key);
+    }
+
+    protected <Type> void persistValueIfNotYetAvailable(@NonNull String key, @NonNull Type value) throws PreferenceProviderException {
+        boolean containsKey;
+        long startTime = onStorageAccessStarted(Operation.CONTAINS_KEY, key);
+        try {
+            containsKey = containsStoredValue(key);
+        } catch (Exception e) {
+            throw new PreferenceProviderException("Unable to persist preference for key: " + key, e);
+        } finally {
+            onStorageAccessFinished(Operation.CONTAINS_KEY, key, startTime);
+        }
+        if (!containsKey) {
+            persistValue(key, value);
+        }
+    }
+
+    protected void commitValues(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) throws PreferenceProviderException {
+        commitValues(valuesToPersist, keysToDelete, this::writeStoredValues);
+    }
+
+    /**
+     * Converts the specified values to stored values, passes them to the specified writer and
+     * publishes the changes after the writer succeeded.
+     */
+    protected void commitValues(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete, @NonNull BiConsumer<Map<String, Object>, Collection<String>> writer) throws PreferenceProviderException {
+        commitStoredValues(valuesToPersist, toStoredValues(valuesToPersist), keysToDelete, writer);
+    }
+
+    @NonNull
+    private Map<String, Object> toStoredValues(@NonNull Map<String, ?> values) throws PreferenceProviderException {
+        try {
+            Map<String, Object> storedValues = new LinkedHashMap<>();
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                storedValues.put(entry.getKey(), toStoredValue(entry.getValue()));
             }
-        });
+            return storedValues;
+        } catch (Exception e) {
+            throw new PreferenceProviderException("Unable to commit preferences", e);
+        }
     }
 
-    @SuppressWarnings("rawtypes")
-    protected Single<PublishSubject> getOrCreateChangePublishSubject(@NonNull String key) {
-        return Single.fromCallable(() -> {
-            PublishSubject publishSubject;
-            synchronized (changePublishers) {
-                if (!changePublishers.containsKey(key)) {
-                    publishSubject = PublishSubject.create();
-                    changePublishers.put(key, publishSubject);
-                } else {
-                    publishSubject = changePublishers.get(key);
+    /**
+     * Passes the specified stored values to the specified writer and publishes the changes after
+     * the writer succeeded. See {@link #lockChangePublishers(Collection)} for the order of
+     * concurrent changes.
+     */
+    private void commitStoredValues(@NonNull Map<String, ?> valuesToPersist, @NonNull Map<String, Object> storedValues, @NonNull Collection<String> keysToDelete, @NonNull BiConsumer<Map<String, Object>, Collection<String>> writer) throws PreferenceProviderException {
+        Operation operation;
+        String operationKey = null;
+        if (storedValues.isEmpty() && keysToDelete.size() == 1) {
+            operation = Operation.DELETE;
+            operationKey = keysToDelete.iterator().next();
+        } else if (storedValues.isEmpty()) {
+            operation = Operation.DELETE_ALL;
+        } else if (storedValues.size() == 1 && keysToDelete.isEmpty()) {
+            operation = Operation.PERSIST;
+            operationKey = storedValues.keySet().iterator().next();
+        } else {
+            operation = Operation.COMMIT;
+        }
+        List<ChangePublisher> lockedChangePublishers = changePublishers.isEmpty() ? Collections.emptyList() : lockChangePublishers(getChangedKeys(storedValues, keysToDelete));
+        try {
+            long startTime = onStorageAccessStarted(operation, operationKey);
+            try {
+                writer.accept(storedValues, keysToDelete);
+            } catch (Throwable throwable) {
+                Exceptions.throwIfFatal(throwable);
+                throw new PreferenceProviderException("Unable to commit preferences", throwable);
+            } finally {
+                onStorageAccessFinished(operation, operationKey, startTime);
+            }
+            for (String key : keysToDelete) {
+                queuePreferenceChange(key, null);
+            }
+            for (Map.Entry<String, ?> entry : valuesToPersist.entrySet()) {
+                queuePreferenceChange(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            unlockChangePublishers(lockedChangePublishers);
+        }
+        if (!changePublishers.isEmpty()) {
+            for (String key : valuesToPersist.keySet()) {
+                emitQueuedChanges(key);
+            }
+        }
+    }
+
+    @NonNull
+    private static Collection<String> getChangedKeys(@NonNull Map<String, Object> storedValues, @NonNull Collection<String> keysToDelete) {
+        if (keysToDelete.isEmpty()) {
+            return storedValues.keySet();
+        }
+        Set<String> keys = new HashSet<>(keysToDelete);
+        keys.addAll(storedValues.keySet());
+        return keys;
+    }
+
+    /**
+     * Locks the change publishers of the specified keys, if any, in the order of their keys. Writes
+     * hold these locks until their changes have been queued, so that concurrent changes of the
+     * same key are queued in the order they have been written. Queued changes are emitted after
+     * the locks have been released, see {@link ChangePublisher#emitQueuedChanges()}, so the last
+     * emitted change always matches the stored value. Writes of keys without subscribers don't
+     * lock anything.
+     */
+    @NonNull
+    private List<ChangePublisher> lockChangePublishers(@NonNull Collection<String> keys) {
+        if (changePublishers.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> sortedKeys = new ArrayList<>(keys);
+        Collections.sort(sortedKeys);
+        List<ChangePublisher> lockedChangePublishers = new ArrayList<>();
+        for (String key : sortedKeys) {
+            ChangePublisher changePublisher = changePublishers.get(key);
+            if (changePublisher != null) {
+                changePublisher.writeLock.lock();
+                lockedChangePublishers.add(changePublisher);
+            }
+        }
+        return lockedChangePublishers;
+    }
+
+    private static void unlockChangePublishers(@NonNull List<ChangePublisher> lockedChangePublishers) {
+        for (int i = lockedChangePublishers.size() - 1; i >= 0; i--) {
+            lockedChangePublishers.get(i).writeLock.unlock();
+        }
+    }
+
+    protected void deleteAllValues() throws PreferenceProviderException {
+        Collection<String> keys;
+        long startTime = onStorageAccessStarted(Operation.DELETE_ALL, null);
+        try {
+            keys = readKeys();
+        } catch (Exception e) {
+            throw new PreferenceProviderException("Unable to delete preferences", e);
+        } finally {
+            onStorageAccessFinished(Operation.DELETE_ALL, null, startTime);
+        }
+        commitValues(Collections.emptyMap(), keys);
+        invalidateCachedValues();
+    }
+
+    /**
+     * Applies the blocking call policy before the storage is accessed.
+     *
+     * @return the start time to pass to {@link #onStorageAccessFinished(Operation, String, long)}
+     */
+    protected long onStorageAccessStarted(@NonNull Operation operation, @Nullable String key) throws BlockingCallViolationException {
+        BlockingCallPolicy policy = getEffectiveBlockingCallPolicy();
+        return policy != null ? policy.onStorageAccessStarted(this, operation, key) : BlockingCallPolicy.NOT_MEASURED;
+    }
+
+    protected void onStorageAccessFinished(@NonNull Operation operation, @Nullable String key, long startTime) {
+        if (startTime == BlockingCallPolicy.NOT_MEASURED) {
+            return;
+        }
+        BlockingCallPolicy policy = getEffectiveBlockingCallPolicy();
+        if (policy != null) {
+            policy.onStorageAccessFinished(this, operation, key, startTime);
+        }
+    }
+
+    /**
+     * Converts the specified stored value to the specified type. Serialized strings and bytes get
+     * deserialized and added to the value cache, if available. Binary values are returned as
+     * {@code byte[]} copies or read-only {@link ByteBuffer}s. Native values are returned as they
+     * are.
+     */
+    @NonNull
+    protected <Type> Type fromStoredValue(@NonNull String key, @NonNull Object storedValue, @NonNull java.lang.reflect.Type valueType, @Nullable ValueCache valueCache, long invalidationStamp) throws Exception {
+        if (storedValue instanceof String) {
+            String serializedValue = (String) storedValue;
+            if (!isEncodedBytes(serializedValue) || isEscapedSerializedValue(serializedValue)) {
+                Type value = serializer.deserialize(unescapeSerializedValue(serializedValue), valueType);
+                if (valueCache != null) {
+                    valueCache.put(key, valueType, value, serializedValue.length(), invalidationStamp);
                 }
+                return value;
+            }
+            storedValue = ByteBuffer.wrap(Base64Url.decode(serializedValue, 1));
+        }
+
+        if (storedValue instanceof ByteBuffer) {
+            ByteBuffer bytes = (ByteBuffer) storedValue;
+            if (valueType == ByteBuffer.class) {
+                return (Type) bytes.asReadOnlyBuffer();
+            } else if (valueType == byte[].class) {
+                byte[] value = new byte[bytes.remaining()];
+                bytes.duplicate().get(value);
+                return (Type) value;
             }
-            return publishSubject;
+            Type value = serializer.deserializeFromBytes(bytes, valueType);
+            if (valueCache != null) {
+                valueCache.put(key, valueType, value, bytes.remaining(), invalidationStamp);
+            }
+            return value;
+        } else if (valueType instanceof Class && ((Class<?>) valueType).isInstance(storedValue)) {
+            return (Type) storedValue;
+        } else {
+            return convertNativeValue(storedValue, valueType);
+        }
+    }
+
+    /**
+     * Converts the specified native value to another type by serializing and deserializing it, so
+     * that native values can be restored as any type that the serializer can convert them to (e.g.
+     * an {@code Integer} as a {@code Long} or a {@code String}), as if they had been serialized.
+     */
+    @NonNull
+    private <Type> Type convertNativeValue(@NonNull Object storedValue, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException {
+        try {
+            return serializer.deserialize(serializer.serialize(storedValue), valueType);
+        } catch (Exception e) {
+            throw new PreferenceProviderException("Stored value of type " + storedValue.getClass().getSimpleName() + " can't be restored as " + valueType, e);
+        }
+    }
+
+    /**
+     * Converts the specified value to the value that should be stored. Binary values ({@code
+     * byte[]} and {@link ByteBuffer}) are copied and stored as they are, or encoded as strings if
+     * the provider doesn't {@link #supportsBinaryValues()}. Other values get serialized, unless
+     * native values are enabled and supported for their type.
+     */
+    @NonNull
+    protected Object toStoredValue(@NonNull Object value) throws Exception {
+        if (value instanceof byte[] || value instanceof ByteBuffer) {
+            ByteBuffer bytes = copyBytes(value);
+            return supportsBinaryValues() ? bytes : encodeBytes(bytes);
+        } else if (nativeValuesEnabled && supportsNativeValues() && isNativeValueType(value.getClass())) {
+            return value;
+        } else if (supportsBinaryValues() && serializer.isBinary()) {
+            return ByteBuffer.wrap(serializer.serializeToBytes(value));
+        } else {
+            return escapeSerializedValue(serializer.serialize(value));
+        }
+    }
+
+    /**
+     * Converts the specified stored value to a string, as it would have been stored by providers
+     * that support neither native nor binary values. Useful for implementing {@link
+     * #restoreIfAvailable(String)}.
+     */
+    @NonNull
+    protected String toStoredString(@NonNull Object storedValue) throws Exception {
+        if (storedValue instanceof String) {
+            return (String) storedValue;
+        } else if (storedValue instanceof ByteBuffer) {
+            return encodeBytes((ByteBuffer) storedValue);
+        } else {
+            return escapeSerializedValue(serializer.serialize(storedValue));
+        }
+    }
+
+    @NonNull
+    private static ByteBuffer copyBytes(@NonNull Object value) {
+        if (value instanceof byte[]) {
+            return ByteBuffer.wrap(((byte[]) value).clone());
+        }
+        ByteBuffer source = ((ByteBuffer) value).duplicate();
+        ByteBuffer bytes = ByteBuffer.allocate(source.remaining());
+        bytes.put(source);
+        bytes.flip();
+        return bytes;
+    }
+
+    @NonNull
+    private static String encodeBytes(@NonNull ByteBuffer bytes) {
+        byte[] value;
+        int offset;
+        if (bytes.hasArray()) {
+            value = bytes.array();
+            offset = bytes.arrayOffset() + bytes.position();
+        } else {
+            value = new byte[bytes.remaining()];
+            bytes.duplicate().get(value);
+            offset = 0;
+        }
+        return ENCODED_BYTES_PREFIX + Base64Url.encode(value, offset, bytes.remaining());
+    }
+
+    private static boolean isEncodedBytes(@NonNull String storedValue) {
+        return !storedValue.isEmpty() && storedValue.charAt(0) == ENCODED_BYTES_PREFIX;
+    }
+
+    /**
+     * Doubles the {@link #ENCODED_BYTES_PREFIX} of serialized values that start with it, so that
+     * they can't be mistaken for encoded bytes.
+     */
+    @NonNull
+    private static String escapeSerializedValue(@NonNull String serializedValue) {
+        return isEncodedBytes(serializedValue) ? ENCODED_BYTES_PREFIX + serializedValue : serializedValue;
+    }
+
+    private static boolean isEscapedSerializedValue(@NonNull String storedValue) {
+        return storedValue.length() > 1 && storedValue.charAt(0) == ENCODED_BYTES_PREFIX && storedValue.charAt(1) == ENCODED_BYTES_PREFIX;
+    }
+
+    @NonNull
+    private static String unescapeSerializedValue(@NonNull String storedValue) {
+        return isEscapedSerializedValue(storedValue) ? storedValue.substring(1) : storedValue;
+    }
+
+    /*
+        Synchronous storage access, should be overridden by providers that are able to access their
+        storage without blocking on the reactive methods
+     */
+
+    /**
+     * Returns all available keys. The default implementation blocks on {@link #getKeys()}.
+     */
+    @NonNull
+    protected Collection<String> readKeys() throws Exception {
+        return callUnscheduled(() -> getKeys().toList().blockingGet());
+    }
+
+    /**
+     * Returns {@code true} if a value is stored for the specified key. The default implementation
+     * blocks on {@link #containsKey(String)}.
+     */
+    protected boolean containsStoredValue(@NonNull String key) throws Exception {
+        return callUnscheduled(() -> containsKey(key).blockingGet());
+    }
+
+    /**
+     * Returns the stored value for the specified key, or {@code null} if not available. Stored
+     * values are either serialized strings or, for providers that {@link #supportsNativeValues()},
+     * values of native types or, for providers that {@link #supportsBinaryValues()}, {@link
+     * ByteBuffer}s. The default implementation blocks on {@link #restoreIfAvailable(String)}.
+     *
+     * @param valueType the expected type, allows providers to read native values efficiently
+     */
+    @Nullable
+    protected Object readStoredValue(@NonNull String key, @NonNull java.lang.reflect.Type valueType) throws Exception {
+        return callUnscheduled(() -> restoreIfAvailable(key).blockingGet());
+    }
+
+    /**
+     * Returns the stored values for the specified keys from a single snapshot. Keys for which no
+     * value is available are omitted. Should be overridden by providers that are able to read
+     * multiple values at once, the default implementation reads each value separately.
+     *
+     * @param valueTypes the expected type for each key
+     */
+    @NonNull
+    protected Map<String, Object> readStoredValues(@NonNull Map<String, java.lang.reflect.Type> valueTypes) throws Exception {
+        Map<String, Object> storedValues = new LinkedHashMap<>();
+        for (Map.Entry<String, java.lang.reflect.Type> entry : valueTypes.entrySet()) {
+            Object storedValue = readStoredValue(entry.getKey(), entry.getValue());
+            if (storedValue != null) {
+                storedValues.put(entry.getKey(), storedValue);
+            }
+        }
+        return storedValues;
+    }
+
+    /**
+     * Writes the specified stored value, as created by {@link #toStoredValue(Object)}. The default
+     * implementation blocks on {@link #persist(String, String)} and needs to be overridden by
+     * providers that {@link #supportsNativeValues()} or {@link #supportsBinaryValues()}. Stored
+     * {@link ByteBuffer}s are not modified by other components and may be kept as they are.
+     */
+    protected void writeStoredValue(@NonNull String key, @NonNull Object storedValue) throws Exception {
+        if (storedValue instanceof String) {
+            runUnscheduled(() -> persist(key, (String) storedValue).blockingAwait());
+        } else {
+            throw new PreferenceProviderException("Stored values of type " + storedValue.getClass().getSimpleName() + " are not supported");
+        }
+    }
+
+    /**
+     * Deletes the specified keys and writes the specified stored values. Should be overridden by
+     * providers that are able to do this in a single batch, the default implementation deletes and
+     * writes each value separately.
+     */
+    protected void writeStoredValues(@NonNull Map<String, Object> storedValues, @NonNull Collection<String> keysToDelete) throws Exception {
+        for (String key : keysToDelete) {
+            runUnscheduled(() -> delete(key).blockingAwait());
+        }
+        for (Map.Entry<String, Object> entry : storedValues.entrySet()) {
+            writeStoredValue(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Calls the specified callable, which blocks on reactive methods of a subclass. Storage access
+     * that these methods wrap using {@link #subscribeOnIoScheduler(Single)} runs on the calling
+     * thread.
+     */
+    private <Type> Type callUnscheduled(@NonNull Callable<Type> callable) throws Exception {
+        if (unscheduledStorageAccess.get() != null) {
+            return callable.call();
+        }
+        unscheduledStorageAccess.set(Boolean.TRUE);
+        try {
+            return callable.call();
+        } finally {
+            unscheduledStorageAccess.remove();
+        }
+    }
+
+    private void runUnscheduled(@NonNull Runnable runnable) throws Exception {
+        callUnscheduled(() -> {
+            runnable.run();
+            return null;
         });
     }
 
+    /**
+     * Should read the serialized value for the specified key. Like all storage access in reactive
+     * methods, it should be wrapped using {@link #subscribeOnIoScheduler(Maybe)} instead of
+     * subscribing on {@link #getIoScheduler()} directly, because the default synchronous storage
+     * access methods block on it, possibly on a thread of the I/O scheduler.
+     */
+    protected abstract Maybe<String> restoreIfAvailable(@NonNull String key);
+
+    /**
+     * Changes are emitted on the thread that made them. For changes made using the reactive
+     * methods, that's a thread of the {@link #getIoScheduler() I/O scheduler}, which is {@link
+     * Schedulers#io()} by default. Use {@link Observable#observeOn(Scheduler)} to handle changes on
+     * another thread, e.g. the main thread.
+     */
+    @Override
+    public <Type> Observable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return getChanges(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Observable<Type> getChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return getPublishedChanges(key, valueType)
+                .filter(change -> isRestorableChange(change, valueType))
+                .map(change -> (Type) restoreChange(change, valueType));
+    }
+
+    @Override
+    public <Type> Flowable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass, @NonNull ChangeCoalescing coalescing) {
+        return getChanges(key, (java.lang.reflect.Type) typeClass, coalescing);
+    }
+
+    /**
+     * Changes are coalesced before they are restored, so that stored values are only deserialized
+     * if they are actually emitted.
+     */
+    @Override
+    public <Type> Flowable<Type> getChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType, @NonNull ChangeCoalescing coalescing) {
+        return coalescing.apply(getPublishedChanges(key, valueType))
+                .filter(change -> isRestorableChange(change, valueType))
+                .map(change -> (Type) restoreChange(change, valueType));
+    }
+
+    /**
+     * Emits the changes published for the specified key, which are either values or {@link
+     * StoredValueChange}s that still need to be restored.
+     */
+    @NonNull
+    private Observable<Object> getPublishedChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return Observable.using(
+                () -> acquireChangePublisher(key, valueType),
+                ChangePublisher::getSubject,
+                changePublisher -> releaseChangePublisher(key, changePublisher)
+        );
+    }
+
+    private static boolean isRestorableChange(@NonNull Object change, @NonNull java.lang.reflect.Type valueType) {
+        return !(change instanceof StoredValueChange) || ((StoredValueChange) change).getValue(valueType) != null;
+    }
+
+    @NonNull
+    private static Object restoreChange(@NonNull Object change, @NonNull java.lang.reflect.Type valueType) {
+        return change instanceof StoredValueChange ? ((StoredValueChange) change).getValue(valueType) : change;
+    }
+
+    protected <Type> Completable processPreferenceChange(@NonNull String key, @Nullable Type value) {
+        return Completable.fromAction(() -> publishPreferenceChange(key, value))
+                .onErrorResumeNext(throwable -> Completable.error(new PreferenceProviderException("Unable to process preference change for key: " + key, throwable)));
+    }
+
+    /**
+     * Invalidates the cached value for the specified key and emits the specified value to
+     * subscribers of {@link #getChanges(String, Class)}, if any. A {@code null} value indicates
+     * that the preference has been deleted.
+     */
+    protected <Type> void publishPreferenceChange(@NonNull String key, @Nullable Type value) {
+        queuePreferenceChange(key, value);
+        emitQueuedChanges(key);
+    }
+
+    /**
+     * Same as {@link #publishPreferenceChange(String, Object)}, but only queues the value. Needs to
+     * be followed by {@link #emitQueuedChanges(String)}.
+     */
+    private <Type> void queuePreferenceChange(@NonNull String key, @Nullable Type value) {
+        invalidateCachedValue(key);
+        if (value == null) {
+            // preference has been deleted
+            return;
+        }
+        ChangePublisher changePublisher = changePublishers.get(key);
+        if (changePublisher != null) {
+            changePublisher.queueChange(value);
+        }
+    }
+
+    private void emitQueuedChanges(@NonNull String key) {
+        ChangePublisher changePublisher = changePublishers.get(key);
+        if (changePublisher != null) {
+            changePublisher.emitQueuedChanges();
+        }
+    }
+
+    /**
+     * Emits the specified stored value to subscribers of the specified change publisher, without
+     * deserializing it yet. It will be deserialized once per requested value type, when it's
+     * emitted to the first subscriber of that type that didn't drop it due to {@link
+     * ChangeCoalescing}.
+     */
+    protected void publishStoredValueChange(@NonNull ChangePublisher changePublisher, @NonNull String key, @NonNull Object storedValue) {
+        changePublisher.queueChange(new StoredValueChange(key, storedValue));
+        changePublisher.emitQueuedChanges();
+    }
+
+    protected void invalidateCachedValue(@NonNull String key) {
+        ValueCache valueCache = this.valueCache;
+        if (valueCache != null) {
+            valueCache.invalidate(key);
+        }
+    }
+
+    protected void invalidateCachedValues() {
+        ValueCache valueCache = this.valueCache;
+        if (valueCache != null) {
+            valueCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the change publisher for the specified key and increments its subscriber count,
+     * creating a new publisher for the specified value type if none is available. Doesn't block,
+     * concurrent callers retry if they encounter a publisher that is currently being released.
+     */
+    @NonNull
+    protected ChangePublisher acquireChangePublisher(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        while (true) {
+            ChangePublisher changePublisher = changePublishers.get(key);
+            if (changePublisher == null) {
+                ChangePublisher newChangePublisher = new ChangePublisher(valueType);
+                changePublisher = changePublishers.putIfAbsent(key, newChangePublisher);
+                if (changePublisher == null) {
+                    return newChangePublisher;
+                }
+            }
+            if (changePublisher.tryAcquire()) {
+                return changePublisher;
+            }
+            // publisher has been released concurrently, make sure it's gone before retrying
+            changePublishers.remove(key, changePublisher);
+        }
+    }
+
+    /**
+     * Decrements the subscriber count of the specified change publisher and removes it if it has
+     * no subscribers left.
+     */
+    protected void releaseChangePublisher(@NonNull String key, @NonNull ChangePublisher changePublisher) {
+        if (changePublisher.release()) {
+            changePublishers.remove(key, changePublisher);
+        }
+    }
+
     @Override
     public Completable deleteAll() {
-        return getKeys()
-                .flatMapCompletable(this::delete);
+        return subscribeOnIoScheduler(Completable.fromAction(this::deleteAllValues));
+    }
+
+    @Override
+    public Completable deleteAll(@NonNull Collection<String> keys) {
+        return commit(Collections.emptyMap(), keys);
+    }
+
+    /**
+     * Returns {@code true} if values of the specified type can be stored without serialization by
+     * providers that {@link #supportsNativeValues()}.
+     */
+    public static boolean isNativeValueType(@NonNull java.lang.reflect.Type valueType) {
+        return valueType == Boolean.class
+                || valueType == Integer.class
+                || valueType == Long.class
+                || valueType == Float.class;
+    }
+
+    /**
+     * Should return {@code true} if this provider is able to store values of native types without
+     * serialization.
+     */
+    protected boolean supportsNativeValues() {
+        return false;
+    }
+
+    /**
+     * Should return {@code true} if this provider is able to store bytes without encoding them as
+     * strings. Such providers receive {@link ByteBuffer} stored values for {@code byte[]} and
+     * {@link ByteBuffer} values, as well as for all other values if the serializer {@link
+     * Serializer#isBinary()}. They may return {@link ByteBuffer}s from {@link
+     * #readStoredValue(String, java.lang.reflect.Type)}, e.g. read-only slices of their storage.
+     */
+    protected boolean supportsBinaryValues() {
+        return false;
     }
 
     public Serializer getSerializer() {
@@ -150,6 +1075,443 @@ public abstract class BasePreferencesProvider implements PreferencesProvider {
 
     public void setSerializer(@NonNull Serializer serializer) {
         this.serializer = serializer;
+        invalidateCachedValues();
+    }
+
+    public boolean isNativeValuesEnabled() {
+        return nativeValuesEnabled;
+    }
+
+    /**
+     * Sets whether values of native types should be persisted without serialization, if supported
+     * by this provider. Values are restored regardless of how they have been persisted, so this
+     * can be enabled for existing preferences.
+     */
+    public void setNativeValuesEnabled(boolean nativeValuesEnabled) {
+        this.nativeValuesEnabled = nativeValuesEnabled;
+    }
+
+    @Nullable
+    public ValueCache getValueCache() {
+        return valueCache;
+    }
+
+    /**
+     * Returns {@code true} if both schedulers are {@link Schedulers#trampoline()}, in which case
+     * reactive methods do all work on the subscribing thread without switching schedulers.
+     */
+    private boolean usesCallerThread() {
+        return ioScheduler == Schedulers.trampoline() && computationScheduler == Schedulers.trampoline();
+    }
+
+    /**
+     * Subscribes to the specified storage access on the I/O scheduler, used by subclasses for
+     * methods that don't involve the serializer. Storage access that the default synchronous
+     * storage access methods block on stays on their thread instead.
+     */
+    protected <Type> Single<Type> subscribeOnIoScheduler(@NonNull Single<Type> single) {
+        return ioScheduler == Schedulers.trampoline() || unscheduledStorageAccess.get() != null ? single : single.subscribeOn(ioScheduler);
+    }
+
+    protected <Type> Maybe<Type> subscribeOnIoScheduler(@NonNull Maybe<Type> maybe) {
+        return ioScheduler == Schedulers.trampoline() || unscheduledStorageAccess.get() != null ? maybe : maybe.subscribeOn(ioScheduler);
+    }
+
+    protected <Type> Observable<Type> subscribeOnIoScheduler(@NonNull Observable<Type> observable) {
+        return ioScheduler == Schedulers.trampoline() || unscheduledStorageAccess.get() != null ? observable : observable.subscribeOn(ioScheduler);
+    }
+
+    protected Completable subscribeOnIoScheduler(@NonNull Completable completable) {
+        return ioScheduler == Schedulers.trampoline() || unscheduledStorageAccess.get() != null ? completable : completable.subscribeOn(ioScheduler);
+    }
+
+    @NonNull
+    public Scheduler getIoScheduler() {
+        return ioScheduler;
+    }
+
+    /**
+     * Sets the scheduler that reactive methods access the storage on. Defaults to {@link
+     * Schedulers#io()}, use {@link Schedulers#trampoline()} to access the storage on the
+     * subscribing thread. The blocking API always uses the calling thread.
+     *
+     * The scheduler may have a single thread. Subclasses that don't override the synchronous
+     * storage access methods (e.g. {@link #readStoredValue(String, java.lang.reflect.Type)})
+     * need to use {@link #subscribeOnIoScheduler(Single)} for their reactive methods, so that they
+     * don't switch to the I/O scheduler while one of its threads is blocking on them.
+     */
+    public void setIoScheduler(@NonNull Scheduler ioScheduler) {
+        this.ioScheduler = ioScheduler;
+    }
+
+    @NonNull
+    public Scheduler getComputationScheduler() {
+        return computationScheduler;
+    }
+
+    /**
+     * Sets the scheduler that reactive methods use for the {@link Serializer}. Defaults to {@link
+     * Schedulers#computation()}, use {@link Schedulers#trampoline()} to serialize values on the
+     * same thread that accesses the storage.
+     */
+    public void setComputationScheduler(@NonNull Scheduler computationScheduler) {
+        this.computationScheduler = computationScheduler;
+    }
+
+    /**
+     * Sets the cache that should be used for deserialized values, or {@code null} to disable
+     * caching. Values restored from the cache are shared between callers and should not be
+     * modified.
+     */
+    public void setValueCache(@Nullable ValueCache valueCache) {
+        this.valueCache = valueCache;
+    }
+
+    @Nullable
+    public BlockingCallPolicy getBlockingCallPolicy() {
+        return blockingCallPolicy;
+    }
+
+    /**
+     * Sets the policy for storage access on latency-sensitive threads, or {@code null} to use the
+     * {@link BlockingCallPolicy#getDefault() default policy}.
+     */
+    public void setBlockingCallPolicy(@Nullable BlockingCallPolicy blockingCallPolicy) {
+        this.blockingCallPolicy = blockingCallPolicy;
+    }
+
+    @Nullable
+    private BlockingCallPolicy getEffectiveBlockingCallPolicy() {
+        BlockingCallPolicy blockingCallPolicy = this.blockingCallPolicy;
+        return blockingCallPolicy != null ? blockingCallPolicy : BlockingCallPolicy.getDefault();
+    }
+
+    /**
+     * Reference-counted subject that emits persisted values of a single key.
+     */
+    protected static final class ChangePublisher {
+
+        @NonNull
+        private final Subject<Object> subject;
+
+        @NonNull
+        private final AtomicInteger subscriberCount;
+
+        @NonNull
+        private final java.lang.reflect.Type valueType;
+
+        /**
+         * The stored value that has been published last, used by providers that observe changes
+         * made outside of the provider to skip changes that have already been published.
+         */
+        @Nullable
+        volatile Object lastStoredValue;
+
+        /**
+         * Held by writes of the key until their change has been queued, see {@link
+         * BasePreferencesProvider#lockChangePublishers(Collection)}.
+         */
+        @NonNull
+        final Lock writeLock;
+
+        @NonNull
+        private final Queue<Object> queuedChanges;
+
+        @NonNull
+        private final AtomicInteger queuedChangesEmitters;
+
+        ChangePublisher(@NonNull java.lang.reflect.Type valueType) {
+            this.subject = PublishSubject.create().toSerialized();
+            this.subscriberCount = new AtomicInteger(1);
+            this.valueType = valueType;
+            this.writeLock = new ReentrantLock();
+            this.queuedChanges = new ConcurrentLinkedQueue<>();
+            this.queuedChangesEmitters = new AtomicInteger();
+        }
+
+        void queueChange(@NonNull Object change) {
+            queuedChanges.offer(change);
+        }
+
+        /**
+         * Emits all queued changes in the order they have been queued. Only one thread emits
+         * changes at a time, without holding any lock, other threads return right away and leave
+         * their changes to that thread. This also applies to changes made by subscribers while
+         * handling a change.
+         */
+        void emitQueuedChanges() {
+            if (queuedChangesEmitters.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                Object change;
+                while ((change = queuedChanges.poll()) != null) {
+                    subject.onNext(change);
+                }
+                missed = queuedChangesEmitters.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Increments the subscriber count, unless the publisher has already been released by its
+         * last subscriber.
+         *
+         * @return {@code true} if the publisher can be used
+         */
+        boolean tryAcquire() {
+            while (true) {
+                int count = subscriberCount.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (subscriberCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Decrements the subscriber count.
+         *
+         * @return {@code true} if the last subscriber has been released
+         */
+        boolean release() {
+            return subscriberCount.decrementAndGet() == 0;
+        }
+
+        @NonNull
+        public Subject<Object> getSubject() {
+            return subject;
+        }
+
+        public int getSubscriberCount() {
+            return subscriberCount.get();
+        }
+
+        /**
+         * Returns the value type requested by the first subscriber, which providers may use to
+         * decide how to read changed values from storage. Changed values are deserialized using
+         * the value type of each subscriber.
+         */
+        @NonNull
+        public java.lang.reflect.Type getValueType() {
+            return valueType;
+        }
+
+    }
+
+    /**
+     * Stored value emitted by a change publisher, deserialized on first access per value type and
+     * shared between all subscribers requesting that type.
+     */
+    private final class StoredValueChange {
+
+        @NonNull
+        private final String key;
+
+        @NonNull
+        private final Object storedValue;
+
+        /**
+         * Deserialized values by value type, {@code null} values mark types that the stored value
+         * can't be restored as. Usually contains a single entry.
+         */
+        @NonNull
+        private final Map<java.lang.reflect.Type, Object> values;
+
+        private StoredValueChange(@NonNull String key, @NonNull Object storedValue) {
+            this.key = key;
+            this.storedValue = storedValue;
+            this.values = new HashMap<>(2);
+        }
+
+        /**
+         * Returns the deserialized value, or {@code null} if the stored value can't be restored as
+         * the specified value type.
+         */
+        @Nullable
+        synchronized Object getValue(@NonNull java.lang.reflect.Type valueType) {
+            if (values.containsKey(valueType)) {
+                return values.get(valueType);
+            }
+            Object value = null;
+            try {
+                value = fromStoredValue(key, storedValue, valueType, null, 0);
+            } catch (Exception e) {
+                // subscribers of this type will not notice the change
+            }
+            values.put(valueType, value);
+            return value;
+        }
+
+    }
+
+    /**
+     * Values restored from a single snapshot, consisting of cached values and stored values that
+     * still need to be converted.
+     */
+    private final class Snapshot {
+
+        @NonNull
+        private final Map<String, java.lang.reflect.Type> valueTypes;
+
+        @Nullable
+        private final ValueCache valueCache;
+
+        @NonNull
+        private final Map<String, Object> values;
+
+        @NonNull
+        private final Map<String, Object> storedValues;
+
+        @NonNull
+        private final Map<String, Long> invalidationStamps;
+
+        private Snapshot(@NonNull Map<String, java.lang.reflect.Type> valueTypes, @Nullable ValueCache valueCache) {
+            this.valueTypes = valueTypes;
+            this.valueCache = valueCache;
+            this.values = new LinkedHashMap<>();
+            this.storedValues = new LinkedHashMap<>();
+            this.invalidationStamps = new HashMap<>();
+        }
+
+        @NonNull
+        private Object restore(@NonNull String key, @NonNull Object storedValue) throws Exception {
+            Long invalidationStamp = invalidationStamps.get(key);
+            return fromStoredValue(key, storedValue, valueTypes.get(key), valueCache, invalidationStamp != null ? invalidationStamp : 0);
+        }
+
+        /**
+         * Restores all stored values and returns them together with the cached values.
+         */
+        @NonNull
+        private Map<String, Object> restoreValues() throws Exception {
+            for (Map.Entry<String, Object> entry : storedValues.entrySet()) {
+                values.put(entry.getKey(), restore(entry.getKey(), entry.getValue()));
+            }
+            return values;
+        }
+
+    }
+
+    /**
+     * Blocking view of this provider, using the synchronous implementation directly.
+     */
+    private final class SynchronousPreferencesProvider implements BlockingPreferencesProvider {
+
+        @NonNull
+        @Override
+        public Set<String> getKeys() throws PreferenceProviderException {
+            long startTime = onStorageAccessStarted(Operation.GET_KEYS, null);
+            try {
+                return new HashSet<>(readKeys());
+            } catch (Exception e) {
+                throw PreferenceProviderException.from(e, "Unable to get keys");
+            } finally {
+                onStorageAccessFinished(Operation.GET_KEYS, null, startTime);
+            }
+        }
+
+        @Override
+        public boolean containsKey(@NonNull String key) throws PreferenceProviderException {
+            long startTime = onStorageAccessStarted(Operation.CONTAINS_KEY, key);
+            try {
+                return containsStoredValue(key);
+            } catch (Exception e) {
+                throw PreferenceProviderException.from(e, "Unable to check key: " + key);
+            } finally {
+                onStorageAccessFinished(Operation.CONTAINS_KEY, key, startTime);
+            }
+        }
+
+        @NonNull
+        @Override
+        public <Type> Type restore(@NonNull String key, @NonNull Class<Type> typeClass) throws PreferenceProviderException {
+            return restoreValue(key, typeClass);
+        }
+
+        @NonNull
+        @Override
+        public <Type> Type restore(@NonNull String key, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException {
+            return restoreValue(key, valueType);
+        }
+
+        @NonNull
+        @Override
+        public <Type> Type restoreOrDefault(@NonNull String key, @NonNull Type defaultValue) throws PreferenceProviderException {
+            return restoreValueOrDefault(key, defaultValue, defaultValue.getClass());
+        }
+
+        @NonNull
+        @Override
+        public <Type> Type restoreOrDefault(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException {
+            return restoreValueOrDefault(key, defaultValue, valueType);
+        }
+
+        @Nullable
+        @Override
+        public <Type> Type restoreIfAvailable(@NonNull String key, @NonNull Class<Type> typeClass) throws PreferenceProviderException {
+            return restoreValueIfAvailable(key, typeClass);
+        }
+
+        @Nullable
+        @Override
+        public <Type> Type restoreIfAvailable(@NonNull String key, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException {
+            return restoreValueIfAvailable(key, valueType);
+        }
+
+        @NonNull
+        @Override
+        public <Type> Map<String, Type> restoreAll(@NonNull Collection<String> keys, @NonNull Class<Type> typeClass) throws PreferenceProviderException {
+            Map<String, java.lang.reflect.Type> valueTypes = new LinkedHashMap<>();
+            for (String key : keys) {
+                valueTypes.put(key, typeClass);
+            }
+            return (Map<String, Type>) restoreValues(valueTypes);
+        }
+
+        @NonNull
+        @Override
+        public Map<String, Object> restoreAll(@NonNull Map<String, Class<?>> typeClasses) throws PreferenceProviderException {
+            return restoreValues(new LinkedHashMap<>(typeClasses));
+        }
+
+        @Override
+        public <Type> void persist(@NonNull String key, @NonNull Type value) throws PreferenceProviderException {
+            persistValue(key, value);
+        }
+
+        @Override
+        public <Type> void persistIfNotYetAvailable(@NonNull String key, @NonNull Type value) throws PreferenceProviderException {
+            persistValueIfNotYetAvailable(key, value);
+        }
+
+        @Override
+        public void persistAll(@NonNull Map<String, ?> values) throws PreferenceProviderException {
+            commitValues(values, Collections.emptyList());
+        }
+
+        @Override
+        public void delete(@NonNull String key) throws PreferenceProviderException {
+            commitValues(Collections.emptyMap(), Collections.singletonList(key));
+        }
+
+        @Override
+        public void deleteAll() throws PreferenceProviderException {
+            deleteAllValues();
+        }
+
+        @Override
+        public void deleteAll(@NonNull Collection<String> keys) throws PreferenceProviderException {
+            commitValues(Collections.emptyMap(), keys);
+        }
+
+        @Override
+        public void commit(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) throws PreferenceProviderException {
+            commitValues(valuesToPersist, keysToDelete);
+        }
+
     }
 
 }
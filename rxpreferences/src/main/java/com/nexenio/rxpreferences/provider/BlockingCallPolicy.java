@@ -0,0 +1,284 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.nexenio.rxpreferences.metrics.Operation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.exceptions.Exceptions;
+import io.reactivex.rxjava3.functions.Consumer;
+import io.reactivex.rxjava3.functions.Predicate;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+
+/**
+ * Detects storage access on threads that should never block, similar to Android's {@code
+ * StrictMode}. Threads are latency-sensitive if they have been marked using {@link
+ * #markLatencySensitive()} or if they match the {@link #setLatencySensitiveThreads(Predicate)
+ * predicate}, e.g. {@code thread -> thread == Looper.getMainLooper().getThread()}.
+ *
+ * The policy is applied by the synchronous implementation of {@link BasePreferencesProvider}, i.e.
+ * on the thread that actually accesses the storage. This covers the {@link
+ * PreferencesProvider#blocking() blocking API} and reactive methods of providers that use the
+ * {@link io.reactivex.rxjava3.schedulers.Schedulers#trampoline() trampoline} scheduler, but not
+ * threads that wait for reactive methods running on another scheduler. For example, calling {@code
+ * restore(key, typeClass).blockingGet()} on the main thread is not detected if the provider uses
+ * the default I/O scheduler, as the storage is accessed on an I/O thread. Such waits can be
+ * detected for the whole app using {@code RxJavaPlugins.setOnBeforeBlocking} and {@code
+ * RxJavaPlugins.setFailOnNonBlockingScheduler}.
+ *
+ * Violations are {@link BlockingCallViolationException}s that describe the operation, the key,
+ * the provider and the duration, their stack trace points to the caller.
+ */
+public final class BlockingCallPolicy {
+
+    public enum Penalty {
+
+        /**
+         * Logs violations as warnings, including their stack trace.
+         */
+        LOG,
+
+        /**
+         * Only counts violations, see {@link #getViolationCount()}.
+         */
+        COUNT,
+
+        /**
+         * Throws violations before the storage is accessed, regardless of the threshold.
+         */
+        THROW
+
+    }
+
+    /**
+     * Start time returned for storage access that is not measured, because the thread isn't
+     * latency-sensitive.
+     */
+    static final long NOT_MEASURED = Long.MIN_VALUE;
+
+    private static final Logger LOGGER = Logger.getLogger(BlockingCallPolicy.class.getName());
+
+    private static final ThreadLocal<Boolean> LATENCY_SENSITIVE_THREADS = new ThreadLocal<>();
+
+    @Nullable
+    private static volatile BlockingCallPolicy defaultPolicy;
+
+    @NonNull
+    private final Penalty penalty;
+
+    private final long thresholdNanos;
+
+    private final AtomicLong violationCount = new AtomicLong();
+
+    @Nullable
+    private volatile Predicate<Thread> latencySensitiveThreads;
+
+    @Nullable
+    private volatile Consumer<BlockingCallViolationException> violationListener;
+
+    private BlockingCallPolicy(@NonNull Penalty penalty, long thresholdNanos) {
+        this.penalty = penalty;
+        this.thresholdNanos = thresholdNanos;
+    }
+
+    /**
+     * Logs every storage access on latency-sensitive threads.
+     */
+    @NonNull
+    public static BlockingCallPolicy log() {
+        return log(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Logs storage access on latency-sensitive threads that took at least the specified time.
+     */
+    @NonNull
+    public static BlockingCallPolicy log(long threshold, @NonNull TimeUnit timeUnit) {
+        return new BlockingCallPolicy(Penalty.LOG, timeUnit.toNanos(threshold));
+    }
+
+    /**
+     * Counts every storage access on latency-sensitive threads.
+     */
+    @NonNull
+    public static BlockingCallPolicy count() {
+        return count(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts storage access on latency-sensitive threads that took at least the specified time.
+     */
+    @NonNull
+    public static BlockingCallPolicy count(long threshold, @NonNull TimeUnit timeUnit) {
+        return new BlockingCallPolicy(Penalty.COUNT, timeUnit.toNanos(threshold));
+    }
+
+    /**
+     * Throws a {@link BlockingCallViolationException} instead of accessing the storage on
+     * latency-sensitive threads. Intended for debug builds.
+     */
+    @NonNull
+    public static BlockingCallPolicy throwing() {
+        return new BlockingCallPolicy(Penalty.THROW, 0);
+    }
+
+    /**
+     * Returns the policy used by providers that don't have their own policy, if any.
+     */
+    @Nullable
+    public static BlockingCallPolicy getDefault() {
+        return defaultPolicy;
+    }
+
+    /**
+     * Sets the policy used by all providers that don't have their own policy, see {@link
+     * BasePreferencesProvider#setBlockingCallPolicy(BlockingCallPolicy)}. Disabled by default.
+     */
+    public static void setDefault(@Nullable BlockingCallPolicy policy) {
+        defaultPolicy = policy;
+    }
+
+    /**
+     * Marks the current thread as latency-sensitive, e.g. the main thread during app start.
+     */
+    public static void markLatencySensitive() {
+        LATENCY_SENSITIVE_THREADS.set(Boolean.TRUE);
+    }
+
+    public static void unmarkLatencySensitive() {
+        LATENCY_SENSITIVE_THREADS.remove();
+    }
+
+    /**
+     * Returns {@code true} if the current thread has been marked using {@link
+     * #markLatencySensitive()}.
+     */
+    public static boolean isMarkedLatencySensitive() {
+        return LATENCY_SENSITIVE_THREADS.get() != null;
+    }
+
+    /**
+     * Returns {@code true} if the current thread has been marked or matches the predicate.
+     */
+    public boolean isLatencySensitive() {
+        if (isMarkedLatencySensitive()) {
+            return true;
+        }
+        Predicate<Thread> latencySensitiveThreads = this.latencySensitiveThreads;
+        if (latencySensitiveThreads == null) {
+            return false;
+        }
+        try {
+            return latencySensitiveThreads.test(Thread.currentThread());
+        } catch (Throwable throwable) {
+            Exceptions.throwIfFatal(throwable);
+            RxJavaPlugins.onError(throwable);
+            return false;
+        }
+    }
+
+    /**
+     * Called before the specified provider accesses its storage.
+     *
+     * @return the start time to pass to {@link #onStorageAccessFinished(Object, Operation, String,
+     *         long)}, or {@link #NOT_MEASURED} if the current thread isn't latency-sensitive
+     * @throws BlockingCallViolationException if the penalty is {@link Penalty#THROW} and the
+     *                                        current thread is latency-sensitive
+     */
+    long onStorageAccessStarted(@NonNull Object provider, @NonNull Operation operation, @Nullable String key) throws BlockingCallViolationException {
+        if (!isLatencySensitive()) {
+            return NOT_MEASURED;
+        }
+        if (penalty == Penalty.THROW) {
+            BlockingCallViolationException violation = createViolation(provider, operation, key, BlockingCallViolationException.UNKNOWN_DURATION);
+            onViolation(violation);
+            throw violation;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Called after the specified provider accessed its storage, reports a violation if the access
+     * took at least as long as the threshold.
+     */
+    void onStorageAccessFinished(@NonNull Object provider, @NonNull Operation operation, @Nullable String key, long startTime) {
+        if (startTime == NOT_MEASURED) {
+            return;
+        }
+        long durationNanos = System.nanoTime() - startTime;
+        if (durationNanos < thresholdNanos) {
+            return;
+        }
+        BlockingCallViolationException violation = createViolation(provider, operation, key, durationNanos);
+        onViolation(violation);
+        if (penalty == Penalty.LOG) {
+            LOGGER.log(Level.WARNING, violation.getMessage(), violation);
+        }
+    }
+
+    @NonNull
+    private static BlockingCallViolationException createViolation(@NonNull Object provider, @NonNull Operation operation, @Nullable String key, long durationNanos) {
+        return new BlockingCallViolationException(operation, key, provider.getClass().getName(), Thread.currentThread().getName(), durationNanos);
+    }
+
+    private void onViolation(@NonNull BlockingCallViolationException violation) {
+        violationCount.incrementAndGet();
+        Consumer<BlockingCallViolationException> violationListener = this.violationListener;
+        if (violationListener == null) {
+            return;
+        }
+        try {
+            violationListener.accept(violation);
+        } catch (Throwable throwable) {
+            Exceptions.throwIfFatal(throwable);
+            RxJavaPlugins.onError(throwable);
+        }
+    }
+
+    @NonNull
+    public Penalty getPenalty() {
+        return penalty;
+    }
+
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    /**
+     * Returns the number of violations reported by this policy, regardless of the penalty.
+     */
+    public long getViolationCount() {
+        return violationCount.get();
+    }
+
+    @Nullable
+    public Predicate<Thread> getLatencySensitiveThreads() {
+        return latencySensitiveThreads;
+    }
+
+    /**
+     * Sets a predicate for threads that are latency-sensitive in addition to marked threads, or
+     * {@code null} to only consider marked threads.
+     */
+    public void setLatencySensitiveThreads(@Nullable Predicate<Thread> latencySensitiveThreads) {
+        this.latencySensitiveThreads = latencySensitiveThreads;
+    }
+
+    @Nullable
+    public Consumer<BlockingCallViolationException> getViolationListener() {
+        return violationListener;
+    }
+
+    /**
+     * Sets a listener that is notified about every violation on the violating thread, regardless
+     * of the penalty, e.g. to report them to a crash reporting service.
+     */
+    public void setViolationListener(@Nullable Consumer<BlockingCallViolationException> violationListener) {
+        this.violationListener = violationListener;
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.nexenio.rxpreferences.metrics.Operation;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Describes an operation that accessed the storage of a provider on a latency-sensitive thread,
+ * see {@link BlockingCallPolicy}. The stack trace points to the caller of the operation.
+ */
+public class BlockingCallViolationException extends PreferenceProviderException {
+
+    /**
+     * Duration of operations that have not been executed, because the violation has been thrown
+     * before.
+     */
+    public static final long UNKNOWN_DURATION = -1;
+
+    @NonNull
+    private final Operation operation;
+
+    @Nullable
+    private final String key;
+
+    @NonNull
+    private final String providerName;
+
+    @NonNull
+    private final String threadName;
+
+    private final long durationNanos;
+
+    public BlockingCallViolationException(@NonNull Operation operation, @Nullable String key, @NonNull String providerName, @NonNull String threadName, long durationNanos) {
+        super(createMessage(operation, key, providerName, threadName, durationNanos));
+        this.operation = operation;
+        this.key = key;
+        this.providerName = providerName;
+        this.threadName = threadName;
+        this.durationNanos = durationNanos;
+    }
+
+    @NonNull
+    private static String createMessage(@NonNull Operation operation, @Nullable String key, @NonNull String providerName, @NonNull String threadName, long durationNanos) {
+        StringBuilder message = new StringBuilder()
+                .append(operation)
+                .append(" accessed the storage of ")
+                .append(providerName)
+                .append(" on latency-sensitive thread ")
+                .append(threadName);
+        if (key != null) {
+            message.append(", key: ").append(key);
+        }
+        if (durationNanos != UNKNOWN_DURATION) {
+            message.append(", duration: ").append(durationNanos / 1000).append(" us");
+        }
+        return message.toString();
+    }
+
+    @NonNull
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Returns the key of the operation, or {@code null} if the operation involved multiple keys.
+     */
+    @Nullable
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the class name of the provider that has been accessed.
+     */
+    @NonNull
+    public String getProviderName() {
+        return providerName;
+    }
+
+    @NonNull
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Returns the duration of the operation, or {@link #UNKNOWN_DURATION} if the violation has
+     * been thrown before the operation was executed.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.nexenio.rxpreferences.provider;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Synchronous variant of {@link PreferencesProvider}, for callers that would otherwise block on
+ * the reactive methods anyway. Methods return or throw directly, without creating any reactive
+ * streams if supported by the provider.
+ *
+ * Methods access storage on the calling thread, they should not be called from the main thread.
+ */
+public interface BlockingPreferencesProvider {
+
+    /**
+     * Should return all available preference keys.
+     */
+    @NonNull
+    Set<String> getKeys() throws PreferenceProviderException;
+
+    /**
+     * Should return {@code true} if a preference with the specified key exists, {@code false}
+     * otherwise.
+     */
+    boolean containsKey(@NonNull String key) throws PreferenceProviderException;
+
+    /**
+     * Should return the previously persisted value for the specified key.
+     *
+     * Should throw a {@link PreferenceProviderException} if no value is available or the value has
+     * the wrong type.
+     */
+    @NonNull
+    <Type> Type restore(@NonNull String key, @NonNull Class<Type> typeClass) throws PreferenceProviderException;
+
+    /**
+     * Same as {@link #restore(String, Class)}, but for generic types.
+     */
+    @NonNull
+    <Type> Type restore(@NonNull String key, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException;
+
+    /**
+     * Should return the previously persisted value for the specified key, or the specified default
+     * if no value is available.
+     */
+    @NonNull
+    <Type> Type restoreOrDefault(@NonNull String key, @NonNull Type defaultValue) throws PreferenceProviderException;
+
+    /**
+     * Same as {@link #restoreOrDefault(String, Object)}, but for generic types that can't be
+     * inferred from the default value.
+     */
+    @NonNull
+    <Type> Type restoreOrDefault(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException;
+
+    /**
+     * Should return the previously persisted value for the specified key, or {@code null} if no
+     * value is available.
+     */
+    @Nullable
+    <Type> Type restoreIfAvailable(@NonNull String key, @NonNull Class<Type> typeClass) throws PreferenceProviderException;
+
+    /**
+     * Same as {@link #restoreIfAvailable(String, Class)}, but for generic types.
+     */
+    @Nullable
+    <Type> Type restoreIfAvailable(@NonNull String key, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException;
+
+    /**
+     * Should return the previously persisted values for the specified keys, restored from a single
+     * consistent snapshot. Keys for which no value is available should be omitted.
+     */
+    @NonNull
+    <Type> Map<String, Type> restoreAll(@NonNull Collection<String> keys, @NonNull Class<Type> typeClass) throws PreferenceProviderException;
+
+    /**
+     * Same as {@link #restoreAll(Collection, Class)}, but for values of different types.
+     */
+    @NonNull
+    Map<String, Object> restoreAll(@NonNull Map<String, Class<?>> typeClasses) throws PreferenceProviderException;
+
+    /**
+     * Should persist the specified value for the specified key.
+     */
+    <Type> void persist(@NonNull String key, @NonNull Type value) throws PreferenceProviderException;
+
+    /**
+     * Should persist the specified value for the specified key if no value is available.
+     */
+    <Type> void persistIfNotYetAvailable(@NonNull String key, @NonNull Type value) throws PreferenceProviderException;
+
+    /**
+     * Should persist all specified values at once.
+     */
+    void persistAll(@NonNull Map<String, ?> values) throws PreferenceProviderException;
+
+    /**
+     * Should delete the value for the specified key. Should do nothing if no value is available.
+     */
+    void delete(@NonNull String key) throws PreferenceProviderException;
+
+    /**
+     * Should delete the values for every available key.
+     */
+    void deleteAll() throws PreferenceProviderException;
+
+    /**
+     * Should delete the values for the specified keys at once.
+     */
+    void deleteAll(@NonNull Collection<String> keys) throws PreferenceProviderException;
+
+    /**
+     * Should delete the values for the specified keys and persist the specified values in a single
+     * batch, see {@link PreferencesProvider#commit(Map, Collection)}.
+     */
+    void commit(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) throws PreferenceProviderException;
+
+}
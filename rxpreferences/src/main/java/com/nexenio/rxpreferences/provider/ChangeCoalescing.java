@@ -0,0 +1,121 @@
+package com.nexenio.rxpreferences.provider;
+
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import io.reactivex.rxjava3.core.BackpressureStrategy;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Defines how changes of a single key are coalesced before they are emitted to a subscriber that
+ * can't keep up, e.g. when a value is persisted on every frame. Subscribers always receive the
+ * latest value eventually, intermediate values are dropped instead of being buffered.
+ */
+public final class ChangeCoalescing {
+
+    public enum Strategy {
+
+        /**
+         * Emits every change as long as the subscriber keeps up, otherwise only the latest change.
+         */
+        LATEST,
+
+        /**
+         * Emits the latest change once per time window, if any.
+         */
+        SAMPLE,
+
+        /**
+         * Emits the latest change once no further change happened for the specified time.
+         */
+        DEBOUNCE
+
+    }
+
+    private static final ChangeCoalescing LATEST = new ChangeCoalescing(Strategy.LATEST, 0, TimeUnit.MILLISECONDS, Schedulers.computation());
+
+    @NonNull
+    private final Strategy strategy;
+
+    private final long time;
+
+    @NonNull
+    private final TimeUnit timeUnit;
+
+    @NonNull
+    private final Scheduler scheduler;
+
+    private ChangeCoalescing(@NonNull Strategy strategy, long time, @NonNull TimeUnit timeUnit, @NonNull Scheduler scheduler) {
+        this.strategy = strategy;
+        this.time = time;
+        this.timeUnit = timeUnit;
+        this.scheduler = scheduler;
+    }
+
+    @NonNull
+    public static ChangeCoalescing latest() {
+        return LATEST;
+    }
+
+    @NonNull
+    public static ChangeCoalescing sample(long period, @NonNull TimeUnit timeUnit) {
+        return sample(period, timeUnit, Schedulers.computation());
+    }
+
+    @NonNull
+    public static ChangeCoalescing sample(long period, @NonNull TimeUnit timeUnit, @NonNull Scheduler scheduler) {
+        return new ChangeCoalescing(Strategy.SAMPLE, period, timeUnit, scheduler);
+    }
+
+    @NonNull
+    public static ChangeCoalescing debounce(long timeout, @NonNull TimeUnit timeUnit) {
+        return debounce(timeout, timeUnit, Schedulers.computation());
+    }
+
+    @NonNull
+    public static ChangeCoalescing debounce(long timeout, @NonNull TimeUnit timeUnit, @NonNull Scheduler scheduler) {
+        return new ChangeCoalescing(Strategy.DEBOUNCE, timeout, timeUnit, scheduler);
+    }
+
+    /**
+     * Coalesces the specified changes and keeps only the latest change for subscribers that
+     * haven't requested more items yet.
+     */
+    @NonNull
+    public <Type> Flowable<Type> apply(@NonNull Observable<Type> changes) {
+        return coalesce(changes).toFlowable(BackpressureStrategy.LATEST);
+    }
+
+    /**
+     * Applies the time-based part of the strategy, without any backpressure handling.
+     */
+    @NonNull
+    <Type> Observable<Type> coalesce(@NonNull Observable<Type> changes) {
+        switch (strategy) {
+            case SAMPLE:
+                return changes.sample(time, timeUnit, scheduler, true);
+            case DEBOUNCE:
+                return changes.debounce(time, timeUnit, scheduler);
+            default:
+                return changes;
+        }
+    }
+
+    @NonNull
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    @NonNull
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+}
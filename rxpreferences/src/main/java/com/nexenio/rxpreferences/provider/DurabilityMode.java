@@ -0,0 +1,25 @@
+package com.nexenio.rxpreferences.provider;
+
+/**
+ * Defines when persisted values are written to disk.
+ */
+public enum DurabilityMode {
+
+    /**
+     * Values are written to disk synchronously, the operation completes after the write succeeded.
+     */
+    COMMIT,
+
+    /**
+     * Values are written to memory synchronously and to disk asynchronously. The operation
+     * completes before the write to disk succeeded.
+     */
+    APPLY,
+
+    /**
+     * Values are collected in memory and written to disk asynchronously once a delay has passed or
+     * enough values have been collected. Repeated writes of the same key are only written once.
+     */
+    DEBOUNCE
+
+}
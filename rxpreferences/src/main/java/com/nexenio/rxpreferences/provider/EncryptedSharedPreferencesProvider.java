@@ -3,11 +3,18 @@ package com.nexenio.rxpreferences.provider;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import com.nexenio.rxpreferences.cache.PlaintextCache;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.security.crypto.EncryptedSharedPreferences;
 import androidx.security.crypto.MasterKey;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Observable;
@@ -37,6 +44,14 @@ import io.reactivex.rxjava3.core.Single;
  * even from attackers with physical access to the device. Android Keystore is only useful when you
  * want to require user authentication for key use, which should be done if and only if you're
  * absolutely sure that Android Keystore is working properly on your target devices.</p>
+ * <p>
+ * Creating the master key and the keysets is slow, so the encrypted shared preferences are
+ * created lazily by the first operation that accesses them. Use {@link #warmUp()} to create them
+ * in the background before they are needed.
+ * <p>
+ * Reading a value requires encrypting its key and decrypting its value. Decrypted values are kept
+ * in a {@link PlaintextCache}, so that restoring the same value repeatedly doesn't require any
+ * cipher operations. Use {@link #setPlaintextCache(PlaintextCache)} to configure or disable it.
  *
  * @see <a href="https://github.com/google/tink/issues/413"/>
  * @see <a href="https://github.com/google/tink/issues/504"/>
@@ -47,19 +62,69 @@ public class EncryptedSharedPreferencesProvider extends SharedPreferencesProvide
 
     public static final String SHARED_PREFERENCES_NAME = "encrypted_shared_preferences";
     public static final String MASTER_KEY_ALIAS = MasterKey.DEFAULT_MASTER_KEY_ALIAS;
+    public static final int DEFAULT_PLAINTEXT_CACHE_SIZE = 32;
 
     private final String sharedPreferencesName;
     private final String masterKeyAlias;
 
+    /**
+     * The application context, so that the pending initialization doesn't keep the context that
+     * this provider has been created with (e.g. an activity) from being garbage collected.
+     */
+    @NonNull
+    private final Context context;
+
+    /**
+     * Creates the encrypted shared preferences once and caches them for all subsequent
+     * subscribers. Replaced if the creation failed, so that the next operation tries again.
+     */
+    @NonNull
+    private volatile Single<SharedPreferences> initialization;
+
+    @Nullable
+    private volatile PlaintextCache plaintextCache = new PlaintextCache(DEFAULT_PLAINTEXT_CACHE_SIZE);
+
     public EncryptedSharedPreferencesProvider(@NonNull Context context) {
         this(context, SHARED_PREFERENCES_NAME, MASTER_KEY_ALIAS);
     }
 
     public EncryptedSharedPreferencesProvider(@NonNull Context context, @NonNull String sharedPreferencesName, @NonNull String masterKeyAlias) {
-        super(context);
+        super();
         this.sharedPreferencesName = sharedPreferencesName;
         this.masterKeyAlias = masterKeyAlias;
-        this.sharedPreferences = createEncryptedSharedPreferences(context).blockingGet();
+        Context applicationContext = context.getApplicationContext();
+        this.context = applicationContext != null ? applicationContext : context;
+        this.initialization = createInitialization();
+    }
+
+    @NonNull
+    private Single<SharedPreferences> createInitialization() {
+        return createEncryptedSharedPreferences(context)
+                .doOnSuccess(this::setSharedPreferences)
+                .doOnError(throwable -> initialization = createInitialization())
+                .cache();
+    }
+
+    /**
+     * Creates the encrypted shared preferences on the I/O scheduler, if that didn't happen yet.
+     * Subscribe to this when the process starts, so that the first operation doesn't need to wait
+     * for the master key and the keysets.
+     */
+    public Completable warmUp() {
+        return subscribeOnIoScheduler(Completable.defer(() -> initialization.ignoreElement()));
+    }
+
+    /**
+     * Blocks until the encrypted shared preferences have been created, if that didn't happen yet.
+     */
+    @NonNull
+    @Override
+    protected SharedPreferences requireSharedPreferences() {
+        SharedPreferences sharedPreferences = this.sharedPreferences;
+        if (sharedPreferences != null) {
+            return sharedPreferences;
+        }
+        return initialization.blockingGet();
     }
 
     protected Single<SharedPreferences> createEncryptedSharedPreferences(@NonNull Context context) {
@@ -79,16 +144,161 @@ public class EncryptedSharedPreferencesProvider extends SharedPreferencesProvide
         }).onErrorResumeNext(throwable -> Single.error(new PreferenceProviderException("Unable to create encrypted shared preferences", throwable)));
     }
 
+    @NonNull
+    @Override
+    protected Collection<String> readKeys() {
+        PlaintextCache plaintextCache = this.plaintextCache;
+        if (plaintextCache == null) {
+            return super.readKeys();
+        }
+        Set<String> cachedKeys = plaintextCache.getKeys();
+        if (cachedKeys != null) {
+            return cachedKeys;
+        }
+        long invalidationStamp = plaintextCache.getInvalidationStamp();
+        Collection<String> keys = super.readKeys();
+        plaintextCache.putKeys(keys, invalidationStamp);
+        return keys;
+    }
+
+    @Override
+    protected boolean containsStoredValue(@NonNull String key) {
+        PlaintextCache plaintextCache = this.plaintextCache;
+        if (plaintextCache != null) {
+            Set<String> cachedKeys = plaintextCache.getKeys();
+            if (cachedKeys != null) {
+                return cachedKeys.contains(key);
+            }
+        }
+        return super.containsStoredValue(key);
+    }
+
+    /**
+     * Returns the cached stored value if available, regardless of the value type. Stored values
+     * are only available as a single type, so the value read from the shared preferences would be
+     * the same.
+     */
+    @Nullable
+    @Override
+    protected Object readStoredValue(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        PlaintextCache plaintextCache = this.plaintextCache;
+        if (plaintextCache == null) {
+            return super.readStoredValue(key, valueType);
+        }
+        Object cachedValue = plaintextCache.get(key);
+        if (cachedValue != null) {
+            return cachedValue;
+        }
+        long invalidationStamp = plaintextCache.getInvalidationStamp();
+        Object storedValue = super.readStoredValue(key, valueType);
+        if (storedValue != null) {
+            plaintextCache.put(key, storedValue, invalidationStamp);
+        }
+        return storedValue;
+    }
+
+    /**
+     * Reads the values that are not cached from the shared preferences at once.
+     */
+    @NonNull
+    @Override
+    protected Map<String, Object> readStoredValues(@NonNull Map<String, java.lang.reflect.Type> valueTypes) {
+        PlaintextCache plaintextCache = this.plaintextCache;
+        if (plaintextCache == null) {
+            return super.readStoredValues(valueTypes);
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        Map<String, java.lang.reflect.Type> missingValueTypes = new LinkedHashMap<>();
+        for (Map.Entry<String, java.lang.reflect.Type> entry : valueTypes.entrySet()) {
+            Object cachedValue = plaintextCache.get(entry.getKey());
+            if (cachedValue != null) {
+                values.put(entry.getKey(), cachedValue);
+            } else {
+                missingValueTypes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!missingValueTypes.isEmpty()) {
+            long invalidationStamp = plaintextCache.getInvalidationStamp();
+            for (Map.Entry<String, Object> entry : super.readStoredValues(missingValueTypes).entrySet()) {
+                plaintextCache.put(entry.getKey(), entry.getValue(), invalidationStamp);
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Invalidates the cached plaintext of all written keys after they have been written, so that
+     * values that have been read concurrently are not cached.
+     */
+    @Override
+    protected void writeStoredValues(@NonNull Map<String, Object> storedValues, @NonNull Collection<String> keysToDelete, @NonNull DurabilityMode durabilityMode) {
+        try {
+            super.writeStoredValues(storedValues, keysToDelete, durabilityMode);
+        } finally {
+            PlaintextCache plaintextCache = this.plaintextCache;
+            if (plaintextCache != null) {
+                for (String key : keysToDelete) {
+                    plaintextCache.invalidate(key);
+                }
+                for (String key : storedValues.keySet()) {
+                    plaintextCache.invalidate(key);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void invalidateCachedValue(@NonNull String key) {
+        super.invalidateCachedValue(key);
+        PlaintextCache plaintextCache = this.plaintextCache;
+        if (plaintextCache != null) {
+            plaintextCache.invalidate(key);
+        }
+    }
+
+    @Override
+    protected void invalidateCachedValues() {
+        super.invalidateCachedValues();
+        PlaintextCache plaintextCache = this.plaintextCache;
+        if (plaintextCache != null) {
+            plaintextCache.invalidateAll();
+        }
+    }
+
+    @Nullable
+    public PlaintextCache getPlaintextCache() {
+        return plaintextCache;
+    }
+
+    /**
+     * Sets the cache for decrypted values, or {@code null} to decrypt values on every read. The
+     * previous cache is wiped. Defaults to a cache of {@link #DEFAULT_PLAINTEXT_CACHE_SIZE}
+     * entries without a time to live.
+     */
+    public void setPlaintextCache(@Nullable PlaintextCache plaintextCache) {
+        PlaintextCache previousPlaintextCache = this.plaintextCache;
+        this.plaintextCache = plaintextCache;
+        if (previousPlaintextCache != null) {
+            previousPlaintextCache.invalidateAll();
+        }
+    }
+
     /**
      * Clears the underlying shared preferences in-memory and deletes the persisted files.
-     * This needs to be done if the used master key is lost.
+     * This needs to be done if the used master key is lost. Cached plaintext values are wiped.
      */
     public Completable resetSharedPreferences(@NonNull Context context) {
-        return Completable.fromAction(() -> context.getSharedPreferences(sharedPreferencesName, Context.MODE_PRIVATE)
-                .edit().clear().commit())
+        return Completable.fromAction(this::invalidateCachedValues)
+                .andThen(Completable.fromAction(() -> context.getSharedPreferences(sharedPreferencesName, Context.MODE_PRIVATE)
+                .edit().clear().commit()))
                 .andThen(deletePreferencesFiles(context))
                 .andThen(createEncryptedSharedPreferences(context)
-                        .doOnSuccess(resetSharedPreferences -> this.sharedPreferences = resetSharedPreferences)
+                        .doOnSuccess(resetSharedPreferences -> {
+                            discardPendingWrites();
+                            setSharedPreferences(resetSharedPreferences);
+                            initialization = Single.just(resetSharedPreferences);
+                        })
                         .ignoreElement()
                 );
     }
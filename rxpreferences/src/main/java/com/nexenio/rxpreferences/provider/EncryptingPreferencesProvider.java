@@ -0,0 +1,526 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.nexenio.rxpreferences.serializer.Base64Url;
+import com.nexenio.rxpreferences.serializer.GsonSerializer;
+import com.nexenio.rxpreferences.serializer.Serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.core.BackpressureStrategy;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * {@link WrappedPreferencesProvider} that encrypts values using AES-GCM before they are passed to
+ * the wrapped provider, which only stores the resulting strings. Works with any provider and only
+ * depends on {@code javax.crypto}, unlike the {@link EncryptedSharedPreferencesProvider}.
+ *
+ * Values are serialized using the {@link Serializer} of this provider and encrypted with a random
+ * nonce. The preference key is authenticated with every value, so that encrypted values can't be
+ * moved to other keys. If a key encryption key is specified, preference keys are encrypted
+ * deterministically using a synthetic IV (similar to AES-SIV): the IV is an HMAC of the key and is
+ * used for AES-CTR, so that the same key always results in the same encrypted key and values can
+ * still be looked up. The IV is verified when keys are decrypted.
+ *
+ * Every thread uses its own {@link Cipher}, {@link Mac} and {@link SecureRandom} instances, so
+ * that encryption doesn't require any locks and scales with the number of threads.
+ */
+public class EncryptingPreferencesProvider extends WrappedPreferencesProvider {
+
+    public static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+    public static final String KEY_CIPHER_TRANSFORMATION = "AES/CTR/NoPadding";
+    public static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final byte VERSION = 1;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final int SYNTHETIC_IV_LENGTH = 16;
+
+    /**
+     * The first byte of every plaintext, indicating whether the value has been serialized or is a
+     * binary value.
+     */
+    private static final byte PLAINTEXT_SERIALIZED = 0;
+    private static final byte PLAINTEXT_BINARY = 1;
+
+    private static final byte[] KEY_ENCRYPTION_LABEL = "key encryption".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_AUTHENTICATION_LABEL = "key authentication".getBytes(StandardCharsets.UTF_8);
+
+    @NonNull
+    private final SecretKey valueKey;
+
+    @Nullable
+    private final SecretKey keyEncryptionKey;
+
+    @NonNull
+    private final ThreadLocal<Cipher> ciphers;
+
+    @Nullable
+    private final ThreadLocal<Cipher> keyCiphers;
+
+    /**
+     * Initialized with the key authentication key, used to derive the nonces of encrypted keys.
+     * {@code null} if keys are not encrypted.
+     */
+    @Nullable
+    private final ThreadLocal<Mac> keyMacs;
+
+    @NonNull
+    private final ThreadLocal<SecureRandom> secureRandoms;
+
+    @NonNull
+    private Serializer serializer = new GsonSerializer();
+
+    /**
+     * Creates a provider that encrypts values, but not keys.
+     *
+     * @param valueKey an AES key with 128 or 256 bits
+     */
+    public EncryptingPreferencesProvider(@NonNull PreferencesProvider provider, @NonNull SecretKey valueKey) {
+        this(provider, valueKey, null);
+    }
+
+    /**
+     * @param valueKey the AES key that values are encrypted with
+     * @param keyKey   the key that the keys used to encrypt preference keys are derived from, or
+     *                 {@code null} if preference keys should not be encrypted
+     */
+    public EncryptingPreferencesProvider(@NonNull PreferencesProvider provider, @NonNull SecretKey valueKey, @Nullable SecretKey keyKey) {
+        super(provider);
+        this.valueKey = valueKey;
+        this.ciphers = new ThreadLocal<Cipher>() {
+            @Override
+            protected Cipher initialValue() {
+                return createCipher(CIPHER_TRANSFORMATION);
+            }
+        };
+        this.secureRandoms = new ThreadLocal<SecureRandom>() {
+            @Override
+            protected SecureRandom initialValue() {
+                return new SecureRandom();
+            }
+        };
+        if (keyKey != null) {
+            this.keyEncryptionKey = new SecretKeySpec(deriveKey(keyKey, KEY_ENCRYPTION_LABEL), "AES");
+            SecretKey keyAuthenticationKey = new SecretKeySpec(deriveKey(keyKey, KEY_AUTHENTICATION_LABEL), MAC_ALGORITHM);
+            this.keyCiphers = new ThreadLocal<Cipher>() {
+                @Override
+                protected Cipher initialValue() {
+                    return createCipher(KEY_CIPHER_TRANSFORMATION);
+                }
+            };
+            this.keyMacs = new ThreadLocal<Mac>() {
+                @Override
+                protected Mac initialValue() {
+                    return createMac(keyAuthenticationKey);
+                }
+            };
+        } else {
+            this.keyEncryptionKey = null;
+            this.keyCiphers = null;
+            this.keyMacs = null;
+        }
+    }
+
+    /**
+     * Emits the decrypted keys. Keys that can't be decrypted (e.g. because they have not been
+     * persisted by this provider) are skipped.
+     */
+    @Override
+    public Observable<String> getKeys() {
+        if (keyEncryptionKey == null) {
+            return provider.getKeys();
+        }
+        return provider.getKeys()
+                .flatMapMaybe(storedKey -> Maybe.fromCallable(() -> fromStoredKey(storedKey)));
+    }
+
+    @Override
+    public Single<Boolean> containsKey(@NonNull String key) {
+        return Single.defer(() -> provider.containsKey(toStoredKey(key)));
+    }
+
+    @Override
+    public <Type> Single<Type> restore(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return restore(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Single<Type> restore(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return this.<Type>restoreIfAvailable(key, valueType)
+                .switchIfEmpty(Single.error(() -> new PreferenceProviderException("No preference available with key: " + key)));
+    }
+
+    @Override
+    public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue) {
+        return restoreOrDefault(key, defaultValue, defaultValue.getClass());
+    }
+
+    @Override
+    public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        return this.<Type>restoreIfAvailable(key, valueType)
+                .defaultIfEmpty(defaultValue);
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue) {
+        return restoreOrDefaultAndGetChanges(key, defaultValue, defaultValue.getClass());
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        return restoreOrDefault(key, defaultValue, valueType)
+                .toObservable()
+                .mergeWith(this.<Type>getChanges(key, valueType))
+                .distinctUntilChanged();
+    }
+
+    @Override
+    public <Type> Flowable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull ChangeCoalescing coalescing) {
+        return restoreOrDefaultAndGetChanges(key, defaultValue, defaultValue.getClass(), coalescing);
+    }
+
+    @Override
+    public <Type> Flowable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType, @NonNull ChangeCoalescing coalescing) {
+        return restoreOrDefault(key, defaultValue, valueType)
+                .toObservable()
+                .mergeWith(coalescing.coalesce(this.<Type>getChanges(key, valueType)))
+                .toFlowable(BackpressureStrategy.LATEST)
+                .distinctUntilChanged();
+    }
+
+    @Override
+    public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return restoreIfAvailable(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return Maybe.defer(() -> provider.restoreIfAvailable(toStoredKey(key), String.class)
+                .map(storedValue -> this.<Type>decryptValue(key, storedValue, valueType)));
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return restoreIfAvailableAndGetChanges(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return this.<Type>restoreIfAvailable(key, valueType)
+                .toObservable()
+                .mergeWith(this.<Type>getChanges(key, valueType))
+                .distinctUntilChanged();
+    }
+
+    @Override
+    public <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull Class<Type> typeClass) {
+        return restoreAll(keys, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull java.lang.reflect.Type valueType) {
+        Map<String, java.lang.reflect.Type> valueTypes = new LinkedHashMap<>();
+        for (String key : keys) {
+            valueTypes.put(key, valueType);
+        }
+        return restoreAllValues(valueTypes)
+                .map(values -> (Map<String, Type>) values);
+    }
+
+    @Override
+    public Single<Map<String, Object>> restoreAll(@NonNull Map<String, Class<?>> typeClasses) {
+        return restoreAllValues(new LinkedHashMap<>(typeClasses));
+    }
+
+    /**
+     * Restores the encrypted values of all keys from the wrapped provider at once and decrypts
+     * them. Values are emitted in the order of the specified keys.
+     */
+    private Single<Map<String, Object>> restoreAllValues(@NonNull Map<String, java.lang.reflect.Type> valueTypes) {
+        return Single.defer(() -> {
+            Map<String, String> storedKeys = new LinkedHashMap<>();
+            for (String key : valueTypes.keySet()) {
+                storedKeys.put(key, toStoredKey(key));
+            }
+            return provider.restoreAll(new ArrayList<>(storedKeys.values()), String.class)
+                    .map(storedValues -> {
+                        Map<String, Object> values = new LinkedHashMap<>();
+                        for (Map.Entry<String, String> entry : storedKeys.entrySet()) {
+                            String storedValue = storedValues.get(entry.getValue());
+                            if (storedValue != null) {
+                                values.put(entry.getKey(), decryptValue(entry.getKey(), storedValue, valueTypes.get(entry.getKey())));
+                            }
+                        }
+                        return values;
+                    });
+        });
+    }
+
+    @Override
+    public <Type> Completable persist(@NonNull String key, @NonNull Type value) {
+        return Completable.defer(() -> provider.persist(toStoredKey(key), encryptValue(key, value)));
+    }
+
+    @Override
+    public <Type> Completable persistIfNotYetAvailable(@NonNull String key, @NonNull Type value) {
+        return containsKey(key)
+                .flatMapCompletable(containsKey -> containsKey ? Completable.complete() : persist(key, value));
+    }
+
+    @Override
+    public Completable persistAll(@NonNull Map<String, ?> values) {
+        return commit(values, Collections.emptyList());
+    }
+
+    /**
+     * Emits the decrypted changes of the wrapped provider.
+     */
+    @Override
+    public <Type> Observable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return getChanges(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Observable<Type> getChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return Observable.defer(() -> provider.getChanges(toStoredKey(key), String.class)
+                .map(storedValue -> this.<Type>decryptValue(key, storedValue, valueType)));
+    }
+
+    @Override
+    public <Type> Flowable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass, @NonNull ChangeCoalescing coalescing) {
+        return getChanges(key, (java.lang.reflect.Type) typeClass, coalescing);
+    }
+
+    @Override
+    public <Type> Flowable<Type> getChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType, @NonNull ChangeCoalescing coalescing) {
+        return coalescing.apply(getChanges(key, valueType));
+    }
+
+    @Override
+    public Completable delete(@NonNull String key) {
+        return Completable.defer(() -> provider.delete(toStoredKey(key)));
+    }
+
+    @Override
+    public Completable deleteAll(@NonNull Collection<String> keys) {
+        return commit(Collections.emptyMap(), keys);
+    }
+
+    /**
+     * Encrypts all values and keys before the changes are committed to the wrapped provider, so
+     * that they are still applied at once.
+     */
+    @Override
+    public Completable commit(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) {
+        Map<String, ?> values = new LinkedHashMap<>(valuesToPersist);
+        Collection<String> keys = new ArrayList<>(keysToDelete);
+        return Completable.defer(() -> {
+            Map<String, Object> storedValues = new LinkedHashMap<>();
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                storedValues.put(toStoredKey(entry.getKey()), encryptValue(entry.getKey(), entry.getValue()));
+            }
+            List<String> storedKeysToDelete = new ArrayList<>();
+            for (String key : keys) {
+                storedKeysToDelete.add(toStoredKey(key));
+            }
+            return provider.commit(storedValues, storedKeysToDelete);
+        });
+    }
+
+    /**
+     * Returns the key that the wrapped provider uses for the specified preference key: the
+     * version, the synthetic IV and the key encrypted using AES-CTR, if keys are encrypted.
+     */
+    @NonNull
+    protected String toStoredKey(@NonNull String key) throws PreferenceProviderException {
+        if (keyEncryptionKey == null) {
+            return key;
+        }
+        try {
+            byte[] plaintext = key.getBytes(StandardCharsets.UTF_8);
+            byte[] syntheticIv = getSyntheticIv(plaintext);
+            Cipher cipher = keyCiphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, keyEncryptionKey, new IvParameterSpec(syntheticIv));
+            byte[] encrypted = new byte[1 + SYNTHETIC_IV_LENGTH + plaintext.length];
+            encrypted[0] = VERSION;
+            System.arraycopy(syntheticIv, 0, encrypted, 1, SYNTHETIC_IV_LENGTH);
+            cipher.doFinal(plaintext, 0, plaintext.length, encrypted, 1 + SYNTHETIC_IV_LENGTH);
+            return Base64Url.encode(encrypted);
+        } catch (GeneralSecurityException e) {
+            throw new PreferenceProviderException("Unable to encrypt key: " + key, e);
+        }
+    }
+
+    /**
+     * Returns the preference key for the specified key of the wrapped provider, or {@code null}
+     * if it can't be decrypted.
+     */
+    @Nullable
+    protected String fromStoredKey(@NonNull String storedKey) {
+        if (keyEncryptionKey == null) {
+            return storedKey;
+        }
+        try {
+            byte[] encrypted = Base64Url.decode(storedKey);
+            if (encrypted.length < 1 + SYNTHETIC_IV_LENGTH || encrypted[0] != VERSION) {
+                return null;
+            }
+            byte[] syntheticIv = Arrays.copyOfRange(encrypted, 1, 1 + SYNTHETIC_IV_LENGTH);
+            Cipher cipher = keyCiphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, keyEncryptionKey, new IvParameterSpec(syntheticIv));
+            byte[] plaintext = cipher.doFinal(encrypted, 1 + SYNTHETIC_IV_LENGTH, encrypted.length - 1 - SYNTHETIC_IV_LENGTH);
+            if (!MessageDigest.isEqual(syntheticIv, getSyntheticIv(plaintext))) {
+                return null;
+            }
+            return new String(plaintext, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @NonNull
+    protected String encryptValue(@NonNull String key, @NonNull Object value) throws PreferenceProviderException {
+        try {
+            byte[] plaintext;
+            if (value instanceof byte[] || value instanceof ByteBuffer) {
+                ByteBuffer bytes = value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : ((ByteBuffer) value).duplicate();
+                plaintext = new byte[1 + bytes.remaining()];
+                plaintext[0] = PLAINTEXT_BINARY;
+                bytes.get(plaintext, 1, plaintext.length - 1);
+            } else {
+                byte[] serializedValue = serializer.serializeToBytes(value);
+                plaintext = new byte[1 + serializedValue.length];
+                plaintext[0] = PLAINTEXT_SERIALIZED;
+                System.arraycopy(serializedValue, 0, plaintext, 1, serializedValue.length);
+            }
+            byte[] nonce = new byte[NONCE_LENGTH];
+            secureRandoms.get().nextBytes(nonce);
+            byte[] encryptedValue = encrypt(valueKey, nonce, plaintext, key.getBytes(StandardCharsets.UTF_8));
+            Arrays.fill(plaintext, (byte) 0);
+            return Base64Url.encode(encryptedValue);
+        } catch (Exception e) {
+            throw new PreferenceProviderException("Unable to encrypt value for key: " + key, e);
+        }
+    }
+
+    @NonNull
+    protected <Type> Type decryptValue(@NonNull String key, @NonNull String storedValue, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException {
+        try {
+            byte[] plaintext = decrypt(valueKey, Base64Url.decode(storedValue), key.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer value = ByteBuffer.wrap(plaintext, 1, plaintext.length - 1);
+            if (plaintext[0] == PLAINTEXT_BINARY) {
+                if (valueType == ByteBuffer.class) {
+                    return (Type) value.slice().asReadOnlyBuffer();
+                } else if (valueType == byte[].class) {
+                    return (Type) Arrays.copyOfRange(plaintext, 1, plaintext.length);
+                } else {
+                    throw new PreferenceProviderException("Binary value can't be restored as " + valueType);
+                }
+            }
+            return serializer.deserializeFromBytes(value.slice(), valueType);
+        } catch (PreferenceProviderException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new PreferenceProviderException("Unable to decrypt value for key: " + key, e);
+        }
+    }
+
+    /**
+     * Returns the version, the nonce and the ciphertext (including the authentication tag).
+     */
+    @NonNull
+    private byte[] encrypt(@NonNull SecretKey secretKey, @NonNull byte[] nonce, @NonNull byte[] plaintext, @NonNull byte[] associatedData) throws GeneralSecurityException {
+        Cipher cipher = ciphers.get();
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(associatedData);
+        byte[] encrypted = new byte[1 + NONCE_LENGTH + cipher.getOutputSize(plaintext.length)];
+        encrypted[0] = VERSION;
+        System.arraycopy(nonce, 0, encrypted, 1, NONCE_LENGTH);
+        cipher.doFinal(plaintext, 0, plaintext.length, encrypted, 1 + NONCE_LENGTH);
+        return encrypted;
+    }
+
+    @NonNull
+    private byte[] decrypt(@NonNull SecretKey secretKey, @NonNull byte[] encrypted, @NonNull byte[] associatedData) throws GeneralSecurityException {
+        if (encrypted.length < 1 + NONCE_LENGTH + TAG_LENGTH || encrypted[0] != VERSION) {
+            throw new GeneralSecurityException("Unsupported encrypted value");
+        }
+        Cipher cipher = ciphers.get();
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH * 8, encrypted, 1, NONCE_LENGTH));
+        cipher.updateAAD(associatedData);
+        return cipher.doFinal(encrypted, 1 + NONCE_LENGTH, encrypted.length - 1 - NONCE_LENGTH);
+    }
+
+    @NonNull
+    private byte[] getSyntheticIv(@NonNull byte[] plaintext) {
+        return Arrays.copyOf(keyMacs.get().doFinal(plaintext), SYNTHETIC_IV_LENGTH);
+    }
+
+    /**
+     * Derives a 256 bit key for the specified purpose, so that the same key isn't used for
+     * different algorithms.
+     */
+    @NonNull
+    private static byte[] deriveKey(@NonNull SecretKey secretKey, @NonNull byte[] label) {
+        Mac mac = createMac(new SecretKeySpec(secretKey.getEncoded(), MAC_ALGORITHM));
+        return mac.doFinal(label);
+    }
+
+    @NonNull
+    private static Cipher createCipher(@NonNull String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cipher not available: " + transformation, e);
+        }
+    }
+
+    @NonNull
+    private static Mac createMac(@NonNull SecretKey secretKey) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(secretKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("MAC not available: " + MAC_ALGORITHM, e);
+        }
+    }
+
+    @NonNull
+    public Serializer getSerializer() {
+        return serializer;
+    }
+
+    /**
+     * Sets the serializer that values are serialized with before they are encrypted. Defaults to
+     * a {@link GsonSerializer}.
+     */
+    public void setSerializer(@NonNull Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+}
@@ -2,68 +2,156 @@ package com.nexenio.rxpreferences.provider;
 
 import com.nexenio.rxpreferences.serializer.Serializer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 
+/**
+ * Provider that keeps its values in a {@link ConcurrentHashMap}, without persisting them.
+ *
+ * Values are read without locking. Batches of changes (e.g. {@link #persistAll(Map)}) are applied
+ * while holding a write lock, {@link #restoreAll(Map)} holds the corresponding read lock, so that
+ * it never restores a partially applied batch.
+ *
+ * As there is no storage to wait for, both schedulers default to {@link Schedulers#trampoline()},
+ * so that reactive methods complete on the subscribing thread.
+ */
 public class InMemoryPreferencesProvider extends BasePreferencesProvider {
 
+    /**
+     * Stored values, either serialized strings, values of native types or byte buffers.
+     */
     @NonNull
-    protected final Map<String, String> values;
+    protected final ConcurrentMap<String, Object> values;
+
+    @NonNull
+    protected final ReadWriteLock batchLock;
 
     public InMemoryPreferencesProvider() {
-        this.values = new HashMap<>();
+        this.values = new ConcurrentHashMap<>();
+        this.batchLock = new ReentrantReadWriteLock();
+        this.nativeValuesEnabled = true;
+        this.ioScheduler = Schedulers.trampoline();
+        this.computationScheduler = Schedulers.trampoline();
     }
 
     public InMemoryPreferencesProvider(@NonNull Serializer serializer) {
         super(serializer);
-        this.values = new HashMap<>();
+        this.values = new ConcurrentHashMap<>();
+        this.batchLock = new ReentrantReadWriteLock();
+        this.nativeValuesEnabled = true;
+        this.ioScheduler = Schedulers.trampoline();
+        this.computationScheduler = Schedulers.trampoline();
     }
 
     @Override
     protected Maybe<String> restoreIfAvailable(@NonNull String key) {
-        return Maybe.fromCallable(() -> values.get(key));
+        return subscribeOnIoScheduler(Maybe.fromCallable(() -> readStoredValue(key, String.class))
+                .map(this::toStoredString));
+    }
+
+    @Nullable
+    @Override
+    protected Object readStoredValue(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return values.get(key);
+    }
+
+    @NonNull
+    @Override
+    protected Map<String, Object> readStoredValues(@NonNull Map<String, java.lang.reflect.Type> valueTypes) {
+        Map<String, Object> storedValues = new LinkedHashMap<>();
+        Lock lock = batchLock.readLock();
+        lock.lock();
+        try {
+            for (String key : valueTypes.keySet()) {
+                Object value = values.get(key);
+                if (value != null) {
+                    storedValues.put(key, value);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return storedValues;
     }
 
     @Override
     public Completable persist(@NonNull String key, String value) {
-        return Completable.fromAction(() -> {
-            synchronized (values) {
-                values.put(key, value);
+        return subscribeOnIoScheduler(Completable.fromAction(() -> writeStoredValue(key, value)));
+    }
+
+    @Override
+    protected void writeStoredValue(@NonNull String key, @NonNull Object storedValue) {
+        values.put(key, storedValue);
+    }
+
+    @Override
+    protected void writeStoredValues(@NonNull Map<String, Object> storedValues, @NonNull Collection<String> keysToDelete) {
+        Lock lock = batchLock.writeLock();
+        lock.lock();
+        try {
+            for (String key : keysToDelete) {
+                values.remove(key);
             }
-        });
+            values.putAll(storedValues);
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Emits the keys that are available while iterating. Keys that are persisted or deleted
+     * concurrently may or may not be emitted.
+     */
     @Override
     public Observable<String> getKeys() {
-        return Observable.defer(() -> {
-            Collection<String> keys;
-            synchronized (values) {
-                keys = Collections.synchronizedCollection(values.keySet());
-            }
-            return Observable.fromIterable(keys);
-        });
+        return subscribeOnIoScheduler(Observable.defer(() -> Observable.fromIterable(values.keySet())));
+    }
+
+    @NonNull
+    @Override
+    protected Collection<String> readKeys() {
+        return new ArrayList<>(values.keySet());
     }
 
     @Override
     public Single<Boolean> containsKey(@NonNull String key) {
-        return Single.fromCallable(() -> values.containsKey(key));
+        return subscribeOnIoScheduler(Single.fromCallable(() -> containsStoredValue(key)));
+    }
+
+    @Override
+    protected boolean containsStoredValue(@NonNull String key) {
+        return values.containsKey(key);
     }
 
     @Override
     public Completable delete(@NonNull String key) {
-        return Completable.fromAction(() -> {
-            synchronized (values) {
-                values.remove(key);
-            }
-        });
+        return commit(Collections.emptyMap(), Collections.singletonList(key));
+    }
+
+    @Override
+    protected boolean supportsNativeValues() {
+        return true;
+    }
+
+    @Override
+    protected boolean supportsBinaryValues() {
+        return true;
     }
 
 }
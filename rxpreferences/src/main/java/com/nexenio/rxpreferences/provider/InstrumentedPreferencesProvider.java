@@ -0,0 +1,481 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.nexenio.rxpreferences.metrics.LatencyHistogram;
+import com.nexenio.rxpreferences.metrics.MetricsSnapshot;
+import com.nexenio.rxpreferences.metrics.Operation;
+import com.nexenio.rxpreferences.serializer.GsonSerializer;
+import com.nexenio.rxpreferences.serializer.Serializer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * {@link WrappedPreferencesProvider} that records metrics of the operations of the wrapped
+ * provider: latency histograms and error counts per {@link Operation}, the serialized sizes of
+ * persisted values, the number of change subscribers per key and the operations per key.
+ *
+ * Latencies are measured from subscription until the operation terminates, operations that are
+ * disposed before are not recorded. Streams that combine restoring a value and its changes (like
+ * {@code restoreOrDefaultAndGetChanges}) are not measured. Sizes are only recorded if enabled
+ * using {@link #setValueSizeRecordingEnabled(boolean)}, as that requires serializing persisted
+ * values once more, on the subscribing thread.
+ *
+ * Operations per key are only counted for a bounded number of keys, see {@link
+ * #setTopKeyCount(int)}.
+ */
+public class InstrumentedPreferencesProvider extends WrappedPreferencesProvider {
+
+    public static final int DEFAULT_TOP_KEY_COUNT = 10;
+
+    /**
+     * Number of keys that operations are counted for, per key that is included in snapshots.
+     */
+    private static final int TRACKED_KEYS_PER_TOP_KEY = 8;
+
+    @NonNull
+    private final Map<Operation, LatencyHistogram> latencyHistograms;
+
+    @NonNull
+    private final Map<Operation, AtomicLong> errorCounts;
+
+    /**
+     * Recorders of the tracked keys. Guarded by itself when adding or removing recorders.
+     */
+    @NonNull
+    private final ConcurrentMap<String, KeyRecorder> keyRecorders;
+
+    @NonNull
+    private final AtomicLong persistedValueCount;
+
+    @NonNull
+    private final AtomicLong persistedByteCount;
+
+    @NonNull
+    private final AtomicLong maximumPersistedValueSize;
+
+    @Nullable
+    private volatile Serializer valueSizeSerializer;
+
+    private volatile int topKeyCount = DEFAULT_TOP_KEY_COUNT;
+
+    public InstrumentedPreferencesProvider(@NonNull PreferencesProvider provider) {
+        super(provider);
+        this.latencyHistograms = new EnumMap<>(Operation.class);
+        this.errorCounts = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            latencyHistograms.put(operation, new LatencyHistogram());
+            errorCounts.put(operation, new AtomicLong());
+        }
+        this.keyRecorders = new ConcurrentHashMap<>();
+        this.persistedValueCount = new AtomicLong();
+        this.persistedByteCount = new AtomicLong();
+        this.maximumPersistedValueSize = new AtomicLong();
+    }
+
+    @Override
+    public Observable<String> getKeys() {
+        return Observable.defer(() -> {
+            long startTime = System.nanoTime();
+            return provider.getKeys()
+                    .doOnError(throwable -> record(Operation.GET_KEYS, Collections.emptyList(), startTime, true))
+                    .doOnComplete(() -> record(Operation.GET_KEYS, Collections.emptyList(), startTime, false));
+        });
+    }
+
+    @Override
+    public Single<Boolean> containsKey(@NonNull String key) {
+        return measure(Operation.CONTAINS_KEY, key, provider.containsKey(key));
+    }
+
+    @Override
+    public <Type> Single<Type> restore(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return measure(Operation.RESTORE, key, provider.restore(key, typeClass));
+    }
+
+    @Override
+    public <Type> Single<Type> restore(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return measure(Operation.RESTORE, key, provider.restore(key, valueType));
+    }
+
+    @Override
+    public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue) {
+        return measure(Operation.RESTORE, key, provider.restoreOrDefault(key, defaultValue));
+    }
+
+    @Override
+    public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        return measure(Operation.RESTORE, key, provider.restoreOrDefault(key, defaultValue, valueType));
+    }
+
+    @Override
+    public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return measure(Operation.RESTORE, key, provider.restoreIfAvailable(key, typeClass));
+    }
+
+    @Override
+    public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return measure(Operation.RESTORE, key, provider.restoreIfAvailable(key, valueType));
+    }
+
+    @Override
+    public <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull Class<Type> typeClass) {
+        return measure(Operation.RESTORE_ALL, new ArrayList<>(keys), provider.restoreAll(keys, typeClass));
+    }
+
+    @Override
+    public <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull java.lang.reflect.Type valueType) {
+        return measure(Operation.RESTORE_ALL, new ArrayList<>(keys), provider.restoreAll(keys, valueType));
+    }
+
+    @Override
+    public Single<Map<String, Object>> restoreAll(@NonNull Map<String, Class<?>> typeClasses) {
+        return measure(Operation.RESTORE_ALL, new ArrayList<>(typeClasses.keySet()), provider.restoreAll(typeClasses));
+    }
+
+    @Override
+    public <Type> Completable persist(@NonNull String key, @NonNull Type value) {
+        return Completable.defer(() -> {
+            recordValueSize(key, value);
+            return measure(Operation.PERSIST, Collections.singletonList(key), provider.persist(key, value));
+        });
+    }
+
+    @Override
+    public <Type> Completable persistIfNotYetAvailable(@NonNull String key, @NonNull Type value) {
+        return Completable.defer(() -> {
+            recordValueSize(key, value);
+            return measure(Operation.PERSIST, Collections.singletonList(key), provider.persistIfNotYetAvailable(key, value));
+        });
+    }
+
+    @Override
+    public Completable persistAll(@NonNull Map<String, ?> values) {
+        Map<String, ?> valuesToPersist = new LinkedHashMap<>(values);
+        return Completable.defer(() -> {
+            recordValueSizes(valuesToPersist);
+            return measure(Operation.COMMIT, new ArrayList<>(valuesToPersist.keySet()), provider.persistAll(valuesToPersist));
+        });
+    }
+
+    @Override
+    public Completable delete(@NonNull String key) {
+        return measure(Operation.DELETE, Collections.singletonList(key), provider.delete(key));
+    }
+
+    @Override
+    public Completable deleteAll() {
+        return measure(Operation.DELETE_ALL, Collections.emptyList(), provider.deleteAll());
+    }
+
+    @Override
+    public Completable deleteAll(@NonNull Collection<String> keys) {
+        return measure(Operation.DELETE_ALL, new ArrayList<>(keys), provider.deleteAll(keys));
+    }
+
+    @Override
+    public Completable commit(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) {
+        Map<String, ?> values = new LinkedHashMap<>(valuesToPersist);
+        Collection<String> keys = new ArrayList<>(keysToDelete);
+        return Completable.defer(() -> {
+            recordValueSizes(values);
+            List<String> changedKeys = new ArrayList<>(values.keySet());
+            changedKeys.addAll(keys);
+            return measure(Operation.COMMIT, changedKeys, provider.commit(values, keys));
+        });
+    }
+
+    @NonNull
+    private <Type> Single<Type> measure(@NonNull Operation operation, @NonNull String key, @NonNull Single<Type> single) {
+        return measure(operation, Collections.singletonList(key), single);
+    }
+
+    @NonNull
+    private <Type> Single<Type> measure(@NonNull Operation operation, @NonNull Collection<String> keys, @NonNull Single<Type> single) {
+        return Single.defer(() -> {
+            long startTime = System.nanoTime();
+            return single.doOnEvent((value, throwable) -> record(operation, keys, startTime, throwable != null));
+        });
+    }
+
+    @NonNull
+    private <Type> Maybe<Type> measure(@NonNull Operation operation, @NonNull String key, @NonNull Maybe<Type> maybe) {
+        return Maybe.defer(() -> {
+            long startTime = System.nanoTime();
+            return maybe.doOnEvent((value, throwable) -> record(operation, Collections.singletonList(key), startTime, throwable != null));
+        });
+    }
+
+    @NonNull
+    private Completable measure(@NonNull Operation operation, @NonNull Collection<String> keys, @NonNull Completable completable) {
+        return Completable.defer(() -> {
+            long startTime = System.nanoTime();
+            return completable.doOnEvent(throwable -> record(operation, keys, startTime, throwable != null));
+        });
+    }
+
+    private void record(@NonNull Operation operation, @NonNull Collection<String> keys, long startTime, boolean failed) {
+        long nanos = System.nanoTime() - startTime;
+        latencyHistograms.get(operation).record(nanos);
+        if (failed) {
+            errorCounts.get(operation).incrementAndGet();
+        }
+        if (topKeyCount == 0) {
+            return;
+        }
+        for (String key : keys) {
+            getKeyRecorder(key).record(nanos, failed);
+        }
+    }
+
+    private void recordValueSizes(@NonNull Map<String, ?> values) {
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            recordValueSize(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Records the size of the specified value as serialized by the value size serializer. Binary
+     * values are not serialized. Values that can't be serialized are ignored, persisting them will
+     * fail anyway.
+     */
+    private void recordValueSize(@NonNull String key, @NonNull Object value) {
+        Serializer valueSizeSerializer = this.valueSizeSerializer;
+        if (valueSizeSerializer == null) {
+            return;
+        }
+        long size;
+        if (value instanceof byte[]) {
+            size = ((byte[]) value).length;
+        } else if (value instanceof ByteBuffer) {
+            size = ((ByteBuffer) value).remaining();
+        } else {
+            try {
+                size = valueSizeSerializer.serializeToBytes(value).length;
+            } catch (Exception e) {
+                return;
+            }
+        }
+        persistedValueCount.incrementAndGet();
+        persistedByteCount.addAndGet(size);
+        long maximumSize = maximumPersistedValueSize.get();
+        while (size > maximumSize && !maximumPersistedValueSize.compareAndSet(maximumSize, size)) {
+            maximumSize = maximumPersistedValueSize.get();
+        }
+        if (topKeyCount != 0) {
+            getKeyRecorder(key).lastValueSize = size;
+        }
+    }
+
+    /**
+     * Returns the recorder of the specified key. If the maximum number of keys is tracked already,
+     * the recorder of the key with the least operations is replaced by a new one that starts with
+     * the operation count of the replaced one (space-saving algorithm). That way, keys with many
+     * operations are tracked even if they have been used after many other keys, at the cost of
+     * overestimating the operation counts of keys that have replaced others.
+     */
+    @NonNull
+    private KeyRecorder getKeyRecorder(@NonNull String key) {
+        KeyRecorder keyRecorder = keyRecorders.get(key);
+        if (keyRecorder != null) {
+            return keyRecorder;
+        }
+        synchronized (keyRecorders) {
+            keyRecorder = keyRecorders.get(key);
+            if (keyRecorder == null) {
+                long operationCount = 0;
+                long maximumKeyCount = Math.max((long) topKeyCount * TRACKED_KEYS_PER_TOP_KEY, 1);
+                while (keyRecorders.size() >= maximumKeyCount) {
+                    operationCount = removeLeastUsedKeyRecorder();
+                }
+                keyRecorder = new KeyRecorder(operationCount);
+                keyRecorders.put(key, keyRecorder);
+            }
+            return keyRecorder;
+        }
+    }
+
+    /**
+     * Removes the recorder with the least operations and returns its operation count. Needs to be
+     * called while holding the lock of the key recorders.
+     */
+    private long removeLeastUsedKeyRecorder() {
+        String leastUsedKey = null;
+        long leastOperationCount = Long.MAX_VALUE;
+        for (Map.Entry<String, KeyRecorder> entry : keyRecorders.entrySet()) {
+            long operationCount = entry.getValue().operationCount.get();
+            if (operationCount < leastOperationCount) {
+                leastUsedKey = entry.getKey();
+                leastOperationCount = operationCount;
+            }
+        }
+        if (leastUsedKey == null) {
+            return 0;
+        }
+        keyRecorders.remove(leastUsedKey);
+        return leastOperationCount;
+    }
+
+    /**
+     * Returns the metrics recorded so far.
+     */
+    @NonNull
+    public MetricsSnapshot getMetricsSnapshot() {
+        Map<Operation, MetricsSnapshot.OperationMetrics> operationMetrics = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            operationMetrics.put(operation, new MetricsSnapshot.OperationMetrics(latencyHistograms.get(operation), errorCounts.get(operation).get()));
+        }
+
+        Map<String, Integer> changeSubscriberCounts = new LinkedHashMap<>();
+        BasePreferencesProvider baseProvider = getBaseProvider();
+        if (baseProvider != null) {
+            for (Map.Entry<String, BasePreferencesProvider.ChangePublisher> entry : baseProvider.changePublishers.entrySet()) {
+                int subscriberCount = entry.getValue().getSubscriberCount();
+                if (subscriberCount > 0) {
+                    changeSubscriberCounts.put(entry.getKey(), subscriberCount);
+                }
+            }
+        }
+
+        return new MetricsSnapshot(
+                System.currentTimeMillis(),
+                operationMetrics,
+                persistedValueCount.get(),
+                persistedByteCount.get(),
+                maximumPersistedValueSize.get(),
+                changeSubscriberCounts,
+                getTopKeyMetrics()
+        );
+    }
+
+    @NonNull
+    private List<MetricsSnapshot.KeyMetrics> getTopKeyMetrics() {
+        int topKeyCount = this.topKeyCount;
+        if (topKeyCount == 0) {
+            return Collections.emptyList();
+        }
+        List<MetricsSnapshot.KeyMetrics> keyMetrics = new ArrayList<>(keyRecorders.size());
+        for (Map.Entry<String, KeyRecorder> entry : keyRecorders.entrySet()) {
+            keyMetrics.add(entry.getValue().toKeyMetrics(entry.getKey()));
+        }
+        Collections.sort(keyMetrics, (first, second) -> Long.compare(second.getOperationCount(), first.getOperationCount()));
+        return keyMetrics.size() > topKeyCount ? new ArrayList<>(keyMetrics.subList(0, topKeyCount)) : keyMetrics;
+    }
+
+    /**
+     * Emits a snapshot of the metrics recorded so far once per period, on the computation
+     * scheduler.
+     */
+    public Observable<MetricsSnapshot> getMetricsSnapshots(long period, @NonNull TimeUnit timeUnit) {
+        return getMetricsSnapshots(period, timeUnit, Schedulers.computation());
+    }
+
+    public Observable<MetricsSnapshot> getMetricsSnapshots(long period, @NonNull TimeUnit timeUnit, @NonNull Scheduler scheduler) {
+        return Observable.interval(period, period, timeUnit, scheduler)
+                .map(tick -> getMetricsSnapshot());
+    }
+
+    @Nullable
+    public Serializer getValueSizeSerializer() {
+        return valueSizeSerializer;
+    }
+
+    /**
+     * Sets the serializer that is used to determine the size of persisted values, or {@code null}
+     * to not record any sizes. Defaults to {@code null}.
+     */
+    public void setValueSizeSerializer(@Nullable Serializer valueSizeSerializer) {
+        this.valueSizeSerializer = valueSizeSerializer;
+    }
+
+    public boolean isValueSizeRecordingEnabled() {
+        return valueSizeSerializer != null;
+    }
+
+    /**
+     * Enables recording the sizes of persisted values using the serializer of the wrapped {@link
+     * BasePreferencesProvider}, or a {@link GsonSerializer} if there is none. Disabled by default.
+     */
+    public void setValueSizeRecordingEnabled(boolean enabled) {
+        if (!enabled) {
+            valueSizeSerializer = null;
+        } else if (valueSizeSerializer == null) {
+            BasePreferencesProvider baseProvider = getBaseProvider();
+            valueSizeSerializer = baseProvider != null ? baseProvider.getSerializer() : new GsonSerializer();
+        }
+    }
+
+    public int getTopKeyCount() {
+        return topKeyCount;
+    }
+
+    /**
+     * Sets the number of keys with the most operations that should be included in snapshots, or
+     * {@code 0} to not record operations per key at all. Defaults to {@link
+     * #DEFAULT_TOP_KEY_COUNT}.
+     *
+     * Operations are counted for {@value #TRACKED_KEYS_PER_TOP_KEY} times as many keys. Keys that
+     * are used after that many keys have been tracked replace the tracked key with the least
+     * operations and inherit its operation count, so operation counts may be overestimated.
+     */
+    public void setTopKeyCount(int topKeyCount) {
+        synchronized (keyRecorders) {
+            this.topKeyCount = topKeyCount;
+            long maximumKeyCount = (long) topKeyCount * TRACKED_KEYS_PER_TOP_KEY;
+            while (keyRecorders.size() > maximumKeyCount) {
+                removeLeastUsedKeyRecorder();
+            }
+        }
+    }
+
+    private static final class KeyRecorder {
+
+        private final AtomicLong operationCount;
+        private final AtomicLong errorCount = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maximumNanos = new AtomicLong();
+
+        private volatile long lastValueSize = -1;
+
+        private KeyRecorder(long operationCount) {
+            this.operationCount = new AtomicLong(operationCount);
+        }
+
+        private void record(long nanos, boolean failed) {
+            operationCount.incrementAndGet();
+            if (failed) {
+                errorCount.incrementAndGet();
+            }
+            totalNanos.addAndGet(nanos);
+            long maximum = maximumNanos.get();
+            while (nanos > maximum && !maximumNanos.compareAndSet(maximum, nanos)) {
+                maximum = maximumNanos.get();
+            }
+        }
+
+        @NonNull
+        private MetricsSnapshot.KeyMetrics toKeyMetrics(@NonNull String key) {
+            return new MetricsSnapshot.KeyMetrics(key, operationCount.get(), errorCount.get(), totalNanos.get(), maximumNanos.get(), lastValueSize);
+        }
+
+    }
+
+}
@@ -0,0 +1,653 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.nexenio.rxpreferences.serializer.GsonSerializer;
+import com.nexenio.rxpreferences.serializer.Serializer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Provider that appends every change to a log file.
+ *
+ * Every batch of changes is appended as a single frame that contains the length and the CRC32
+ * checksum of its records, so persisting a value only writes that value instead of the whole
+ * file. An in-memory index maps every key to the location of its latest value. When the file is
+ * opened, the index is rebuilt from all frames and the file is truncated after the last valid
+ * frame, which discards batches that have not been written completely.
+ *
+ * Superseded records are removed by writing a snapshot of the latest values to a new file, which
+ * replaces the log. This happens on the compaction scheduler once the garbage in the log exceeds
+ * the compaction threshold, writes are not blocked while the snapshot is written. The file must
+ * only be accessed by a single instance of this provider.
+ */
+public class LogStructuredPreferencesProvider extends BasePreferencesProvider implements Closeable {
+
+    public static final float DEFAULT_COMPACTION_GARBAGE_RATIO = 0.5f;
+    public static final long DEFAULT_COMPACTION_MINIMUM_GARBAGE_SIZE = 64 * 1024;
+
+    private static final int MAGIC = 0x5258504C; // "RXPL"
+    private static final byte VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 5;
+
+    /**
+     * Payload length (4 bytes) and CRC32 of the payload (4 bytes), followed by the payload.
+     */
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    /**
+     * Type (1 byte), key length (4 bytes) and value length (4 bytes), followed by the key and the
+     * value. Types are defined by {@link StoredValueEncoding}.
+     */
+    private static final int RECORD_HEADER_SIZE = 9;
+
+    /**
+     * Maximum payload size of the frames written to snapshots, larger records get their own frame.
+     */
+    private static final int SNAPSHOT_FRAME_SIZE = 64 * 1024;
+
+    @NonNull
+    private final File file;
+
+    /**
+     * Location of the latest record of every key. Guarded by this instance, as are all other
+     * mutable fields.
+     */
+    @NonNull
+    private Map<String, Entry> index;
+
+    @NonNull
+    private FileChannel channel;
+
+    private long writePosition;
+
+    /**
+     * Size of all records in the index.
+     */
+    private long liveSize;
+
+    private boolean compacting;
+
+    @NonNull
+    protected DurabilityMode durabilityMode = DurabilityMode.COMMIT;
+
+    protected float compactionGarbageRatio = DEFAULT_COMPACTION_GARBAGE_RATIO;
+
+    protected long compactionMinimumGarbageSize = DEFAULT_COMPACTION_MINIMUM_GARBAGE_SIZE;
+
+    @NonNull
+    protected Scheduler compactionScheduler = Schedulers.io();
+
+    public LogStructuredPreferencesProvider(@NonNull File file) throws PreferenceProviderException {
+        this(file, new GsonSerializer());
+    }
+
+    public LogStructuredPreferencesProvider(@NonNull File file, @NonNull Serializer serializer) throws PreferenceProviderException {
+        super(serializer);
+        this.file = file;
+        this.index = new HashMap<>();
+        this.nativeValuesEnabled = true;
+        open();
+    }
+
+    /**
+     * Reads the index from all valid frames and truncates the file after the last one.
+     */
+    private synchronized void open() throws PreferenceProviderException {
+        try {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Preferences file is too large");
+            }
+            if (size == 0) {
+                ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).put(VERSION);
+                header.flip();
+                write(channel, header, 0);
+                channel.force(false);
+                writePosition = FILE_HEADER_SIZE;
+                return;
+            }
+
+            ByteBuffer log = ByteBuffer.allocate((int) size);
+            read(channel, log, 0);
+            log.flip();
+            if (size < FILE_HEADER_SIZE || log.getInt(0) != MAGIC) {
+                throw new IOException("Not a preferences file: " + file);
+            }
+            if (log.get(4) != VERSION) {
+                throw new IOException("Unsupported preferences file version: " + log.get(4));
+            }
+            log.position(FILE_HEADER_SIZE);
+            writePosition = FILE_HEADER_SIZE + readFrames(log, FILE_HEADER_SIZE, index);
+            liveSize = getLiveSize(index);
+            if (writePosition < size) {
+                channel.truncate(writePosition);
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new PreferenceProviderException("Unable to open preferences file: " + file, e);
+        }
+    }
+
+    @Override
+    protected Maybe<String> restoreIfAvailable(@NonNull String key) {
+        return subscribeOnIoScheduler(Maybe.fromCallable(() -> readStoredValue(key, String.class))
+                .map(this::toStoredString));
+    }
+
+    @Nullable
+    @Override
+    protected synchronized Object readStoredValue(@NonNull String key, @NonNull java.lang.reflect.Type valueType) throws IOException {
+        Entry entry = index.get(key);
+        return entry != null ? readValue(channel, entry) : null;
+    }
+
+    @NonNull
+    @Override
+    protected synchronized Map<String, Object> readStoredValues(@NonNull Map<String, java.lang.reflect.Type> valueTypes) throws IOException {
+        Map<String, Object> storedValues = new LinkedHashMap<>();
+        for (String key : valueTypes.keySet()) {
+            Entry entry = index.get(key);
+            if (entry != null) {
+                storedValues.put(key, readValue(channel, entry));
+            }
+        }
+        return storedValues;
+    }
+
+    @Override
+    public Completable persist(@NonNull String key, String value) {
+        return subscribeOnIoScheduler(Completable.fromAction(() -> writeStoredValue(key, value)));
+    }
+
+    @Override
+    protected void writeStoredValue(@NonNull String key, @NonNull Object storedValue) throws Exception {
+        writeStoredValues(Collections.singletonMap(key, storedValue), Collections.emptyList());
+    }
+
+    @Override
+    protected void writeStoredValues(@NonNull Map<String, Object> storedValues, @NonNull Collection<String> keysToDelete) throws Exception {
+        FrameWriter frameWriter = new FrameWriter();
+        for (String key : keysToDelete) {
+            frameWriter.add(key, StoredValueEncoding.TYPE_DELETED, ByteBuffer.allocate(0));
+        }
+        for (Map.Entry<String, Object> entry : storedValues.entrySet()) {
+            Object storedValue = entry.getValue();
+            frameWriter.add(entry.getKey(), StoredValueEncoding.getType(storedValue), StoredValueEncoding.encode(storedValue));
+        }
+        ByteBuffer frame = frameWriter.toFrame();
+
+        synchronized (this) {
+            if (!channel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+            try {
+                write(channel, frame, writePosition);
+                if (durabilityMode == DurabilityMode.COMMIT) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                // remove the incomplete frame, it would be discarded when opening the file anyway
+                channel.truncate(writePosition);
+                throw e;
+            }
+            liveSize += frameWriter.applyTo(index, writePosition + FRAME_HEADER_SIZE);
+            writePosition += frame.limit();
+            scheduleCompactionIfRequired();
+        }
+    }
+
+    @Override
+    public Observable<String> getKeys() {
+        return subscribeOnIoScheduler(Observable.defer(() -> Observable.fromIterable(readKeys())));
+    }
+
+    @NonNull
+    @Override
+    protected synchronized Collection<String> readKeys() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    @Override
+    public Single<Boolean> containsKey(@NonNull String key) {
+        return subscribeOnIoScheduler(Single.fromCallable(() -> containsStoredValue(key)));
+    }
+
+    @Override
+    protected synchronized boolean containsStoredValue(@NonNull String key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public Completable delete(@NonNull String key) {
+        return subscribeOnIoScheduler(Completable.fromAction(() -> commitValues(Collections.emptyMap(), Collections.singletonList(key))));
+    }
+
+    /**
+     * Writes the latest record of every key to a snapshot, which replaces the log. Changes can be
+     * persisted while the snapshot is written, they will be appended to the snapshot afterwards.
+     * Completes immediately if a compaction is already running.
+     */
+    public Completable compact() {
+        return subscribeOnIoScheduler(Completable.fromAction(() -> {
+            synchronized (this) {
+                if (compacting) {
+                    return;
+                }
+                compacting = true;
+            }
+            runCompaction();
+        }).onErrorResumeNext(throwable -> Completable.error(new PreferenceProviderException("Unable to compact preferences file: " + file, throwable))));
+    }
+
+    /**
+     * Closes the file. A compaction that is currently running will be cancelled.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Schedules a compaction on the compaction scheduler if the garbage exceeds the threshold.
+     * Errors are ignored, the log remains valid and the compaction will be retried after the next
+     * change.
+     */
+    private void scheduleCompactionIfRequired() {
+        long garbageSize = getGarbageSize();
+        if (compacting || garbageSize < compactionMinimumGarbageSize || garbageSize < writePosition * compactionGarbageRatio) {
+            return;
+        }
+        compacting = true;
+        compactionScheduler.scheduleDirect(() -> {
+            try {
+                runCompaction();
+            } catch (IOException e) {
+                // ignore, see above
+            }
+        });
+    }
+
+    private void runCompaction() throws IOException {
+        try {
+            compactLog();
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    private void compactLog() throws IOException {
+        Map<String, Entry> snapshotIndex;
+        long snapshotPosition;
+        FileChannel sourceChannel;
+        synchronized (this) {
+            snapshotIndex = new HashMap<>(index);
+            snapshotPosition = writePosition;
+            sourceChannel = channel;
+        }
+
+        File compactedFile = new File(file.getPath() + ".compact");
+        FileChannel compactedChannel = new RandomAccessFile(compactedFile, "rw").getChannel();
+        try {
+            compactedChannel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).put(VERSION);
+            header.flip();
+            write(compactedChannel, header, 0);
+
+            // write the snapshot without holding the lock, records are never modified
+            Map<String, Entry> compactedIndex = new HashMap<>();
+            long compactedPosition = FILE_HEADER_SIZE;
+            FrameWriter frameWriter = new FrameWriter();
+            for (Map.Entry<String, Entry> indexEntry : snapshotIndex.entrySet()) {
+                Entry entry = indexEntry.getValue();
+                ByteBuffer value = ByteBuffer.allocate(entry.valueLength);
+                read(sourceChannel, value, entry.getValueOffset());
+                value.flip();
+                frameWriter.add(indexEntry.getKey(), entry.type, value);
+                if (frameWriter.size >= SNAPSHOT_FRAME_SIZE) {
+                    compactedPosition = writeFrame(compactedChannel, frameWriter, compactedIndex, compactedPosition);
+                    frameWriter = new FrameWriter();
+                }
+            }
+            if (!frameWriter.records.isEmpty()) {
+                compactedPosition = writeFrame(compactedChannel, frameWriter, compactedIndex, compactedPosition);
+            }
+
+            synchronized (this) {
+                if (channel != sourceChannel || !channel.isOpen()) {
+                    throw new ClosedChannelException();
+                }
+
+                // append the frames that have been written in the meantime
+                long tailSize = writePosition - snapshotPosition;
+                if (tailSize > 0) {
+                    ByteBuffer tail = ByteBuffer.allocate((int) tailSize);
+                    read(channel, tail, snapshotPosition);
+                    tail.flip();
+                    write(compactedChannel, tail.duplicate(), compactedPosition);
+                    readFrames(tail, compactedPosition, compactedIndex);
+                }
+                compactedChannel.force(false);
+                if (!compactedFile.renameTo(file)) {
+                    throw new IOException("Unable to replace preferences file: " + file);
+                }
+
+                closeQuietly(channel);
+                channel = compactedChannel;
+                index = compactedIndex;
+                writePosition = compactedPosition + tailSize;
+                liveSize = getLiveSize(index);
+            }
+        } catch (IOException e) {
+            closeQuietly(compactedChannel);
+            compactedFile.delete();
+            throw e;
+        }
+    }
+
+    private static long writeFrame(@NonNull FileChannel channel, @NonNull FrameWriter frameWriter, @NonNull Map<String, Entry> index, long position) throws IOException {
+        ByteBuffer frame = frameWriter.toFrame();
+        write(channel, frame, position);
+        frameWriter.applyTo(index, position + FRAME_HEADER_SIZE);
+        return position + frame.limit();
+    }
+
+    /**
+     * Applies all valid frames between the position and the limit of the specified buffer to the
+     * specified index.
+     *
+     * @param offset the file offset of the current position of the buffer
+     * @return the number of bytes read from valid frames
+     */
+    private static long readFrames(@NonNull ByteBuffer log, long offset, @NonNull Map<String, Entry> index) {
+        int start = log.position();
+        CRC32 crc32 = new CRC32();
+        while (log.remaining() >= FRAME_HEADER_SIZE) {
+            int frameStart = log.position();
+            int payloadLength = log.getInt(frameStart);
+            int checksum = log.getInt(frameStart + 4);
+            if (payloadLength < 0 || payloadLength > log.remaining() - FRAME_HEADER_SIZE) {
+                break;
+            }
+            ByteBuffer payload = log.duplicate();
+            payload.position(frameStart + FRAME_HEADER_SIZE);
+            payload.limit(frameStart + FRAME_HEADER_SIZE + payloadLength);
+            crc32.reset();
+            crc32.update(payload.array(), payload.arrayOffset() + payload.position(), payloadLength);
+            if ((int) crc32.getValue() != checksum) {
+                break;
+            }
+
+            List<String> keys = new ArrayList<>();
+            List<Entry> entries = new ArrayList<>();
+            if (!readRecords(payload, offset + payload.position() - start, keys, entries)) {
+                break;
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                updateIndex(index, keys.get(i), entries.get(i));
+            }
+            log.position(frameStart + FRAME_HEADER_SIZE + payloadLength);
+        }
+        return log.position() - start;
+    }
+
+    /**
+     * Reads all records of a frame payload.
+     *
+     * @return {@code false} if the payload contains an invalid record
+     */
+    private static boolean readRecords(@NonNull ByteBuffer payload, long offset, @NonNull List<String> keys, @NonNull List<Entry> entries) {
+        int start = payload.position();
+        while (payload.hasRemaining()) {
+            if (payload.remaining() < RECORD_HEADER_SIZE) {
+                return false;
+            }
+            int recordStart = payload.position();
+            byte type = payload.get();
+            int keyLength = payload.getInt();
+            int valueLength = payload.getInt();
+            if (!StoredValueEncoding.isValid(type, valueLength) || keyLength < 0 || (long) keyLength + valueLength > payload.remaining()) {
+                return false;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            payload.get(keyBytes);
+            payload.position(payload.position() + valueLength);
+            keys.add(new String(keyBytes, StandardCharsets.UTF_8));
+            entries.add(new Entry(type, offset + recordStart - start, keyLength, valueLength));
+        }
+        return true;
+    }
+
+    /**
+     * Updates the index with the specified record.
+     *
+     * @return the change of the size of all records in the index
+     */
+    private static long updateIndex(@NonNull Map<String, Entry> index, @NonNull String key, @NonNull Entry entry) {
+        Entry previousEntry;
+        long sizeChange;
+        if (entry.type == StoredValueEncoding.TYPE_DELETED) {
+            previousEntry = index.remove(key);
+            sizeChange = 0;
+        } else {
+            previousEntry = index.put(key, entry);
+            sizeChange = entry.getRecordSize();
+        }
+        return previousEntry != null ? sizeChange - previousEntry.getRecordSize() : sizeChange;
+    }
+
+    private static long getLiveSize(@NonNull Map<String, Entry> index) {
+        long liveSize = 0;
+        for (Entry entry : index.values()) {
+            liveSize += entry.getRecordSize();
+        }
+        return liveSize;
+    }
+
+    @NonNull
+    private static Object readValue(@NonNull FileChannel channel, @NonNull Entry entry) throws IOException {
+        ByteBuffer value = ByteBuffer.allocate(entry.valueLength);
+        read(channel, value, entry.getValueOffset());
+        value.flip();
+        return StoredValueEncoding.decode(entry.type, value);
+    }
+
+    private static void read(@NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of preferences file");
+            }
+            position += read;
+        }
+    }
+
+    private static void write(@NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void closeQuietly(@Nullable FileChannel channel) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // ignore, the file has been handled or the original exception is more relevant
+        }
+    }
+
+    @Override
+    protected boolean supportsNativeValues() {
+        return true;
+    }
+
+    @Override
+    protected boolean supportsBinaryValues() {
+        return true;
+    }
+
+    @NonNull
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of bytes that would be removed by compacting the log.
+     */
+    public synchronized long getGarbageSize() {
+        return writePosition - FILE_HEADER_SIZE - liveSize;
+    }
+
+    @NonNull
+    public DurabilityMode getDurabilityMode() {
+        return durabilityMode;
+    }
+
+    /**
+     * Sets whether changes should be forced to the storage device before completing ({@link
+     * DurabilityMode#COMMIT}, the default) or only be written to the file ({@link
+     * DurabilityMode#APPLY}), in which case they survive the process being killed but not a power
+     * loss. {@link DurabilityMode#DEBOUNCE} is treated exactly like {@link DurabilityMode#APPLY}:
+     * appending a record is cheap, so changes are never collected in memory before they are
+     * written.
+     */
+    public void setDurabilityMode(@NonNull DurabilityMode durabilityMode) {
+        this.durabilityMode = durabilityMode;
+    }
+
+    /**
+     * Sets when the log should be compacted: once the garbage in the log is at least the specified
+     * ratio of the file size and at least the specified number of bytes.
+     */
+    public synchronized void setCompactionThreshold(float garbageRatio, long minimumGarbageSize) {
+        this.compactionGarbageRatio = garbageRatio;
+        this.compactionMinimumGarbageSize = minimumGarbageSize;
+    }
+
+    @NonNull
+    public Scheduler getCompactionScheduler() {
+        return compactionScheduler;
+    }
+
+    public void setCompactionScheduler(@NonNull Scheduler compactionScheduler) {
+        this.compactionScheduler = compactionScheduler;
+    }
+
+    /**
+     * Collects records and writes them into a single frame.
+     */
+    private static final class FrameWriter {
+
+        @NonNull
+        private final List<String> keys = new ArrayList<>();
+
+        @NonNull
+        private final List<byte[]> records = new ArrayList<>();
+
+        @NonNull
+        private final List<Entry> entries = new ArrayList<>();
+
+        private int size;
+
+        private void add(@NonNull String key, byte type, @NonNull ByteBuffer value) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length + value.remaining());
+            record.put(type)
+                    .putInt(keyBytes.length)
+                    .putInt(value.remaining())
+                    .put(keyBytes)
+                    .put(value.duplicate());
+            keys.add(key);
+            records.add(record.array());
+            entries.add(new Entry(type, size, keyBytes.length, value.remaining()));
+            size += record.capacity();
+        }
+
+        @NonNull
+        private ByteBuffer toFrame() {
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + size);
+            frame.position(FRAME_HEADER_SIZE);
+            for (byte[] record : records) {
+                frame.put(record);
+            }
+            CRC32 crc32 = new CRC32();
+            crc32.update(frame.array(), FRAME_HEADER_SIZE, size);
+            frame.putInt(0, size);
+            frame.putInt(4, (int) crc32.getValue());
+            frame.flip();
+            return frame;
+        }
+
+        /**
+         * Applies the records to the specified index, once the frame has been written.
+         *
+         * @param offset the file offset of the frame payload
+         * @return the change of the size of all records in the index
+         */
+        private long applyTo(@NonNull Map<String, Entry> index, long offset) {
+            long sizeChange = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                Entry entry = entries.get(i);
+                sizeChange += updateIndex(index, keys.get(i), new Entry(entry.type, offset + entry.offset, entry.keyLength, entry.valueLength));
+            }
+            return sizeChange;
+        }
+
+    }
+
+    /**
+     * Location of a record in the file.
+     */
+    private static final class Entry {
+
+        private final byte type;
+        private final long offset;
+        private final int keyLength;
+        private final int valueLength;
+
+        private Entry(byte type, long offset, int keyLength, int valueLength) {
+            this.type = type;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        private long getValueOffset() {
+            return offset + RECORD_HEADER_SIZE + keyLength;
+        }
+
+        private long getRecordSize() {
+            return RECORD_HEADER_SIZE + keyLength + valueLength;
+        }
+
+    }
+
+}
@@ -0,0 +1,604 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.nexenio.rxpreferences.serializer.GsonSerializer;
+import com.nexenio.rxpreferences.serializer.Serializer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Provider that keeps its values in a memory-mapped file.
+ *
+ * Values are appended to the file as records, an in-memory index maps every key to the offset of
+ * its latest record. Persisting a value only writes its record instead of the whole file, and
+ * restored binary values are read-only slices of the mapping. Superseded records are removed by
+ * compacting the file into a new one, which happens automatically when the file would need to
+ * grow while at least half of it is garbage.
+ *
+ * Values that are committed together are appended as a single batch, which starts with the length
+ * and the CRC32 of its records. Incomplete or corrupted batches are ignored as a whole.
+ *
+ * Written values are visible to the operating system immediately and survive the process being
+ * killed. Use {@link #flush()} to make sure they also survive a power loss. The file must only be
+ * accessed by a single instance of this provider.
+ */
+public class MappedFilePreferencesProvider extends BasePreferencesProvider implements Closeable {
+
+    public static final int DEFAULT_INITIAL_SIZE = 16 * 1024;
+
+    private static final int MAGIC = 0x52585046; // "RXPF"
+    private static final byte VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 5;
+
+    /**
+     * Type (1 byte), key length (4 bytes) and value length (4 bytes), followed by the key and the
+     * value. The type is written last, so that incomplete records are ignored.
+     */
+    private static final int RECORD_HEADER_SIZE = 9;
+
+    /**
+     * Follows the last record, types of records are defined by {@link StoredValueEncoding}.
+     */
+    private static final byte TYPE_END = 0;
+
+    /**
+     * Precedes the records of a batch. Uses the record header, with the length of the records
+     * instead of the key length and their CRC32 instead of the value length. The type is written
+     * last, so that incomplete batches are ignored.
+     */
+    private static final byte TYPE_BATCH = -1;
+
+    @NonNull
+    private final File file;
+
+    private final int initialSize;
+
+    /**
+     * Offsets of the latest record of every key. Guarded by this instance, as are all other
+     * mutable fields.
+     */
+    @NonNull
+    private final Map<String, Entry> index;
+
+    @NonNull
+    private FileChannel channel;
+
+    @NonNull
+    private MappedByteBuffer mapping;
+
+    private int writePosition;
+
+    /**
+     * Size of all superseded records, which will be removed when compacting.
+     */
+    private int garbageSize;
+
+    public MappedFilePreferencesProvider(@NonNull File file) throws PreferenceProviderException {
+        this(file, DEFAULT_INITIAL_SIZE, new GsonSerializer());
+    }
+
+    public MappedFilePreferencesProvider(@NonNull File file, @NonNull Serializer serializer) throws PreferenceProviderException {
+        this(file, DEFAULT_INITIAL_SIZE, serializer);
+    }
+
+    public MappedFilePreferencesProvider(@NonNull File file, int initialSize, @NonNull Serializer serializer) throws PreferenceProviderException {
+        super(serializer);
+        this.file = file;
+        this.initialSize = Math.max(initialSize, FILE_HEADER_SIZE + 1);
+        this.index = new HashMap<>();
+        this.nativeValuesEnabled = true;
+        open();
+    }
+
+    /**
+     * Maps the file and reads the index from its records. Reading stops at the first incomplete
+     * or invalid record or batch, following records will be overwritten.
+     */
+    private synchronized void open() throws PreferenceProviderException {
+        try {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Preferences file is too large");
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, initialSize));
+
+            if (size == 0) {
+                mapping.putInt(0, MAGIC);
+                mapping.put(4, VERSION);
+                mapping.put(FILE_HEADER_SIZE, TYPE_END);
+                writePosition = FILE_HEADER_SIZE;
+                return;
+            }
+            if (size < FILE_HEADER_SIZE || mapping.getInt(0) != MAGIC) {
+                throw new IOException("Not a preferences file: " + file);
+            }
+            if (mapping.get(4) != VERSION) {
+                throw new IOException("Unsupported preferences file version: " + mapping.get(4));
+            }
+
+            int position = FILE_HEADER_SIZE;
+            while (position < size) {
+                if (mapping.get(position) == TYPE_BATCH) {
+                    List<Entry> entries = readBatch(position, (int) size);
+                    if (entries == null) {
+                        break;
+                    }
+                    for (Entry entry : entries) {
+                        updateIndex(readKey(entry), entry);
+                    }
+                    garbageSize += RECORD_HEADER_SIZE;
+                    position += RECORD_HEADER_SIZE + mapping.getInt(position + 1);
+                } else {
+                    Entry entry = readEntry(position, (int) size);
+                    if (entry == null) {
+                        break;
+                    }
+                    updateIndex(readKey(entry), entry);
+                    position += entry.getRecordSize();
+                }
+            }
+            writePosition = position;
+            ensureCapacity(1);
+            mapping.put(writePosition, TYPE_END);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new PreferenceProviderException("Unable to open preferences file: " + file, e);
+        }
+    }
+
+    @Override
+    protected Maybe<String> restoreIfAvailable(@NonNull String key) {
+        return subscribeOnIoScheduler(Maybe.fromCallable(() -> readStoredValue(key, String.class))
+                .map(this::toStoredString));
+    }
+
+    @Nullable
+    @Override
+    protected synchronized Object readStoredValue(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        Entry entry = index.get(key);
+        return entry != null ? readValue(entry) : null;
+    }
+
+    @NonNull
+    @Override
+    protected synchronized Map<String, Object> readStoredValues(@NonNull Map<String, java.lang.reflect.Type> valueTypes) {
+        Map<String, Object> storedValues = new LinkedHashMap<>();
+        for (String key : valueTypes.keySet()) {
+            Entry entry = index.get(key);
+            if (entry != null) {
+                storedValues.put(key, readValue(entry));
+            }
+        }
+        return storedValues;
+    }
+
+    @Override
+    public Completable persist(@NonNull String key, String value) {
+        return subscribeOnIoScheduler(Completable.fromAction(() -> writeStoredValue(key, value)));
+    }
+
+    @Override
+    protected void writeStoredValue(@NonNull String key, @NonNull Object storedValue) throws Exception {
+        writeStoredValues(Collections.singletonMap(key, storedValue), Collections.emptyList());
+    }
+
+    @Override
+    protected void writeStoredValues(@NonNull Map<String, Object> storedValues, @NonNull Collection<String> keysToDelete) throws Exception {
+        List<Record> records = new ArrayList<>(keysToDelete.size() + storedValues.size());
+        for (String key : keysToDelete) {
+            records.add(new Record(key, StoredValueEncoding.TYPE_DELETED, ByteBuffer.allocate(0)));
+        }
+        for (Map.Entry<String, Object> entry : storedValues.entrySet()) {
+            Object storedValue = entry.getValue();
+            records.add(new Record(entry.getKey(), StoredValueEncoding.getType(storedValue), StoredValueEncoding.encode(storedValue)));
+        }
+
+        synchronized (this) {
+            if (!channel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+            List<Record> recordsToWrite = new ArrayList<>(records.size());
+            long requiredSize = RECORD_HEADER_SIZE + 1;
+            for (Record record : records) {
+                if (record.type != StoredValueEncoding.TYPE_DELETED || index.containsKey(record.key)) {
+                    recordsToWrite.add(record);
+                    requiredSize += record.getSize();
+                }
+            }
+            ensureCapacity(requiredSize);
+            if (recordsToWrite.size() == 1) {
+                writeRecord(recordsToWrite.get(0));
+            } else if (!recordsToWrite.isEmpty()) {
+                writeBatch(recordsToWrite);
+            }
+        }
+    }
+
+    @Override
+    public Observable<String> getKeys() {
+        return subscribeOnIoScheduler(Observable.defer(() -> Observable.fromIterable(readKeys())));
+    }
+
+    @NonNull
+    @Override
+    protected synchronized Collection<String> readKeys() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    @Override
+    public Single<Boolean> containsKey(@NonNull String key) {
+        return subscribeOnIoScheduler(Single.fromCallable(() -> containsStoredValue(key)));
+    }
+
+    @Override
+    protected synchronized boolean containsStoredValue(@NonNull String key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public Completable delete(@NonNull String key) {
+        return subscribeOnIoScheduler(Completable.fromAction(() -> commitValues(Collections.emptyMap(), Collections.singletonList(key))));
+    }
+
+    /**
+     * Forces all written values to be written to the storage device.
+     */
+    public Completable flush() {
+        return subscribeOnIoScheduler(Completable.fromAction(() -> {
+            synchronized (this) {
+                mapping.force();
+            }
+        }));
+    }
+
+    /**
+     * Writes the latest record of every key to a new file, which replaces the current file.
+     */
+    public Completable compact() {
+        return subscribeOnIoScheduler(Completable.fromAction(() -> {
+            synchronized (this) {
+                compact(1);
+            }
+        }).onErrorResumeNext(throwable -> Completable.error(new PreferenceProviderException("Unable to compact preferences file: " + file, throwable))));
+    }
+
+    /**
+     * Closes the file. Values that have been restored before remain readable.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private static void closeQuietly(@Nullable FileChannel channel) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // ignore, the file has been handled or the original exception is more relevant
+        }
+    }
+
+    /**
+     * Appends the specified record, which needs to fit into the mapping. The type is written after
+     * the rest of the record and the end marker that follows it.
+     */
+    private void writeRecord(@NonNull Record record) {
+        int position = writePosition;
+        ByteBuffer buffer = mapping.duplicate();
+        buffer.position(position + 1);
+        buffer.putInt(record.keyBytes.length)
+                .putInt(record.value.remaining())
+                .put(record.keyBytes)
+                .put(record.value.duplicate())
+                .put(TYPE_END);
+        mapping.put(position, record.type);
+
+        Entry entry = new Entry(record.type, position, record.keyBytes.length, record.value.remaining());
+        updateIndex(record.key, entry);
+        writePosition += entry.getRecordSize();
+    }
+
+    /**
+     * Appends the specified records as a batch, which needs to fit into the mapping. The type of
+     * the batch header is written after all records and the end marker that follows them.
+     */
+    private void writeBatch(@NonNull List<Record> records) {
+        int batchPosition = writePosition;
+        int recordsPosition = batchPosition + RECORD_HEADER_SIZE;
+        List<Entry> entries = new ArrayList<>(records.size());
+        ByteBuffer buffer = mapping.duplicate();
+        buffer.position(recordsPosition);
+        for (Record record : records) {
+            entries.add(new Entry(record.type, buffer.position(), record.keyBytes.length, record.value.remaining()));
+            buffer.put(record.type)
+                    .putInt(record.keyBytes.length)
+                    .putInt(record.value.remaining())
+                    .put(record.keyBytes)
+                    .put(record.value.duplicate());
+        }
+        int recordsLength = buffer.position() - recordsPosition;
+        buffer.put(TYPE_END);
+        mapping.putInt(batchPosition + 1, recordsLength);
+        mapping.putInt(batchPosition + 5, getChecksum(recordsPosition, recordsLength));
+        mapping.put(batchPosition, TYPE_BATCH);
+
+        for (int i = 0; i < records.size(); i++) {
+            updateIndex(records.get(i).key, entries.get(i));
+        }
+        garbageSize += RECORD_HEADER_SIZE;
+        writePosition = recordsPosition + recordsLength;
+    }
+
+    private void updateIndex(@NonNull String key, @NonNull Entry entry) {
+        Entry previousEntry = entry.type == StoredValueEncoding.TYPE_DELETED ? index.remove(key) : index.put(key, entry);
+        if (previousEntry != null) {
+            garbageSize += previousEntry.getRecordSize();
+        }
+        if (entry.type == StoredValueEncoding.TYPE_DELETED) {
+            garbageSize += entry.getRecordSize();
+        }
+    }
+
+    /**
+     * Makes sure that the specified number of bytes can be appended, either by compacting the file
+     * (if at least half of it is garbage) or by growing it.
+     */
+    private void ensureCapacity(long requiredSize) throws IOException {
+        if (writePosition + requiredSize <= mapping.capacity()) {
+            return;
+        }
+        if (garbageSize >= writePosition - FILE_HEADER_SIZE - garbageSize) {
+            compact(requiredSize);
+            if (writePosition + requiredSize <= mapping.capacity()) {
+                return;
+            }
+        }
+        mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, getMappingSize(mapping.capacity(), writePosition + requiredSize));
+    }
+
+    private void compact(long requiredSize) throws IOException {
+        int liveSize = writePosition - FILE_HEADER_SIZE - garbageSize;
+        long size = getMappingSize(initialSize, FILE_HEADER_SIZE + liveSize + requiredSize);
+        File compactedFile = new File(file.getPath() + ".compact");
+        FileChannel compactedChannel = new RandomAccessFile(compactedFile, "rw").getChannel();
+        MappedByteBuffer compactedMapping;
+        Map<String, Entry> compactedIndex = new HashMap<>();
+        try {
+            compactedChannel.truncate(0);
+            compactedMapping = compactedChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            compactedMapping.putInt(MAGIC);
+            compactedMapping.put(VERSION);
+            for (Map.Entry<String, Entry> indexEntry : index.entrySet()) {
+                Entry entry = indexEntry.getValue();
+                ByteBuffer record = mapping.duplicate();
+                record.position(entry.offset);
+                record.limit(entry.offset + entry.getRecordSize());
+                compactedIndex.put(indexEntry.getKey(), new Entry(entry.type, compactedMapping.position(), entry.keyLength, entry.valueLength));
+                compactedMapping.put(record);
+            }
+            compactedMapping.put(TYPE_END);
+            compactedMapping.force();
+
+            if (!compactedFile.renameTo(file)) {
+                throw new IOException("Unable to replace preferences file: " + file);
+            }
+        } catch (IOException e) {
+            closeQuietly(compactedChannel);
+            compactedFile.delete();
+            throw e;
+        }
+
+        // previously restored slices of the old mapping remain valid
+        closeQuietly(channel);
+        channel = compactedChannel;
+        mapping = compactedMapping;
+        index.clear();
+        index.putAll(compactedIndex);
+        writePosition = FILE_HEADER_SIZE + liveSize;
+        garbageSize = 0;
+    }
+
+    private static long getMappingSize(long currentSize, long requiredSize) throws IOException {
+        long size = Math.max(currentSize, 1);
+        while (size < requiredSize) {
+            size *= 2;
+        }
+        if (size > Integer.MAX_VALUE) {
+            if (requiredSize > Integer.MAX_VALUE) {
+                throw new IOException("Preferences file is too large");
+            }
+            size = Integer.MAX_VALUE;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the entry of the complete and valid record at the specified position, or {@code
+     * null} if there is none before the specified limit.
+     */
+    @Nullable
+    private Entry readEntry(int position, int limit) {
+        if (position + RECORD_HEADER_SIZE > limit) {
+            return null;
+        }
+        byte type = mapping.get(position);
+        int keyLength = mapping.getInt(position + 1);
+        int valueLength = mapping.getInt(position + 5);
+        if (!StoredValueEncoding.isValid(type, valueLength) || keyLength < 0) {
+            return null;
+        }
+        if ((long) position + RECORD_HEADER_SIZE + keyLength + valueLength > limit) {
+            return null;
+        }
+        return new Entry(type, position, keyLength, valueLength);
+    }
+
+    /**
+     * Returns the entries of the records in the complete and valid batch at the specified
+     * position, or {@code null} if there is none before the specified limit.
+     */
+    @Nullable
+    private List<Entry> readBatch(int position, int limit) {
+        if (position + RECORD_HEADER_SIZE > limit) {
+            return null;
+        }
+        int recordsPosition = position + RECORD_HEADER_SIZE;
+        int recordsLength = mapping.getInt(position + 1);
+        if (recordsLength < 0 || (long) recordsPosition + recordsLength > limit) {
+            return null;
+        }
+        if (getChecksum(recordsPosition, recordsLength) != mapping.getInt(position + 5)) {
+            return null;
+        }
+        List<Entry> entries = new ArrayList<>();
+        int recordPosition = recordsPosition;
+        while (recordPosition < recordsPosition + recordsLength) {
+            Entry entry = readEntry(recordPosition, recordsPosition + recordsLength);
+            if (entry == null) {
+                return null;
+            }
+            entries.add(entry);
+            recordPosition += entry.getRecordSize();
+        }
+        return entries;
+    }
+
+    private int getChecksum(int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(readBytes(offset, length));
+        return (int) crc32.getValue();
+    }
+
+    @NonNull
+    private String readKey(@NonNull Entry entry) {
+        return new String(readBytes(entry.offset + RECORD_HEADER_SIZE, entry.keyLength), StandardCharsets.UTF_8);
+    }
+
+    @NonNull
+    private Object readValue(@NonNull Entry entry) {
+        ByteBuffer value = mapping.asReadOnlyBuffer();
+        value.position(entry.getValueOffset());
+        value.limit(entry.getValueOffset() + entry.valueLength);
+        return StoredValueEncoding.decode(entry.type, value);
+    }
+
+    @NonNull
+    private byte[] readBytes(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = mapping.duplicate();
+        buffer.position(offset);
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    protected boolean supportsNativeValues() {
+        return true;
+    }
+
+    @Override
+    protected boolean supportsBinaryValues() {
+        return true;
+    }
+
+    @NonNull
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of bytes used by records, including superseded records.
+     */
+    public synchronized int getUsedSize() {
+        return writePosition;
+    }
+
+    /**
+     * Returns the number of bytes used by superseded records.
+     */
+    public synchronized int getGarbageSize() {
+        return garbageSize;
+    }
+
+    /**
+     * Value that should be appended to the file, encoded before acquiring the lock.
+     */
+    private static final class Record {
+
+        @NonNull
+        private final String key;
+
+        @NonNull
+        private final byte[] keyBytes;
+
+        private final byte type;
+
+        @NonNull
+        private final ByteBuffer value;
+
+        private Record(@NonNull String key, byte type, @NonNull ByteBuffer value) {
+            this.key = key;
+            this.keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            this.type = type;
+            this.value = value;
+        }
+
+        private long getSize() {
+            return (long) RECORD_HEADER_SIZE + keyBytes.length + value.remaining();
+        }
+
+    }
+
+    /**
+     * Location of a record in the mapping.
+     */
+    private static final class Entry {
+
+        private final byte type;
+        private final int offset;
+        private final int keyLength;
+        private final int valueLength;
+
+        private Entry(byte type, int offset, int keyLength, int valueLength) {
+            this.type = type;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        private int getValueOffset() {
+            return offset + RECORD_HEADER_SIZE + keyLength;
+        }
+
+        private int getRecordSize() {
+            return RECORD_HEADER_SIZE + keyLength + valueLength;
+        }
+
+    }
+
+}
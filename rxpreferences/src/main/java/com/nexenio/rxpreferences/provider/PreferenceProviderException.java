@@ -19,4 +19,18 @@ public class PreferenceProviderException extends RxPreferencesException {
         super(cause);
     }
 
+    /**
+     * Returns the {@link PreferenceProviderException} that caused the specified exception, e.g.
+     * when it got wrapped by a blocking call, or a new one with the specified message.
+     */
+    static PreferenceProviderException from(Throwable throwable, String message) {
+        if (throwable instanceof PreferenceProviderException) {
+            return (PreferenceProviderException) throwable;
+        } else if (throwable.getCause() instanceof PreferenceProviderException) {
+            return (PreferenceProviderException) throwable.getCause();
+        } else {
+            return new PreferenceProviderException(message, throwable);
+        }
+    }
+
 }
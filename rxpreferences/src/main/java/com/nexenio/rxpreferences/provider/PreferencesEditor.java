@@ -0,0 +1,65 @@
+package com.nexenio.rxpreferences.provider;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import io.reactivex.rxjava3.core.Completable;
+
+/**
+ * Collects changes for multiple preferences and commits them in a single batch using {@link
+ * PreferencesProvider#commit(Map, java.util.Collection)}. If the same key is changed multiple
+ * times, only the last change will be committed.
+ *
+ * Not thread-safe, should be used by one thread only.
+ */
+public class PreferencesEditor {
+
+    @NonNull
+    private final PreferencesProvider provider;
+
+    @NonNull
+    private final Map<String, Object> valuesToPersist;
+
+    @NonNull
+    private final Set<String> keysToDelete;
+
+    public PreferencesEditor(@NonNull PreferencesProvider provider) {
+        this.provider = provider;
+        this.valuesToPersist = new LinkedHashMap<>();
+        this.keysToDelete = new LinkedHashSet<>();
+    }
+
+    public <Type> PreferencesEditor persist(@NonNull String key, @NonNull Type value) {
+        keysToDelete.remove(key);
+        valuesToPersist.put(key, value);
+        return this;
+    }
+
+    public PreferencesEditor persistAll(@NonNull Map<String, ?> values) {
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            persist(entry.getKey(), entry.getValue());
+        }
+        return this;
+    }
+
+    public PreferencesEditor delete(@NonNull String key) {
+        valuesToPersist.remove(key);
+        keysToDelete.add(key);
+        return this;
+    }
+
+    /**
+     * Commits the changes collected when subscribing.
+     */
+    public Completable commit() {
+        return Completable.defer(() -> provider.commit(
+                new LinkedHashMap<>(valuesToPersist),
+                new ArrayList<>(keysToDelete)
+        ));
+    }
+
+}
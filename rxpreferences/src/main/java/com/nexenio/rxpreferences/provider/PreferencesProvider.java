@@ -1,7 +1,15 @@
 package com.nexenio.rxpreferences.provider;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import androidx.annotation.NonNull;
 import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
@@ -27,6 +35,20 @@ public interface PreferencesProvider {
      */
     <Type> Single<Type> restore(@NonNull String key, @NonNull Class<Type> typeClass);
 
+    /**
+     * Same as {@link #restore(String, Class)}, but for generic types like {@code List<Foo>}. The
+     * type can be obtained from a type token, e.g. {@code new TypeToken<List<Foo>>() {}.getType()}.
+     * The default implementation only supports raw classes and should be overridden by providers
+     * that are able to handle generic types.
+     */
+    default <Type> Single<Type> restore(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        if (valueType instanceof Class) {
+            return restore(key, (Class<Type>) valueType);
+        } else {
+            return Single.error(new PreferenceProviderException("Generic types are not supported: " + valueType));
+        }
+    }
+
     /**
      * Should emit the previously persisted value for the specified key, or the specified default if
      * no value is available.
@@ -36,12 +58,54 @@ public interface PreferencesProvider {
      */
     <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue);
 
+    /**
+     * Same as {@link #restoreOrDefault(String, Object)}, but for generic types that can't be
+     * inferred from the default value. The default implementation is based on {@link
+     * #restoreIfAvailable(String, java.lang.reflect.Type)}.
+     */
+    default <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        return this.<Type>restoreIfAvailable(key, valueType)
+                .defaultIfEmpty(defaultValue);
+    }
+
     /**
      * Convenience method that should combine {@link #restoreOrDefault(String, Object)} and {@link
      * #getChanges(String, Class)}.
      */
     <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue);
 
+    /**
+     * Same as {@link #restoreOrDefaultAndGetChanges(String, Object)}, but for generic types that
+     * can't be inferred from the default value.
+     */
+    default <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        return restoreOrDefault(key, defaultValue, valueType)
+                .toObservable()
+                .mergeWith(this.<Type>getChanges(key, valueType))
+                .distinctUntilChanged();
+    }
+
+    /**
+     * Same as {@link #restoreOrDefaultAndGetChanges(String, Object)}, but coalesces changes using
+     * the specified {@link ChangeCoalescing} for subscribers that can't keep up.
+     */
+    default <Type> Flowable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull ChangeCoalescing coalescing) {
+        return restoreOrDefaultAndGetChanges(key, defaultValue, defaultValue.getClass(), coalescing);
+    }
+
+    /**
+     * Same as {@link #restoreOrDefaultAndGetChanges(String, Object, ChangeCoalescing)}, but for
+     * generic types that can't be inferred from the default value. Only the changes are coalesced,
+     * the restored value is emitted right away.
+     */
+    default <Type> Flowable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType, @NonNull ChangeCoalescing coalescing) {
+        return restoreOrDefault(key, defaultValue, valueType)
+                .toFlowable()
+                .mergeWith(this.<Type>getChanges(key, valueType, coalescing))
+                .onBackpressureLatest()
+                .distinctUntilChanged();
+    }
+
     /**
      * Should emit the previously persisted value for the specified key, or complete empty of no
      * value is available.
@@ -51,12 +115,69 @@ public interface PreferencesProvider {
      */
     <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull Class<Type> typeClass);
 
+    /**
+     * Same as {@link #restoreIfAvailable(String, Class)}, but for generic types. The default
+     * implementation only supports raw classes.
+     */
+    default <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        if (valueType instanceof Class) {
+            return restoreIfAvailable(key, (Class<Type>) valueType);
+        } else {
+            return Maybe.error(new PreferenceProviderException("Generic types are not supported: " + valueType));
+        }
+    }
+
     /**
      * Convenience method that should combine {@link #restoreIfAvailable(String, Class)} and {@link
      * #getChanges(String, Class)}.
      */
     <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull Class<Type> typeClass);
 
+    /**
+     * Same as {@link #restoreIfAvailableAndGetChanges(String, Class)}, but for generic types.
+     */
+    default <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return this.<Type>restoreIfAvailable(key, valueType)
+                .toObservable()
+                .mergeWith(this.<Type>getChanges(key, valueType))
+                .distinctUntilChanged();
+    }
+
+    /**
+     * Should emit the previously persisted values for the specified keys, restored from a single
+     * consistent snapshot. Keys for which no value is available should be omitted.
+     *
+     * Should emit a {@link PreferenceProviderException} if a value is available but has the wrong
+     * type.
+     *
+     * The default implementation restores the values one by one and should be overridden by
+     * providers that are able to read them from a single snapshot.
+     */
+    default <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull Class<Type> typeClass) {
+        return restoreAll(keys, (java.lang.reflect.Type) typeClass);
+    }
+
+    /**
+     * Same as {@link #restoreAll(Collection, Class)}, but for generic types.
+     */
+    default <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull java.lang.reflect.Type valueType) {
+        return Observable.fromIterable(new ArrayList<>(keys))
+                .concatMapMaybe(key -> this.<Type>restoreIfAvailable(key, valueType)
+                        .map(value -> new AbstractMap.SimpleImmutableEntry<>(key, value)))
+                .collect(LinkedHashMap::new, (values, entry) -> values.put(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Same as {@link #restoreAll(Collection, Class)}, but for values of different types. The
+     * specified map should contain the expected type for each key.
+     */
+    default Single<Map<String, Object>> restoreAll(@NonNull Map<String, Class<?>> typeClasses) {
+        return Observable.fromIterable(new ArrayList<>(typeClasses.entrySet()))
+                .concatMapMaybe(typeClass -> this.<Object>restoreIfAvailable(typeClass.getKey(), (java.lang.reflect.Type) typeClass.getValue())
+                        .map(value -> new AbstractMap.SimpleImmutableEntry<>(typeClass.getKey(), value)))
+                .collect(LinkedHashMap::new, (values, entry) -> values.put(entry.getKey(), entry.getValue()));
+    }
+
     /**
      * Should persist the specified value for the specified key.
      */
@@ -67,12 +188,58 @@ public interface PreferencesProvider {
      */
     <Type> Completable persistIfNotYetAvailable(@NonNull String key, @NonNull Type value);
 
+    /**
+     * Should persist all specified values at once. Changes should only be emitted after all values
+     * have been persisted.
+     *
+     * The default implementation persists the values one by one and should be overridden by
+     * providers that are able to persist them at once.
+     */
+    default Completable persistAll(@NonNull Map<String, ?> values) {
+        List<Completable> persistCompletables = new ArrayList<>(values.size());
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            persistCompletables.add(persist(entry.getKey(), entry.getValue()));
+        }
+        return Completable.concat(persistCompletables);
+    }
+
     /**
      * Should emit the current value every time a value is persisted for the specified key. Should
      * never complete.
      */
     <Type> Observable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass);
 
+    /**
+     * Same as {@link #getChanges(String, Class)}, but for generic types. The default implementation
+     * only supports raw classes.
+     */
+    default <Type> Observable<Type> getChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        if (valueType instanceof Class) {
+            return getChanges(key, (Class<Type>) valueType);
+        } else {
+            return Observable.error(new PreferenceProviderException("Generic types are not supported: " + valueType));
+        }
+    }
+
+    /**
+     * Same as {@link #getChanges(String, Class)}, but coalesces changes using the specified {@link
+     * ChangeCoalescing} instead of buffering them for subscribers that can't keep up. Values that
+     * need to be deserialized should only be deserialized if they are actually emitted.
+     *
+     * The default implementation coalesces the restored values emitted by {@link
+     * #getChanges(String, Class)}.
+     */
+    default <Type> Flowable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass, @NonNull ChangeCoalescing coalescing) {
+        return getChanges(key, (java.lang.reflect.Type) typeClass, coalescing);
+    }
+
+    /**
+     * Same as {@link #getChanges(String, Class, ChangeCoalescing)}, but for generic types.
+     */
+    default <Type> Flowable<Type> getChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType, @NonNull ChangeCoalescing coalescing) {
+        return coalescing.apply(this.<Type>getChanges(key, valueType));
+    }
+
     /**
      * Should delete the value for the specified key. Should do nothing if no value is available.
      */
@@ -83,4 +250,51 @@ public interface PreferencesProvider {
      */
     Completable deleteAll();
 
+    /**
+     * Should delete the values for the specified keys at once. Should ignore keys for which no value
+     * is available.
+     *
+     * The default implementation deletes the values one by one and should be overridden by
+     * providers that are able to delete them at once.
+     */
+    default Completable deleteAll(@NonNull Collection<String> keys) {
+        List<Completable> deleteCompletables = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            deleteCompletables.add(delete(key));
+        }
+        return Completable.concat(deleteCompletables);
+    }
+
+    /**
+     * Should delete the values for the specified keys and persist the specified values in a single
+     * batch, which either succeeds or fails as a whole. Deletions should be applied before values
+     * are persisted. Changes should only be emitted after the batch has been persisted.
+     *
+     * The default implementation is based on {@link #deleteAll(Collection)} and {@link
+     * #persistAll(Map)}, so it's not atomic and should be overridden by providers that are able to
+     * write a single batch.
+     */
+    default Completable commit(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) {
+        return deleteAll(keysToDelete)
+                .andThen(persistAll(valuesToPersist));
+    }
+
+    /**
+     * Should return a new {@link PreferencesEditor} that collects changes until they get committed
+     * using {@link #commit(Map, Collection)}.
+     */
+    default PreferencesEditor edit() {
+        return new PreferencesEditor(this);
+    }
+
+    /**
+     * Should return a {@link BlockingPreferencesProvider} for the same preferences, for callers
+     * that would otherwise block on the reactive methods. The default implementation blocks on
+     * the reactive methods and should be overridden by providers that are able to access values
+     * synchronously.
+     */
+    default BlockingPreferencesProvider blocking() {
+        return new RxBlockingPreferencesProvider(this);
+    }
+
 }
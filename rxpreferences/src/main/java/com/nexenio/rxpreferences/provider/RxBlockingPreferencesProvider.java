@@ -0,0 +1,187 @@
+package com.nexenio.rxpreferences.provider;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * {@link BlockingPreferencesProvider} that blocks on the reactive methods of any {@link
+ * PreferencesProvider}. Used by providers that can't access their storage synchronously, like
+ * {@link WrappedPreferencesProvider}s that transform values.
+ */
+public class RxBlockingPreferencesProvider implements BlockingPreferencesProvider {
+
+    @NonNull
+    private final PreferencesProvider provider;
+
+    public RxBlockingPreferencesProvider(@NonNull PreferencesProvider provider) {
+        this.provider = provider;
+    }
+
+    @NonNull
+    @Override
+    public Set<String> getKeys() throws PreferenceProviderException {
+        try {
+            return new HashSet<>(provider.getKeys().toList().blockingGet());
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to get keys");
+        }
+    }
+
+    @Override
+    public boolean containsKey(@NonNull String key) throws PreferenceProviderException {
+        try {
+            return provider.containsKey(key).blockingGet();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to check key: " + key);
+        }
+    }
+
+    @NonNull
+    @Override
+    public <Type> Type restore(@NonNull String key, @NonNull Class<Type> typeClass) throws PreferenceProviderException {
+        try {
+            return provider.restore(key, typeClass).blockingGet();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to restore preference for key: " + key);
+        }
+    }
+
+    @NonNull
+    @Override
+    public <Type> Type restore(@NonNull String key, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException {
+        try {
+            return provider.<Type>restore(key, valueType).blockingGet();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to restore preference for key: " + key);
+        }
+    }
+
+    @NonNull
+    @Override
+    public <Type> Type restoreOrDefault(@NonNull String key, @NonNull Type defaultValue) throws PreferenceProviderException {
+        try {
+            return provider.restoreOrDefault(key, defaultValue).blockingGet();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to restore preference for key: " + key);
+        }
+    }
+
+    @NonNull
+    @Override
+    public <Type> Type restoreOrDefault(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException {
+        try {
+            return provider.restoreOrDefault(key, defaultValue, valueType).blockingGet();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to restore preference for key: " + key);
+        }
+    }
+
+    @Nullable
+    @Override
+    public <Type> Type restoreIfAvailable(@NonNull String key, @NonNull Class<Type> typeClass) throws PreferenceProviderException {
+        try {
+            return provider.restoreIfAvailable(key, typeClass).blockingGet();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to restore preference for key: " + key);
+        }
+    }
+
+    @Nullable
+    @Override
+    public <Type> Type restoreIfAvailable(@NonNull String key, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException {
+        try {
+            return provider.<Type>restoreIfAvailable(key, valueType).blockingGet();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to restore preference for key: " + key);
+        }
+    }
+
+    @NonNull
+    @Override
+    public <Type> Map<String, Type> restoreAll(@NonNull Collection<String> keys, @NonNull Class<Type> typeClass) throws PreferenceProviderException {
+        try {
+            return provider.restoreAll(keys, typeClass).blockingGet();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to restore preferences");
+        }
+    }
+
+    @NonNull
+    @Override
+    public Map<String, Object> restoreAll(@NonNull Map<String, Class<?>> typeClasses) throws PreferenceProviderException {
+        try {
+            return provider.restoreAll(typeClasses).blockingGet();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to restore preferences");
+        }
+    }
+
+    @Override
+    public <Type> void persist(@NonNull String key, @NonNull Type value) throws PreferenceProviderException {
+        try {
+            provider.persist(key, value).blockingAwait();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to persist preference for key: " + key);
+        }
+    }
+
+    @Override
+    public <Type> void persistIfNotYetAvailable(@NonNull String key, @NonNull Type value) throws PreferenceProviderException {
+        try {
+            provider.persistIfNotYetAvailable(key, value).blockingAwait();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to persist preference for key: " + key);
+        }
+    }
+
+    @Override
+    public void persistAll(@NonNull Map<String, ?> values) throws PreferenceProviderException {
+        try {
+            provider.persistAll(values).blockingAwait();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to commit preferences");
+        }
+    }
+
+    @Override
+    public void delete(@NonNull String key) throws PreferenceProviderException {
+        try {
+            provider.delete(key).blockingAwait();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to delete preference for key: " + key);
+        }
+    }
+
+    @Override
+    public void deleteAll() throws PreferenceProviderException {
+        try {
+            provider.deleteAll().blockingAwait();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to delete preferences");
+        }
+    }
+
+    @Override
+    public void deleteAll(@NonNull Collection<String> keys) throws PreferenceProviderException {
+        try {
+            provider.deleteAll(keys).blockingAwait();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to delete preferences");
+        }
+    }
+
+    @Override
+    public void commit(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) throws PreferenceProviderException {
+        try {
+            provider.commit(valuesToPersist, keysToDelete).blockingAwait();
+        } catch (RuntimeException e) {
+            throw PreferenceProviderException.from(e, "Unable to commit preferences");
+        }
+    }
+
+}
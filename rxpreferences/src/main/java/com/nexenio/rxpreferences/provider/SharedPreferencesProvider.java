@@ -5,93 +5,535 @@ import android.content.Context;
 import android.content.SharedPreferences;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 
-@SuppressWarnings("SynchronizeOnNonFinalField")
 public class SharedPreferencesProvider extends BasePreferencesProvider {
 
+    public static final long DEFAULT_DEBOUNCE_DELAY = TimeUnit.SECONDS.toMillis(1);
+    public static final int DEFAULT_DEBOUNCE_MAXIMUM_PENDING_WRITES = 100;
+
+    /**
+     * The shared preferences that are currently used. May be {@code null} in subclasses that
+     * create them lazily, use {@link #requireSharedPreferences()} before accessing them.
+     */
+    protected volatile SharedPreferences sharedPreferences;
+
+    /**
+     * Guards the pending writes and all access to the shared preferences, so that subclasses can
+     * replace the shared preferences while they are in use.
+     */
+    @NonNull
+    private final Object lock = new Object();
+
     @NonNull
-    protected SharedPreferences sharedPreferences;
+    protected DurabilityMode durabilityMode = DurabilityMode.COMMIT;
+
+    protected long debounceDelay = DEFAULT_DEBOUNCE_DELAY;
+
+    protected int debounceMaximumPendingWrites = DEFAULT_DEBOUNCE_MAXIMUM_PENDING_WRITES;
+
+    /**
+     * Values that have been persisted using {@link DurabilityMode#DEBOUNCE} but have not been
+     * passed to the shared preferences yet. A {@code null} value marks a pending deletion. Guarded
+     * by the lock.
+     */
+    @NonNull
+    protected final Map<String, Object> pendingWrites;
+
+    /**
+     * Single listener that dispatches changes made outside of this provider to the change
+     * publishers of the changed keys. Needs to be referenced strongly, as the shared preferences
+     * only keep weak references to their listeners.
+     */
+    @NonNull
+    private final SharedPreferences.OnSharedPreferenceChangeListener sharedPreferenceChangeListener;
+
+    private boolean flushScheduled;
 
     public SharedPreferencesProvider(@NonNull Context context) {
         this(context.getSharedPreferences(context.getPackageName(), Context.MODE_PRIVATE));
     }
 
     public SharedPreferencesProvider(@NonNull SharedPreferences sharedPreferences) {
+        this();
         this.sharedPreferences = sharedPreferences;
+        sharedPreferences.registerOnSharedPreferenceChangeListener(sharedPreferenceChangeListener);
+    }
+
+    /**
+     * Creates a provider without shared preferences, for subclasses that create them lazily. Such
+     * subclasses need to override {@link #requireSharedPreferences()} and set the shared
+     * preferences using {@link #setSharedPreferences(SharedPreferences)} once they are available.
+     */
+    protected SharedPreferencesProvider() {
+        this.pendingWrites = new LinkedHashMap<>();
+        this.sharedPreferenceChangeListener = this::onSharedPreferenceChanged;
+    }
+
+    /**
+     * Returns the shared preferences, waiting until they are available if they are created
+     * lazily. Called before the shared preferences are accessed, without holding the lock.
+     */
+    @NonNull
+    protected SharedPreferences requireSharedPreferences() {
+        return sharedPreferences;
     }
 
     @Override
     public Observable<String> getKeys() {
-        return Observable.defer(() -> {
-            Set<String> keys;
-            synchronized (sharedPreferences) {
-                keys = new HashSet<>(sharedPreferences.getAll().keySet());
+        return subscribeOnIoScheduler(Observable.defer(() -> Observable.fromIterable(readKeys())));
+    }
+
+    @NonNull
+    @Override
+    protected Collection<String> readKeys() {
+        requireSharedPreferences();
+        Set<String> keys;
+        synchronized (lock) {
+            keys = new HashSet<>(sharedPreferences.getAll().keySet());
+            for (Map.Entry<String, Object> pendingWrite : pendingWrites.entrySet()) {
+                if (pendingWrite.getValue() != null) {
+                    keys.add(pendingWrite.getKey());
+                } else {
+                    keys.remove(pendingWrite.getKey());
+                }
             }
-            return Observable.fromIterable(keys);
-        });
+        }
+        return keys;
     }
 
     @Override
     public Single<Boolean> containsKey(@NonNull String key) {
-        return Single.fromCallable(() -> {
-            boolean containsKey;
-            synchronized (sharedPreferences) {
-                containsKey = sharedPreferences.contains(key);
+        return subscribeOnIoScheduler(Single.fromCallable(() -> containsStoredValue(key)));
+    }
+
+    @Override
+    protected boolean containsStoredValue(@NonNull String key) {
+        requireSharedPreferences();
+        synchronized (lock) {
+            if (pendingWrites.containsKey(key)) {
+                return pendingWrites.get(key) != null;
+            } else {
+                return sharedPreferences.contains(key);
             }
-            return containsKey;
-        });
+        }
     }
 
     @Override
     protected Maybe<String> restoreIfAvailable(@NonNull String key) {
-        return Maybe.fromCallable(() -> {
-            String value;
-            synchronized (sharedPreferences) {
-                value = sharedPreferences.getString(key, null);
+        return subscribeOnIoScheduler(Maybe.fromCallable(() -> readStoredValue(key, String.class))
+                .map(this::toStoredString));
+    }
+
+    @Nullable
+    @Override
+    protected Object readStoredValue(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        requireSharedPreferences();
+        synchronized (lock) {
+            return getStoredValue(key, valueType);
+        }
+    }
+
+    /**
+     * Reads all values while holding the lock once, so that the values are consistent with each
+     * other.
+     */
+    @NonNull
+    @Override
+    protected Map<String, Object> readStoredValues(@NonNull Map<String, java.lang.reflect.Type> valueTypes) {
+        requireSharedPreferences();
+        Map<String, Object> values = new LinkedHashMap<>();
+        synchronized (lock) {
+            for (Map.Entry<String, java.lang.reflect.Type> entry : valueTypes.entrySet()) {
+                Object value = getStoredValue(entry.getKey(), entry.getValue());
+                if (value != null) {
+                    values.put(entry.getKey(), value);
+                }
             }
-            return value;
-        });
+        }
+        return values;
+    }
+
+    /**
+     * Returns the pending or persisted value for the specified key. Values of native types may
+     * have been persisted natively or serialized, depending on whether native values were enabled.
+     * The more likely getter is tried first, falling back to the other one.
+     *
+     * Needs to be called while holding the lock.
+     */
+    @Nullable
+    private Object getStoredValue(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        if (pendingWrites.containsKey(key)) {
+            return pendingWrites.get(key);
+        }
+        if (!sharedPreferences.contains(key)) {
+            return null;
+        }
+        if (nativeValuesEnabled && isNativeValueType(valueType)) {
+            try {
+                return getNativeValue(key, valueType);
+            } catch (ClassCastException e) {
+                // value has been persisted serialized
+            }
+        }
+        try {
+            return sharedPreferences.getString(key, null);
+        } catch (ClassCastException e) {
+            // value has been persisted natively
+            return sharedPreferences.getAll().get(key);
+        }
+    }
+
+    @NonNull
+    private Object getNativeValue(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        if (valueType == Boolean.class) {
+            return sharedPreferences.getBoolean(key, false);
+        } else if (valueType == Integer.class) {
+            return sharedPreferences.getInt(key, 0);
+        } else if (valueType == Long.class) {
+            return sharedPreferences.getLong(key, 0);
+        } else if (valueType == Float.class) {
+            return sharedPreferences.getFloat(key, 0);
+        } else {
+            throw new IllegalArgumentException("Not a native value type: " + valueType);
+        }
     }
 
-    @SuppressLint("ApplySharedPref")
     @Override
     public Completable persist(@NonNull String key, @NonNull String value) {
-        return Completable.fromAction(() -> {
-            synchronized (sharedPreferences) {
-                SharedPreferences.Editor editor = sharedPreferences.edit();
-                editor.putString(key, value);
-                editor.commit();
-            }
-        });
+        return subscribeOnIoScheduler(Completable.fromAction(() -> writeStoredValue(key, value)));
+    }
+
+    @Override
+    protected void writeStoredValue(@NonNull String key, @NonNull Object storedValue) {
+        writeStoredValues(Collections.singletonMap(key, storedValue), Collections.emptyList(), durabilityMode);
+    }
+
+    /**
+     * Persists the specified value using the specified durability mode, instead of the default
+     * {@link #getDurabilityMode()}.
+     */
+    public <Type> Completable persist(@NonNull String key, @NonNull Type value, @NonNull DurabilityMode durabilityMode) {
+        return commitValuesOnSchedulers(Collections.singletonMap(key, value), Collections.emptyList(), durabilityMode);
     }
 
-    @SuppressLint("ApplySharedPref")
     @Override
     public Completable delete(@NonNull String key) {
-        return Completable.fromAction(() -> {
-            synchronized (sharedPreferences) {
+        return delete(key, durabilityMode);
+    }
+
+    /**
+     * Deletes the value for the specified key using the specified durability mode, instead of the
+     * default {@link #getDurabilityMode()}.
+     */
+    public Completable delete(@NonNull String key, @NonNull DurabilityMode durabilityMode) {
+        return commitValuesOnSchedulers(Collections.emptyMap(), Collections.singletonList(key), durabilityMode);
+    }
+
+    /**
+     * Commits the specified changes using the specified durability mode, instead of the default
+     * {@link #getDurabilityMode()}.
+     */
+    public Completable commit(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete, @NonNull DurabilityMode durabilityMode) {
+        Map<String, ?> values = new LinkedHashMap<>(valuesToPersist);
+        Collection<String> keys = new ArrayList<>(keysToDelete);
+        return commitValuesOnSchedulers(values, keys, durabilityMode);
+    }
+
+    /**
+     * Same as {@link #commitValues(Map, Collection, DurabilityMode)}, but converts the values on
+     * the computation scheduler and writes them on the I/O scheduler.
+     */
+    protected Completable commitValuesOnSchedulers(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete, @NonNull DurabilityMode durabilityMode) {
+        return commitValuesOnSchedulers(valuesToPersist, keysToDelete, (storedValues, keys) -> writeStoredValues(storedValues, keys, durabilityMode));
+    }
+
+    /**
+     * Same as {@link #commitValues(Map, Collection)}, using the specified durability mode.
+     */
+    protected void commitValues(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete, @NonNull DurabilityMode durabilityMode) throws PreferenceProviderException {
+        commitValues(valuesToPersist, keysToDelete, (storedValues, keys) -> writeStoredValues(storedValues, keys, durabilityMode));
+    }
+
+    @Override
+    protected void writeStoredValues(@NonNull Map<String, Object> storedValues, @NonNull Collection<String> keysToDelete) {
+        writeStoredValues(storedValues, keysToDelete, durabilityMode);
+    }
+
+    /**
+     * Deletes and persists all values using a single {@link SharedPreferences.Editor}, which
+     * results in a single write to disk. Pending writes are included, so that the order of writes
+     * is preserved.
+     */
+    protected void writeStoredValues(@NonNull Map<String, Object> storedValues, @NonNull Collection<String> keysToDelete, @NonNull DurabilityMode durabilityMode) {
+        requireSharedPreferences();
+        synchronized (lock) {
+            updateLastStoredValues(storedValues, keysToDelete);
+            if (durabilityMode == DurabilityMode.DEBOUNCE) {
+                for (String key : keysToDelete) {
+                    pendingWrites.put(key, null);
+                }
+                pendingWrites.putAll(storedValues);
+                if (pendingWrites.size() >= debounceMaximumPendingWrites) {
+                    flushPendingWrites(DurabilityMode.APPLY);
+                } else {
+                    scheduleFlush();
+                }
+            } else {
                 SharedPreferences.Editor editor = sharedPreferences.edit();
-                editor.remove(key);
-                editor.commit();
+                putPendingWrites(editor);
+                for (String key : keysToDelete) {
+                    editor.remove(key);
+                }
+                for (Map.Entry<String, Object> entry : storedValues.entrySet()) {
+                    putStoredValue(editor, entry.getKey(), entry.getValue());
+                }
+                write(editor, durabilityMode);
+            }
+        }
+    }
+
+    /**
+     * Remembers the stored values that are about to be written for keys that have subscribers, so
+     * that the shared preferences listener can skip changes that will be published by this
+     * provider anyway.
+     *
+     * Needs to be called while holding the lock.
+     */
+    private void updateLastStoredValues(@NonNull Map<String, Object> storedValues, @NonNull Collection<String> keysToDelete) {
+        if (changePublishers.isEmpty()) {
+            return;
+        }
+        for (String key : keysToDelete) {
+            ChangePublisher changePublisher = changePublishers.get(key);
+            if (changePublisher != null) {
+                changePublisher.lastStoredValue = null;
+            }
+        }
+        for (Map.Entry<String, Object> entry : storedValues.entrySet()) {
+            ChangePublisher changePublisher = changePublishers.get(entry.getKey());
+            if (changePublisher != null) {
+                changePublisher.lastStoredValue = entry.getValue();
+            }
+        }
+    }
+
+    /**
+     * Called by the shared preferences on the main thread for every changed key, including changes
+     * made outside of this provider (e.g. by other components using the same shared preferences).
+     * Changes of keys with a change publisher are dispatched on a background scheduler, as reading
+     * the changed value requires the lock, which is held while writing to disk.
+     */
+    private void onSharedPreferenceChanged(@NonNull SharedPreferences changedSharedPreferences, @Nullable String key) {
+        if (key == null) {
+            // shared preferences have been cleared
+            invalidateCachedValues();
+            return;
+        }
+        invalidateCachedValue(key);
+        if (!changePublishers.containsKey(key)) {
+            return;
+        }
+        getBackgroundScheduler().scheduleDirect(() -> dispatchSharedPreferenceChange(changedSharedPreferences, key));
+    }
+
+    /**
+     * Dispatches the changed value to the change publisher of the specified key, if any. The
+     * stored value is read once per change and deserialized lazily, at most once per value type
+     * regardless of the number of subscribers. Changes that have already been published by this
+     * provider are skipped, deletions are not emitted.
+     */
+    private void dispatchSharedPreferenceChange(@NonNull SharedPreferences changedSharedPreferences, @NonNull String key) {
+        ChangePublisher changePublisher = changePublishers.get(key);
+        if (changePublisher == null) {
+            return;
+        }
+        Object storedValue;
+        synchronized (lock) {
+            if (changedSharedPreferences != sharedPreferences) {
+                return;
+            }
+            storedValue = getStoredValue(key, changePublisher.getValueType());
+            if (Objects.equals(storedValue, changePublisher.lastStoredValue)) {
+                return;
+            }
+            changePublisher.lastStoredValue = storedValue;
+        }
+        if (storedValue != null) {
+            publishStoredValueChange(changePublisher, key, storedValue);
+        }
+    }
+
+    /**
+     * Writes all values that have been persisted using {@link DurabilityMode#DEBOUNCE} to disk and
+     * completes after the write succeeded.
+     */
+    public Completable flush() {
+        return subscribeOnIoScheduler(Completable.fromAction(() -> {
+            synchronized (lock) {
+                flushPendingWrites(DurabilityMode.COMMIT);
             }
-        }).andThen(processPreferenceChange(key, null));
+        }));
+    }
+
+    /**
+     * Schedules a flush on the background scheduler.
+     *
+     * Needs to be called while holding the lock.
+     */
+    private void scheduleFlush() {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        getBackgroundScheduler().scheduleDirect(() -> {
+            synchronized (lock) {
+                flushScheduled = false;
+                flushPendingWrites(DurabilityMode.APPLY);
+            }
+        }, debounceDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the I/O scheduler, or {@link Schedulers#io()} if the I/O scheduler is the trampoline
+     * scheduler, which would block the calling thread (e.g. for the debounce delay, or the main
+     * thread while waiting for the lock).
+     */
+    @NonNull
+    private Scheduler getBackgroundScheduler() {
+        return ioScheduler != Schedulers.trampoline() ? ioScheduler : Schedulers.io();
+    }
+
+    /**
+     * Needs to be called while holding the lock.
+     */
+    protected void flushPendingWrites(@NonNull DurabilityMode durabilityMode) {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        putPendingWrites(editor);
+        write(editor, durabilityMode);
+    }
+
+    /**
+     * Discards all values that have been persisted using {@link DurabilityMode#DEBOUNCE} but
+     * have not been written yet.
+     */
+    protected void discardPendingWrites() {
+        synchronized (lock) {
+            pendingWrites.clear();
+        }
+    }
+
+    private void putPendingWrites(@NonNull SharedPreferences.Editor editor) {
+        for (Map.Entry<String, Object> pendingWrite : pendingWrites.entrySet()) {
+            if (pendingWrite.getValue() != null) {
+                putStoredValue(editor, pendingWrite.getKey(), pendingWrite.getValue());
+            } else {
+                editor.remove(pendingWrite.getKey());
+            }
+        }
+        pendingWrites.clear();
+    }
+
+    private static void putStoredValue(@NonNull SharedPreferences.Editor editor, @NonNull String key, @NonNull Object storedValue) {
+        if (storedValue instanceof String) {
+            editor.putString(key, (String) storedValue);
+        } else if (storedValue instanceof Boolean) {
+            editor.putBoolean(key, (Boolean) storedValue);
+        } else if (storedValue instanceof Integer) {
+            editor.putInt(key, (Integer) storedValue);
+        } else if (storedValue instanceof Long) {
+            editor.putLong(key, (Long) storedValue);
+        } else if (storedValue instanceof Float) {
+            editor.putFloat(key, (Float) storedValue);
+        } else {
+            throw new IllegalArgumentException("Unsupported stored value type: " + storedValue.getClass());
+        }
+    }
+
+    @SuppressLint("ApplySharedPref")
+    private static void write(@NonNull SharedPreferences.Editor editor, @NonNull DurabilityMode durabilityMode) {
+        if (durabilityMode == DurabilityMode.COMMIT) {
+            boolean success = editor.commit();
+            if (!success) {
+                throw new IllegalStateException("Unable to commit shared preferences");
+            }
+        } else {
+            editor.apply();
+        }
+    }
+
+    @Override
+    protected boolean supportsNativeValues() {
+        return true;
     }
 
     @NonNull
     public SharedPreferences getSharedPreferences() {
-        return sharedPreferences;
+        return requireSharedPreferences();
     }
 
+    /**
+     * Sets the shared preferences that should be used. Pending writes are written to the previous
+     * shared preferences first. Changes made outside of this provider are only observed for the
+     * current shared preferences.
+     */
     public void setSharedPreferences(@NonNull SharedPreferences sharedPreferences) {
-        this.sharedPreferences = sharedPreferences;
+        SharedPreferences previousSharedPreferences;
+        synchronized (lock) {
+            flushPendingWrites(DurabilityMode.APPLY);
+            previousSharedPreferences = this.sharedPreferences;
+            this.sharedPreferences = sharedPreferences;
+        }
+        if (previousSharedPreferences != null) {
+            previousSharedPreferences.unregisterOnSharedPreferenceChangeListener(sharedPreferenceChangeListener);
+        }
+        sharedPreferences.registerOnSharedPreferenceChangeListener(sharedPreferenceChangeListener);
+        invalidateCachedValues();
+    }
+
+    @NonNull
+    public DurabilityMode getDurabilityMode() {
+        return durabilityMode;
+    }
+
+    /**
+     * Sets the durability mode that should be used if none is specified. Defaults to {@link
+     * DurabilityMode#COMMIT}.
+     */
+    public void setDurabilityMode(@NonNull DurabilityMode durabilityMode) {
+        this.durabilityMode = durabilityMode;
+    }
+
+    /**
+     * Configures when values persisted using {@link DurabilityMode#DEBOUNCE} will be written: after
+     * the specified delay has passed since the first pending write, or as soon as the specified
+     * number of keys have pending writes.
+     */
+    public void setDebounce(long delay, @NonNull TimeUnit timeUnit, int maximumPendingWrites) {
+        synchronized (lock) {
+            this.debounceDelay = timeUnit.toMillis(delay);
+            this.debounceMaximumPendingWrites = maximumPendingWrites;
+        }
     }
 
 }
@@ -0,0 +1,119 @@
+package com.nexenio.rxpreferences.provider;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Binary encoding of stored values, used by file-based providers. Every stored value is encoded
+ * as a type and the value bytes.
+ */
+final class StoredValueEncoding {
+
+    static final byte TYPE_STRING = 1;
+    static final byte TYPE_BOOLEAN = 2;
+    static final byte TYPE_INTEGER = 3;
+    static final byte TYPE_LONG = 4;
+    static final byte TYPE_FLOAT = 5;
+    static final byte TYPE_BYTES = 6;
+
+    /**
+     * Marks a deleted key, doesn't have any value bytes.
+     */
+    static final byte TYPE_DELETED = 7;
+
+    private StoredValueEncoding() {
+    }
+
+    static byte getType(@NonNull Object storedValue) throws PreferenceProviderException {
+        if (storedValue instanceof String) {
+            return TYPE_STRING;
+        } else if (storedValue instanceof ByteBuffer) {
+            return TYPE_BYTES;
+        } else if (storedValue instanceof Boolean) {
+            return TYPE_BOOLEAN;
+        } else if (storedValue instanceof Integer) {
+            return TYPE_INTEGER;
+        } else if (storedValue instanceof Long) {
+            return TYPE_LONG;
+        } else if (storedValue instanceof Float) {
+            return TYPE_FLOAT;
+        } else {
+            throw new PreferenceProviderException("Stored values of type " + storedValue.getClass().getSimpleName() + " are not supported");
+        }
+    }
+
+    /**
+     * Returns the value bytes of the specified stored value, between the position and the limit
+     * of the returned buffer.
+     */
+    @NonNull
+    static ByteBuffer encode(@NonNull Object storedValue) throws PreferenceProviderException {
+        switch (getType(storedValue)) {
+            case TYPE_STRING:
+                return ByteBuffer.wrap(((String) storedValue).getBytes(StandardCharsets.UTF_8));
+            case TYPE_BYTES:
+                return ((ByteBuffer) storedValue).duplicate();
+            case TYPE_BOOLEAN:
+                return ByteBuffer.wrap(new byte[]{(byte) ((Boolean) storedValue ? 1 : 0)});
+            case TYPE_INTEGER:
+                return (ByteBuffer) ByteBuffer.allocate(4).putInt((Integer) storedValue).flip();
+            case TYPE_LONG:
+                return (ByteBuffer) ByteBuffer.allocate(8).putLong((Long) storedValue).flip();
+            default:
+                return (ByteBuffer) ByteBuffer.allocate(4).putFloat((Float) storedValue).flip();
+        }
+    }
+
+    /**
+     * Returns the stored value of the specified type, from the value bytes between the position and
+     * the limit of the specified buffer. Binary values are returned as a slice of the buffer.
+     */
+    @NonNull
+    static Object decode(byte type, @NonNull ByteBuffer value) {
+        int offset = value.position();
+        switch (type) {
+            case TYPE_STRING:
+                if (value.hasArray()) {
+                    return new String(value.array(), value.arrayOffset() + offset, value.remaining(), StandardCharsets.UTF_8);
+                }
+                byte[] bytes = new byte[value.remaining()];
+                value.duplicate().get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            case TYPE_BOOLEAN:
+                return value.get(offset) != 0;
+            case TYPE_INTEGER:
+                return value.getInt(offset);
+            case TYPE_LONG:
+                return value.getLong(offset);
+            case TYPE_FLOAT:
+                return value.getFloat(offset);
+            default:
+                return value.slice();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the specified type is known and the value length is valid for it.
+     */
+    static boolean isValid(byte type, int valueLength) {
+        switch (type) {
+            case TYPE_STRING:
+            case TYPE_BYTES:
+                return valueLength >= 0;
+            case TYPE_BOOLEAN:
+                return valueLength == 1;
+            case TYPE_INTEGER:
+            case TYPE_FLOAT:
+                return valueLength == 4;
+            case TYPE_LONG:
+                return valueLength == 8;
+            case TYPE_DELETED:
+                return valueLength == 0;
+            default:
+                return false;
+        }
+    }
+
+}
@@ -0,0 +1,588 @@
+package com.nexenio.rxpreferences.provider;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.core.BackpressureStrategy;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subjects.Subject;
+
+/**
+ * {@link WrappedPreferencesProvider} that keeps restored values in memory (the first level) in
+ * front of a durable provider (the second level), so that repeated reads don't access the storage
+ * or deserialize values again. Missing keys are remembered as well.
+ *
+ * Values are loaded lazily when they are restored for the first time, or eagerly using {@link
+ * #preload(Map)}. Changes are written according to the {@link WriteMode}, deletions replace the
+ * values in memory, so that they are never restored again. Changes made directly using the wrapped
+ * provider are not detected, use {@link #invalidate(String)} or {@link #invalidateAll()} after
+ * such changes.
+ *
+ * Changes are only emitted by this provider, not by the wrapped provider, so subscribers never
+ * receive the same change twice. Values in memory are shared between callers and should not be
+ * modified.
+ */
+public class TieredPreferencesProvider extends WrappedPreferencesProvider {
+
+    public enum WriteMode {
+
+        /**
+         * Changes complete after they have been written to the wrapped provider, they are applied
+         * in memory and emitted afterwards.
+         */
+        WRITE_THROUGH,
+
+        /**
+         * Changes are applied in memory and emitted right away, they are written to the wrapped
+         * provider later using a {@link WriteBehindPreferencesProvider}. Changes that have not been
+         * {@link #flush() flushed} yet get lost if the process dies.
+         */
+        WRITE_BACK
+
+    }
+
+    /**
+     * Marks keys that are known to be unavailable.
+     */
+    private static final Object ABSENT = new Object();
+
+    @NonNull
+    private final WriteMode writeMode;
+
+    /**
+     * Values in memory, keyed by preference key.
+     */
+    @NonNull
+    private final ConcurrentMap<String, Entry> entries;
+
+    /**
+     * Incremented whenever a change starts, so that values loaded from the wrapped provider are not
+     * kept if they might have been changed in the meantime.
+     */
+    @NonNull
+    private final AtomicLong writeSequence;
+
+    /**
+     * Number of changes that have started but not yet been applied in memory.
+     */
+    @NonNull
+    private final AtomicInteger writesInProgress;
+
+    /**
+     * Sequence of the last {@link #deleteAll()}, changes that started before it are not applied in
+     * memory.
+     */
+    private volatile long deleteAllSequence;
+
+    @NonNull
+    private final Subject<Map.Entry<String, Object>> changes;
+
+    /**
+     * Provider that reads and writes go to on a miss, the wrapped provider or a {@link
+     * WriteBehindPreferencesProvider} wrapping it.
+     */
+    @NonNull
+    private volatile PreferencesProvider secondLevelProvider;
+
+    public TieredPreferencesProvider(@NonNull PreferencesProvider provider) {
+        this(provider, WriteMode.WRITE_THROUGH);
+    }
+
+    public TieredPreferencesProvider(@NonNull PreferencesProvider provider, @NonNull WriteMode writeMode) {
+        super(provider);
+        this.writeMode = writeMode;
+        this.entries = new ConcurrentHashMap<>();
+        this.writeSequence = new AtomicLong();
+        this.writesInProgress = new AtomicInteger();
+        this.changes = PublishSubject.<Map.Entry<String, Object>>create().toSerialized();
+        this.secondLevelProvider = createSecondLevelProvider(provider, writeMode);
+    }
+
+    @NonNull
+    private static PreferencesProvider createSecondLevelProvider(@NonNull PreferencesProvider provider, @NonNull WriteMode writeMode) {
+        return writeMode == WriteMode.WRITE_BACK ? new WriteBehindPreferencesProvider(provider) : provider;
+    }
+
+    /**
+     * Emits the keys of the wrapped provider, including changes that have not been flushed yet.
+     */
+    @Override
+    public Observable<String> getKeys() {
+        return Observable.defer(() -> secondLevelProvider.getKeys());
+    }
+
+    @Override
+    public Single<Boolean> containsKey(@NonNull String key) {
+        return Single.defer(() -> {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                return Single.just(entry.value != ABSENT);
+            }
+            return secondLevelProvider.containsKey(key);
+        });
+    }
+
+    @Override
+    public <Type> Single<Type> restore(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return restore(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Single<Type> restore(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return this.<Type>restoreIfAvailable(key, valueType)
+                .switchIfEmpty(Single.error(() -> new PreferenceProviderException("No preference available with key: " + key)));
+    }
+
+    @Override
+    public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue) {
+        return restoreOrDefault(key, defaultValue, defaultValue.getClass());
+    }
+
+    @Override
+    public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        return this.<Type>restoreIfAvailable(key, valueType)
+                .defaultIfEmpty(defaultValue);
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue) {
+        return restoreOrDefaultAndGetChanges(key, defaultValue, defaultValue.getClass());
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        return restoreOrDefault(key, defaultValue, valueType)
+                .toObservable()
+                .mergeWith(this.<Type>getChanges(key, valueType))
+                .distinctUntilChanged();
+    }
+
+    @Override
+    public <Type> Flowable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull ChangeCoalescing coalescing) {
+        return restoreOrDefaultAndGetChanges(key, defaultValue, defaultValue.getClass(), coalescing);
+    }
+
+    @Override
+    public <Type> Flowable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType, @NonNull ChangeCoalescing coalescing) {
+        return restoreOrDefault(key, defaultValue, valueType)
+                .toObservable()
+                .mergeWith(coalescing.coalesce(this.<Type>getChanges(key, valueType)))
+                .toFlowable(BackpressureStrategy.LATEST)
+                .distinctUntilChanged();
+    }
+
+    @Override
+    public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return restoreIfAvailable(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    /**
+     * Restores the value from memory if available. Otherwise, or if the value in memory can't be
+     * restored as the specified type, the value is restored from the wrapped provider.
+     */
+    @Override
+    public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return Maybe.defer(() -> {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.value == ABSENT) {
+                return Maybe.empty();
+            } else if (entry != null && isRestorableAs(entry, valueType)) {
+                return Maybe.just((Type) entry.value);
+            } else if (entry != null) {
+                return secondLevelProvider.restoreIfAvailable(key, valueType);
+            }
+
+            long sequence = getLoadSequence();
+            return secondLevelProvider.<Type>restoreIfAvailable(key, valueType)
+                    .doOnSuccess(value -> applyLoadedValue(key, value, valueType, sequence, false))
+                    .doOnComplete(() -> applyLoadedValue(key, ABSENT, valueType, sequence, false));
+        });
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return restoreIfAvailableAndGetChanges(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return this.<Type>restoreIfAvailable(key, valueType)
+                .toObservable()
+                .mergeWith(this.<Type>getChanges(key, valueType))
+                .distinctUntilChanged();
+    }
+
+    @Override
+    public <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull Class<Type> typeClass) {
+        return restoreAll(keys, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull java.lang.reflect.Type valueType) {
+        Map<String, java.lang.reflect.Type> valueTypes = new LinkedHashMap<>();
+        for (String key : keys) {
+            valueTypes.put(key, valueType);
+        }
+        return restoreAllValues(valueTypes, loadedKeys -> secondLevelProvider.restoreAll(loadedKeys, valueType))
+                .map(values -> (Map<String, Type>) values);
+    }
+
+    @Override
+    public Single<Map<String, Object>> restoreAll(@NonNull Map<String, Class<?>> typeClasses) {
+        return restoreAllValues(new LinkedHashMap<>(typeClasses), loadedKeys -> {
+            Map<String, Class<?>> loadedTypeClasses = new LinkedHashMap<>();
+            for (String key : loadedKeys) {
+                loadedTypeClasses.put(key, typeClasses.get(key));
+            }
+            return secondLevelProvider.restoreAll(loadedTypeClasses);
+        });
+    }
+
+    /**
+     * Restores values from memory and loads all other values from the wrapped provider, using the
+     * specified function. Values are emitted in the order of the specified keys.
+     */
+    private Single<Map<String, Object>> restoreAllValues(@NonNull Map<String, java.lang.reflect.Type> valueTypes, @NonNull Function<List<String>, Single<? extends Map<String, ?>>> loadedValuesProvider) {
+        return Single.defer(() -> {
+            Map<String, Object> valuesInMemory = new HashMap<>();
+            List<String> loadedKeys = new ArrayList<>();
+            for (Map.Entry<String, java.lang.reflect.Type> valueType : valueTypes.entrySet()) {
+                String key = valueType.getKey();
+                Entry entry = entries.get(key);
+                if (entry == null || (entry.value != ABSENT && !isRestorableAs(entry, valueType.getValue()))) {
+                    loadedKeys.add(key);
+                } else {
+                    valuesInMemory.put(key, entry.value);
+                }
+            }
+            if (loadedKeys.isEmpty()) {
+                return Single.just(toRestoredValues(valueTypes.keySet(), valuesInMemory, Collections.emptyMap()));
+            }
+
+            long sequence = getLoadSequence();
+            return loadedValuesProvider.apply(loadedKeys)
+                    .map(loadedValues -> {
+                        for (String key : loadedKeys) {
+                            Object loadedValue = loadedValues.get(key);
+                            applyLoadedValue(key, loadedValue != null ? loadedValue : ABSENT, valueTypes.get(key), sequence, false);
+                        }
+                        return toRestoredValues(valueTypes.keySet(), valuesInMemory, loadedValues);
+                    });
+        });
+    }
+
+    @NonNull
+    private static Map<String, Object> toRestoredValues(@NonNull Collection<String> keys, @NonNull Map<String, Object> valuesInMemory, @NonNull Map<String, ?> loadedValues) {
+        Map<String, Object> restoredValues = new LinkedHashMap<>();
+        for (String key : keys) {
+            Object value = valuesInMemory.containsKey(key) ? valuesInMemory.get(key) : loadedValues.get(key);
+            if (value != null && value != ABSENT) {
+                restoredValues.put(key, value);
+            }
+        }
+        return restoredValues;
+    }
+
+    /**
+     * Loads the values of the specified keys from the wrapped provider in a single batch, so that
+     * subsequent reads don't need to access the storage. Keys that are not available are
+     * remembered as missing. Values that are already in memory are loaded again.
+     */
+    public Completable preload(@NonNull Map<String, Class<?>> typeClasses) {
+        return Completable.defer(() -> {
+            long sequence = getLoadSequence();
+            return secondLevelProvider.restoreAll(new LinkedHashMap<>(typeClasses))
+                    .doOnSuccess(loadedValues -> {
+                        for (String key : typeClasses.keySet()) {
+                            Object loadedValue = loadedValues.get(key);
+                            applyLoadedValue(key, loadedValue != null ? loadedValue : ABSENT, typeClasses.get(key), sequence, true);
+                        }
+                    })
+                    .ignoreElement();
+        });
+    }
+
+    @Override
+    public <Type> Completable persist(@NonNull String key, @NonNull Type value) {
+        return commit(Collections.singletonMap(key, value), Collections.emptyList());
+    }
+
+    @Override
+    public <Type> Completable persistIfNotYetAvailable(@NonNull String key, @NonNull Type value) {
+        return containsKey(key)
+                .flatMapCompletable(containsKey -> containsKey ? Completable.complete() : persist(key, value));
+    }
+
+    @Override
+    public Completable persistAll(@NonNull Map<String, ?> values) {
+        return commit(values, Collections.emptyList());
+    }
+
+    @Override
+    public Completable delete(@NonNull String key) {
+        return commit(Collections.emptyMap(), Collections.singletonList(key));
+    }
+
+    /**
+     * Deletes all values of the wrapped provider and forgets all values in memory.
+     */
+    @Override
+    public Completable deleteAll() {
+        return Completable.defer(() -> {
+            long sequence = startWrite();
+            return secondLevelProvider.deleteAll()
+                    .doOnComplete(() -> {
+                        deleteAllSequence = sequence;
+                        entries.clear();
+                    })
+                    .doFinally(writesInProgress::decrementAndGet);
+        });
+    }
+
+    @Override
+    public Completable deleteAll(@NonNull Collection<String> keys) {
+        return commit(Collections.emptyMap(), keys);
+    }
+
+    /**
+     * Applies the changes in memory and emits them after the wrapped provider (or the {@link
+     * WriteBehindPreferencesProvider} in {@link WriteMode#WRITE_BACK} mode) completed. Keys of
+     * changes that failed are invalidated.
+     */
+    @Override
+    public Completable commit(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) {
+        Map<String, ?> values = new LinkedHashMap<>(valuesToPersist);
+        Collection<String> keys = new ArrayList<>(keysToDelete);
+        return Completable.defer(() -> {
+            long sequence = startWrite();
+            return secondLevelProvider.commit(values, keys)
+                    .doOnComplete(() -> applyChanges(values, keys, sequence))
+                    .doOnError(throwable -> invalidateChanges(values, keys))
+                    .doFinally(writesInProgress::decrementAndGet);
+        });
+    }
+
+    /**
+     * Emits changes made using this provider, after they have been applied in memory.
+     */
+    @Override
+    public <Type> Observable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return getChanges(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Observable<Type> getChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return changes.filter(change -> change.getKey().equals(key))
+                .map(change -> (Type) change.getValue());
+    }
+
+    @Override
+    public <Type> Flowable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass, @NonNull ChangeCoalescing coalescing) {
+        return getChanges(key, (java.lang.reflect.Type) typeClass, coalescing);
+    }
+
+    @Override
+    public <Type> Flowable<Type> getChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType, @NonNull ChangeCoalescing coalescing) {
+        return coalescing.apply(getChanges(key, valueType));
+    }
+
+    /**
+     * Writes all changes that have not been written to the wrapped provider yet, if the {@link
+     * WriteMode#WRITE_BACK} mode is used. Completes right away otherwise.
+     */
+    public Completable flush() {
+        return Completable.defer(() -> {
+            PreferencesProvider secondLevelProvider = this.secondLevelProvider;
+            if (secondLevelProvider instanceof WriteBehindPreferencesProvider) {
+                return ((WriteBehindPreferencesProvider) secondLevelProvider).flush();
+            }
+            return Completable.complete();
+        });
+    }
+
+    /**
+     * Forgets the value of the specified key in memory, so that it will be loaded from the wrapped
+     * provider again.
+     */
+    public void invalidate(@NonNull String key) {
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    private long startWrite() {
+        writesInProgress.incrementAndGet();
+        return writeSequence.incrementAndGet();
+    }
+
+    /**
+     * Returns the sequence to pass to {@link #applyLoadedValue(String, Object, java.lang.reflect.Type, long,
+     * boolean)},
+     * or {@code -1} if changes are in progress, in which case loaded values are not kept.
+     */
+    private long getLoadSequence() {
+        long sequence = writeSequence.get();
+        return writesInProgress.get() == 0 ? sequence : -1;
+    }
+
+    /**
+     * Keeps the specified loaded value in memory, unless a change has started since the value has
+     * been loaded.
+     *
+     * @param valueType the type that the value has been loaded as
+     * @param replace   whether a value that is already available should be replaced
+     */
+    private void applyLoadedValue(@NonNull String key, @NonNull Object value, @NonNull java.lang.reflect.Type valueType, long sequence, boolean replace) {
+        if (sequence == -1 || writeSequence.get() != sequence) {
+            return;
+        }
+        Entry entry = new Entry(value, valueType instanceof Class ? null : valueType, sequence);
+        if (replace) {
+            entries.put(key, entry);
+        } else {
+            entries.putIfAbsent(key, entry);
+        }
+    }
+
+    private void applyChanges(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete, long sequence) {
+        for (String key : keysToDelete) {
+            applyChange(key, ABSENT, sequence);
+        }
+        for (Map.Entry<String, ?> value : valuesToPersist.entrySet()) {
+            applyChange(value.getKey(), value.getValue(), sequence);
+        }
+        for (Map.Entry<String, ?> value : valuesToPersist.entrySet()) {
+            changes.onNext(new AbstractMap.SimpleImmutableEntry<>(value.getKey(), value.getValue()));
+        }
+    }
+
+    /**
+     * Applies the specified change in memory. If a newer change has already been applied or all
+     * values have been deleted since the change started, the order of the changes in the wrapped
+     * provider is unknown and the key gets invalidated instead.
+     */
+    private void applyChange(@NonNull String key, @NonNull Object value, long sequence) {
+        Entry entry = new Entry(value, null, sequence);
+        while (true) {
+            if (sequence < deleteAllSequence) {
+                entries.remove(key);
+                return;
+            }
+            Entry currentEntry = entries.get(key);
+            if (currentEntry == null) {
+                if (entries.putIfAbsent(key, entry) == null) {
+                    return;
+                }
+            } else if (currentEntry.sequence > sequence) {
+                entries.remove(key, currentEntry);
+                return;
+            } else if (entries.replace(key, currentEntry, entry)) {
+                return;
+            }
+        }
+    }
+
+    private void invalidateChanges(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) {
+        for (String key : keysToDelete) {
+            entries.remove(key);
+        }
+        for (String key : valuesToPersist.keySet()) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the value of the specified entry can be returned for the specified
+     * type. As the type arguments of values can't be checked at runtime, values are only returned
+     * for generic types (e.g. {@code List<Foo>}) that they have been loaded as.
+     */
+    private static boolean isRestorableAs(@NonNull Entry entry, @NonNull java.lang.reflect.Type valueType) {
+        if (valueType instanceof Class) {
+            return ((Class<?>) valueType).isInstance(entry.value);
+        }
+        return valueType.equals(entry.valueType);
+    }
+
+    @NonNull
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    /**
+     * Returns the {@link WriteBehindPreferencesProvider} that changes are written with if the
+     * {@link WriteMode#WRITE_BACK} mode is used, e.g. to configure when they are flushed.
+     */
+    @Nullable
+    public WriteBehindPreferencesProvider getWriteBehindProvider() {
+        PreferencesProvider secondLevelProvider = this.secondLevelProvider;
+        return secondLevelProvider instanceof WriteBehindPreferencesProvider ? (WriteBehindPreferencesProvider) secondLevelProvider : null;
+    }
+
+    /**
+     * Returns the number of keys whose value (or absence) is kept in memory.
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Replaces the wrapped provider and forgets all values in memory. Changes that have not been
+     * flushed yet will be written to the previous provider.
+     */
+    @Override
+    public void setProvider(@NonNull PreferencesProvider provider) {
+        super.setProvider(provider);
+        this.secondLevelProvider = createSecondLevelProvider(provider, writeMode);
+        invalidateAll();
+    }
+
+    private static final class Entry {
+
+        /**
+         * The value, or {@link #ABSENT} if the key is not available.
+         */
+        @NonNull
+        private final Object value;
+
+        /**
+         * The generic type that the value has been loaded as, or {@code null} if it has been
+         * loaded as a class or persisted.
+         */
+        @Nullable
+        private final java.lang.reflect.Type valueType;
+
+        /**
+         * The write sequence of the change that put the entry, or of the last change before the
+         * value has been loaded.
+         */
+        private final long sequence;
+
+        private Entry(@NonNull Object value, @Nullable java.lang.reflect.Type valueType, long sequence) {
+            this.value = value;
+            this.valueType = valueType;
+            this.sequence = sequence;
+        }
+
+    }
+
+}
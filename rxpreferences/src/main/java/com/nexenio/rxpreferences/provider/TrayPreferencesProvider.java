@@ -3,10 +3,16 @@ package com.nexenio.rxpreferences.provider;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import net.grandcentrix.tray.TrayPreferences;
 import net.grandcentrix.tray.core.TrayItem;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
@@ -31,40 +37,90 @@ public class TrayPreferencesProvider extends BasePreferencesProvider {
 
     @Override
     public Observable<String> getKeys() {
-        return Observable.defer(() -> Observable.fromIterable(trayPreferences.getAll()))
-                .map(TrayItem::key);
+        return subscribeOnIoScheduler(Observable.defer(() -> Observable.fromIterable(readKeys())));
+    }
+
+    @NonNull
+    @Override
+    protected Collection<String> readKeys() {
+        List<String> keys = new ArrayList<>();
+        for (TrayItem trayItem : trayPreferences.getAll()) {
+            keys.add(trayItem.key());
+        }
+        return keys;
     }
 
     @Override
     public Single<Boolean> containsKey(@NonNull String key) {
-        return Single.fromCallable(() -> trayPreferences.contains(key));
+        return subscribeOnIoScheduler(Single.fromCallable(() -> containsStoredValue(key)));
+    }
+
+    @Override
+    protected boolean containsStoredValue(@NonNull String key) {
+        return trayPreferences.contains(key);
     }
 
     @Override
     protected Maybe<String> restoreIfAvailable(@NonNull String key) {
-        return Maybe.fromCallable(() -> trayPreferences.getPref(key))
-                .map(TrayItem::value);
+        return subscribeOnIoScheduler(Maybe.fromCallable(() -> (String) readStoredValue(key, String.class)));
+    }
+
+    /**
+     * Tray only stores strings, so the value type is ignored.
+     */
+    @Nullable
+    @Override
+    protected Object readStoredValue(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        TrayItem trayItem = trayPreferences.getPref(key);
+        return trayItem != null ? trayItem.value() : null;
     }
 
     @Override
     public Completable persist(@NonNull String key, @NonNull String value) {
-        return Completable.fromAction(() -> trayPreferences.put(key, value));
+        return subscribeOnIoScheduler(Completable.fromAction(() -> writeStoredValue(key, value)));
+    }
+
+    /**
+     * Writes the specified stored value, which is always a string as Tray supports neither native
+     * nor binary values.
+     */
+    @Override
+    protected void writeStoredValue(@NonNull String key, @NonNull Object storedValue) {
+        trayPreferences.put(key, (String) storedValue);
+    }
+
+    /**
+     * Tray doesn't support batches, values are deleted and written separately on the calling
+     * thread.
+     */
+    @Override
+    protected void writeStoredValues(@NonNull Map<String, Object> storedValues, @NonNull Collection<String> keysToDelete) {
+        for (String key : keysToDelete) {
+            trayPreferences.remove(key);
+        }
+        for (Map.Entry<String, Object> entry : storedValues.entrySet()) {
+            writeStoredValue(entry.getKey(), entry.getValue());
+        }
     }
 
     @Override
     public Completable delete(@NonNull String key) {
-        return Completable.fromAction(() -> trayPreferences.remove(key))
-                .andThen(processPreferenceChange(key, null));
+        return subscribeOnIoScheduler(Completable.fromAction(() -> trayPreferences.remove(key))
+                .andThen(processPreferenceChange(key, null)));
     }
 
     @Override
     public Completable deleteAll() {
-        return Completable.fromAction(() -> {
-            boolean success = trayPreferences.clear();
-            if (!success) {
-                throw new IllegalStateException("Unable to clear tray preferences");
-            }
-        }).andThen(getKeys().flatMapCompletable(key -> processPreferenceChange(key, null)));
+        return getKeys()
+                .toList()
+                .flatMapCompletable(keys -> Completable.fromAction(() -> {
+                    boolean success = trayPreferences.clear();
+                    if (!success) {
+                        throw new IllegalStateException("Unable to clear tray preferences");
+                    }
+                }).andThen(Observable.fromIterable(keys)
+                        .flatMapCompletable(key -> processPreferenceChange(key, null))))
+                .doOnComplete(this::invalidateCachedValues);
     }
 
     public TrayPreferences getTrayPreferences() {
@@ -1,7 +1,12 @@
 package com.nexenio.rxpreferences.provider;
 
+import java.util.Collection;
+import java.util.Map;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
@@ -11,8 +16,12 @@ public class WrappedPreferencesProvider implements PreferencesProvider {
     @NonNull
     protected PreferencesProvider provider;
 
+    @NonNull
+    private final BlockingPreferencesProvider blockingPreferencesProvider;
+
     public WrappedPreferencesProvider(@NonNull PreferencesProvider provider) {
         this.provider = provider;
+        this.blockingPreferencesProvider = new RxBlockingPreferencesProvider(this);
     }
 
     @Override
@@ -30,26 +39,76 @@ public class WrappedPreferencesProvider implements PreferencesProvider {
         return provider.restore(key, typeClass);
     }
 
+    @Override
+    public <Type> Single<Type> restore(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return provider.restore(key, valueType);
+    }
+
     @Override
     public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue) {
         return provider.restoreOrDefault(key, defaultValue);
     }
 
+    @Override
+    public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        return provider.restoreOrDefault(key, defaultValue, valueType);
+    }
+
     @Override
     public <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue) {
         return provider.restoreOrDefaultAndGetChanges(key, defaultValue);
     }
 
+    @Override
+    public <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        return provider.restoreOrDefaultAndGetChanges(key, defaultValue, valueType);
+    }
+
+    @Override
+    public <Type> Flowable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull ChangeCoalescing coalescing) {
+        return provider.restoreOrDefaultAndGetChanges(key, defaultValue, coalescing);
+    }
+
+    @Override
+    public <Type> Flowable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType, @NonNull ChangeCoalescing coalescing) {
+        return provider.restoreOrDefaultAndGetChanges(key, defaultValue, valueType, coalescing);
+    }
+
     @Override
     public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull Class<Type> typeClass) {
         return provider.restoreIfAvailable(key, typeClass);
     }
 
+    @Override
+    public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return provider.restoreIfAvailable(key, valueType);
+    }
+
     @Override
     public <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
         return provider.restoreIfAvailableAndGetChanges(key, typeClass);
     }
 
+    @Override
+    public <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return provider.restoreIfAvailableAndGetChanges(key, valueType);
+    }
+
+    @Override
+    public <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull Class<Type> typeClass) {
+        return provider.restoreAll(keys, typeClass);
+    }
+
+    @Override
+    public <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull java.lang.reflect.Type valueType) {
+        return provider.restoreAll(keys, valueType);
+    }
+
+    @Override
+    public Single<Map<String, Object>> restoreAll(@NonNull Map<String, Class<?>> typeClasses) {
+        return provider.restoreAll(typeClasses);
+    }
+
     @Override
     public <Type> Completable persist(@NonNull String key, @NonNull Type value) {
         return provider.persist(key, value);
@@ -60,11 +119,31 @@ public class WrappedPreferencesProvider implements PreferencesProvider {
         return provider.persistIfNotYetAvailable(key, value);
     }
 
+    @Override
+    public Completable persistAll(@NonNull Map<String, ?> values) {
+        return provider.persistAll(values);
+    }
+
     @Override
     public <Type> Observable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
         return provider.getChanges(key, typeClass);
     }
 
+    @Override
+    public <Type> Observable<Type> getChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return provider.getChanges(key, valueType);
+    }
+
+    @Override
+    public <Type> Flowable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass, @NonNull ChangeCoalescing coalescing) {
+        return provider.getChanges(key, typeClass, coalescing);
+    }
+
+    @Override
+    public <Type> Flowable<Type> getChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType, @NonNull ChangeCoalescing coalescing) {
+        return provider.getChanges(key, valueType, coalescing);
+    }
+
     @Override
     public Completable delete(@NonNull String key) {
         return provider.delete(key);
@@ -75,6 +154,30 @@ public class WrappedPreferencesProvider implements PreferencesProvider {
         return provider.deleteAll();
     }
 
+    @Override
+    public Completable deleteAll(@NonNull Collection<String> keys) {
+        return provider.deleteAll(keys);
+    }
+
+    @Override
+    public Completable commit(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) {
+        return provider.commit(valuesToPersist, keysToDelete);
+    }
+
+    @Override
+    public PreferencesEditor edit() {
+        return new PreferencesEditor(this);
+    }
+
+    /**
+     * Blocks on the methods of this wrapper, so that subclasses don't need to implement the
+     * blocking methods separately.
+     */
+    @Override
+    public BlockingPreferencesProvider blocking() {
+        return blockingPreferencesProvider;
+    }
+
     @NonNull
     public PreferencesProvider getProvider() {
         return provider;
@@ -84,4 +187,17 @@ public class WrappedPreferencesProvider implements PreferencesProvider {
         this.provider = provider;
     }
 
+    /**
+     * Returns the first {@link BasePreferencesProvider} wrapped by this provider, if any, e.g. to
+     * use its serializer or to count change subscribers.
+     */
+    @Nullable
+    protected BasePreferencesProvider getBaseProvider() {
+        PreferencesProvider provider = this.provider;
+        while (provider instanceof WrappedPreferencesProvider) {
+            provider = ((WrappedPreferencesProvider) provider).getProvider();
+        }
+        return provider instanceof BasePreferencesProvider ? (BasePreferencesProvider) provider : null;
+    }
+
 }
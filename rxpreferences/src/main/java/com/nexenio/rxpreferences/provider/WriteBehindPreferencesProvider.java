@@ -0,0 +1,606 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.nexenio.rxpreferences.serializer.GsonSerializer;
+import com.nexenio.rxpreferences.serializer.Serializer;
+import com.nexenio.rxpreferences.serializer.SerializerException;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.core.BackpressureStrategy;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subjects.Subject;
+
+/**
+ * {@link WrappedPreferencesProvider} that completes changes as soon as they have been applied to
+ * an in-memory overlay and writes them to the wrapped provider later. Repeated changes of the same
+ * key are collapsed, so that only the latest value gets written.
+ *
+ * Pending changes are committed to the wrapped provider in a single batch once a delay has passed
+ * since the first pending change, as soon as enough keys have pending changes, or when {@link
+ * #flush()} is called. Until then, they are only kept in memory and would get lost if the process
+ * dies. Reads check the overlay first, so pending changes are visible right away.
+ *
+ * Persisted objects are kept as they are and get written to the wrapped provider on flush, so
+ * they should not be modified afterwards. Pending values that are restored as a type the persisted
+ * object isn't an instance of are serialized and deserialized as that type, the same way the
+ * wrapped provider would restore them after they have been flushed.
+ */
+public class WriteBehindPreferencesProvider extends WrappedPreferencesProvider {
+
+    public static final long DEFAULT_FLUSH_DELAY = TimeUnit.SECONDS.toMillis(1);
+    public static final int DEFAULT_MAXIMUM_PENDING_WRITES = 100;
+
+    /**
+     * Marks a pending deletion in the overlay.
+     */
+    private static final Object DELETED = new Object();
+
+    /**
+     * Values that have not been written to the wrapped provider yet, as {@link PendingValue}s or
+     * {@link #DELETED}. Guarded by itself.
+     */
+    @NonNull
+    protected final Map<String, Object> pendingWrites;
+
+    /**
+     * Serializes flushes, so that batches are written in order.
+     */
+    @NonNull
+    private final Object flushLock;
+
+    /**
+     * Emits changes of the overlay, as the wrapped provider only emits them once they are flushed.
+     */
+    @NonNull
+    private final Subject<Map.Entry<String, PendingValue>> pendingChanges;
+
+    /**
+     * Values that are currently written to the wrapped provider, so that the changes emitted by the
+     * wrapped provider for them are not emitted again, regardless of the thread they are emitted
+     * on.
+     */
+    @NonNull
+    private final Map<String, PendingValue> flushedValues;
+
+    @NonNull
+    private volatile Serializer serializer;
+
+    @NonNull
+    private Scheduler flushScheduler = Schedulers.io();
+
+    private long flushDelay = DEFAULT_FLUSH_DELAY;
+
+    private int maximumPendingWrites = DEFAULT_MAXIMUM_PENDING_WRITES;
+
+    private boolean flushScheduled;
+
+    private boolean immediateFlushScheduled;
+
+    public WriteBehindPreferencesProvider(@NonNull PreferencesProvider provider) {
+        super(provider);
+        this.pendingWrites = new LinkedHashMap<>();
+        this.flushLock = new Object();
+        this.pendingChanges = PublishSubject.<Map.Entry<String, PendingValue>>create().toSerialized();
+        this.flushedValues = new ConcurrentHashMap<>();
+        BasePreferencesProvider baseProvider = getBaseProvider();
+        this.serializer = baseProvider != null ? baseProvider.getSerializer() : new GsonSerializer();
+    }
+
+    @Override
+    public Observable<String> getKeys() {
+        return Observable.defer(() -> {
+            Map<String, Object> pendingWrites = getPendingWrites();
+            List<String> pendingKeys = new ArrayList<>();
+            for (Map.Entry<String, Object> pendingWrite : pendingWrites.entrySet()) {
+                if (pendingWrite.getValue() != DELETED) {
+                    pendingKeys.add(pendingWrite.getKey());
+                }
+            }
+            return provider.getKeys()
+                    .filter(key -> !pendingWrites.containsKey(key))
+                    .concatWith(Observable.fromIterable(pendingKeys));
+        });
+    }
+
+    @Override
+    public Single<Boolean> containsKey(@NonNull String key) {
+        return Single.defer(() -> {
+            Object pendingWrite = getPendingWrite(key);
+            if (pendingWrite != null) {
+                return Single.just(pendingWrite != DELETED);
+            }
+            return provider.containsKey(key);
+        });
+    }
+
+    @Override
+    public <Type> Single<Type> restore(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return restore(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Single<Type> restore(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return Single.defer(() -> {
+            Object pendingWrite = getPendingWrite(key);
+            if (pendingWrite == null) {
+                return provider.restore(key, valueType);
+            } else if (pendingWrite == DELETED) {
+                return Single.error(new PreferenceProviderException("No preference available with key: " + key));
+            }
+            return Single.just(toValue(key, pendingWrite, valueType));
+        });
+    }
+
+    @Override
+    public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue) {
+        return restoreOrDefault(key, defaultValue, defaultValue.getClass());
+    }
+
+    @Override
+    public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        return this.<Type>restoreIfAvailable(key, valueType)
+                .defaultIfEmpty(defaultValue);
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue) {
+        return restoreOrDefaultAndGetChanges(key, defaultValue, defaultValue.getClass());
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType) {
+        return restoreOrDefault(key, defaultValue, valueType)
+                .toObservable()
+                .mergeWith(this.<Type>getChanges(key, valueType))
+                .distinctUntilChanged();
+    }
+
+    @Override
+    public <Type> Flowable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull ChangeCoalescing coalescing) {
+        return restoreOrDefaultAndGetChanges(key, defaultValue, defaultValue.getClass(), coalescing);
+    }
+
+    @Override
+    public <Type> Flowable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue, @NonNull java.lang.reflect.Type valueType, @NonNull ChangeCoalescing coalescing) {
+        return restoreOrDefault(key, defaultValue, valueType)
+                .toObservable()
+                .mergeWith(coalescing.coalesce(this.<Type>getChanges(key, valueType)))
+                .toFlowable(BackpressureStrategy.LATEST)
+                .distinctUntilChanged();
+    }
+
+    @Override
+    public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return restoreIfAvailable(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return Maybe.defer(() -> {
+            Object pendingWrite = getPendingWrite(key);
+            if (pendingWrite == null) {
+                return provider.restoreIfAvailable(key, valueType);
+            } else if (pendingWrite == DELETED) {
+                return Maybe.empty();
+            }
+            return Maybe.just(toValue(key, pendingWrite, valueType));
+        });
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return restoreIfAvailableAndGetChanges(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return this.<Type>restoreIfAvailable(key, valueType)
+                .toObservable()
+                .mergeWith(this.<Type>getChanges(key, valueType))
+                .distinctUntilChanged();
+    }
+
+    @Override
+    public <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull Class<Type> typeClass) {
+        return restoreAll(keys, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Single<Map<String, Type>> restoreAll(@NonNull Collection<String> keys, @NonNull java.lang.reflect.Type valueType) {
+        Map<String, java.lang.reflect.Type> valueTypes = new LinkedHashMap<>();
+        for (String key : keys) {
+            valueTypes.put(key, valueType);
+        }
+        return restoreAllValues(valueTypes, storedKeys -> provider.restoreAll(storedKeys, valueType))
+                .map(values -> (Map<String, Type>) values);
+    }
+
+    @Override
+    public Single<Map<String, Object>> restoreAll(@NonNull Map<String, Class<?>> typeClasses) {
+        return restoreAllValues(new LinkedHashMap<>(typeClasses), storedKeys -> {
+            Map<String, Class<?>> storedTypeClasses = new LinkedHashMap<>();
+            for (String key : storedKeys) {
+                storedTypeClasses.put(key, typeClasses.get(key));
+            }
+            return provider.restoreAll(storedTypeClasses);
+        });
+    }
+
+    /**
+     * Restores pending values from the overlay and all other values from the wrapped provider,
+     * using the specified function. Values are emitted in the order of the specified keys.
+     */
+    private Single<Map<String, Object>> restoreAllValues(@NonNull Map<String, java.lang.reflect.Type> valueTypes, @NonNull Function<List<String>, Single<? extends Map<String, ?>>> storedValuesProvider) {
+        return Single.defer(() -> {
+            Map<String, Object> pendingWrites = getPendingWrites();
+            Map<String, Object> pendingValues = new HashMap<>();
+            List<String> storedKeys = new ArrayList<>();
+            for (Map.Entry<String, java.lang.reflect.Type> entry : valueTypes.entrySet()) {
+                String key = entry.getKey();
+                Object pendingWrite = pendingWrites.get(key);
+                if (pendingWrite == null) {
+                    storedKeys.add(key);
+                } else if (pendingWrite != DELETED) {
+                    pendingValues.put(key, toValue(key, pendingWrite, entry.getValue()));
+                }
+            }
+            Single<? extends Map<String, ?>> storedValues = storedKeys.isEmpty() ? Single.just(Collections.emptyMap()) : storedValuesProvider.apply(storedKeys);
+            return storedValues.map(values -> {
+                Map<String, Object> restoredValues = new LinkedHashMap<>();
+                for (String key : valueTypes.keySet()) {
+                    Object value = pendingValues.containsKey(key) ? pendingValues.get(key) : values.get(key);
+                    if (value != null) {
+                        restoredValues.put(key, value);
+                    }
+                }
+                return restoredValues;
+            });
+        });
+    }
+
+    @Override
+    public <Type> Completable persist(@NonNull String key, @NonNull Type value) {
+        return Completable.fromAction(() -> writePending(Collections.singletonMap(key, value), Collections.emptyList()));
+    }
+
+    @Override
+    public <Type> Completable persistIfNotYetAvailable(@NonNull String key, @NonNull Type value) {
+        return containsKey(key)
+                .flatMapCompletable(containsKey -> containsKey ? Completable.complete() : persist(key, value));
+    }
+
+    @Override
+    public Completable persistAll(@NonNull Map<String, ?> values) {
+        return commit(values, Collections.emptyList());
+    }
+
+    @Override
+    public Completable delete(@NonNull String key) {
+        return Completable.fromAction(() -> writePending(Collections.emptyMap(), Collections.singletonList(key)));
+    }
+
+    /**
+     * Marks every available key as deleted, including keys that are only available in the wrapped
+     * provider.
+     */
+    @Override
+    public Completable deleteAll() {
+        return getKeys()
+                .toList()
+                .flatMapCompletable(this::deleteAll);
+    }
+
+    @Override
+    public Completable deleteAll(@NonNull Collection<String> keys) {
+        return commit(Collections.emptyMap(), keys);
+    }
+
+    @Override
+    public Completable commit(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) {
+        Map<String, ?> values = new LinkedHashMap<>(valuesToPersist);
+        Collection<String> keys = new ArrayList<>(keysToDelete);
+        return Completable.fromAction(() -> writePending(values, keys));
+    }
+
+    /**
+     * Emits changes of the overlay when they are applied and changes of the wrapped provider that
+     * have not been made by this provider, e.g. changes made directly using the wrapped provider.
+     */
+    @Override
+    public <Type> Observable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
+        return getChanges(key, (java.lang.reflect.Type) typeClass);
+    }
+
+    @Override
+    public <Type> Observable<Type> getChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType) {
+        return pendingChanges.filter(change -> change.getKey().equals(key))
+                .concatMapMaybe(change -> Maybe.<Type>fromCallable(() -> toValue(key, change.getValue(), valueType))
+                        .onErrorComplete())
+                .mergeWith(provider.<Type>getChanges(key, valueType)
+                        .filter(value -> !isFlushedValue(key, value)));
+    }
+
+    @Override
+    public <Type> Flowable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass, @NonNull ChangeCoalescing coalescing) {
+        return getChanges(key, (java.lang.reflect.Type) typeClass, coalescing);
+    }
+
+    @Override
+    public <Type> Flowable<Type> getChanges(@NonNull String key, @NonNull java.lang.reflect.Type valueType, @NonNull ChangeCoalescing coalescing) {
+        return coalescing.apply(getChanges(key, valueType));
+    }
+
+    /**
+     * Writes all pending changes to the wrapped provider and completes after the write succeeded.
+     */
+    public Completable flush() {
+        return Completable.fromAction(this::flushPendingWrites);
+    }
+
+    /**
+     * Commits a snapshot of the pending changes to the wrapped provider. Pending changes are only
+     * removed from the overlay after the commit succeeded and only if they haven't changed in the
+     * meantime, so that reads never see older values.
+     */
+    protected void flushPendingWrites() throws PreferenceProviderException {
+        synchronized (flushLock) {
+            Map<String, Object> snapshot = getPendingWrites();
+            if (snapshot.isEmpty()) {
+                return;
+            }
+            Map<String, Object> valuesToPersist = new LinkedHashMap<>();
+            List<String> keysToDelete = new ArrayList<>();
+            for (Map.Entry<String, Object> pendingWrite : snapshot.entrySet()) {
+                if (pendingWrite.getValue() != DELETED) {
+                    PendingValue pendingValue = (PendingValue) pendingWrite.getValue();
+                    valuesToPersist.put(pendingWrite.getKey(), pendingValue.value);
+                    flushedValues.put(pendingWrite.getKey(), pendingValue);
+                } else {
+                    keysToDelete.add(pendingWrite.getKey());
+                }
+            }
+
+            try {
+                provider.commit(valuesToPersist, keysToDelete).blockingAwait();
+            } catch (RuntimeException e) {
+                throw PreferenceProviderException.from(e, "Unable to flush pending writes");
+            } finally {
+                flushedValues.clear();
+            }
+
+            synchronized (pendingWrites) {
+                for (Map.Entry<String, Object> pendingWrite : snapshot.entrySet()) {
+                    if (pendingWrites.get(pendingWrite.getKey()) == pendingWrite.getValue()) {
+                        pendingWrites.remove(pendingWrite.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    private void writePending(@NonNull Map<String, ?> valuesToPersist, @NonNull Collection<String> keysToDelete) {
+        Map<String, PendingValue> pendingValues = new LinkedHashMap<>();
+        for (Map.Entry<String, ?> entry : valuesToPersist.entrySet()) {
+            pendingValues.put(entry.getKey(), toPendingValue(entry.getKey(), entry.getValue()));
+        }
+        synchronized (pendingWrites) {
+            for (String key : keysToDelete) {
+                pendingWrites.put(key, DELETED);
+            }
+            pendingWrites.putAll(pendingValues);
+            scheduleFlush(pendingWrites.size() >= maximumPendingWrites);
+        }
+        for (Map.Entry<String, PendingValue> entry : pendingValues.entrySet()) {
+            pendingChanges.onNext(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Schedules a flush after the flush delay, or right away if enough keys have pending changes,
+     * unless such a flush is already scheduled. Errors are reported to {@link
+     * RxJavaPlugins#onError(Throwable)}, failed changes remain pending and will be written with the
+     * next flush.
+     *
+     * Needs to be called while holding the lock on the pending writes.
+     */
+    private void scheduleFlush(boolean immediately) {
+        if (immediately ? immediateFlushScheduled : flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        immediateFlushScheduled |= immediately;
+        flushScheduler.scheduleDirect(() -> {
+            synchronized (pendingWrites) {
+                flushScheduled = false;
+                immediateFlushScheduled = false;
+            }
+            try {
+                flushPendingWrites();
+            } catch (PreferenceProviderException e) {
+                RxJavaPlugins.onError(e);
+            }
+        }, immediately ? 0 : flushDelay, TimeUnit.MILLISECONDS);
+    }
+
+    @Nullable
+    private Object getPendingWrite(@NonNull String key) {
+        synchronized (pendingWrites) {
+            return pendingWrites.get(key);
+        }
+    }
+
+    @NonNull
+    private Map<String, Object> getPendingWrites() {
+        synchronized (pendingWrites) {
+            return new LinkedHashMap<>(pendingWrites);
+        }
+    }
+
+    /**
+     * Keeps the specified value as it is. Binary values are copied, as their contents may get
+     * reused by the caller.
+     */
+    @NonNull
+    private PendingValue toPendingValue(@NonNull String key, @NonNull Object value) {
+        if (value instanceof byte[]) {
+            return new PendingValue(((byte[]) value).clone(), true);
+        } else if (value instanceof ByteBuffer) {
+            ByteBuffer source = ((ByteBuffer) value).duplicate();
+            byte[] bytes = new byte[source.remaining()];
+            source.get(bytes);
+            return new PendingValue(bytes, true);
+        }
+        return new PendingValue(value, false);
+    }
+
+    /**
+     * Restores the specified pending value as the specified type, the same way the wrapped provider
+     * would restore it after it has been flushed.
+     */
+    @NonNull
+    private <Type> Type toValue(@NonNull String key, @NonNull Object pendingWrite, @NonNull java.lang.reflect.Type valueType) throws PreferenceProviderException {
+        PendingValue pendingValue = (PendingValue) pendingWrite;
+        try {
+            if (!pendingValue.binary) {
+                if (valueType instanceof Class && ((Class<?>) valueType).isInstance(pendingValue.value)) {
+                    return (Type) pendingValue.value;
+                }
+                return serializer.deserialize(getSerializedValue(pendingValue), valueType);
+            }
+            byte[] bytes = (byte[]) pendingValue.value;
+            if (valueType == byte[].class) {
+                return (Type) bytes.clone();
+            } else if (valueType == ByteBuffer.class) {
+                return (Type) ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+            }
+            return serializer.deserializeFromBytes(ByteBuffer.wrap(bytes), valueType);
+        } catch (SerializerException e) {
+            throw new PreferenceProviderException("Pending value for key " + key + " can't be restored as " + valueType, e);
+        }
+    }
+
+    /**
+     * Returns the serialized pending value, serializing it on first use.
+     */
+    @NonNull
+    private String getSerializedValue(@NonNull PendingValue pendingValue) throws SerializerException {
+        String serializedValue = pendingValue.serializedValue;
+        if (serializedValue == null) {
+            serializedValue = serializer.serialize(pendingValue.value);
+            pendingValue.serializedValue = serializedValue;
+        }
+        return serializedValue;
+    }
+
+    /**
+     * Returns {@code true} if the specified value, as emitted by the wrapped provider, has been
+     * written by the current flush.
+     */
+    private boolean isFlushedValue(@NonNull String key, @NonNull Object value) {
+        PendingValue flushedValue = flushedValues.get(key);
+        if (flushedValue == null) {
+            return false;
+        } else if (flushedValue.binary) {
+            byte[] bytes = (byte[]) flushedValue.value;
+            return value instanceof byte[] ? Arrays.equals(bytes, (byte[]) value) : ByteBuffer.wrap(bytes).equals(value);
+        } else if (flushedValue.value.equals(value)) {
+            return true;
+        }
+        try {
+            return getSerializedValue(flushedValue).equals(serializer.serialize(value));
+        } catch (SerializerException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of keys with changes that have not been written to the wrapped provider
+     * yet.
+     */
+    public int getPendingWriteCount() {
+        synchronized (pendingWrites) {
+            return pendingWrites.size();
+        }
+    }
+
+    /**
+     * Configures when pending changes will be written: after the specified delay has passed since
+     * the first pending change, or as soon as the specified number of keys have pending changes.
+     */
+    public void setFlushTrigger(long delay, @NonNull TimeUnit timeUnit, int maximumPendingWrites) {
+        synchronized (pendingWrites) {
+            this.flushDelay = timeUnit.toMillis(delay);
+            this.maximumPendingWrites = maximumPendingWrites;
+        }
+    }
+
+    /**
+     * Sets the scheduler that pending changes are written on. Defaults to {@link Schedulers#io()}.
+     */
+    public void setFlushScheduler(@NonNull Scheduler flushScheduler) {
+        this.flushScheduler = flushScheduler;
+    }
+
+    /**
+     * Returns the serializer that pending values are kept with. Defaults to the serializer of the
+     * wrapped {@link BasePreferencesProvider}, if any.
+     */
+    @NonNull
+    public Serializer getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(@NonNull Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * A persisted value in the overlay. Binary values are kept as a copy of their bytes, all other
+     * values as the persisted object.
+     */
+    private static final class PendingValue {
+
+        /**
+         * The value that will be written to the wrapped provider.
+         */
+        @NonNull
+        private final Object value;
+
+        private final boolean binary;
+
+        /**
+         * The serialized value, once it has been needed to restore the value as another type.
+         */
+        @Nullable
+        private volatile String serializedValue;
+
+        private PendingValue(@NonNull Object value, boolean binary) {
+            this.value = value;
+            this.binary = binary;
+        }
+
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.nexenio.rxpreferences.serializer;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+
+/**
+ * URL-safe Base64 encoding without padding, as specified in RFC 4648. Encoded values only consist
+ * of characters that don't need to be escaped in XML or JSON. Used instead of {@code
+ * java.util.Base64}, which is not available on all supported Android versions.
+ */
+public final class Base64Url {
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final int[] VALUES = new int[128];
+
+    static {
+        Arrays.fill(VALUES, -1);
+        for (int index = 0; index < ALPHABET.length; index++) {
+            VALUES[ALPHABET[index]] = index;
+        }
+    }
+
+    private Base64Url() {
+
+    }
+
+    @NonNull
+    public static String encode(@NonNull byte[] bytes) {
+        return encode(bytes, 0, bytes.length);
+    }
+
+    @NonNull
+    public static String encode(@NonNull byte[] bytes, int offset, int length) {
+        char[] chars = new char[(length * 4 + 2) / 3];
+        int charIndex = 0;
+        int end = offset + length;
+        int index = offset;
+        while (end - index >= 3) {
+            int bits = (bytes[index++] & 0xFF) << 16 | (bytes[index++] & 0xFF) << 8 | (bytes[index++] & 0xFF);
+            chars[charIndex++] = ALPHABET[bits >>> 18];
+            chars[charIndex++] = ALPHABET[(bits >>> 12) & 0x3F];
+            chars[charIndex++] = ALPHABET[(bits >>> 6) & 0x3F];
+            chars[charIndex++] = ALPHABET[bits & 0x3F];
+        }
+        if (end - index == 2) {
+            int bits = (bytes[index++] & 0xFF) << 8 | (bytes[index] & 0xFF);
+            chars[charIndex++] = ALPHABET[bits >>> 10];
+            chars[charIndex++] = ALPHABET[(bits >>> 4) & 0x3F];
+            chars[charIndex] = ALPHABET[(bits << 2) & 0x3F];
+        } else if (end - index == 1) {
+            int bits = bytes[index] & 0xFF;
+            chars[charIndex++] = ALPHABET[bits >>> 2];
+            chars[charIndex] = ALPHABET[(bits << 4) & 0x3F];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decodes the specified characters, starting at the specified offset.
+     *
+     * @throws IllegalArgumentException if the characters are not valid Base64
+     */
+    @NonNull
+    public static byte[] decode(@NonNull CharSequence chars, int offset) {
+        int length = chars.length() - offset;
+        if (length % 4 == 1) {
+            throw new IllegalArgumentException("Invalid Base64 length: " + length);
+        }
+        byte[] bytes = new byte[length * 3 / 4];
+        int byteIndex = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int index = offset; index < chars.length(); index++) {
+            bits = (bits << 6) | valueOf(chars.charAt(index));
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                bytes[byteIndex++] = (byte) (bits >>> bitCount);
+            }
+        }
+        return bytes;
+    }
+
+    @NonNull
+    public static byte[] decode(@NonNull CharSequence chars) {
+        return decode(chars, 0);
+    }
+
+    private static int valueOf(char c) {
+        int value = c < VALUES.length ? VALUES[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid Base64 character: " + c);
+        }
+        return value;
+    }
+
+}
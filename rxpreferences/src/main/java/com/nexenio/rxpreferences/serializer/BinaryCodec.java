@@ -0,0 +1,18 @@
+package com.nexenio.rxpreferences.serializer;
+
+import java.io.IOException;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Writes and reads values of a single type for the {@link BinarySerializer}. Codecs define the
+ * binary layout of their values, so changing a codec may require migrating persisted values.
+ */
+public interface BinaryCodec<Type> {
+
+    void write(@NonNull BinaryOutput output, @NonNull Type value) throws IOException;
+
+    @NonNull
+    Type read(@NonNull BinaryInput input) throws IOException;
+
+}
@@ -0,0 +1,140 @@
+package com.nexenio.rxpreferences.serializer;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Reads values written by a {@link BinaryOutput} from a byte array.
+ */
+public final class BinaryInput {
+
+    @NonNull
+    private final byte[] buffer;
+
+    private final int limit;
+
+    private int position;
+
+    public BinaryInput(@NonNull byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    public BinaryInput(@NonNull byte[] buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IndexOutOfBoundsException("Invalid offset or length");
+        }
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public byte readByte() throws IOException {
+        require(1);
+        return buffer[position++];
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readInt() throws IOException {
+        int value = readUnsignedVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readLong() throws IOException {
+        long value = readUnsignedVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readFixedInt());
+    }
+
+    public double readDouble() throws IOException {
+        long high = readFixedInt() & 0xFFFFFFFFL;
+        long low = readFixedInt() & 0xFFFFFFFFL;
+        return Double.longBitsToDouble((high << 32) | low);
+    }
+
+    @NonNull
+    public String readString() throws IOException {
+        int length = readLength();
+        String value = new String(buffer, position, length, BinaryOutput.UTF_8);
+        position += length;
+        return value;
+    }
+
+    @NonNull
+    public byte[] readBytes() throws IOException {
+        return readRawBytes(readLength());
+    }
+
+    @NonNull
+    public byte[] readRawBytes(int length) throws IOException {
+        require(length);
+        byte[] value = new byte[length];
+        System.arraycopy(buffer, position, value, 0, length);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Returns the number of bytes that have not been read yet.
+     */
+    public int remaining() {
+        return limit - position;
+    }
+
+    int readUnsignedVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    long readUnsignedVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    private int readFixedInt() throws IOException {
+        require(4);
+        int value = (buffer[position] & 0xFF) << 24
+                | (buffer[position + 1] & 0xFF) << 16
+                | (buffer[position + 2] & 0xFF) << 8
+                | (buffer[position + 3] & 0xFF);
+        position += 4;
+        return value;
+    }
+
+    private int readLength() throws IOException {
+        int length = readUnsignedVarInt();
+        if (length < 0) {
+            throw new IOException("Invalid length: " + length);
+        }
+        require(length);
+        return length;
+    }
+
+    private void require(int length) throws EOFException {
+        if (length > limit - position) {
+            throw new EOFException("Unexpected end of input");
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.nexenio.rxpreferences.serializer;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Growable buffer that {@link BinaryCodec}s write values to. Integers are written as zig-zag
+ * encoded variable length integers, so that small values only need a single byte.
+ */
+public final class BinaryOutput {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @NonNull
+    private byte[] buffer;
+
+    private int size;
+
+    public BinaryOutput() {
+        this(32);
+    }
+
+    public BinaryOutput(int initialCapacity) {
+        this.buffer = new byte[Math.max(initialCapacity, 8)];
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeInt(int value) {
+        writeUnsignedVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeLong(long value) {
+        writeUnsignedVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void writeFloat(float value) {
+        writeFixedInt(Float.floatToRawIntBits(value));
+    }
+
+    public void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        writeFixedInt((int) (bits >>> 32));
+        writeFixedInt((int) bits);
+    }
+
+    /**
+     * Writes the length of the UTF-8 encoded string, followed by the encoded bytes.
+     */
+    public void writeString(@NonNull String value) {
+        writeBytes(value.getBytes(UTF_8));
+    }
+
+    /**
+     * Writes the length of the specified bytes, followed by the bytes.
+     */
+    public void writeBytes(@NonNull byte[] value) {
+        writeUnsignedVarInt(value.length);
+        writeRawBytes(value, 0, value.length);
+    }
+
+    /**
+     * Writes the specified bytes without their length, they can only be read if the length is
+     * known.
+     */
+    public void writeRawBytes(@NonNull byte[] value, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(value, offset, buffer, size, length);
+        size += length;
+    }
+
+    void writeUnsignedVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    void writeUnsignedVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeFixedInt(int value) {
+        ensureCapacity(4);
+        buffer[size++] = (byte) (value >>> 24);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+    }
+
+    private void ensureCapacity(int additionalSize) {
+        if (size + additionalSize > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additionalSize));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @NonNull
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+}
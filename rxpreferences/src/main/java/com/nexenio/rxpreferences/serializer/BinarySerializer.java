@@ -0,0 +1,208 @@
+package com.nexenio.rxpreferences.serializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Serializer that writes values using registered {@link BinaryCodec}s, which results in much
+ * smaller payloads than JSON because no field names or delimiters are stored.
+ *
+ * Serialized strings consist of the {@link #BINARY_VALUE_PREFIX} followed by the URL-safe Base64
+ * encoded bytes. Values without a registered codec, as well as values that have been serialized
+ * by a different serializer, are handled by the fallback serializer. This allows replacing an
+ * existing {@link GsonSerializer} without migrating persisted values.
+ */
+public class BinarySerializer implements Serializer {
+
+    /**
+     * Marks serialized strings that contain binary values. JSON values never start with it.
+     */
+    public static final char BINARY_VALUE_PREFIX = '!';
+
+    /**
+     * First byte of every binary value. Values serialized by the fallback serializer are stored as
+     * UTF-8 text, which never starts with it.
+     */
+    static final byte FORMAT_VERSION = 1;
+
+    public static final BinaryCodec<byte[]> BYTE_ARRAY_CODEC = new BinaryCodec<byte[]>() {
+
+        @Override
+        public void write(@NonNull BinaryOutput output, @NonNull byte[] value) {
+            output.writeBytes(value);
+        }
+
+        @NonNull
+        @Override
+        public byte[] read(@NonNull BinaryInput input) throws IOException {
+            return input.readBytes();
+        }
+
+    };
+
+    @NonNull
+    private final ConcurrentMap<Class<?>, BinaryCodec<?>> codecs;
+
+    @NonNull
+    private Serializer fallbackSerializer;
+
+    public BinarySerializer() {
+        this(new GsonSerializer());
+    }
+
+    public BinarySerializer(@NonNull Serializer fallbackSerializer) {
+        this.fallbackSerializer = fallbackSerializer;
+        this.codecs = new ConcurrentHashMap<>();
+        registerCodec(byte[].class, BYTE_ARRAY_CODEC);
+    }
+
+    /**
+     * Registers the codec that should be used for values of exactly the specified class.
+     */
+    public <Type> BinarySerializer registerCodec(@NonNull Class<Type> valueClass, @NonNull BinaryCodec<Type> codec) {
+        codecs.put(valueClass, codec);
+        return this;
+    }
+
+    @Nullable
+    public <Type> BinaryCodec<Type> getCodec(@NonNull java.lang.reflect.Type valueType) {
+        return (BinaryCodec<Type>) codecs.get(valueType);
+    }
+
+    @Override
+    public <Type> Single<String> serializeToString(@NonNull Type value) {
+        return Single.fromCallable(() -> serialize(value));
+    }
+
+    @Override
+    public <Type> Single<Type> deserializeFromString(@NonNull String value, @NonNull Class<Type> valueClass) {
+        return deserializeFromString(value, (java.lang.reflect.Type) valueClass);
+    }
+
+    @Override
+    public <Type> Single<Type> deserializeFromString(@NonNull String value, @NonNull java.lang.reflect.Type valueType) {
+        return Single.fromCallable(() -> deserialize(value, valueType));
+    }
+
+    @NonNull
+    @Override
+    public String serialize(@NonNull Object value) throws SerializerException {
+        BinaryCodec<Object> codec = getCodec(value.getClass());
+        if (codec == null) {
+            return fallbackSerializer.serialize(value);
+        }
+        BinaryOutput output = new BinaryOutput();
+        write(output, codec, value);
+        return BINARY_VALUE_PREFIX + Base64Url.encode(output.toByteArray());
+    }
+
+    @NonNull
+    @Override
+    public <Type> Type deserialize(@NonNull String value, @NonNull java.lang.reflect.Type valueType) throws SerializerException {
+        if (value.isEmpty() || value.charAt(0) != BINARY_VALUE_PREFIX) {
+            return fallbackSerializer.deserialize(value, valueType);
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64Url.decode(value, 1);
+        } catch (IllegalArgumentException e) {
+            throw new SerializerException("Unable to decode binary value", e);
+        }
+        if (bytes.length == 0 || bytes[0] != FORMAT_VERSION) {
+            throw new SerializerException("Unsupported binary value format");
+        }
+        return read(bytes, 0, bytes.length, valueType);
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    /**
+     * Serializes the specified value to bytes. Values without a registered codec are serialized
+     * by the fallback serializer and encoded as UTF-8.
+     */
+    @NonNull
+    @Override
+    public byte[] serializeToBytes(@NonNull Object value) throws SerializerException {
+        BinaryCodec<Object> codec = getCodec(value.getClass());
+        if (codec == null) {
+            return fallbackSerializer.serialize(value).getBytes(BinaryOutput.UTF_8);
+        }
+        BinaryOutput output = new BinaryOutput();
+        write(output, codec, value);
+        return output.toByteArray();
+    }
+
+    /**
+     * Deserializes bytes that have been created by {@link #serializeToBytes(Object)}.
+     */
+    @NonNull
+    public <Type> Type deserializeFromBytes(@NonNull byte[] value, @NonNull java.lang.reflect.Type valueType) throws SerializerException {
+        return deserializeFromBytes(ByteBuffer.wrap(value), valueType);
+    }
+
+    /**
+     * Deserializes the remaining bytes of the specified buffer, without copying them if the buffer
+     * is backed by an accessible array.
+     */
+    @NonNull
+    @Override
+    public <Type> Type deserializeFromBytes(@NonNull ByteBuffer value, @NonNull java.lang.reflect.Type valueType) throws SerializerException {
+        if (!value.hasRemaining() || value.get(value.position()) != FORMAT_VERSION) {
+            return fallbackSerializer.deserializeFromBytes(value, valueType);
+        }
+        if (value.hasArray()) {
+            return read(value.array(), value.arrayOffset() + value.position(), value.remaining(), valueType);
+        }
+        byte[] bytes = new byte[value.remaining()];
+        value.duplicate().get(bytes);
+        return read(bytes, 0, bytes.length, valueType);
+    }
+
+    private static void write(@NonNull BinaryOutput output, @NonNull BinaryCodec<Object> codec, @NonNull Object value) throws SerializerException {
+        output.writeByte(FORMAT_VERSION);
+        try {
+            codec.write(output, value);
+        } catch (Exception e) {
+            throw new SerializerException("Unable to serialize value", e);
+        }
+    }
+
+    @NonNull
+    private <Type> Type read(@NonNull byte[] bytes, int offset, int length, @NonNull java.lang.reflect.Type valueType) throws SerializerException {
+        BinaryCodec<Type> codec = getCodec(valueType);
+        if (codec == null) {
+            throw new SerializerException("No codec registered for type: " + valueType);
+        }
+        try {
+            BinaryInput input = new BinaryInput(bytes, offset + 1, length - 1);
+            Type value = codec.read(input);
+            if (input.remaining() != 0) {
+                throw new SerializerException("Binary value was not fully consumed");
+            }
+            return value;
+        } catch (SerializerException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SerializerException("Unable to deserialize value", e);
+        }
+    }
+
+    @NonNull
+    public Serializer getFallbackSerializer() {
+        return fallbackSerializer;
+    }
+
+    public void setFallbackSerializer(@NonNull Serializer fallbackSerializer) {
+        this.fallbackSerializer = fallbackSerializer;
+    }
+
+}
@@ -0,0 +1,316 @@
+package com.nexenio.rxpreferences.serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import androidx.annotation.NonNull;
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Serializer that compresses the values of another serializer using Deflate, if they are larger
+ * than a threshold. Smaller values are passed through as they are, as compressing them wouldn't
+ * save much.
+ *
+ * Compressed strings consist of the {@link #COMPRESSED_VALUE_PREFIX} followed by the URL-safe
+ * Base64 encoded format version and the compressed bytes. Compressed bytes (see {@link
+ * #serializeToBytes(Object)}) start with the {@link #COMPRESSED_BYTES_MARKER} instead. Values
+ * without the prefix are passed to the wrapped serializer, so values that have been persisted
+ * before compression was enabled are still readable. Values of the wrapped serializer that
+ * happen to start with the prefix are always compressed, so that they can be told apart.
+ *
+ * Decompressed values are limited to {@link #getMaximumDecompressedSize()} bytes, so that a
+ * small corrupted or crafted value can't exhaust the memory when it's restored.
+ *
+ * Every thread uses its own {@link Deflater} and {@link Inflater}, which are expensive to create.
+ */
+public class CompressingSerializer implements Serializer {
+
+    /**
+     * Marks compressed strings. Neither JSON values, nor values of the {@link BinarySerializer}
+     * (starting with {@link BinarySerializer#BINARY_VALUE_PREFIX}) or binary values stored by
+     * providers (starting with {@code #}) start with it.
+     */
+    public static final char COMPRESSED_VALUE_PREFIX = '~';
+
+    /**
+     * First byte of compressed bytes.
+     */
+    public static final byte COMPRESSED_BYTES_MARKER = (byte) COMPRESSED_VALUE_PREFIX;
+
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    public static final int DEFAULT_MAXIMUM_DECOMPRESSED_SIZE = 16 * 1024 * 1024;
+
+    static final byte FORMAT_VERSION = 1;
+
+    @NonNull
+    private final Serializer serializer;
+
+    private final int threshold;
+
+    @NonNull
+    private final ThreadLocal<Deflater> deflaters;
+
+    @NonNull
+    private final ThreadLocal<Inflater> inflaters;
+
+    private volatile int maximumDecompressedSize = DEFAULT_MAXIMUM_DECOMPRESSED_SIZE;
+
+    private final AtomicLong compressedValueCount = new AtomicLong();
+    private final AtomicLong uncompressedByteCount = new AtomicLong();
+    private final AtomicLong compressedByteCount = new AtomicLong();
+
+    public CompressingSerializer(@NonNull Serializer serializer) {
+        this(serializer, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold the minimum length of serialized values (or number of bytes) that should be
+     *                  compressed
+     */
+    public CompressingSerializer(@NonNull Serializer serializer, int threshold) {
+        this(serializer, threshold, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compressionLevel the {@link Deflater} compression level, between {@link
+     *                         Deflater#BEST_SPEED} and {@link Deflater#BEST_COMPRESSION}
+     */
+    public CompressingSerializer(@NonNull Serializer serializer, int threshold, int compressionLevel) {
+        this.serializer = serializer;
+        this.threshold = threshold;
+        this.deflaters = new ThreadLocal<Deflater>() {
+            @Override
+            protected Deflater initialValue() {
+                return new Deflater(compressionLevel);
+            }
+        };
+        this.inflaters = new ThreadLocal<Inflater>() {
+            @Override
+            protected Inflater initialValue() {
+                return new Inflater();
+            }
+        };
+    }
+
+    @Override
+    public <Type> Single<String> serializeToString(@NonNull Type value) {
+        return Single.fromCallable(() -> serialize(value));
+    }
+
+    @Override
+    public <Type> Single<Type> deserializeFromString(@NonNull String value, @NonNull Class<Type> valueClass) {
+        return deserializeFromString(value, (java.lang.reflect.Type) valueClass);
+    }
+
+    @Override
+    public <Type> Single<Type> deserializeFromString(@NonNull String value, @NonNull java.lang.reflect.Type valueType) {
+        return Single.fromCallable(() -> deserialize(value, valueType));
+    }
+
+    /**
+     * Serializes the specified value using the wrapped serializer and compresses the result if
+     * it's at least as long as the threshold and compressing it actually results in a shorter
+     * string.
+     */
+    @NonNull
+    @Override
+    public String serialize(@NonNull Object value) throws SerializerException {
+        String serializedValue = serializer.serialize(value);
+        boolean startsWithPrefix = !serializedValue.isEmpty() && serializedValue.charAt(0) == COMPRESSED_VALUE_PREFIX;
+        if (serializedValue.length() < threshold && !startsWithPrefix) {
+            return serializedValue;
+        }
+        byte[] bytes = serializedValue.getBytes(StandardCharsets.UTF_8);
+        byte[] compressedBytes = compress(bytes, FORMAT_VERSION);
+        String compressedValue = COMPRESSED_VALUE_PREFIX + Base64Url.encode(compressedBytes);
+        if (compressedValue.length() >= serializedValue.length() && !startsWithPrefix) {
+            return serializedValue;
+        }
+        recordCompression(bytes.length, compressedBytes.length);
+        return compressedValue;
+    }
+
+    @NonNull
+    @Override
+    public <Type> Type deserialize(@NonNull String value, @NonNull java.lang.reflect.Type valueType) throws SerializerException {
+        if (value.isEmpty() || value.charAt(0) != COMPRESSED_VALUE_PREFIX) {
+            return serializer.deserialize(value, valueType);
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64Url.decode(value, 1);
+        } catch (IllegalArgumentException e) {
+            throw new SerializerException("Unable to decode compressed value", e);
+        }
+        if (bytes.length == 0 || bytes[0] != FORMAT_VERSION) {
+            throw new SerializerException("Unsupported compressed value format");
+        }
+        return serializer.deserialize(new String(decompress(bytes, 1, bytes.length - 1), StandardCharsets.UTF_8), valueType);
+    }
+
+    @Override
+    public boolean isBinary() {
+        return serializer.isBinary();
+    }
+
+    /**
+     * Serializes the specified value to bytes using the wrapped serializer and compresses them if
+     * there are at least as many bytes as the threshold and compressing them actually results in
+     * fewer bytes.
+     */
+    @NonNull
+    @Override
+    public byte[] serializeToBytes(@NonNull Object value) throws SerializerException {
+        byte[] bytes = serializer.serializeToBytes(value);
+        boolean startsWithMarker = bytes.length > 0 && bytes[0] == COMPRESSED_BYTES_MARKER;
+        if (bytes.length < threshold && !startsWithMarker) {
+            return bytes;
+        }
+        byte[] compressedBytes = compress(bytes, COMPRESSED_BYTES_MARKER);
+        if (compressedBytes.length >= bytes.length && !startsWithMarker) {
+            return bytes;
+        }
+        recordCompression(bytes.length, compressedBytes.length);
+        return compressedBytes;
+    }
+
+    @NonNull
+    @Override
+    public <Type> Type deserializeFromBytes(@NonNull ByteBuffer value, @NonNull java.lang.reflect.Type valueType) throws SerializerException {
+        if (!value.hasRemaining() || value.get(value.position()) != COMPRESSED_BYTES_MARKER) {
+            return serializer.deserializeFromBytes(value, valueType);
+        }
+        byte[] bytes;
+        int offset;
+        if (value.hasArray()) {
+            bytes = value.array();
+            offset = value.arrayOffset() + value.position();
+        } else {
+            bytes = new byte[value.remaining()];
+            value.duplicate().get(bytes);
+            offset = 0;
+        }
+        byte[] decompressedBytes = decompress(bytes, offset + 1, value.remaining() - 1);
+        return serializer.deserializeFromBytes(ByteBuffer.wrap(decompressedBytes), valueType);
+    }
+
+    /**
+     * Returns the specified header byte followed by the compressed bytes.
+     */
+    @NonNull
+    private byte[] compress(@NonNull byte[] bytes, byte header) {
+        Deflater deflater = deflaters.get();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 2 + 16);
+            output.write(header);
+            byte[] buffer = new byte[Math.min(Math.max(bytes.length, 64), 8192)];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    /**
+     * Returns the decompressed bytes, failing as soon as they exceed the maximum decompressed
+     * size.
+     */
+    @NonNull
+    private byte[] decompress(@NonNull byte[] bytes, int offset, int length) throws SerializerException {
+        int maximumDecompressedSize = this.maximumDecompressedSize;
+        Inflater inflater = inflaters.get();
+        try {
+            inflater.setInput(bytes, offset, length);
+            int expectedLength = (int) Math.min((long) length * 4, maximumDecompressedSize);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(expectedLength);
+            byte[] buffer = new byte[Math.min(Math.max(expectedLength, 64), 8192)];
+            while (!inflater.finished()) {
+                int inflatedLength = inflater.inflate(buffer);
+                if (inflatedLength == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new SerializerException("Compressed value is incomplete");
+                }
+                if (output.size() + inflatedLength > maximumDecompressedSize) {
+                    throw new SerializerException("Decompressed value exceeds the maximum size of " + maximumDecompressedSize + " bytes");
+                }
+                output.write(buffer, 0, inflatedLength);
+            }
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new SerializerException("Unable to decompress value", e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    private void recordCompression(int uncompressedLength, int compressedLength) {
+        compressedValueCount.incrementAndGet();
+        uncompressedByteCount.addAndGet(uncompressedLength);
+        compressedByteCount.addAndGet(compressedLength);
+    }
+
+    @NonNull
+    public Serializer getSerializer() {
+        return serializer;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getMaximumDecompressedSize() {
+        return maximumDecompressedSize;
+    }
+
+    /**
+     * Sets the maximum number of bytes that a value may be decompressed to. Restoring larger
+     * values fails with a {@link SerializerException}. Defaults to {@link
+     * #DEFAULT_MAXIMUM_DECOMPRESSED_SIZE}.
+     */
+    public void setMaximumDecompressedSize(int maximumDecompressedSize) {
+        this.maximumDecompressedSize = maximumDecompressedSize;
+    }
+
+    /**
+     * Returns the number of values that have been compressed.
+     */
+    public long getCompressedValueCount() {
+        return compressedValueCount.get();
+    }
+
+    /**
+     * Returns the total number of bytes of all values before they have been compressed.
+     */
+    public long getUncompressedByteCount() {
+        return uncompressedByteCount.get();
+    }
+
+    /**
+     * Returns the total number of bytes of all values after they have been compressed, before
+     * they are encoded as Base64.
+     */
+    public long getCompressedByteCount() {
+        return compressedByteCount.get();
+    }
+
+    /**
+     * Returns the ratio of compressed to uncompressed bytes of all compressed values (e.g. {@code
+     * 0.25} if values have been compressed to a quarter of their size), or {@code 1} if no value
+     * has been compressed yet.
+     */
+    public double getCompressionRatio() {
+        long uncompressedByteCount = this.uncompressedByteCount.get();
+        return uncompressedByteCount == 0 ? 1 : (double) compressedByteCount.get() / uncompressedByteCount;
+    }
+
+}
@@ -1,6 +1,17 @@
 package com.nexenio.rxpreferences.serializer;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import androidx.annotation.NonNull;
 import io.reactivex.rxjava3.core.Single;
@@ -9,24 +20,96 @@ public class GsonSerializer implements Serializer {
 
     private Gson gson;
 
+    /**
+     * Adapters that have already been looked up, so that Gson's adapter resolution is only needed
+     * once per type.
+     */
+    @NonNull
+    private final ConcurrentMap<java.lang.reflect.Type, TypeAdapter<?>> typeAdapters;
+
     public GsonSerializer() {
         this(new Gson());
     }
 
     public GsonSerializer(@NonNull Gson gson) {
         this.gson = gson;
+        this.typeAdapters = new ConcurrentHashMap<>();
     }
 
     @Override
     public <Type> Single<String> serializeToString(@NonNull Type value) {
-        return Single.fromCallable(() -> gson.toJson(value))
-                .onErrorResumeNext(throwable -> Single.error(new SerializerException("Unable to serialize value", throwable)));
+        return Single.fromCallable(() -> serialize(value));
     }
 
     @Override
     public <Type> Single<Type> deserializeFromString(@NonNull String value, @NonNull Class<Type> valueClass) {
-        return Single.fromCallable(() -> gson.fromJson(value, valueClass))
-                .onErrorResumeNext(throwable -> Single.error(new SerializerException("Unable to deserialize value", throwable)));
+        return deserializeFromString(value, (java.lang.reflect.Type) valueClass);
+    }
+
+    @Override
+    public <Type> Single<Type> deserializeFromString(@NonNull String value, @NonNull java.lang.reflect.Type valueType) {
+        return Single.fromCallable(() -> deserialize(value, valueType));
+    }
+
+    /**
+     * Equivalent to {@link Gson#toJson(Object)}, using a cached adapter.
+     */
+    @NonNull
+    @Override
+    public String serialize(@NonNull Object value) throws SerializerException {
+        try {
+            Gson gson = this.gson;
+            TypeAdapter<Object> typeAdapter = getTypeAdapter(gson, value.getClass());
+            StringWriter stringWriter = new StringWriter();
+            JsonWriter jsonWriter = gson.newJsonWriter(stringWriter);
+            jsonWriter.setLenient(true);
+            jsonWriter.setHtmlSafe(gson.htmlSafe());
+            jsonWriter.setSerializeNulls(gson.serializeNulls());
+            typeAdapter.write(jsonWriter, value);
+            jsonWriter.flush();
+            return stringWriter.toString();
+        } catch (Exception e) {
+            throw new SerializerException("Unable to serialize value", e);
+        }
+    }
+
+    /**
+     * Equivalent to {@link Gson#fromJson(String, java.lang.reflect.Type)}, using a cached adapter.
+     */
+    @NonNull
+    @Override
+    public <Type> Type deserialize(@NonNull String value, @NonNull java.lang.reflect.Type valueType) throws SerializerException {
+        try {
+            Gson gson = this.gson;
+            TypeAdapter<Type> typeAdapter = getTypeAdapter(gson, valueType);
+            JsonReader jsonReader = gson.newJsonReader(new StringReader(value));
+            jsonReader.setLenient(true);
+            Type deserializedValue = typeAdapter.read(jsonReader);
+            if (jsonReader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("JSON document was not fully consumed.");
+            }
+            if (deserializedValue == null) {
+                throw new JsonSyntaxException("JSON document contains no value.");
+            }
+            return deserializedValue;
+        } catch (Exception e) {
+            throw new SerializerException("Unable to deserialize value", e);
+        }
+    }
+
+    @NonNull
+    private <Type> TypeAdapter<Type> getTypeAdapter(@NonNull Gson gson, @NonNull java.lang.reflect.Type valueType) {
+        TypeAdapter<?> typeAdapter = typeAdapters.get(valueType);
+        if (typeAdapter == null) {
+            typeAdapter = gson.getAdapter(TypeToken.get(valueType));
+            if (gson == this.gson) {
+                TypeAdapter<?> existingTypeAdapter = typeAdapters.putIfAbsent(valueType, typeAdapter);
+                if (existingTypeAdapter != null) {
+                    typeAdapter = existingTypeAdapter;
+                }
+            }
+        }
+        return (TypeAdapter<Type>) typeAdapter;
     }
 
     public Gson getGson() {
@@ -35,6 +118,7 @@ public class GsonSerializer implements Serializer {
 
     public void setGson(Gson gson) {
         this.gson = gson;
+        typeAdapters.clear();
     }
 
 }
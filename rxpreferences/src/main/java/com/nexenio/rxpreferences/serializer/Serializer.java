@@ -1,5 +1,8 @@
 package com.nexenio.rxpreferences.serializer;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import androidx.annotation.NonNull;
 import io.reactivex.rxjava3.core.Single;
 
@@ -7,6 +10,77 @@ public interface Serializer {
 
     <Type> Single<String> serializeToString(@NonNull Type value);
 
+    /**
+     * Synchronous variant of {@link #serializeToString(Object)}. The default implementation blocks
+     * on the {@link Single} and should be overridden by serializers that are able to serialize
+     * values without it.
+     */
+    @NonNull
+    default String serialize(@NonNull Object value) throws SerializerException {
+        try {
+            return serializeToString(value).blockingGet();
+        } catch (RuntimeException e) {
+            throw SerializerException.from(e, "Unable to serialize value");
+        }
+    }
+
     <Type> Single<Type> deserializeFromString(@NonNull String value, @NonNull Class<Type> valueClass);
 
+    /**
+     * Same as {@link #deserializeFromString(String, Class)}, but also supports generic types like
+     * {@code List<Foo>}, e.g. as obtained from a Gson {@code TypeToken}. The default implementation
+     * only supports raw classes and should be overridden by serializers that are able to handle
+     * generic types.
+     */
+    default <Type> Single<Type> deserializeFromString(@NonNull String value, @NonNull java.lang.reflect.Type valueType) {
+        if (valueType instanceof Class) {
+            return deserializeFromString(value, (Class<Type>) valueType);
+        } else {
+            return Single.error(new SerializerException("Generic types are not supported: " + valueType));
+        }
+    }
+
+    /**
+     * Synchronous variant of {@link #deserializeFromString(String, java.lang.reflect.Type)}. The
+     * default implementation blocks on the {@link Single} and should be overridden by serializers
+     * that are able to deserialize values without it.
+     */
+    @NonNull
+    default <Type> Type deserialize(@NonNull String value, @NonNull java.lang.reflect.Type valueType) throws SerializerException {
+        try {
+            return this.<Type>deserializeFromString(value, valueType).blockingGet();
+        } catch (RuntimeException e) {
+            throw SerializerException.from(e, "Unable to deserialize value");
+        }
+    }
+
+    /**
+     * Should return {@code true} if {@link #serializeToBytes(Object)} creates a more compact
+     * representation than {@link #serialize(Object)}. Providers that support binary values will
+     * then store the bytes instead of the string.
+     */
+    default boolean isBinary() {
+        return false;
+    }
+
+    /**
+     * Serializes the specified value to bytes. The default implementation encodes the result of
+     * {@link #serialize(Object)} as UTF-8.
+     */
+    @NonNull
+    default byte[] serializeToBytes(@NonNull Object value) throws SerializerException {
+        return serialize(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deserializes the remaining bytes of the specified buffer, as created by {@link
+     * #serializeToBytes(Object)}. The position of the buffer is not modified. The default
+     * implementation decodes the bytes as UTF-8 and passes them to {@link #deserialize(String,
+     * java.lang.reflect.Type)}.
+     */
+    @NonNull
+    default <Type> Type deserializeFromBytes(@NonNull ByteBuffer value, @NonNull java.lang.reflect.Type valueType) throws SerializerException {
+        return deserialize(StandardCharsets.UTF_8.decode(value.duplicate()).toString(), valueType);
+    }
+
 }
@@ -19,4 +19,18 @@ public class SerializerException extends RxPreferencesException {
         super(cause);
     }
 
+    /**
+     * Returns the {@link SerializerException} that caused the specified exception, e.g. when it
+     * got wrapped by a blocking call, or a new one with the specified message.
+     */
+    static SerializerException from(Throwable throwable, String message) {
+        if (throwable instanceof SerializerException) {
+            return (SerializerException) throwable;
+        } else if (throwable.getCause() instanceof SerializerException) {
+            return (SerializerException) throwable.getCause();
+        } else {
+            return new SerializerException(message, throwable);
+        }
+    }
+
 }
@@ -0,0 +1,103 @@
+package com.nexenio.rxpreferences.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlaintextCacheTest {
+
+    private TestScheduler clockScheduler;
+
+    private PlaintextCache plaintextCache;
+
+    @Before
+    public void setUp() {
+        clockScheduler = new TestScheduler();
+        plaintextCache = new PlaintextCache(2, 1, TimeUnit.MINUTES, clockScheduler);
+    }
+
+    @Test
+    public void get_valueCached_returnsEqualValueAndCountsHit() {
+        put("1", "secret");
+        put("2", true);
+
+        assertEquals("secret", plaintextCache.get("1"));
+        assertEquals(true, plaintextCache.get("2"));
+        assertEquals(2, plaintextCache.getHitCount());
+    }
+
+    @Test
+    public void get_valueNotCached_returnsNullAndCountsMiss() {
+        assertNull(plaintextCache.get("1"));
+        assertEquals(1, plaintextCache.getMissCount());
+    }
+
+    @Test
+    public void get_timeToLivePassed_returnsNull() {
+        put("1", "secret");
+
+        clockScheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+
+        assertNull(plaintextCache.get("1"));
+        assertEquals(1, plaintextCache.getExpirationCount());
+        assertEquals(0, plaintextCache.getSize());
+    }
+
+    @Test
+    public void put_cacheFull_evictsLeastRecentlyUsed() {
+        put("1", "foo");
+        put("2", "bar");
+        plaintextCache.get("1");
+
+        put("3", "baz");
+
+        assertEquals("foo", plaintextCache.get("1"));
+        assertNull(plaintextCache.get("2"));
+        assertEquals(1, plaintextCache.getEvictionCount());
+    }
+
+    @Test
+    public void put_invalidatedSinceStamp_doesNotCache() {
+        long invalidationStamp = plaintextCache.getInvalidationStamp();
+        plaintextCache.invalidate("2");
+
+        assertFalse(plaintextCache.put("1", "secret", invalidationStamp));
+        assertNull(plaintextCache.get("1"));
+    }
+
+    @Test
+    public void invalidate_keysCached_removesKeys() {
+        assertTrue(plaintextCache.putKeys(Arrays.asList("1", "2"), plaintextCache.getInvalidationStamp()));
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), plaintextCache.getKeys());
+
+        plaintextCache.invalidate("3");
+
+        assertNull(plaintextCache.getKeys());
+    }
+
+    @Test
+    public void invalidateAll_valuesCached_removesAllValues() {
+        put("1", "foo");
+        put("2", 2);
+
+        plaintextCache.invalidateAll();
+
+        assertEquals(0, plaintextCache.getSize());
+        assertNull(plaintextCache.get("1"));
+    }
+
+    private void put(String key, Object storedValue) {
+        assertTrue(plaintextCache.put(key, storedValue, plaintextCache.getInvalidationStamp()));
+    }
+
+}
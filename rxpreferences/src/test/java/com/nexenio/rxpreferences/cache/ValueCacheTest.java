@@ -0,0 +1,148 @@
+package com.nexenio.rxpreferences.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ValueCacheTest {
+
+    private ValueCache valueCache;
+
+    @Before
+    public void setUp() {
+        valueCache = new ValueCache(2);
+    }
+
+    @Test
+    public void get_valueNotCached_returnsNullAndCountsMiss() {
+        assertNull(valueCache.get("1", Integer.class));
+        assertEquals(0, valueCache.getHitCount());
+        assertEquals(1, valueCache.getMissCount());
+    }
+
+    @Test
+    public void get_valueCached_returnsValueAndCountsHit() {
+        put("1", Integer.class, 1);
+
+        assertEquals(1, valueCache.get("1", Integer.class));
+        assertEquals(1, valueCache.getHitCount());
+    }
+
+    @Test
+    public void get_differentType_returnsNull() {
+        put("1", Integer.class, 1);
+
+        assertNull(valueCache.get("1", Long.class));
+    }
+
+    @Test
+    public void put_invalidatedSinceStamp_doesNotCache() {
+        long invalidationStamp = valueCache.getInvalidationStamp("1");
+        valueCache.invalidate("1");
+
+        assertFalse(valueCache.put("1", Integer.class, 1, 1, invalidationStamp));
+        assertNull(valueCache.get("1", Integer.class));
+    }
+
+    @Test
+    public void put_tooHeavy_rejectsValue() {
+        valueCache = new ValueCache(2, ValueCache.SERIALIZED_LENGTH_WEIGHER);
+
+        assertFalse(put("1", String.class, "\"foo\""));
+        assertEquals(1, valueCache.getRejectionCount());
+    }
+
+    @Test
+    public void put_cacheFullAndCandidateMoreFrequent_evictsLeastRecentlyUsed() {
+        put("1", Integer.class, 1);
+        put("2", Integer.class, 2);
+        for (int i = 0; i < 5; i++) {
+            valueCache.get("3", Integer.class);
+        }
+
+        assertTrue(put("3", Integer.class, 3));
+        assertNull(valueCache.get("1", Integer.class));
+        assertEquals(2, valueCache.get("2", Integer.class));
+        assertEquals(1, valueCache.getEvictionCount());
+    }
+
+    @Test
+    public void put_cacheFullAndCandidateLessFrequent_rejectsCandidate() {
+        for (int i = 0; i < 5; i++) {
+            valueCache.get("1", Integer.class);
+            valueCache.get("2", Integer.class);
+        }
+        put("1", Integer.class, 1);
+        put("2", Integer.class, 2);
+
+        assertFalse(put("3", Integer.class, 3));
+        assertEquals(1, valueCache.get("1", Integer.class));
+        assertEquals(2, valueCache.get("2", Integer.class));
+        assertEquals(2, valueCache.getSize());
+    }
+
+    @Test
+    public void put_candidateLessFrequentThanLaterVictim_evictsNothing() {
+        valueCache = new ValueCache(3, ValueCache.SERIALIZED_LENGTH_WEIGHER);
+        for (int i = 0; i < 5; i++) {
+            valueCache.get("2", String.class);
+        }
+        for (int i = 0; i < 3; i++) {
+            valueCache.get("4", String.class);
+        }
+        put("1", String.class, "a");
+        put("2", String.class, "b");
+        put("3", String.class, "c");
+
+        assertFalse(put("4", String.class, "dd"));
+        assertEquals(3, valueCache.getSize());
+        assertEquals("a", valueCache.get("1", String.class));
+        assertEquals(0, valueCache.getEvictionCount());
+    }
+
+    @Test
+    public void put_refreshRejected_keepsCachedValue() {
+        valueCache = new ValueCache(4, ValueCache.SERIALIZED_LENGTH_WEIGHER);
+        for (int i = 0; i < 5; i++) {
+            valueCache.get("2", String.class);
+        }
+        put("1", String.class, "ab");
+        put("2", String.class, "cd");
+
+        assertFalse(put("1", String.class, "abc"));
+        assertEquals("ab", valueCache.get("1", String.class));
+        assertEquals(4, valueCache.getWeight());
+    }
+
+    @Test
+    public void invalidate_multipleTypesCached_removesAllTypes() {
+        put("1", Integer.class, 1);
+        put("1", Long.class, 1L);
+
+        valueCache.invalidate("1");
+
+        assertNull(valueCache.get("1", Integer.class));
+        assertNull(valueCache.get("1", Long.class));
+        assertEquals(0, valueCache.getWeight());
+    }
+
+    @Test
+    public void invalidateAll_valuesCached_removesAllValues() {
+        put("1", Integer.class, 1);
+        put("2", Integer.class, 2);
+
+        valueCache.invalidateAll();
+
+        assertEquals(0, valueCache.getSize());
+        assertEquals(0, valueCache.getWeight());
+    }
+
+    private boolean put(String key, Class<?> type, Object value) {
+        return valueCache.put(key, type, value, String.valueOf(value).length(), valueCache.getInvalidationStamp(key));
+    }
+
+}
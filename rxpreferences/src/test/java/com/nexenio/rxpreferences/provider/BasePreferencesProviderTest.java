@@ -0,0 +1,110 @@
+package com.nexenio.rxpreferences.provider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+public class BasePreferencesProviderTest {
+
+    private ExecutorService ioExecutor;
+
+    private ReactivePreferencesProvider preferencesProvider;
+
+    @Before
+    public void setUp() {
+        ioExecutor = Executors.newSingleThreadExecutor();
+        preferencesProvider = new ReactivePreferencesProvider();
+        preferencesProvider.setIoScheduler(Schedulers.from(ioExecutor));
+    }
+
+    @After
+    public void tearDown() {
+        ioExecutor.shutdownNow();
+    }
+
+    @Test
+    public void persist_singleThreadedIoScheduler_completes() {
+        preferencesProvider.persist("1", "a")
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertComplete();
+
+        preferencesProvider.restore("1", String.class)
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertValue("a");
+    }
+
+    @Test
+    public void commit_singleThreadedIoScheduler_completes() {
+        preferencesProvider.persist("1", "a")
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertComplete();
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("2", "b");
+        preferencesProvider.commit(values, Collections.singletonList("1"))
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertComplete();
+
+        preferencesProvider.containsKey("1")
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertValue(false);
+    }
+
+    /**
+     * Only implements the reactive storage access methods, so that the synchronous storage access
+     * methods block on them.
+     */
+    private static class ReactivePreferencesProvider extends BasePreferencesProvider {
+
+        @NonNull
+        private final ConcurrentMap<String, String> values = new ConcurrentHashMap<>();
+
+        @Override
+        public Observable<String> getKeys() {
+            return subscribeOnIoScheduler(Observable.defer(() -> Observable.fromIterable(values.keySet())));
+        }
+
+        @Override
+        public Single<Boolean> containsKey(@NonNull String key) {
+            return subscribeOnIoScheduler(Single.fromCallable(() -> values.containsKey(key)));
+        }
+
+        @Override
+        protected Maybe<String> restoreIfAvailable(@NonNull String key) {
+            return subscribeOnIoScheduler(Maybe.fromCallable(() -> values.get(key)));
+        }
+
+        @Override
+        public Completable persist(@NonNull String key, String value) {
+            return subscribeOnIoScheduler(Completable.fromAction(() -> values.put(key, value)));
+        }
+
+        @Override
+        public Completable delete(@NonNull String key) {
+            return subscribeOnIoScheduler(Completable.fromAction(() -> values.remove(key)));
+        }
+
+    }
+
+}
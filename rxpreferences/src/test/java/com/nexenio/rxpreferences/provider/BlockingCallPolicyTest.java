@@ -0,0 +1,157 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.nexenio.rxpreferences.metrics.Operation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlockingCallPolicyTest {
+
+    private InMemoryPreferencesProvider preferencesProvider;
+
+    private List<BlockingCallViolationException> violations;
+
+    @Before
+    public void setUp() {
+        preferencesProvider = new InMemoryPreferencesProvider();
+        violations = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        BlockingCallPolicy.unmarkLatencySensitive();
+        BlockingCallPolicy.setDefault(null);
+    }
+
+    @Test
+    public void onStorageAccess_unmarkedThread_noViolation() throws PreferenceProviderException {
+        BlockingCallPolicy policy = createPolicy(BlockingCallPolicy.count());
+
+        preferencesProvider.blocking().persist("1", 1);
+        preferencesProvider.blocking().restore("1", Integer.class);
+
+        assertEquals(0, policy.getViolationCount());
+    }
+
+    @Test
+    public void onStorageAccess_markedThread_reportsKeyProviderAndDuration() throws PreferenceProviderException {
+        BlockingCallPolicy policy = createPolicy(BlockingCallPolicy.count());
+        BlockingCallPolicy.markLatencySensitive();
+
+        preferencesProvider.blocking().persist("1", 1);
+        preferencesProvider.blocking().restore("1", Integer.class);
+
+        assertEquals(2, policy.getViolationCount());
+        BlockingCallViolationException violation = violations.get(1);
+        assertEquals(Operation.RESTORE, violation.getOperation());
+        assertEquals("1", violation.getKey());
+        assertEquals(InMemoryPreferencesProvider.class.getName(), violation.getProviderName());
+        assertEquals(Thread.currentThread().getName(), violation.getThreadName());
+        assertTrue(violation.getDurationNanos() >= 0);
+        assertTrue(isCalledBy(violation, BlockingCallPolicyTest.class));
+    }
+
+    @Test
+    public void onStorageAccess_belowThreshold_noViolation() throws PreferenceProviderException {
+        BlockingCallPolicy policy = createPolicy(BlockingCallPolicy.count(1, TimeUnit.HOURS));
+        BlockingCallPolicy.markLatencySensitive();
+
+        preferencesProvider.blocking().persist("1", 1);
+
+        assertEquals(0, policy.getViolationCount());
+    }
+
+    @Test
+    public void onStorageAccess_throwingPolicy_throwsBeforeAccess() throws PreferenceProviderException {
+        createPolicy(BlockingCallPolicy.throwing());
+        BlockingCallPolicy.markLatencySensitive();
+
+        try {
+            preferencesProvider.blocking().persist("1", 1);
+            fail("Expected violation");
+        } catch (BlockingCallViolationException violation) {
+            assertEquals(Operation.PERSIST, violation.getOperation());
+            assertEquals(BlockingCallViolationException.UNKNOWN_DURATION, violation.getDurationNanos());
+        }
+
+        BlockingCallPolicy.unmarkLatencySensitive();
+        assertFalse(preferencesProvider.blocking().containsKey("1"));
+    }
+
+    @Test
+    public void onStorageAccess_throwingPolicy_restoreNotWrapped() throws PreferenceProviderException {
+        preferencesProvider.blocking().persist("1", 1);
+        createPolicy(BlockingCallPolicy.throwing());
+        BlockingCallPolicy.markLatencySensitive();
+
+        try {
+            preferencesProvider.blocking().restore("1", Integer.class);
+            fail("Expected violation");
+        } catch (BlockingCallViolationException violation) {
+            assertEquals(Operation.RESTORE, violation.getOperation());
+        }
+    }
+
+    @Test
+    public void onStorageAccess_predicateMatches_reportsViolation() throws PreferenceProviderException {
+        BlockingCallPolicy policy = createPolicy(BlockingCallPolicy.count());
+        Thread currentThread = Thread.currentThread();
+        policy.setLatencySensitiveThreads(thread -> thread == currentThread);
+
+        preferencesProvider.blocking().deleteAll();
+
+        assertEquals(Operation.DELETE_ALL, violations.get(0).getOperation());
+    }
+
+    @Test
+    public void onStorageAccess_reactiveDelete_reportsViolation() {
+        BlockingCallPolicy policy = createPolicy(BlockingCallPolicy.count());
+        BlockingCallPolicy.markLatencySensitive();
+
+        preferencesProvider.delete("1").blockingAwait();
+
+        assertEquals(1, policy.getViolationCount());
+        assertEquals(Operation.DELETE, violations.get(0).getOperation());
+    }
+
+    @Test
+    public void onStorageAccess_defaultPolicy_usedWithoutProviderPolicy() throws PreferenceProviderException {
+        BlockingCallPolicy policy = BlockingCallPolicy.count();
+        BlockingCallPolicy.setDefault(policy);
+        BlockingCallPolicy.markLatencySensitive();
+
+        preferencesProvider.blocking().getKeys();
+
+        assertEquals(1, policy.getViolationCount());
+    }
+
+    private BlockingCallPolicy createPolicy(BlockingCallPolicy policy) {
+        policy.setViolationListener(violations::add);
+        preferencesProvider.setBlockingCallPolicy(policy);
+        return policy;
+    }
+
+    /**
+     * Returns {@code true} if the stack trace of the specified throwable contains the specified
+     * class.
+     */
+    private static boolean isCalledBy(Throwable throwable, Class<?> callerClass) {
+        for (StackTraceElement element : throwable.getStackTrace()) {
+            if (element.getClassName().equals(callerClass.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
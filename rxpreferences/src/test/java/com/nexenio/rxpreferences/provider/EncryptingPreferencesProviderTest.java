@@ -0,0 +1,140 @@
+package com.nexenio.rxpreferences.provider;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.reactivex.rxjava3.observers.TestObserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EncryptingPreferencesProviderTest {
+
+    private static final SecretKey VALUE_KEY = new SecretKeySpec(new byte[16], "AES");
+    private static final SecretKey KEY_KEY = new SecretKeySpec(new byte[32], "HmacSHA256");
+
+    private InMemoryPreferencesProvider wrappedPreferencesProvider;
+
+    private EncryptingPreferencesProvider preferencesProvider;
+
+    @Before
+    public void setUp() {
+        wrappedPreferencesProvider = new InMemoryPreferencesProvider();
+        preferencesProvider = new EncryptingPreferencesProvider(wrappedPreferencesProvider, VALUE_KEY, KEY_KEY);
+    }
+
+    @Test
+    public void restore_persistedValue_emitsValue() {
+        preferencesProvider.persist("username", "foo")
+                .andThen(preferencesProvider.restore("username", String.class))
+                .test()
+                .assertValue("foo");
+    }
+
+    @Test
+    public void persist_value_storesEncryptedKeyAndValue() {
+        preferencesProvider.persist("username", "foo")
+                .blockingAwait();
+
+        List<String> storedKeys = wrappedPreferencesProvider.getKeys().toList().blockingGet();
+        assertEquals(1, storedKeys.size());
+        assertNotEquals("username", storedKeys.get(0));
+        String storedValue = wrappedPreferencesProvider.restore(storedKeys.get(0), String.class).blockingGet();
+        assertFalse(storedValue.contains("foo"));
+    }
+
+    @Test
+    public void persist_sameValueTwice_usesDifferentNonces() {
+        preferencesProvider.persist("1", "foo")
+                .andThen(preferencesProvider.persist("2", "foo"))
+                .blockingAwait();
+
+        List<String> storedKeys = wrappedPreferencesProvider.getKeys().toList().blockingGet();
+        assertNotEquals(wrappedPreferencesProvider.restore(storedKeys.get(0), String.class).blockingGet(),
+                wrappedPreferencesProvider.restore(storedKeys.get(1), String.class).blockingGet());
+    }
+
+    @Test
+    public void getKeys_foreignKeysAvailable_emitsOnlyDecryptedKeys() {
+        wrappedPreferencesProvider.persist("foreign", "bar")
+                .andThen(preferencesProvider.persist("1", 1))
+                .andThen(preferencesProvider.persist("2", 2))
+                .blockingAwait();
+
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), new HashSet<>(preferencesProvider.getKeys().toList().blockingGet()));
+    }
+
+    @Test
+    public void restore_valueMovedToOtherKey_emitsError() throws Exception {
+        preferencesProvider = new EncryptingPreferencesProvider(wrappedPreferencesProvider, VALUE_KEY);
+        preferencesProvider.persist("1", 1)
+                .blockingAwait();
+        String storedValue = wrappedPreferencesProvider.blocking().restore("1", String.class);
+        wrappedPreferencesProvider.blocking().persist("2", storedValue);
+
+        preferencesProvider.restore("2", Integer.class)
+                .test()
+                .assertError(PreferenceProviderException.class);
+    }
+
+    @Test
+    public void restore_binaryValue_emitsBytes() {
+        preferencesProvider.persist("1", new byte[]{1, 2, 3})
+                .blockingAwait();
+
+        assertArrayEquals(new byte[]{1, 2, 3}, preferencesProvider.restore("1", byte[].class).blockingGet());
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), preferencesProvider.restore("1", ByteBuffer.class).blockingGet());
+    }
+
+    @Test
+    public void restoreAll_someValuesAvailable_emitsAvailableValues() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("1", 1);
+        values.put("2", 2);
+        preferencesProvider.persistAll(values)
+                .blockingAwait();
+
+        Map<String, Integer> restoredValues = preferencesProvider.restoreAll(Arrays.asList("1", "2", "3"), Integer.class)
+                .blockingGet();
+
+        assertEquals(2, restoredValues.size());
+        assertEquals(Integer.valueOf(2), restoredValues.get("2"));
+    }
+
+    @Test
+    public void getChanges_valuesPersisted_emitsDecryptedValues() {
+        TestObserver<Integer> testObserver = preferencesProvider.getChanges("1", Integer.class)
+                .test();
+
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.persist("1", 2))
+                .blockingAwait();
+
+        testObserver.assertValues(1, 2);
+    }
+
+    @Test
+    public void delete_persistedValue_removesValue() {
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.deleteAll(Collections.singletonList("1")))
+                .blockingAwait();
+
+        assertFalse(preferencesProvider.containsKey("1").blockingGet());
+        assertTrue(wrappedPreferencesProvider.getKeys().isEmpty().blockingGet());
+    }
+
+}
@@ -1,14 +1,37 @@
 package com.nexenio.rxpreferences.provider;
 
+import com.google.gson.reflect.TypeToken;
+import com.nexenio.rxpreferences.cache.ValueCache;
+import com.nexenio.rxpreferences.serializer.BinarySerializer;
+import com.nexenio.rxpreferences.serializer.GsonSerializer;
+import com.nexenio.rxpreferences.serializer.Serializer;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import androidx.annotation.NonNull;
 import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class InMemoryPreferencesProviderTest {
@@ -193,6 +216,101 @@ public class InMemoryPreferencesProviderTest {
                 .assertNotComplete();
     }
 
+    @Test
+    public void restoreAll_someKeysAvailable_emitsAvailableValues() {
+        Map<String, Integer> expectedValues = new HashMap<>();
+        expectedValues.put("1", 1);
+        expectedValues.put("2", 2);
+
+        preferencesProvider.persistAll(expectedValues)
+                .andThen(preferencesProvider.restoreAll(Arrays.asList("1", "2", "3"), Integer.class))
+                .test()
+                .assertValue(expectedValues)
+                .assertComplete();
+    }
+
+    @Test
+    public void restoreAll_differentTypes_emitsValues() {
+        Map<String, Class<?>> typeClasses = new HashMap<>();
+        typeClasses.put("1", Integer.class);
+        typeClasses.put("2", String.class);
+
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.persist("2", "2"))
+                .andThen(preferencesProvider.restoreAll(typeClasses))
+                .test()
+                .assertValue(values -> {
+                    assertEquals(1, values.get("1"));
+                    assertEquals("2", values.get("2"));
+                    return true;
+                })
+                .assertComplete();
+    }
+
+    @Test
+    public void restoreAll_deserializationScheduler_emitsValues() {
+        Map<String, Class<?>> typeClasses = new HashMap<>();
+        Map<String, Object> expectedValues = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            typeClasses.put(String.valueOf(i), Integer.class);
+            expectedValues.put(String.valueOf(i), i);
+        }
+
+        preferencesProvider.persistAll(expectedValues)
+                .andThen(((BasePreferencesProvider) preferencesProvider).restoreAll(typeClasses, Schedulers.computation()))
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertValue(expectedValues)
+                .assertComplete();
+    }
+
+    @Test
+    public void restoreAll_wrongType_emitsError() {
+        preferencesProvider.persist("1", "foo")
+                .andThen(preferencesProvider.restoreAll(Collections.singletonList("1"), Integer.class))
+                .test()
+                .assertError(PreferenceProviderException.class);
+    }
+
+    @Test
+    public void restore_genericType_emitsValue() {
+        java.lang.reflect.Type type = new TypeToken<Map<String, List<Integer>>>() {}.getType();
+        Map<String, List<Integer>> value = new HashMap<>();
+        value.put("a", Arrays.asList(1, 2));
+        preferencesProvider.persist("1", value)
+                .andThen(preferencesProvider.<Map<String, List<Integer>>>restore("1", type))
+                .test()
+                .assertValue(value)
+                .assertComplete();
+    }
+
+    @Test
+    public void restoreOrDefault_genericTypeNotAvailable_emitsDefault() {
+        java.lang.reflect.Type type = new TypeToken<List<Integer>>() {}.getType();
+        List<Integer> defaultValue = Collections.singletonList(1);
+        preferencesProvider.restoreOrDefault("1", defaultValue, type)
+                .test()
+                .assertValue(defaultValue)
+                .assertComplete();
+    }
+
+    @Test
+    public void restoreIfAvailable_genericTypeCached_emitsCachedValue() {
+        ValueCache valueCache = new ValueCache(10);
+        ((BasePreferencesProvider) preferencesProvider).setValueCache(valueCache);
+        java.lang.reflect.Type type = new TypeToken<List<Integer>>() {}.getType();
+
+        preferencesProvider.persist("1", Arrays.asList(1, 2))
+                .andThen(preferencesProvider.restoreIfAvailable("1", type))
+                .ignoreElement()
+                .andThen(preferencesProvider.<List<Integer>>restoreIfAvailable("1", type))
+                .test()
+                .assertValue(Arrays.asList(1, 2))
+                .assertComplete();
+
+        assertEquals(1, valueCache.getHitCount());
+    }
+
     @Test
     public void persist_validValue_completes() {
         preferencesProvider.persist("1", 1)
@@ -202,6 +320,194 @@ public class InMemoryPreferencesProviderTest {
                 .assertComplete();
     }
 
+    @Test
+    public void restoreIfAvailable_valueCached_emitsCachedValue() {
+        ValueCache valueCache = new ValueCache(10);
+        ((BasePreferencesProvider) preferencesProvider).setValueCache(valueCache);
+
+        preferencesProvider.persist("1", "1")
+                .andThen(preferencesProvider.restoreIfAvailable("1", String.class))
+                .ignoreElement()
+                .andThen(preferencesProvider.restoreIfAvailable("1", String.class))
+                .test()
+                .assertValue("1")
+                .assertComplete();
+
+        assertEquals(1, valueCache.getMissCount());
+        assertEquals(1, valueCache.getHitCount());
+    }
+
+    @Test
+    public void persist_valueCached_invalidatesCachedValue() {
+        ((BasePreferencesProvider) preferencesProvider).setValueCache(new ValueCache(10));
+
+        preferencesProvider.persist("1", "1")
+                .andThen(preferencesProvider.restore("1", String.class))
+                .ignoreElement()
+                .andThen(preferencesProvider.persist("1", "2"))
+                .andThen(preferencesProvider.restore("1", String.class))
+                .test()
+                .assertValue("2")
+                .assertComplete();
+    }
+
+    @Test
+    public void delete_valueCached_invalidatesCachedValue() {
+        ((BasePreferencesProvider) preferencesProvider).setValueCache(new ValueCache(10));
+
+        preferencesProvider.persist("1", "1")
+                .andThen(preferencesProvider.restore("1", String.class))
+                .ignoreElement()
+                .andThen(preferencesProvider.delete("1"))
+                .andThen(preferencesProvider.restoreIfAvailable("1", String.class))
+                .test()
+                .assertNoValues()
+                .assertComplete();
+    }
+
+    @Test
+    public void persist_nativeValue_storesValueWithoutSerialization() {
+        preferencesProvider.persist("1", true)
+                .andThen(preferencesProvider.persist("2", 2L))
+                .blockingAwait();
+
+        Map<String, Object> values = ((InMemoryPreferencesProvider) preferencesProvider).values;
+        assertEquals(true, values.get("1"));
+        assertEquals(2L, values.get("2"));
+    }
+
+    @Test
+    public void persist_nativeValuesDisabled_storesSerializedValue() {
+        ((BasePreferencesProvider) preferencesProvider).setNativeValuesEnabled(false);
+
+        preferencesProvider.persist("1", true)
+                .andThen(preferencesProvider.restore("1", Boolean.class))
+                .test()
+                .assertValue(true);
+
+        assertEquals("true", ((InMemoryPreferencesProvider) preferencesProvider).values.get("1"));
+    }
+
+    @Test
+    public void restore_serializedNativeValue_emitsValue() {
+        ((InMemoryPreferencesProvider) preferencesProvider).persist("1", "1.5")
+                .andThen(preferencesProvider.restore("1", Float.class))
+                .test()
+                .assertValue(1.5f)
+                .assertComplete();
+    }
+
+    @Test
+    public void restore_nativeValueOfDifferentType_emitsError() {
+        preferencesProvider.persist("1", true)
+                .andThen(preferencesProvider.restore("1", Integer.class))
+                .test()
+                .assertError(PreferenceProviderException.class);
+    }
+
+    @Test
+    public void restore_nativeIntegerAsLong_emitsConvertedValue() {
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.restore("1", Long.class))
+                .test()
+                .assertValue(1L)
+                .assertComplete();
+    }
+
+    @Test
+    public void restore_nativeFloatAsDouble_emitsConvertedValue() {
+        preferencesProvider.persist("1", 1.5f)
+                .andThen(preferencesProvider.restore("1", Double.class))
+                .test()
+                .assertValue(1.5)
+                .assertComplete();
+    }
+
+    @Test
+    public void restore_nativeValueAsString_emitsConvertedValue() throws PreferenceProviderException {
+        preferencesProvider.persist("1", 2)
+                .andThen(preferencesProvider.persist("2", true))
+                .blockingAwait();
+
+        assertEquals("2", preferencesProvider.blocking().restore("1", String.class));
+        assertEquals("true", preferencesProvider.restore("2", String.class).blockingGet());
+    }
+
+    @Test
+    public void persist_byteArray_storesCopyWithoutEncoding() throws Exception {
+        byte[] value = {1, 2, 3};
+        preferencesProvider.blocking().persist("1", value);
+        value[0] = 0;
+
+        assertTrue(((InMemoryPreferencesProvider) preferencesProvider).values.get("1") instanceof ByteBuffer);
+        assertArrayEquals(new byte[]{1, 2, 3}, preferencesProvider.blocking().restore("1", byte[].class));
+    }
+
+    @Test
+    public void restore_byteBuffer_emitsReadOnlyBuffer() throws Exception {
+        preferencesProvider.blocking().persist("1", ByteBuffer.wrap(new byte[]{1, 2, 3}));
+
+        ByteBuffer value = preferencesProvider.blocking().restore("1", ByteBuffer.class);
+        assertTrue(value.isReadOnly());
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), value);
+    }
+
+    @Test
+    public void persist_binaryValuesNotSupported_storesEncodedBytes() throws Exception {
+        preferencesProvider = new InMemoryPreferencesProvider() {
+            @Override
+            protected boolean supportsBinaryValues() {
+                return false;
+            }
+        };
+        preferencesProvider.blocking().persist("1", new byte[]{1, 2, 3});
+
+        assertEquals("#AQID", ((InMemoryPreferencesProvider) preferencesProvider).values.get("1"));
+        assertArrayEquals(new byte[]{1, 2, 3}, preferencesProvider.blocking().restore("1", byte[].class));
+    }
+
+    @Test
+    public void restore_serializedByteArray_emitsValue() {
+        ((InMemoryPreferencesProvider) preferencesProvider).persist("1", "[1,2,3]")
+                .andThen(preferencesProvider.restore("1", byte[].class))
+                .test()
+                .assertValue(value -> Arrays.equals(new byte[]{1, 2, 3}, value))
+                .assertComplete();
+    }
+
+    @Test
+    public void persist_binarySerializer_storesSerializedBytes() throws Exception {
+        ((BasePreferencesProvider) preferencesProvider).setSerializer(new BinarySerializer());
+        preferencesProvider.blocking().persist("1", "foo");
+
+        assertTrue(((InMemoryPreferencesProvider) preferencesProvider).values.get("1") instanceof ByteBuffer);
+        assertEquals("foo", preferencesProvider.blocking().restore("1", String.class));
+        assertEquals("#ImZvbyI", ((InMemoryPreferencesProvider) preferencesProvider).restoreIfAvailable("1").blockingGet());
+    }
+
+    @Test
+    public void restore_serializedValueStartingWithEncodedBytesPrefix_emitsValue() throws Exception {
+        GsonSerializer gsonSerializer = new GsonSerializer();
+        ((BasePreferencesProvider) preferencesProvider).setSerializer(new Serializer() {
+            @Override
+            public <Type> Single<String> serializeToString(@NonNull Type value) {
+                return gsonSerializer.serializeToString(value)
+                        .map(serializedValue -> BasePreferencesProvider.ENCODED_BYTES_PREFIX + serializedValue);
+            }
+
+            @Override
+            public <Type> Single<Type> deserializeFromString(@NonNull String value, @NonNull Class<Type> valueClass) {
+                return gsonSerializer.deserializeFromString(value.substring(1), valueClass);
+            }
+        });
+        List<String> value = Arrays.asList("a", "b");
+
+        preferencesProvider.blocking().persist("1", value);
+
+        assertEquals("##[\"a\",\"b\"]", ((InMemoryPreferencesProvider) preferencesProvider).values.get("1"));
+        assertEquals(value, preferencesProvider.blocking().restore("1", List.class));
+    }
+
     @Test
     public void persistIfNotYetAvailable_keyNotAvailable_completes() {
         preferencesProvider.persistIfNotYetAvailable("1", 1)
@@ -221,6 +527,58 @@ public class InMemoryPreferencesProviderTest {
                 .assertComplete();
     }
 
+    @Test
+    public void persistAll_validValues_persistsAllValues() {
+        Map<String, Integer> values = new HashMap<>();
+        values.put("1", 1);
+        values.put("2", 2);
+
+        preferencesProvider.persistAll(values)
+                .andThen(preferencesProvider.restore("1", Integer.class))
+                .test()
+                .assertValue(1);
+
+        preferencesProvider.restore("2", Integer.class)
+                .test()
+                .assertValue(2);
+    }
+
+    @Test
+    public void persistAll_changesObserved_emitsChangesAfterPersisting() {
+        TestObserver<Integer> testObserver = preferencesProvider.getChanges("1", Integer.class)
+                .doOnNext(value -> assertTrue(preferencesProvider.containsKey("2").blockingGet()))
+                .test();
+
+        Map<String, Integer> values = new LinkedHashMap<>();
+        values.put("1", 1);
+        values.put("2", 2);
+
+        preferencesProvider.persistAll(values)
+                .blockingAwait();
+
+        testObserver.assertValue(1)
+                .assertNoErrors();
+    }
+
+    @Test
+    public void edit_changesCommitted_appliesLastChangePerKey() {
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.edit()
+                        .persist("2", 2)
+                        .delete("2")
+                        .delete("1")
+                        .persist("1", 3)
+                        .commit())
+                .andThen(preferencesProvider.getKeys())
+                .toList()
+                .test()
+                .assertValue(Collections.singletonList("1"));
+
+        preferencesProvider.restore("1", Integer.class)
+                .test()
+                .assertValue(3);
+    }
+
     @Test
     public void getChanges_noChanges_emitsNothing() {
         preferencesProvider.getChanges("1", Integer.class)
@@ -244,6 +602,181 @@ public class InMemoryPreferencesProviderTest {
                 .assertNotComplete();
     }
 
+    @Test
+    public void getChanges_multipleObservers_sharesPublisher() {
+        TestObserver<Integer> firstTestObserver = preferencesProvider.getChanges("1", Integer.class).test();
+        TestObserver<Integer> secondTestObserver = preferencesProvider.getChanges("1", Integer.class).test();
+
+        BasePreferencesProvider.ChangePublisher changePublisher = getChangePublishers().get("1");
+        assertEquals(2, changePublisher.getSubscriberCount());
+
+        preferencesProvider.persist("1", 1)
+                .blockingAwait();
+
+        firstTestObserver.assertValue(1);
+        secondTestObserver.assertValue(1);
+    }
+
+    @Test
+    public void getChanges_allObserversDisposed_removesPublisher() {
+        TestObserver<Integer> firstTestObserver = preferencesProvider.getChanges("1", Integer.class).test();
+        TestObserver<Integer> secondTestObserver = preferencesProvider.getChanges("1", Integer.class).test();
+
+        firstTestObserver.dispose();
+        assertTrue(getChangePublishers().containsKey("1"));
+
+        secondTestObserver.dispose();
+        assertFalse(getChangePublishers().containsKey("1"));
+    }
+
+    @Test
+    public void getChanges_resubscribedAfterDispose_emitsChanges() {
+        preferencesProvider.getChanges("1", Integer.class)
+                .test()
+                .dispose();
+
+        TestObserver<Integer> testObserver = preferencesProvider.getChanges("1", Integer.class).test();
+
+        preferencesProvider.persist("1", 1)
+                .blockingAwait();
+
+        testObserver.assertValue(1)
+                .assertNotComplete();
+    }
+
+    @Test
+    public void getChanges_latestCoalescing_emitsLatestChangeOnRequest() {
+        TestSubscriber<Integer> testSubscriber = preferencesProvider.getChanges("1", Integer.class, ChangeCoalescing.latest())
+                .test(0);
+
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.persist("1", 2))
+                .andThen(preferencesProvider.persist("1", 3))
+                .blockingAwait();
+        testSubscriber.assertNoValues();
+
+        testSubscriber.request(1);
+        testSubscriber.assertValue(3);
+
+        testSubscriber.request(1);
+        preferencesProvider.persist("1", 4)
+                .blockingAwait();
+        testSubscriber.assertValues(3, 4)
+                .assertNoErrors();
+    }
+
+    @Test
+    public void getChanges_sampleCoalescing_emitsLatestChangePerPeriod() {
+        TestScheduler testScheduler = new TestScheduler();
+        TestSubscriber<Integer> testSubscriber = preferencesProvider.getChanges("1", Integer.class, ChangeCoalescing.sample(100, TimeUnit.MILLISECONDS, testScheduler))
+                .test();
+
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.persist("1", 2))
+                .blockingAwait();
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        preferencesProvider.persist("1", 3)
+                .blockingAwait();
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        testSubscriber.assertValues(2, 3);
+    }
+
+    @Test
+    public void getChanges_debounceCoalescing_emitsChangeAfterTimeout() {
+        TestScheduler testScheduler = new TestScheduler();
+        TestSubscriber<Integer> testSubscriber = preferencesProvider.getChanges("1", Integer.class, ChangeCoalescing.debounce(100, TimeUnit.MILLISECONDS, testScheduler))
+                .test();
+
+        preferencesProvider.persist("1", 1)
+                .blockingAwait();
+        testScheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        preferencesProvider.persist("1", 2)
+                .blockingAwait();
+        testScheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        testSubscriber.assertNoValues();
+
+        testScheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        testSubscriber.assertValue(2);
+    }
+
+    @Test
+    public void restoreOrDefaultAndGetChanges_coalescing_emitsRestoredValueImmediately() {
+        TestScheduler testScheduler = new TestScheduler();
+        TestSubscriber<Integer> testSubscriber = preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.restoreOrDefaultAndGetChanges("1", 0, ChangeCoalescing.debounce(100, TimeUnit.MILLISECONDS, testScheduler)))
+                .test();
+        testSubscriber.assertValue(1);
+
+        preferencesProvider.persist("1", 2)
+                .andThen(preferencesProvider.persist("1", 3))
+                .blockingAwait();
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        testSubscriber.assertValues(1, 3)
+                .assertNotComplete();
+    }
+
+    @Test
+    public void getChanges_coalescingDisposed_removesPublisher() {
+        preferencesProvider.getChanges("1", Integer.class, ChangeCoalescing.latest())
+                .test()
+                .cancel();
+
+        assertTrue(getChangePublishers().isEmpty());
+    }
+
+    @Test
+    public void persist_testSchedulers_completesWhenSchedulersTriggered() {
+        TestScheduler ioScheduler = new TestScheduler();
+        TestScheduler computationScheduler = new TestScheduler();
+        InMemoryPreferencesProvider inMemoryPreferencesProvider = new InMemoryPreferencesProvider();
+        inMemoryPreferencesProvider.setIoScheduler(ioScheduler);
+        inMemoryPreferencesProvider.setComputationScheduler(computationScheduler);
+
+        TestObserver<Void> testObserver = inMemoryPreferencesProvider.persist("1", Arrays.asList(1, 2))
+                .test();
+        ioScheduler.triggerActions();
+        testObserver.assertNotComplete();
+
+        computationScheduler.triggerActions();
+        testObserver.assertNotComplete();
+        assertFalse(inMemoryPreferencesProvider.values.containsKey("1"));
+
+        ioScheduler.triggerActions();
+        testObserver.assertComplete();
+        assertTrue(inMemoryPreferencesProvider.values.containsKey("1"));
+    }
+
+    @Test
+    public void restore_testSchedulers_emitsWhenSchedulersTriggered() throws PreferenceProviderException {
+        TestScheduler ioScheduler = new TestScheduler();
+        TestScheduler computationScheduler = new TestScheduler();
+        InMemoryPreferencesProvider inMemoryPreferencesProvider = new InMemoryPreferencesProvider();
+        inMemoryPreferencesProvider.blocking().persist("1", "foo");
+        inMemoryPreferencesProvider.setIoScheduler(ioScheduler);
+        inMemoryPreferencesProvider.setComputationScheduler(computationScheduler);
+
+        TestObserver<String> testObserver = inMemoryPreferencesProvider.restore("1", String.class)
+                .test();
+        computationScheduler.triggerActions();
+        testObserver.assertNoValues();
+
+        ioScheduler.triggerActions();
+        testObserver.assertNoValues();
+
+        computationScheduler.triggerActions();
+        testObserver.assertValue("foo");
+    }
+
+    @Test
+    public void persist_noObservers_doesNotCreatePublisher() {
+        preferencesProvider.persist("1", 1)
+                .blockingAwait();
+
+        assertTrue(getChangePublishers().isEmpty());
+    }
+
     @Test
     public void delete_keyAvailable_completes() {
         preferencesProvider.persist("1", 1)
@@ -273,6 +806,17 @@ public class InMemoryPreferencesProviderTest {
                 .assertComplete();
     }
 
+    @Test
+    public void deleteAll_keysSpecified_deletesSpecifiedKeys() {
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.persist("2", 2))
+                .andThen(preferencesProvider.deleteAll(Arrays.asList("1", "3")))
+                .andThen(preferencesProvider.getKeys())
+                .test()
+                .assertValue("2")
+                .assertComplete();
+    }
+
     @Test
     public void deleteAll_noKeysAvailable_completes() {
         preferencesProvider.deleteAll()
@@ -282,4 +826,158 @@ public class InMemoryPreferencesProviderTest {
                 .assertComplete();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void blocking_restoreKeyAvailable_returnsValue() throws Exception {
+        BlockingPreferencesProvider blockingPreferencesProvider = preferencesProvider.blocking();
+        blockingPreferencesProvider.persist("1", "foo");
+
+        assertEquals("foo", blockingPreferencesProvider.restore("1", String.class));
+        assertEquals("foo", preferencesProvider.restore("1", String.class).blockingGet());
+    }
+
+    @Test(expected = PreferenceProviderException.class)
+    public void blocking_restoreKeyNotAvailable_throwsException() throws Exception {
+        preferencesProvider.blocking().restore("1", String.class);
+    }
+
+    @Test
+    public void blocking_restoreIfAvailableKeyNotAvailable_returnsNull() throws Exception {
+        assertNull(preferencesProvider.blocking().restoreIfAvailable("1", String.class));
+        assertEquals("foo", preferencesProvider.blocking().restoreOrDefault("1", "foo"));
+    }
+
+    @Test
+    public void blocking_persist_emitsChanges() throws Exception {
+        TestObserver<Integer> testObserver = preferencesProvider.getChanges("1", Integer.class)
+                .test();
+
+        preferencesProvider.blocking().persist("1", 1);
+        preferencesProvider.blocking().commit(Collections.singletonMap("1", 2), Collections.emptyList());
+
+        testObserver.assertValues(1, 2);
+    }
+
+    @Test
+    public void blocking_deleteAll_deletesAllKeys() throws Exception {
+        BlockingPreferencesProvider blockingPreferencesProvider = preferencesProvider.blocking();
+        blockingPreferencesProvider.persistAll(Collections.singletonMap("1", 1));
+        blockingPreferencesProvider.persistIfNotYetAvailable("2", 2);
+        assertEquals(2, blockingPreferencesProvider.getKeys().size());
+
+        blockingPreferencesProvider.deleteAll();
+
+        assertTrue(blockingPreferencesProvider.getKeys().isEmpty());
+    }
+
+    @Test
+    public void blocking_wrappedProvider_returnsWrappedValues() throws Exception {
+        PreferencesProvider wrappedPreferencesProvider = new WrappedPreferencesProvider(preferencesProvider);
+        wrappedPreferencesProvider.blocking().persist("1", 1);
+
+        assertTrue(wrappedPreferencesProvider.blocking().containsKey("1"));
+        assertEquals(Integer.valueOf(1), preferencesProvider.blocking().restore("1", Integer.class));
+    }
+
+    @Test
+    public void getKeys_concurrentChanges_completes() throws Exception {
+        AtomicReference<Throwable> writerError = new AtomicReference<>();
+        Thread writer = createWriter(() -> {
+            for (int i = 0; i < 10000; i++) {
+                preferencesProvider.persist(String.valueOf(i % 100), i)
+                        .andThen(preferencesProvider.delete(String.valueOf((i + 50) % 100)))
+                        .blockingAwait();
+            }
+        }, writerError);
+        writer.start();
+
+        while (writer.isAlive()) {
+            preferencesProvider.getKeys()
+                    .toList()
+                    .test()
+                    .assertNoErrors();
+        }
+        joinWriter(writer, writerError);
+    }
+
+    @Test
+    public void restoreAll_concurrentBatches_emitsCompleteBatches() throws Exception {
+        AtomicReference<Throwable> writerError = new AtomicReference<>();
+        Thread writer = createWriter(() -> {
+            for (int i = 0; i < 10000; i++) {
+                Map<String, Integer> values = new HashMap<>();
+                values.put("1", i);
+                values.put("2", i);
+                preferencesProvider.persistAll(values).blockingAwait();
+            }
+        }, writerError);
+        preferencesProvider.persistAll(Collections.singletonMap("1", -1))
+                .andThen(preferencesProvider.persist("2", -1))
+                .blockingAwait();
+        writer.start();
+
+        while (writer.isAlive()) {
+            Map<String, Integer> values = preferencesProvider.restoreAll(Arrays.asList("1", "2"), Integer.class).blockingGet();
+            assertEquals(values.get("1"), values.get("2"));
+        }
+        joinWriter(writer, writerError);
+    }
+
+    @Test
+    public void getChanges_concurrentPersistsOfSameKey_emitsStoredValueLast() throws Exception {
+        CountDownLatch secondPersistCompleted = new CountDownLatch(1);
+        preferencesProvider = new InMemoryPreferencesProvider() {
+            @Override
+            protected void writeStoredValue(@NonNull String key, @NonNull Object storedValue) {
+                super.writeStoredValue(key, storedValue);
+                if (storedValue.equals(1)) {
+                    // give the second persist the chance to publish its change first
+                    try {
+                        secondPersistCompleted.await(100, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        TestObserver<Integer> testObserver = preferencesProvider.getChanges("1", Integer.class)
+                .test();
+        AtomicReference<Throwable> writerError = new AtomicReference<>();
+        Thread writer = createWriter(() -> preferencesProvider.persist("1", 1).blockingAwait(), writerError);
+
+        writer.start();
+        while (!preferencesProvider.containsKey("1").blockingGet()) {
+            Thread.yield();
+        }
+        preferencesProvider.persist("1", 2).blockingAwait();
+        secondPersistCompleted.countDown();
+        joinWriter(writer, writerError);
+
+        testObserver.assertValues(1, 2);
+        assertEquals(Integer.valueOf(2), preferencesProvider.restore("1", Integer.class).blockingGet());
+    }
+
+    /**
+     * Creates a thread that runs the specified writer and keeps the error it fails with, if any.
+     */
+    private static Thread createWriter(Runnable writer, AtomicReference<Throwable> writerError) {
+        Thread thread = new Thread(writer);
+        thread.setUncaughtExceptionHandler((failedThread, throwable) -> writerError.compareAndSet(null, throwable));
+        return thread;
+    }
+
+    /**
+     * Waits for the specified writer and fails if a writer failed.
+     */
+    private static void joinWriter(Thread writer, AtomicReference<Throwable> writerError) throws InterruptedException {
+        writer.join();
+        Throwable throwable = writerError.get();
+        if (throwable != null) {
+            throw new AssertionError("Writer failed", throwable);
+        }
+    }
+
+    private Map<String, BasePreferencesProvider.ChangePublisher> getChangePublishers() {
+        return ((BasePreferencesProvider) preferencesProvider).changePublishers;
+    }
+
+}
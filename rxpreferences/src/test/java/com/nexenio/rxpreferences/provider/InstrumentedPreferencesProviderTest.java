@@ -0,0 +1,160 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.nexenio.rxpreferences.metrics.MetricsSnapshot;
+import com.nexenio.rxpreferences.metrics.Operation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentedPreferencesProviderTest {
+
+    private InMemoryPreferencesProvider wrappedPreferencesProvider;
+
+    private InstrumentedPreferencesProvider preferencesProvider;
+
+    @Before
+    public void setUp() {
+        wrappedPreferencesProvider = new InMemoryPreferencesProvider();
+        preferencesProvider = new InstrumentedPreferencesProvider(wrappedPreferencesProvider);
+    }
+
+    @Test
+    public void getMetricsSnapshot_operationsCompleted_recordsLatencies() {
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.restore("1", Integer.class))
+                .flatMap(value -> preferencesProvider.restore("1", Integer.class))
+                .blockingGet();
+
+        MetricsSnapshot metricsSnapshot = preferencesProvider.getMetricsSnapshot();
+
+        assertEquals(1, metricsSnapshot.getOperationMetrics(Operation.PERSIST).getCount());
+        assertEquals(2, metricsSnapshot.getOperationMetrics(Operation.RESTORE).getCount());
+        assertEquals(0, metricsSnapshot.getOperationMetrics(Operation.DELETE).getCount());
+        MetricsSnapshot.OperationMetrics restoreMetrics = metricsSnapshot.getOperationMetrics(Operation.RESTORE);
+        assertTrue(restoreMetrics.getPercentileNanos(0.5) <= restoreMetrics.getPercentileNanos(0.99));
+        assertTrue(restoreMetrics.getPercentileNanos(0.99) <= restoreMetrics.getMaximumNanos());
+    }
+
+    @Test
+    public void getMetricsSnapshot_operationFailed_countsError() {
+        preferencesProvider.restore("missing", Integer.class)
+                .test()
+                .assertError(PreferenceProviderException.class);
+
+        MetricsSnapshot metricsSnapshot = preferencesProvider.getMetricsSnapshot();
+
+        assertEquals(1, metricsSnapshot.getOperationMetrics(Operation.RESTORE).getErrorCount());
+        assertEquals(1, metricsSnapshot.getTopKeyMetrics().get(0).getErrorCount());
+    }
+
+    @Test
+    public void getMetricsSnapshot_valuesPersisted_recordsNoSizesByDefault() {
+        preferencesProvider.persist("1", "foo")
+                .blockingAwait();
+
+        MetricsSnapshot metricsSnapshot = preferencesProvider.getMetricsSnapshot();
+
+        assertEquals(0, metricsSnapshot.getPersistedValueCount());
+        assertEquals(-1, metricsSnapshot.getTopKeyMetrics().get(0).getLastValueSize());
+    }
+
+    @Test
+    public void getMetricsSnapshot_valuesPersisted_recordsSerializedSizes() {
+        preferencesProvider.setValueSizeRecordingEnabled(true);
+        preferencesProvider.persist("1", "foo")
+                .andThen(preferencesProvider.persist("2", new byte[10]))
+                .blockingAwait();
+
+        MetricsSnapshot metricsSnapshot = preferencesProvider.getMetricsSnapshot();
+
+        assertEquals(2, metricsSnapshot.getPersistedValueCount());
+        assertEquals(15, metricsSnapshot.getPersistedByteCount());
+        assertEquals(10, metricsSnapshot.getMaximumPersistedValueSize());
+    }
+
+    @Test
+    public void getMetricsSnapshot_keysUsed_includesHottestKeys() {
+        preferencesProvider.setTopKeyCount(2);
+        preferencesProvider.setValueSizeRecordingEnabled(true);
+        for (int i = 0; i < 3; i++) {
+            preferencesProvider.persist("hot", i).blockingAwait();
+        }
+        preferencesProvider.persist("warm", 1)
+                .andThen(preferencesProvider.persist("warm", 2))
+                .andThen(preferencesProvider.persist("cold", 1))
+                .blockingAwait();
+
+        MetricsSnapshot metricsSnapshot = preferencesProvider.getMetricsSnapshot();
+
+        assertEquals(2, metricsSnapshot.getTopKeyMetrics().size());
+        assertEquals("hot", metricsSnapshot.getTopKeyMetrics().get(0).getKey());
+        assertEquals(3, metricsSnapshot.getTopKeyMetrics().get(0).getOperationCount());
+        assertEquals("warm", metricsSnapshot.getTopKeyMetrics().get(1).getKey());
+        assertEquals(1, metricsSnapshot.getTopKeyMetrics().get(1).getLastValueSize());
+    }
+
+    @Test
+    public void getMetricsSnapshot_manyKeysUsed_includesHottestKeys() {
+        preferencesProvider.setTopKeyCount(1);
+        for (int i = 0; i < 30; i++) {
+            preferencesProvider.persist("hot", i).blockingAwait();
+        }
+        for (int i = 0; i < 100; i++) {
+            preferencesProvider.persist(String.valueOf(i), i).blockingAwait();
+        }
+
+        MetricsSnapshot metricsSnapshot = preferencesProvider.getMetricsSnapshot();
+
+        assertEquals(1, metricsSnapshot.getTopKeyMetrics().size());
+        assertEquals("hot", metricsSnapshot.getTopKeyMetrics().get(0).getKey());
+        assertEquals(30, metricsSnapshot.getTopKeyMetrics().get(0).getOperationCount());
+    }
+
+    @Test
+    public void getMetricsSnapshot_noTopKeys_recordsNoKeys() {
+        preferencesProvider.setTopKeyCount(0);
+        preferencesProvider.persist("1", 1).blockingAwait();
+        preferencesProvider.setTopKeyCount(1);
+        preferencesProvider.persist("2", 2).blockingAwait();
+
+        MetricsSnapshot metricsSnapshot = preferencesProvider.getMetricsSnapshot();
+
+        assertEquals(1, metricsSnapshot.getTopKeyMetrics().size());
+        assertEquals("2", metricsSnapshot.getTopKeyMetrics().get(0).getKey());
+    }
+
+    @Test
+    public void getMetricsSnapshot_changesObserved_countsSubscribers() {
+        Disposable first = preferencesProvider.getChanges("1", Integer.class).subscribe();
+        Disposable second = preferencesProvider.getChanges("1", Integer.class).subscribe();
+
+        assertEquals(2, preferencesProvider.getMetricsSnapshot().getChangeSubscriberCount());
+
+        first.dispose();
+        second.dispose();
+        assertEquals(0, preferencesProvider.getMetricsSnapshot().getChangeSubscriberCount());
+    }
+
+    @Test
+    public void getMetricsSnapshots_periodPassed_emitsSnapshot() {
+        TestScheduler testScheduler = new TestScheduler();
+        TestObserver<MetricsSnapshot> testObserver = preferencesProvider.getMetricsSnapshots(1, TimeUnit.SECONDS, testScheduler)
+                .test();
+        preferencesProvider.persist("1", 1).blockingAwait();
+
+        testScheduler.advanceTimeBy(2, TimeUnit.SECONDS);
+
+        testObserver.assertValueCount(2)
+                .assertValueAt(1, metricsSnapshot -> metricsSnapshot.getOperationMetrics(Operation.PERSIST).getCount() == 1);
+    }
+
+}
@@ -0,0 +1,187 @@
+package com.nexenio.rxpreferences.provider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogStructuredPreferencesProviderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+
+    private LogStructuredPreferencesProvider preferencesProvider;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(temporaryFolder.getRoot(), "preferences.log");
+        preferencesProvider = new LogStructuredPreferencesProvider(file);
+        preferencesProvider.setIoScheduler(Schedulers.trampoline());
+        preferencesProvider.setComputationScheduler(Schedulers.trampoline());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        preferencesProvider.close();
+    }
+
+    @Test
+    public void restore_persistedValues_emitsValues() throws Exception {
+        BlockingPreferencesProvider blockingPreferencesProvider = preferencesProvider.blocking();
+        blockingPreferencesProvider.persist("string", "foo");
+        blockingPreferencesProvider.persist("boolean", true);
+        blockingPreferencesProvider.persist("long", 2L);
+        blockingPreferencesProvider.persist("bytes", new byte[]{1, 2, 3});
+
+        assertEquals("foo", blockingPreferencesProvider.restore("string", String.class));
+        assertEquals(true, blockingPreferencesProvider.restore("boolean", Boolean.class));
+        assertEquals(Long.valueOf(2L), blockingPreferencesProvider.restore("long", Long.class));
+        assertArrayEquals(new byte[]{1, 2, 3}, blockingPreferencesProvider.restore("bytes", byte[].class));
+    }
+
+    @Test
+    public void persist_changesObserved_emitsChanges() {
+        TestObserver<Integer> testObserver = preferencesProvider.getChanges("1", Integer.class)
+                .test();
+
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.persist("1", 2))
+                .blockingAwait();
+
+        testObserver.assertValues(1, 2);
+    }
+
+    @Test
+    public void reopen_valuesPersisted_restoresLatestValues() throws Exception {
+        preferencesProvider.blocking().persist("1", "foo");
+        preferencesProvider.blocking().persist("2", 2);
+        preferencesProvider.blocking().persist("1", "bar");
+        preferencesProvider.blocking().delete("2");
+        preferencesProvider.close();
+
+        preferencesProvider = new LogStructuredPreferencesProvider(file);
+
+        assertEquals(Collections.singleton("1"), preferencesProvider.blocking().getKeys());
+        assertEquals("bar", preferencesProvider.blocking().restore("1", String.class));
+        assertNull(preferencesProvider.blocking().restoreIfAvailable("2", Integer.class));
+    }
+
+    @Test
+    public void reopen_corruptedFrame_truncatesToLastValidFrame() throws Exception {
+        preferencesProvider.blocking().persist("1", "foo");
+        long validLength = file.length();
+        preferencesProvider.blocking().persist("2", "bar");
+        preferencesProvider.close();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(randomAccessFile.length() - 1);
+            randomAccessFile.write('x');
+        }
+        preferencesProvider = new LogStructuredPreferencesProvider(file);
+
+        assertEquals(Collections.singleton("1"), preferencesProvider.blocking().getKeys());
+        assertEquals(validLength, file.length());
+        preferencesProvider.blocking().persist("3", "baz");
+        assertEquals("baz", preferencesProvider.blocking().restore("3", String.class));
+    }
+
+    @Test
+    public void reopen_incompleteBatch_discardsWholeBatch() throws Exception {
+        preferencesProvider.blocking().persist("1", "foo");
+        long validLength = file.length();
+        Map<String, Object> values = new HashMap<>();
+        values.put("2", "bar");
+        values.put("3", "baz");
+        preferencesProvider.blocking().persistAll(values);
+        preferencesProvider.close();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 3);
+        }
+        preferencesProvider = new LogStructuredPreferencesProvider(file);
+
+        assertEquals(Collections.singleton("1"), preferencesProvider.blocking().getKeys());
+        assertEquals(validLength, file.length());
+    }
+
+    @Test
+    public void persist_garbageExceedsThreshold_compactsInBackground() throws Exception {
+        TestScheduler compactionScheduler = new TestScheduler();
+        preferencesProvider.setCompactionScheduler(compactionScheduler);
+        preferencesProvider.setCompactionThreshold(0.5f, 0);
+        preferencesProvider.blocking().persist("1", "foo");
+        for (int i = 0; i < 100; i++) {
+            preferencesProvider.blocking().persist("2", i);
+        }
+        assertTrue(file.length() > 1000);
+
+        compactionScheduler.triggerActions();
+
+        assertTrue(file.length() < 100);
+        assertFalse(new File(file.getPath() + ".compact").exists());
+        assertEquals("foo", preferencesProvider.blocking().restore("1", String.class));
+        assertEquals(Integer.valueOf(99), preferencesProvider.blocking().restore("2", Integer.class));
+    }
+
+    @Test
+    public void compact_valuesPersistedAfterwards_restoresAllValues() throws Exception {
+        preferencesProvider.setDurabilityMode(DurabilityMode.APPLY);
+        for (int i = 0; i < 10; i++) {
+            preferencesProvider.blocking().persist(String.valueOf(i % 3), i);
+        }
+
+        preferencesProvider.compact().blockingAwait();
+        preferencesProvider.blocking().persist("3", "foo");
+        preferencesProvider.close();
+        preferencesProvider = new LogStructuredPreferencesProvider(file);
+
+        assertEquals(4, preferencesProvider.blocking().getKeys().size());
+        assertEquals(Integer.valueOf(9), preferencesProvider.blocking().restore("0", Integer.class));
+        assertEquals(Integer.valueOf(8), preferencesProvider.blocking().restore("2", Integer.class));
+        assertEquals("foo", preferencesProvider.blocking().restore("3", String.class));
+    }
+
+    @Test
+    public void persist_defaultSchedulers_completesOnIoThread() throws Exception {
+        preferencesProvider.close();
+        preferencesProvider = new LogStructuredPreferencesProvider(file);
+
+        String threadName = preferencesProvider.persist("1", 1)
+                .andThen(Single.fromCallable(() -> Thread.currentThread().getName()))
+                .blockingGet();
+
+        assertNotEquals(Thread.currentThread().getName(), threadName);
+        assertEquals(Integer.valueOf(1), preferencesProvider.restore("1", Integer.class).blockingGet());
+    }
+
+    @Test
+    public void persist_closed_emitsError() throws Exception {
+        preferencesProvider.close();
+
+        preferencesProvider.persist("1", 1)
+                .test()
+                .assertError(PreferenceProviderException.class);
+    }
+
+}
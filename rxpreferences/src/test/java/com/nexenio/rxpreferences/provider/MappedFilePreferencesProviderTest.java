@@ -0,0 +1,237 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.nexenio.rxpreferences.serializer.BinarySerializer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedFilePreferencesProviderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+
+    private MappedFilePreferencesProvider preferencesProvider;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(temporaryFolder.getRoot(), "preferences");
+        preferencesProvider = new MappedFilePreferencesProvider(file, 64, new BinarySerializer());
+        preferencesProvider.setIoScheduler(Schedulers.trampoline());
+        preferencesProvider.setComputationScheduler(Schedulers.trampoline());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        preferencesProvider.close();
+    }
+
+    @Test
+    public void restore_persistedValues_emitsValues() throws Exception {
+        BlockingPreferencesProvider blockingPreferencesProvider = preferencesProvider.blocking();
+        blockingPreferencesProvider.persist("string", "foo");
+        blockingPreferencesProvider.persist("boolean", true);
+        blockingPreferencesProvider.persist("integer", 1);
+        blockingPreferencesProvider.persist("long", 2L);
+        blockingPreferencesProvider.persist("float", 1.5f);
+        blockingPreferencesProvider.persist("list", Arrays.asList("a", "b"));
+
+        assertEquals("foo", blockingPreferencesProvider.restore("string", String.class));
+        assertEquals(true, blockingPreferencesProvider.restore("boolean", Boolean.class));
+        assertEquals(Integer.valueOf(1), blockingPreferencesProvider.restore("integer", Integer.class));
+        assertEquals(Long.valueOf(2L), blockingPreferencesProvider.restore("long", Long.class));
+        assertEquals(Float.valueOf(1.5f), blockingPreferencesProvider.restore("float", Float.class));
+        assertEquals(Arrays.asList("a", "b"), blockingPreferencesProvider.restore("list", java.util.List.class));
+    }
+
+    @Test
+    public void restore_byteBuffer_emitsSliceOfMapping() throws Exception {
+        preferencesProvider.blocking().persist("1", new byte[]{1, 2, 3});
+
+        ByteBuffer value = preferencesProvider.blocking().restore("1", ByteBuffer.class);
+        assertTrue(value.isDirect());
+        assertTrue(value.isReadOnly());
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), value);
+    }
+
+    @Test
+    public void persist_changesObserved_emitsChanges() {
+        TestObserver<String> testObserver = preferencesProvider.getChanges("1", String.class)
+                .test();
+
+        preferencesProvider.persist("1", (Object) "foo")
+                .andThen(preferencesProvider.persist("1", (Object) "bar"))
+                .blockingAwait();
+
+        testObserver.assertValues("foo", "bar");
+    }
+
+    @Test
+    public void delete_keyAvailable_removesKey() {
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.delete("1"))
+                .andThen(preferencesProvider.containsKey("1"))
+                .test()
+                .assertValue(false);
+    }
+
+    @Test
+    public void reopen_valuesPersisted_restoresLatestValues() throws Exception {
+        Map<String, Object> values = new HashMap<>();
+        values.put("1", "foo");
+        values.put("2", 2);
+        values.put("3", new byte[]{3});
+        preferencesProvider.blocking().persistAll(values);
+        preferencesProvider.blocking().persist("1", "bar");
+        preferencesProvider.blocking().delete("2");
+        preferencesProvider.close();
+
+        preferencesProvider = new MappedFilePreferencesProvider(file, 64, new BinarySerializer());
+
+        assertEquals(2, preferencesProvider.blocking().getKeys().size());
+        assertEquals("bar", preferencesProvider.blocking().restore("1", String.class));
+        assertNull(preferencesProvider.blocking().restoreIfAvailable("2", Integer.class));
+        assertArrayEquals(new byte[]{3}, preferencesProvider.blocking().restore("3", byte[].class));
+    }
+
+    @Test
+    public void reopen_incompleteRecord_restoresPreviousValues() throws Exception {
+        preferencesProvider.blocking().persist("1", "foo");
+        int usedSize = preferencesProvider.getUsedSize();
+        preferencesProvider.blocking().persist("2", "bar");
+        preferencesProvider.close();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(usedSize + 4);
+        }
+        preferencesProvider = new MappedFilePreferencesProvider(file, 64, new BinarySerializer());
+
+        assertEquals(Collections.singleton("1"), preferencesProvider.blocking().getKeys());
+        preferencesProvider.blocking().persist("3", "baz");
+        assertEquals("baz", preferencesProvider.blocking().restore("3", String.class));
+    }
+
+    @Test
+    public void reopen_incompleteBatch_restoresPreviousValues() throws Exception {
+        preferencesProvider.blocking().persist("1", "foo");
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("2", "bar");
+        values.put("3", "baz");
+        preferencesProvider.blocking().persistAll(values);
+        int usedSize = preferencesProvider.getUsedSize();
+        preferencesProvider.close();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(usedSize - 2);
+        }
+        preferencesProvider = new MappedFilePreferencesProvider(file, 64, new BinarySerializer());
+
+        assertEquals(Collections.singleton("1"), preferencesProvider.blocking().getKeys());
+    }
+
+    @Test
+    public void reopen_corruptedBatch_restoresPreviousValues() throws Exception {
+        preferencesProvider.blocking().persist("1", "foo");
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("2", "bar");
+        values.put("3", "baz");
+        preferencesProvider.blocking().persistAll(values);
+        int usedSize = preferencesProvider.getUsedSize();
+        preferencesProvider.close();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(usedSize - 1);
+            randomAccessFile.write('x');
+        }
+        preferencesProvider = new MappedFilePreferencesProvider(file, 64, new BinarySerializer());
+
+        assertEquals(Collections.singleton("1"), preferencesProvider.blocking().getKeys());
+        preferencesProvider.blocking().persist("2", "qux");
+        assertEquals("qux", preferencesProvider.blocking().restore("2", String.class));
+    }
+
+    @Test
+    public void persist_manyValues_growsFile() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            preferencesProvider.blocking().persist(String.valueOf(i), "value " + i);
+        }
+
+        assertTrue(file.length() > 64);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value " + i, preferencesProvider.blocking().restore(String.valueOf(i), String.class));
+        }
+    }
+
+    @Test
+    public void persist_sameKeyRepeatedly_compactsFile() throws Exception {
+        preferencesProvider.blocking().persist("0", "foo");
+        ByteBuffer value = ByteBuffer.wrap(new byte[]{1, 2, 3});
+        preferencesProvider.blocking().persist("1", value);
+        ByteBuffer restoredValue = preferencesProvider.blocking().restore("1", ByteBuffer.class);
+        for (int i = 0; i < 1000; i++) {
+            preferencesProvider.blocking().persist("2", i);
+        }
+
+        assertTrue(file.length() < 1000);
+        assertEquals(value, restoredValue);
+        assertEquals("foo", preferencesProvider.blocking().restore("0", String.class));
+        assertEquals(Integer.valueOf(999), preferencesProvider.blocking().restore("2", Integer.class));
+    }
+
+    @Test
+    public void compact_garbageAvailable_removesGarbage() throws Exception {
+        preferencesProvider.blocking().persist("1", "foo");
+        preferencesProvider.blocking().persist("1", "bar");
+        preferencesProvider.blocking().persist("2", "baz");
+        preferencesProvider.blocking().delete("2");
+        assertTrue(preferencesProvider.getGarbageSize() > 0);
+
+        preferencesProvider.compact().blockingAwait();
+
+        assertEquals(0, preferencesProvider.getGarbageSize());
+        assertFalse(new File(file.getPath() + ".compact").exists());
+        preferencesProvider.close();
+        preferencesProvider = new MappedFilePreferencesProvider(file, 64, new BinarySerializer());
+        assertEquals(Collections.singleton("1"), preferencesProvider.blocking().getKeys());
+        assertEquals("bar", preferencesProvider.blocking().restore("1", String.class));
+    }
+
+    @Test(expected = PreferenceProviderException.class)
+    public void constructor_invalidFile_throwsException() throws Exception {
+        File invalidFile = temporaryFolder.newFile();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(invalidFile, "rw")) {
+            randomAccessFile.writeUTF("<map></map>");
+        }
+        new MappedFilePreferencesProvider(invalidFile);
+    }
+
+    @Test(expected = PreferenceProviderException.class)
+    public void persist_closed_throwsException() throws IOException, PreferenceProviderException {
+        preferencesProvider.close();
+        preferencesProvider.blocking().persist("1", 1);
+    }
+
+}
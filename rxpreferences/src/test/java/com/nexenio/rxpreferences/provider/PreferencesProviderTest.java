@@ -0,0 +1,156 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PreferencesProviderTest {
+
+    private PreferencesProvider preferencesProvider;
+
+    @Before
+    public void setUp() {
+        preferencesProvider = new MinimalPreferencesProvider(new InMemoryPreferencesProvider());
+    }
+
+    @Test
+    public void persistAll_defaultImplementation_persistsValues() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("1", "a");
+        values.put("2", 2);
+
+        preferencesProvider.persistAll(values)
+                .test()
+                .assertComplete();
+
+        assertEquals("a", preferencesProvider.restore("1", String.class).blockingGet());
+        assertEquals(Integer.valueOf(2), preferencesProvider.restore("2", Integer.class).blockingGet());
+    }
+
+    @Test
+    public void commit_defaultImplementation_deletesAndPersistsValues() {
+        preferencesProvider.persist("1", "a").blockingAwait();
+
+        preferencesProvider.edit()
+                .delete("1")
+                .persist("2", "b")
+                .commit()
+                .test()
+                .assertComplete();
+
+        assertFalse(preferencesProvider.containsKey("1").blockingGet());
+        assertEquals("b", preferencesProvider.restore("2", String.class).blockingGet());
+    }
+
+    @Test
+    public void restoreAll_defaultImplementation_omitsUnavailableKeys() throws PreferenceProviderException {
+        preferencesProvider.persist("1", "a").blockingAwait();
+        preferencesProvider.persist("3", "c").blockingAwait();
+
+        Map<String, String> values = preferencesProvider.blocking().restoreAll(Arrays.asList("1", "2", "3"), String.class);
+
+        assertEquals(new HashSet<>(Arrays.asList("1", "3")), values.keySet());
+        assertEquals("c", values.get("3"));
+    }
+
+    @Test
+    public void restore_defaultImplementationGenericType_emitsError() {
+        preferencesProvider.persist("1", Collections.singletonList("a")).blockingAwait();
+
+        preferencesProvider.<List<String>>restore("1", new TypeToken<List<String>>() {}.getType())
+                .test()
+                .assertError(PreferenceProviderException.class);
+    }
+
+    /**
+     * Only implements the methods that have no default implementation.
+     */
+    private static class MinimalPreferencesProvider implements PreferencesProvider {
+
+        @NonNull
+        private final PreferencesProvider provider;
+
+        private MinimalPreferencesProvider(@NonNull PreferencesProvider provider) {
+            this.provider = provider;
+        }
+
+        @Override
+        public Observable<String> getKeys() {
+            return provider.getKeys();
+        }
+
+        @Override
+        public Single<Boolean> containsKey(@NonNull String key) {
+            return provider.containsKey(key);
+        }
+
+        @Override
+        public <Type> Single<Type> restore(@NonNull String key, @NonNull Class<Type> typeClass) {
+            return provider.restore(key, typeClass);
+        }
+
+        @Override
+        public <Type> Single<Type> restoreOrDefault(@NonNull String key, @NonNull Type defaultValue) {
+            return provider.restoreOrDefault(key, defaultValue);
+        }
+
+        @Override
+        public <Type> Observable<Type> restoreOrDefaultAndGetChanges(@NonNull String key, @NonNull Type defaultValue) {
+            return provider.restoreOrDefaultAndGetChanges(key, defaultValue);
+        }
+
+        @Override
+        public <Type> Maybe<Type> restoreIfAvailable(@NonNull String key, @NonNull Class<Type> typeClass) {
+            return provider.restoreIfAvailable(key, typeClass);
+        }
+
+        @Override
+        public <Type> Observable<Type> restoreIfAvailableAndGetChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
+            return provider.restoreIfAvailableAndGetChanges(key, typeClass);
+        }
+
+        @Override
+        public <Type> Completable persist(@NonNull String key, @NonNull Type value) {
+            return provider.persist(key, value);
+        }
+
+        @Override
+        public <Type> Completable persistIfNotYetAvailable(@NonNull String key, @NonNull Type value) {
+            return provider.persistIfNotYetAvailable(key, value);
+        }
+
+        @Override
+        public <Type> Observable<Type> getChanges(@NonNull String key, @NonNull Class<Type> typeClass) {
+            return provider.getChanges(key, typeClass);
+        }
+
+        @Override
+        public Completable delete(@NonNull String key) {
+            return provider.delete(key);
+        }
+
+        @Override
+        public Completable deleteAll() {
+            return provider.deleteAll();
+        }
+
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.observers.TestObserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TieredPreferencesProviderTest {
+
+    private InMemoryPreferencesProvider wrappedPreferencesProvider;
+
+    private TieredPreferencesProvider preferencesProvider;
+
+    @Before
+    public void setUp() {
+        wrappedPreferencesProvider = new InMemoryPreferencesProvider();
+        preferencesProvider = new TieredPreferencesProvider(wrappedPreferencesProvider);
+    }
+
+    @Test
+    public void restore_notInMemory_loadsValueOnce() {
+        wrappedPreferencesProvider.persist("1", "a").blockingAwait();
+
+        assertEquals("a", preferencesProvider.restore("1", String.class).blockingGet());
+
+        wrappedPreferencesProvider.persist("1", "b").blockingAwait();
+        assertEquals("a", preferencesProvider.restore("1", String.class).blockingGet());
+        assertEquals(1, preferencesProvider.getSize());
+
+        preferencesProvider.invalidate("1");
+        assertEquals("b", preferencesProvider.restore("1", String.class).blockingGet());
+    }
+
+    @Test
+    public void restoreIfAvailable_missingKey_remembersAbsence() {
+        preferencesProvider.restoreIfAvailable("1", String.class)
+                .test()
+                .assertNoValues()
+                .assertComplete();
+
+        wrappedPreferencesProvider.persist("1", "a").blockingAwait();
+        assertFalse(preferencesProvider.containsKey("1").blockingGet());
+
+        preferencesProvider.invalidateAll();
+        assertTrue(preferencesProvider.containsKey("1").blockingGet());
+    }
+
+    @Test
+    public void persist_writeThrough_writesWrappedProvider() {
+        preferencesProvider.persist("1", "a").blockingAwait();
+
+        assertEquals("a", wrappedPreferencesProvider.restore("1", String.class).blockingGet());
+        assertEquals("a", preferencesProvider.restore("1", String.class).blockingGet());
+    }
+
+    @Test
+    public void persist_writeBack_writesWrappedProviderOnFlush() {
+        preferencesProvider = new TieredPreferencesProvider(wrappedPreferencesProvider, TieredPreferencesProvider.WriteMode.WRITE_BACK);
+        preferencesProvider.getWriteBehindProvider().setFlushTrigger(1, TimeUnit.HOURS, 100);
+
+        preferencesProvider.persist("1", "a").blockingAwait();
+
+        assertEquals("a", preferencesProvider.restore("1", String.class).blockingGet());
+        assertFalse(wrappedPreferencesProvider.containsKey("1").blockingGet());
+
+        preferencesProvider.flush().blockingAwait();
+        assertEquals("a", wrappedPreferencesProvider.restore("1", String.class).blockingGet());
+    }
+
+    @Test
+    public void persist_writeBackGenericCollection_writesWrappedProviderOnFlush() {
+        preferencesProvider = new TieredPreferencesProvider(wrappedPreferencesProvider, TieredPreferencesProvider.WriteMode.WRITE_BACK);
+        preferencesProvider.getWriteBehindProvider().setFlushTrigger(1, TimeUnit.HOURS, 100);
+        java.lang.reflect.Type valueType = new TypeToken<List<ExampleObject>>() {}.getType();
+        List<ExampleObject> value = Arrays.asList(new ExampleObject(9007199254740993L, "a"), new ExampleObject(2, "b"));
+
+        preferencesProvider.persist("1", value).blockingAwait();
+        preferencesProvider.flush().blockingAwait();
+
+        assertEquals(value, wrappedPreferencesProvider.restore("1", valueType).blockingGet());
+    }
+
+    @Test
+    public void delete_valueInMemory_deletesBothLevels() {
+        preferencesProvider.persist("1", "a").blockingAwait();
+        preferencesProvider.restore("1", String.class).blockingGet();
+
+        preferencesProvider.delete("1").blockingAwait();
+
+        preferencesProvider.restoreIfAvailable("1", String.class)
+                .test()
+                .assertNoValues()
+                .assertComplete();
+        assertFalse(wrappedPreferencesProvider.containsKey("1").blockingGet());
+    }
+
+    @Test
+    public void deleteAll_valuesInMemory_forgetsValues() {
+        preferencesProvider.persist("1", "a")
+                .andThen(preferencesProvider.persist("2", "b"))
+                .blockingAwait();
+
+        preferencesProvider.deleteAll().blockingAwait();
+
+        assertEquals(0, preferencesProvider.getSize());
+        assertFalse(preferencesProvider.containsKey("1").blockingGet());
+        assertFalse(wrappedPreferencesProvider.containsKey("2").blockingGet());
+    }
+
+    @Test
+    public void getChanges_persist_emitsChangeOnce() {
+        TestObserver<String> testObserver = preferencesProvider.getChanges("1", String.class).test();
+
+        preferencesProvider.persist("1", "a").blockingAwait();
+
+        testObserver.assertValues("a");
+    }
+
+    @Test
+    public void restore_genericTypeInMemory_restoresOtherTypeArgumentsFromWrappedProvider() {
+        wrappedPreferencesProvider.persist("1", Arrays.asList(1, 2)).blockingAwait();
+        java.lang.reflect.Type longListType = new TypeToken<List<Long>>() {}.getType();
+        java.lang.reflect.Type stringListType = new TypeToken<List<String>>() {}.getType();
+
+        assertEquals(Arrays.asList(1L, 2L), preferencesProvider.restore("1", longListType).blockingGet());
+        assertEquals(Arrays.asList("1", "2"), preferencesProvider.restore("1", stringListType).blockingGet());
+        assertEquals(Arrays.asList(1L, 2L), preferencesProvider.restore("1", longListType).blockingGet());
+        assertEquals(1, preferencesProvider.getSize());
+    }
+
+    @Test
+    public void preload_availableAndMissingKeys_loadsValuesEagerly() {
+        wrappedPreferencesProvider.persist("1", "a").blockingAwait();
+        Map<String, Class<?>> typeClasses = new HashMap<>();
+        typeClasses.put("1", String.class);
+        typeClasses.put("2", String.class);
+
+        preferencesProvider.preload(typeClasses).blockingAwait();
+
+        assertEquals(2, preferencesProvider.getSize());
+        wrappedPreferencesProvider.persist("2", "b").blockingAwait();
+        assertEquals("a", preferencesProvider.restore("1", String.class).blockingGet());
+        assertEquals("default", preferencesProvider.restoreOrDefault("2", "default").blockingGet());
+    }
+
+    @Test
+    public void restoreAll_partiallyInMemory_restoresAllValues() {
+        wrappedPreferencesProvider.persist("1", "a")
+                .andThen(wrappedPreferencesProvider.persist("2", "b"))
+                .blockingAwait();
+        preferencesProvider.restore("1", String.class).blockingGet();
+
+        Map<String, String> values = preferencesProvider.restoreAll(Arrays.asList("1", "2", "3"), String.class).blockingGet();
+
+        assertEquals(2, values.size());
+        assertEquals("b", values.get("2"));
+        assertEquals(3, preferencesProvider.getSize());
+    }
+
+    private static class ExampleObject {
+
+        protected long number;
+        protected String text;
+
+        public ExampleObject(long number, String text) {
+            this.number = number;
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ExampleObject that = (ExampleObject) o;
+            return number == that.number && text.equals(that.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (number ^ (number >>> 32)) + text.hashCode();
+        }
+
+    }
+
+}
@@ -0,0 +1,233 @@
+package com.nexenio.rxpreferences.provider;
+
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindPreferencesProviderTest {
+
+    private InMemoryPreferencesProvider wrappedPreferencesProvider;
+
+    private WriteBehindPreferencesProvider preferencesProvider;
+
+    private TestScheduler flushScheduler;
+
+    @Before
+    public void setUp() {
+        wrappedPreferencesProvider = new InMemoryPreferencesProvider();
+        preferencesProvider = new WriteBehindPreferencesProvider(wrappedPreferencesProvider);
+        flushScheduler = new TestScheduler();
+        preferencesProvider.setFlushScheduler(flushScheduler);
+        preferencesProvider.setFlushTrigger(100, TimeUnit.MILLISECONDS, 3);
+    }
+
+    @Test
+    public void restore_pendingValue_emitsValueBeforeFlush() {
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.restore("1", Integer.class))
+                .test()
+                .assertValue(1);
+
+        assertFalse(wrappedPreferencesProvider.containsKey("1").blockingGet());
+        assertEquals(1, preferencesProvider.getPendingWriteCount());
+    }
+
+    @Test
+    public void persist_delayPassed_flushesToWrappedProvider() {
+        preferencesProvider.persist("1", 1)
+                .blockingAwait();
+
+        flushScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        assertEquals(Integer.valueOf(1), wrappedPreferencesProvider.restore("1", Integer.class).blockingGet());
+        assertEquals(0, preferencesProvider.getPendingWriteCount());
+    }
+
+    @Test
+    public void persist_maximumPendingWritesReached_flushesImmediately() {
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.persist("2", 2))
+                .andThen(preferencesProvider.persist("3", 3))
+                .blockingAwait();
+
+        flushScheduler.triggerActions();
+
+        assertEquals(new HashSet<>(Arrays.asList("1", "2", "3")), new HashSet<>(wrappedPreferencesProvider.getKeys().toList().blockingGet()));
+    }
+
+    @Test
+    public void persist_sameKeyRepeatedly_writesLatestValueOnce() {
+        TestObserver<Integer> wrappedTestObserver = wrappedPreferencesProvider.getChanges("1", Integer.class)
+                .test();
+
+        for (int i = 0; i < 100; i++) {
+            preferencesProvider.persist("1", i)
+                    .blockingAwait();
+        }
+        preferencesProvider.flush()
+                .blockingAwait();
+
+        wrappedTestObserver.assertValue(99);
+    }
+
+    @Test
+    public void getChanges_pendingValuesFlushed_emitsEveryChangeOnce() {
+        TestObserver<Integer> testObserver = preferencesProvider.getChanges("1", Integer.class)
+                .test();
+
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.persist("1", 2))
+                .andThen(preferencesProvider.flush())
+                .blockingAwait();
+        wrappedPreferencesProvider.persist("1", 3)
+                .blockingAwait();
+
+        testObserver.assertValues(1, 2, 3);
+    }
+
+    @Test
+    public void delete_valueAvailableInWrappedProvider_hidesValueBeforeFlush() {
+        wrappedPreferencesProvider.persist("1", 1)
+                .blockingAwait();
+
+        preferencesProvider.delete("1")
+                .blockingAwait();
+
+        assertFalse(preferencesProvider.containsKey("1").blockingGet());
+        preferencesProvider.restoreIfAvailable("1", Integer.class)
+                .test()
+                .assertNoValues()
+                .assertComplete();
+        assertTrue(wrappedPreferencesProvider.containsKey("1").blockingGet());
+
+        preferencesProvider.flush()
+                .blockingAwait();
+        assertFalse(wrappedPreferencesProvider.containsKey("1").blockingGet());
+    }
+
+    @Test
+    public void getKeys_pendingChanges_emitsMergedKeys() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("1", 1);
+        values.put("2", 2);
+        wrappedPreferencesProvider.persistAll(values)
+                .blockingAwait();
+
+        preferencesProvider.delete("1")
+                .andThen(preferencesProvider.persist("3", 3))
+                .blockingAwait();
+
+        assertEquals(new HashSet<>(Arrays.asList("2", "3")), new HashSet<>(preferencesProvider.getKeys().toList().blockingGet()));
+    }
+
+    @Test
+    public void restoreAll_pendingAndFlushedValues_emitsAllValues() {
+        wrappedPreferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.persist("2", 2))
+                .blockingAwait();
+
+        Map<String, Integer> values = preferencesProvider.restoreAll(Arrays.asList("1", "2", "3"), Integer.class)
+                .blockingGet();
+
+        assertEquals(2, values.size());
+        assertEquals(Integer.valueOf(1), values.get("1"));
+        assertEquals(Integer.valueOf(2), values.get("2"));
+    }
+
+    @Test
+    public void getChanges_wrappedProviderEmitsOnOtherThread_emitsEveryChangeOnce() {
+        wrappedPreferencesProvider.setIoScheduler(Schedulers.single());
+        TestObserver<Integer> testObserver = preferencesProvider.getChanges("1", Integer.class)
+                .test();
+
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.flush())
+                .blockingAwait();
+        wrappedPreferencesProvider.persist("1", 2)
+                .blockingAwait();
+
+        testObserver.awaitCount(2)
+                .assertValues(1, 2);
+    }
+
+    @Test
+    public void restore_pendingValueOfOtherType_emitsConvertedValue() {
+        preferencesProvider.persist("1", 1)
+                .andThen(preferencesProvider.restore("1", Long.class))
+                .test()
+                .assertValue(1L);
+
+        preferencesProvider.flush()
+                .andThen(preferencesProvider.restore("1", Long.class))
+                .test()
+                .assertValue(1L);
+    }
+
+    @Test
+    public void restore_pendingValueOfIncompatibleType_emitsError() {
+        preferencesProvider.persist("1", true)
+                .andThen(preferencesProvider.restore("1", Integer.class))
+                .test()
+                .assertError(PreferenceProviderException.class);
+    }
+
+    @Test
+    public void persist_genericCollection_writesPersistedValueOnFlush() {
+        java.lang.reflect.Type valueType = new TypeToken<List<ExampleObject>>() {}.getType();
+        List<ExampleObject> value = Arrays.asList(new ExampleObject(9007199254740993L, "a"), new ExampleObject(2, "b"));
+        preferencesProvider.persist("1", value)
+                .blockingAwait();
+
+        assertEquals(value, preferencesProvider.restore("1", valueType).blockingGet());
+        preferencesProvider.flush()
+                .blockingAwait();
+        assertEquals(value, wrappedPreferencesProvider.restore("1", valueType).blockingGet());
+    }
+
+    private static class ExampleObject {
+
+        protected long number;
+        protected String text;
+
+        public ExampleObject(long number, String text) {
+            this.number = number;
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ExampleObject that = (ExampleObject) o;
+            return number == that.number && text.equals(that.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (number ^ (number >>> 32)) + text.hashCode();
+        }
+
+    }
+
+}
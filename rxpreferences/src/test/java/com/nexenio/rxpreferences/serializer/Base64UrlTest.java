@@ -0,0 +1,42 @@
+package com.nexenio.rxpreferences.serializer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Base64UrlTest {
+
+    @Test
+    public void encode_rfc4648Vectors_emitsUnpaddedValues() {
+        assertEquals("", Base64Url.encode(new byte[0]));
+        assertEquals("Zg", Base64Url.encode("f".getBytes()));
+        assertEquals("Zm8", Base64Url.encode("fo".getBytes()));
+        assertEquals("Zm9v", Base64Url.encode("foo".getBytes()));
+        assertEquals("Zm9vYmE", Base64Url.encode("fooba".getBytes()));
+        assertEquals("-_8", Base64Url.encode(new byte[]{(byte) 0xFB, (byte) 0xFF}));
+    }
+
+    @Test
+    public void decode_encodedValues_returnsOriginalValues() {
+        Random random = new Random(42);
+        for (int length = 0; length < 64; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            assertArrayEquals(bytes, Base64Url.decode(Base64Url.encode(bytes)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_invalidCharacter_throwsException() {
+        Base64Url.decode("Zm9v+A");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_invalidLength_throwsException() {
+        Base64Url.decode("Zm9vY");
+    }
+
+}
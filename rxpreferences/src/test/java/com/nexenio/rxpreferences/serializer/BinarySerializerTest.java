@@ -0,0 +1,177 @@
+package com.nexenio.rxpreferences.serializer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinarySerializerTest {
+
+    private BinarySerializer serializer;
+
+    @Before
+    public void setUp() {
+        serializer = new BinarySerializer();
+        serializer.registerCodec(ExampleObject.class, new ExampleObjectCodec());
+    }
+
+    @Test
+    public void serializeToString_registeredType_emitsBinaryValue() {
+        serializer.serializeToString(new ExampleObject(1, "foo"))
+                .test()
+                .assertValue(value -> value.charAt(0) == BinarySerializer.BINARY_VALUE_PREFIX)
+                .assertComplete();
+    }
+
+    @Test
+    public void serializeToString_registeredType_isSmallerThanJson() throws Exception {
+        ExampleObject object = new ExampleObject(123456, "some text");
+        String binaryValue = serializer.serialize(object);
+        String jsonValue = new GsonSerializer().serialize(object);
+        assertTrue(binaryValue.length() < jsonValue.length() * 2 / 3);
+    }
+
+    @Test
+    public void deserializeFromString_registeredType_emitsValue() throws Exception {
+        String serializedValue = serializer.serialize(new ExampleObject(-1, "foo"));
+        serializer.deserializeFromString(serializedValue, ExampleObject.class)
+                .test()
+                .assertValue(object -> {
+                    assertEquals(-1, object.number);
+                    assertEquals("foo", object.text);
+                    return true;
+                })
+                .assertComplete();
+    }
+
+    @Test
+    public void serialize_unregisteredType_usesFallbackSerializer() throws Exception {
+        assertEquals("true", serializer.serialize(true));
+        assertEquals(Boolean.TRUE, serializer.deserialize("true", Boolean.class));
+    }
+
+    @Test
+    public void deserialize_jsonValueOfRegisteredType_usesFallbackSerializer() throws Exception {
+        ExampleObject object = serializer.deserialize("{\"number\":1,\"text\":\"foo\"}", ExampleObject.class);
+        assertEquals("foo", object.text);
+    }
+
+    @Test
+    public void serialize_byteArray_roundTrips() throws Exception {
+        byte[] bytes = new byte[]{0, 1, 2, (byte) 0xFF};
+        String serializedValue = serializer.serialize(bytes);
+        assertArrayEquals(bytes, serializer.deserialize(serializedValue, byte[].class));
+    }
+
+    @Test
+    public void serializeToBytes_registeredType_roundTrips() throws Exception {
+        byte[] bytes = serializer.serializeToBytes(new ExampleObject(42, "foo"));
+        assertEquals(BinarySerializer.FORMAT_VERSION, bytes[0]);
+        ExampleObject object = serializer.deserializeFromBytes(bytes, ExampleObject.class);
+        assertEquals(42, object.number);
+    }
+
+    @Test
+    public void serializeToBytes_unregisteredType_roundTrips() throws Exception {
+        byte[] bytes = serializer.serializeToBytes("foo");
+        assertEquals("foo", serializer.deserializeFromBytes(bytes, String.class));
+    }
+
+    @Test
+    public void deserializeFromBytes_bufferSlice_roundTrips() throws Exception {
+        byte[] bytes = serializer.serializeToBytes(new ExampleObject(42, "foo"));
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 2);
+        buffer.put((byte) 0).put(bytes).put((byte) 0);
+        buffer.position(1);
+        buffer.limit(bytes.length + 1);
+
+        ExampleObject object = serializer.deserializeFromBytes(buffer.slice().asReadOnlyBuffer(), ExampleObject.class);
+        assertEquals(42, object.number);
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    public void deserializeFromString_invalidBinaryValue_emitsError() {
+        serializer.deserializeFromString(BinarySerializer.BINARY_VALUE_PREFIX + "AQ", ExampleObject.class)
+                .test()
+                .assertError(SerializerException.class);
+    }
+
+    @Test(expected = SerializerException.class)
+    public void deserialize_trailingData_throwsException() throws Exception {
+        BinaryOutput output = new BinaryOutput();
+        output.writeByte(BinarySerializer.FORMAT_VERSION);
+        output.writeInt(1);
+        output.writeString("foo");
+        output.writeByte(0);
+        serializer.deserialize(BinarySerializer.BINARY_VALUE_PREFIX + Base64Url.encode(output.toByteArray()), ExampleObject.class);
+    }
+
+    @Test
+    public void binaryOutput_primitives_roundTrip() throws Exception {
+        BinaryOutput output = new BinaryOutput(1);
+        output.writeInt(Integer.MIN_VALUE);
+        output.writeInt(Integer.MAX_VALUE);
+        output.writeLong(Long.MIN_VALUE);
+        output.writeLong(-1);
+        output.writeFloat(1.5f);
+        output.writeDouble(Double.longBitsToDouble(0x7FF8000000000001L));
+        output.writeBoolean(true);
+        output.writeString("\u00e4\u20ac");
+
+        BinaryInput input = new BinaryInput(output.toByteArray());
+        assertEquals(Integer.MIN_VALUE, input.readInt());
+        assertEquals(Integer.MAX_VALUE, input.readInt());
+        assertEquals(Long.MIN_VALUE, input.readLong());
+        assertEquals(-1, input.readLong());
+        assertEquals(1.5f, input.readFloat(), 0);
+        assertEquals(0x7FF8000000000001L, Double.doubleToRawLongBits(input.readDouble()));
+        assertTrue(input.readBoolean());
+        assertEquals("\u00e4\u20ac", input.readString());
+        assertEquals(0, input.remaining());
+    }
+
+    @Test
+    public void binaryOutput_smallInt_usesSingleByte() {
+        BinaryOutput output = new BinaryOutput();
+        output.writeInt(-64);
+        output.writeInt(63);
+        assertEquals(2, output.size());
+    }
+
+    private static class ExampleObject {
+
+        protected int number;
+        protected String text;
+
+        public ExampleObject(int number, String text) {
+            this.number = number;
+            this.text = text;
+        }
+
+    }
+
+    private static class ExampleObjectCodec implements BinaryCodec<ExampleObject> {
+
+        @Override
+        public void write(@NonNull BinaryOutput output, @NonNull ExampleObject value) {
+            output.writeInt(value.number);
+            output.writeString(value.text);
+        }
+
+        @NonNull
+        @Override
+        public ExampleObject read(@NonNull BinaryInput input) throws IOException {
+            return new ExampleObject(input.readInt(), input.readString());
+        }
+
+    }
+
+}
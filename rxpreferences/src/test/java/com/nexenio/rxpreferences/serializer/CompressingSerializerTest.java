@@ -0,0 +1,117 @@
+package com.nexenio.rxpreferences.serializer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompressingSerializerTest {
+
+    private GsonSerializer gsonSerializer;
+
+    private CompressingSerializer serializer;
+
+    @Before
+    public void setUp() {
+        gsonSerializer = new GsonSerializer();
+        serializer = new CompressingSerializer(gsonSerializer, 100);
+    }
+
+    @Test
+    public void serialize_smallValue_emitsUncompressedValue() throws Exception {
+        assertEquals(gsonSerializer.serialize("foo"), serializer.serialize("foo"));
+        assertEquals(0, serializer.getCompressedValueCount());
+    }
+
+    @Test
+    public void serialize_largeValue_emitsSmallerCompressedValue() throws Exception {
+        List<String> value = createLargeValue();
+
+        String compressedValue = serializer.serialize(value);
+
+        assertEquals(CompressingSerializer.COMPRESSED_VALUE_PREFIX, compressedValue.charAt(0));
+        assertTrue(compressedValue.length() < gsonSerializer.serialize(value).length() / 4);
+        assertEquals(1, serializer.getCompressedValueCount());
+        assertTrue(serializer.getCompressionRatio() < 0.25);
+    }
+
+    @Test
+    public void deserialize_compressedValue_emitsValue() throws Exception {
+        List<String> value = createLargeValue();
+        String compressedValue = serializer.serialize(value);
+
+        serializer.deserializeFromString(compressedValue, List.class)
+                .test()
+                .assertValue(value);
+    }
+
+    @Test
+    public void deserialize_valuePersistedWithoutCompression_emitsValue() throws Exception {
+        List<String> value = createLargeValue();
+        String uncompressedValue = gsonSerializer.serialize(value);
+
+        assertEquals(value, serializer.deserialize(uncompressedValue, List.class));
+    }
+
+    @Test
+    public void serialize_smallValueStartingWithPrefix_emitsCompressedValue() throws Exception {
+        Serializer prefixSerializer = new GsonSerializer() {
+            @Override
+            public String serialize(Object value) throws SerializerException {
+                return CompressingSerializer.COMPRESSED_VALUE_PREFIX + super.serialize(value);
+            }
+
+            @Override
+            public <Type> Type deserialize(String value, java.lang.reflect.Type valueType) throws SerializerException {
+                return super.deserialize(value.substring(1), valueType);
+            }
+        };
+        serializer = new CompressingSerializer(prefixSerializer, 100);
+
+        String value = serializer.serialize(1);
+
+        assertEquals(1, serializer.getCompressedValueCount());
+        assertEquals(Integer.valueOf(1), serializer.deserialize(value, Integer.class));
+    }
+
+    @Test
+    public void deserializeFromBytes_compressedBytes_emitsValue() throws Exception {
+        List<String> value = createLargeValue();
+        byte[] bytes = serializer.serializeToBytes(value);
+
+        assertEquals(CompressingSerializer.COMPRESSED_BYTES_MARKER, bytes[0]);
+        assertEquals(value, serializer.deserializeFromBytes(ByteBuffer.wrap(bytes), List.class));
+        assertEquals(value, serializer.deserializeFromBytes(ByteBuffer.wrap(gsonSerializer.serializeToBytes(value)), List.class));
+    }
+
+    @Test
+    public void deserialize_corruptedValue_throwsException() {
+        serializer.deserializeFromString(CompressingSerializer.COMPRESSED_VALUE_PREFIX + "AQID", List.class)
+                .test()
+                .assertError(SerializerException.class);
+    }
+
+    @Test
+    public void deserialize_valueExceedsMaximumDecompressedSize_throwsException() throws Exception {
+        String compressedValue = serializer.serialize(Collections.nCopies(100000, "a"));
+        assertTrue(compressedValue.length() < 2000);
+
+        serializer.setMaximumDecompressedSize(100000);
+
+        serializer.deserializeFromString(compressedValue, List.class)
+                .test()
+                .assertError(throwable -> throwable instanceof SerializerException
+                        && throwable.getMessage().contains("maximum size"));
+    }
+
+    private static List<String> createLargeValue() {
+        return new ArrayList<>(Collections.nCopies(100, "feature-flag"));
+    }
+
+}
@@ -1,9 +1,14 @@
 package com.nexenio.rxpreferences.serializer;
 
+import com.google.gson.reflect.TypeToken;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 
@@ -60,6 +65,59 @@ public class GsonSerializerTest {
                 .assertComplete();
     }
 
+    @Test
+    public void deserializeFromString_genericListType_emitsValue() {
+        java.lang.reflect.Type type = new TypeToken<List<ExampleObject>>() {}.getType();
+        serializer.<List<ExampleObject>>deserializeFromString("[{\"number\":1,\"text\":\"foo\"},{\"number\":2,\"text\":\"bar\"}]", type)
+                .test()
+                .assertValue(objects -> {
+                    assertEquals(2, objects.size());
+                    assertEquals(ExampleObject.class, objects.get(0).getClass());
+                    assertEquals("bar", objects.get(1).text);
+                    return true;
+                })
+                .assertComplete();
+    }
+
+    @Test
+    public void deserializeFromString_genericMapType_emitsValue() {
+        java.lang.reflect.Type type = new TypeToken<Map<String, ExampleObject>>() {}.getType();
+        serializer.<Map<String, ExampleObject>>deserializeFromString("{\"a\":{\"number\":1,\"text\":\"foo\"}}", type)
+                .test()
+                .assertValue(objects -> objects.get("a").number == 1)
+                .assertComplete();
+    }
+
+    @Test
+    public void serializeToString_genericList_roundTrips() {
+        java.lang.reflect.Type type = new TypeToken<List<ExampleObject>>() {}.getType();
+        List<ExampleObject> objects = Arrays.asList(new ExampleObject(1, "foo"), new ExampleObject(2, "bar"));
+        serializer.serializeToString(objects)
+                .flatMap(serializedValue -> serializer.<List<ExampleObject>>deserializeFromString(serializedValue, type))
+                .test()
+                .assertValue(restoredObjects -> restoredObjects.get(1).number == 2)
+                .assertComplete();
+    }
+
+    @Test
+    public void deserializeFromString_trailingData_emitsError() {
+        serializer.deserializeFromString("1 2", Integer.class)
+                .test()
+                .assertError(SerializerException.class);
+    }
+
+    @Test
+    public void serialize_object_returnsString() throws Exception {
+        String serializedValue = serializer.serialize(new ExampleObject(1, "foo"));
+        assertEquals("{\"number\":1,\"text\":\"foo\"}", serializedValue);
+        assertEquals("foo", serializer.<ExampleObject>deserialize(serializedValue, ExampleObject.class).text);
+    }
+
+    @Test(expected = SerializerException.class)
+    public void deserialize_invalidString_throwsException() throws Exception {
+        serializer.deserialize("foo", Integer.class);
+    }
+
     @Test
     public void deserializeFromString_invalidString_emitsError() {
         serializer.deserializeFromString("foo", Integer.class)